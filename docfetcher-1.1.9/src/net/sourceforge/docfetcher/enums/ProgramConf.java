@@ -55,6 +55,7 @@ public final class ProgramConf {
 		AllowIndexDeletion (true),
 		ShowAdvancedSettingsLink (true),
 		ReportObsoleteIndexFiles (true),
+		PersistentUnpackCache (true),
 		IndexExcelFormulas (true),
 		;
 
@@ -79,6 +80,9 @@ public final class ProgramConf {
 		WebInterfacePageSize (50, 1),
 		PatternTableHeight (4, 1),
 		UnpackCacheCapacity (20, 1),
+		UnpackCacheMaxMegabytes (500, 1),
+		IndexingWorkerCount (1, 1),
+		ParserThreadCount (1, 1),
 		Analyzer (0, 0),
 		InitialSorting (0, Integer.MIN_VALUE),
 		;
@@ -139,7 +143,8 @@ public final class ProgramConf {
 	}
 
 	public static enum StrList implements Loadable {
-		HtmlExtensions ("html", "htm", "xhtml", "shtml", "shtm", "php", "asp", "jsp")
+		HtmlExtensions ("html", "htm", "xhtml", "shtml", "shtm", "php", "asp", "jsp"),
+		SearcherWarmUpQueries (),
 		;
 
 		private List<String> value;
@@ -468,8 +468,9 @@ public final class Application {
 
 		int cacheCapacity = ProgramConf.Int.UnpackCacheCapacity.get();
 		int reporterCapacity = ProgramConf.Int.MaxLinesInProgressPanel.get();
+		int workerCount = ProgramConf.Int.IndexingWorkerCount.get();
 		indexRegistry = new IndexRegistry(
-			indexParentDir, cacheCapacity, reporterCapacity);
+			indexParentDir, cacheCapacity, reporterCapacity, workerCount);
 		final Daemon daemon = new Daemon(indexRegistry);
 		IndexingQueue queue = indexRegistry.getQueue();
 
@@ -597,8 +598,9 @@ public final class Application {
 	private static void loadIndexRegistryHeadless(@NotNull File indexParentDir) {
 		int cacheCapacity = ProgramConf.Int.UnpackCacheCapacity.get();
 		int reporterCapacity = ProgramConf.Int.MaxLinesInProgressPanel.get();
+		int workerCount = ProgramConf.Int.IndexingWorkerCount.get();
 		indexRegistry = new IndexRegistry(
-			indexParentDir, cacheCapacity, reporterCapacity);
+			indexParentDir, cacheCapacity, reporterCapacity, workerCount);
 		
 		try {
 			indexRegistry.load(Cancelable.nullCancelable);
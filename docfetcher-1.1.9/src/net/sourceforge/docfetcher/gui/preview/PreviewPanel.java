@@ -23,6 +23,7 @@ import net.sourceforge.docfetcher.enums.Msg;
 import net.sourceforge.docfetcher.enums.SettingsConf;
 import net.sourceforge.docfetcher.gui.UtilGui;
 import net.sourceforge.docfetcher.gui.preview.DelayedOverlay.Hider;
+import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.FileResource;
 import net.sourceforge.docfetcher.model.MailResource;
 import net.sourceforge.docfetcher.model.parse.ParseException;
@@ -80,7 +81,7 @@ public final class PreviewPanel extends Composite {
 	private boolean browserCreationFailed = false;
 	
 	// Thread interrupt signal
-	private long requestCount = 0;
+	private volatile long requestCount = 0;
 	
 	public PreviewPanel(@NotNull Composite parent) {
 		super(parent, SWT.NONE);
@@ -459,7 +460,11 @@ public final class PreviewPanel extends Composite {
 
 		protected void doRun(Hider overlayHider) throws ParseException,
 				FileNotFoundException, CheckedOutOfMemoryError {
-			HighlightedString string = doc.getHighlightedText();
+			HighlightedString string = doc.getHighlightedText(new Cancelable() {
+				public boolean isCanceled() {
+					return startCount != requestCount;
+				}
+			});
 			setTextSafely(string, doc.isPlainTextFile(), startCount, false);
 		}
 	}
@@ -11,6 +11,8 @@
 
 package net.sourceforge.docfetcher.model;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -68,6 +70,16 @@ public abstract class Folder
 	public static final Event<FolderEvent> evtFolderAdded = new Event<FolderEvent>();
 	public static final Event<FolderEvent> evtFolderRemoved = new Event<FolderEvent>();
 
+	/*
+	 * Thread-local state used by the TreeIndexStore: While a folder tree is
+	 * being restored from disk, no folder events are fired, since the folders
+	 * aren't visible anywhere yet. While an index is being written, the
+	 * children of the folder stored here are left out of the Java
+	 * serialization, since the TreeIndexStore writes them in its own format.
+	 */
+	static final ThreadLocal<Boolean> restoring = new ThreadLocal<Boolean>();
+	static final ThreadLocal<Folder<?, ?>> childlessFolder = new ThreadLocal<Folder<?, ?>>();
+
 	/*
 	 * The children of instances of this class are stored as maps for the
 	 * following reasons:
@@ -222,7 +234,9 @@ public abstract class Folder
 	// will replace folder with identical name
 	@SuppressWarnings("unchecked")
 	public final void putSubFolder(@NotNull F subFolder) {
-		evtFolderAdding.fire(new FolderEvent(this, subFolder));
+		boolean fireEvents = restoring.get() == null;
+		if (fireEvents)
+			evtFolderAdding.fire(new FolderEvent(this, subFolder));
 		synchronized (this) {
 			if (subFolders == null)
 				subFolders = Maps.newHashMap();
@@ -233,7 +247,8 @@ public abstract class Folder
 			subFolder.updatePathHashCode();
 			subFolders.put(subFolder.getName(), subFolder);
 		}
-		evtFolderAdded.fire(new FolderEvent(this, subFolder));
+		if (fireEvents)
+			evtFolderAdded.fire(new FolderEvent(this, subFolder));
 	}
 
 	/**
@@ -520,4 +535,23 @@ public abstract class Folder
 		return false;
 	}
 
+	private synchronized void writeObject(@NotNull ObjectOutputStream out)
+			throws IOException {
+		if (childlessFolder.get() != this) {
+			out.defaultWriteObject();
+			return;
+		}
+		HashMap<String, D> documents = this.documents;
+		HashMap<String, F> subFolders = this.subFolders;
+		this.documents = null;
+		this.subFolders = null;
+		try {
+			out.defaultWriteObject();
+		}
+		finally {
+			this.documents = documents;
+			this.subFolders = subFolders;
+		}
+	}
+
 }
@@ -11,10 +11,25 @@
 
 package net.sourceforge.docfetcher.model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
@@ -23,6 +38,7 @@ import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 import net.sourceforge.docfetcher.util.collect.SafeKeyMap;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.Closeables;
 
 /**
  * Cold items are eligible for deletion, depending on the cold cache size. Cold
@@ -35,10 +51,33 @@ import com.google.common.annotations.VisibleForTesting;
  * for a while, so as to avoid the nasty surprise of deleting files which are
  * currently open in an external application.
  * 
+ * Besides the maximum number of cold items, the cold cache can be limited by
+ * the total size of the cold items on disk. When either limit is exceeded, the
+ * victim is chosen among the least recently used cold items by how often their
+ * keys were requested, as recorded in a small frequency sketch (TinyLFU), so
+ * that a burst of one-off unpacks doesn't flush out large archives that are
+ * opened again and again.
+ *
+ * If a cache directory is given, unpacked files are moved into it and the
+ * cache is saved there, so it survives restarts. Each item remembers the last
+ * modified date of the outermost archive on disk it was unpacked from, and is
+ * discarded when the archive has changed since. The cache directory is owned
+ * by one cache at a time, through a file lock that is held until the program
+ * exits; other program instances using the same directory, e.g. a headless
+ * instance next to the GUI, fall back to an in-memory cache, so that they
+ * never delete files the owner is still using.
+ *
  * @author Tran Nam Quang
  */
 @VisibleForPackageGroup
 public final class HotColdFileCache {
+
+	private static final String MANIFEST_FILENAME = "unpack-cache.dat";
+	private static final String LOCK_FILENAME = "unpack-cache.lock";
+	private static final int MANIFEST_VERSION = 1;
+
+	/** How many of the least recently used cold items are eviction candidates. */
+	private static final int EVICTION_SAMPLE_SIZE = 4;
 	
 	public static final class PermanentFileResource implements FileResource {
 		private final File file;
@@ -59,6 +98,9 @@ public final class HotColdFileCache {
 		private final HotColdFileCache cache;
 		private final String key;
 		private final File deletable;
+		private final long size; // bytes on disk, including the deletable's contents
+		@Nullable private final File archiveFile; // outermost archive on disk
+		private final long archiveLastModified;
 		private volatile int useCount;
 		
 		// Creates deletable resource
@@ -66,6 +108,8 @@ public final class HotColdFileCache {
 										@NotNull HotColdFileCache cache,
 										@NotNull String key,
 										@NotNull File deletable,
+										@Nullable File archiveFile,
+										long archiveLastModified,
 										int useCount) {
 			Util.checkNotNull(file, cache, key, deletable);
 			Util.checkThat(!cache.coldCache.containsKeySafe(key));
@@ -74,6 +118,9 @@ public final class HotColdFileCache {
 			this.cache = cache;
 			this.key = key;
 			this.deletable = deletable;
+			this.size = getSize(deletable);
+			this.archiveFile = archiveFile;
+			this.archiveLastModified = archiveLastModified;
 			assert useCount >= 0;
 			this.useCount = useCount;
 		}
@@ -84,6 +131,13 @@ public final class HotColdFileCache {
 		public void dispose() {
 			cache.coolDown(key);
 		}
+		// Returns false if the item was unpacked from an archive that has
+		// changed since, or if the unpacked file is gone
+		private boolean isValid() {
+			if (archiveFile != null && archiveFile.lastModified() != archiveLastModified)
+				return false;
+			return file.exists();
+		}
 	}
 	
 	// Helper proxy class to ensure that any resource returned from the cache
@@ -108,18 +162,178 @@ public final class HotColdFileCache {
 		}
 	}
 	
+	/**
+	 * A count-min sketch of 4-bit counters that estimates how often each key
+	 * was requested. The counters are halved periodically, so that old
+	 * popularity fades away.
+	 */
+	private static final class FrequencySketch {
+		private static final int MAX_COUNT = 15;
+		private final int[] table;
+		private final int sampleSize;
+		private int additions = 0;
+
+		public FrequencySketch(int capacity) {
+			int size = Integer.highestOneBit(Math.max(16, capacity * 8) - 1) << 1;
+			table = new int[size];
+			sampleSize = 10 * size;
+		}
+		public void increment(@NotNull String key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				if (table[index] < MAX_COUNT) {
+					table[index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < table.length; i++)
+					table[i] >>>= 1;
+				additions /= 2;
+			}
+		}
+		public int frequency(@NotNull String key) {
+			int hash = spread(key.hashCode());
+			int frequency = MAX_COUNT;
+			for (int i = 0; i < 4; i++)
+				frequency = Math.min(frequency, table[indexOf(hash, i)]);
+			return frequency;
+		}
+		private int indexOf(int hash, int i) {
+			int h = (hash + i) * (0x9E3779B9 + 2 * i);
+			return (h ^ (h >>> 16)) & (table.length - 1);
+		}
+		private static int spread(int h) {
+			h ^= (h >>> 17);
+			h *= 0xed5ad4bb;
+			h ^= (h >>> 11);
+			return h;
+		}
+	}
+
 	private final SafeKeyMap<String, TemporaryFileResource> hotCache = SafeKeyMap.createHashMap();
-	private final SafeKeyMap<String, TemporaryFileResource> coldCache;
+
+	// LRU order: The least recently used item comes first
+	private final SafeKeyMap<String, TemporaryFileResource> coldCache = SafeKeyMap.create(
+		new LinkedHashMap<String, TemporaryFileResource>(16, 0.75f, true));
+
+	private final int coldCacheSize;
+	private final long coldCacheBytes;
+	@Nullable private final File cacheDir; // null if not owned by this cache
+	@Nullable private FileLock cacheDirLock;
+	private final FrequencySketch sketch;
+
+	private long coldBytes = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long evictedBytes = 0;
+	private long nextItemId = 0;
 	
 	public HotColdFileCache(int coldCacheSize) {
+		this(coldCacheSize, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * @param coldCacheBytes
+	 *            The maximum total size of the cold items in bytes. A single
+	 *            cold item that is larger than this is kept until the next
+	 *            item cools down.
+	 * @param cacheDir
+	 *            The directory where unpacked files and the cache contents are
+	 *            stored across restarts, or null if the cache should only live
+	 *            in memory, with the unpacked files being deleted on exit.
+	 *            If the directory is already owned by another cache, this
+	 *            cache will only live in memory as well.
+	 */
+	public HotColdFileCache(int coldCacheSize,
+							long coldCacheBytes,
+							@Nullable File cacheDir) {
 		Util.checkThat(coldCacheSize >= 1);
-		coldCache = SafeKeyMap.create(new ColdCache(coldCacheSize));
+		Util.checkThat(coldCacheBytes >= 1);
+		this.coldCacheSize = coldCacheSize;
+		this.coldCacheBytes = coldCacheBytes;
+		this.sketch = new FrequencySketch(coldCacheSize);
+		if (cacheDir != null)
+			cacheDirLock = lockCacheDir(cacheDir);
+		this.cacheDir = cacheDirLock == null ? null : cacheDir;
+		if (this.cacheDir != null)
+			load(this.cacheDir);
+	}
+
+	/*
+	 * Tries to take ownership of the given cache directory by locking a file
+	 * in it. The lock is never released by the program, so it lasts until the
+	 * JVM exits. Returns null if another process or another cache in this JVM
+	 * owns the directory, or if it can't be locked at all.
+	 */
+	@Nullable
+	private static FileLock lockCacheDir(@NotNull File cacheDir) {
+		cacheDir.mkdirs();
+		FileChannel channel = null;
+		try {
+			channel = new RandomAccessFile(
+				new File(cacheDir, LOCK_FILENAME), "rw").getChannel();
+			FileLock lock = channel.tryLock();
+			if (lock != null)
+				channel = null;
+			return lock;
+		}
+		catch (OverlappingFileLockException e) {
+			return null;
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+			return null;
+		}
+		finally {
+			Closeables.closeQuietly(channel);
+		}
+	}
+
+	/**
+	 * Releases the cache directory, so that a new cache can take it over. This
+	 * cache must not be used afterwards.
+	 */
+	@VisibleForTesting
+	synchronized void releaseCacheDir() throws IOException {
+		if (cacheDirLock == null)
+			return;
+		cacheDirLock.channel().close();
+		cacheDirLock = null;
 	}
 	
 	@VisibleForTesting
 	public synchronized int getActualCacheSize() {
 		return coldCache.size() + hotCache.size();
 	}
+
+	/** Returns the total size of the cold items in bytes. */
+	public synchronized long getColdBytes() {
+		return coldBytes;
+	}
+
+	/** Returns how many calls to {@link #get(Path)} found an item. */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns how many calls to {@link #get(Path)} found no item. */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/** Returns how many cold items were deleted to stay within the limits. */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/** Returns the total size in bytes of the evicted cold items. */
+	public synchronized long getEvictedBytes() {
+		return evictedBytes;
+	}
 	
 	// Returns resource from either hot or cold cache.
 	// If item found in cold cache, item is moved to hot cache.
@@ -127,6 +341,17 @@ public final class HotColdFileCache {
 	@Nullable
 	public synchronized FileResource get(@NotNull Path key) {
 		String absKey = key.getCanonicalPath();
+		sketch.increment(absKey);
+		FileResource resource = get(absKey);
+		if (resource == null)
+			missCount++;
+		else
+			hitCount++;
+		return resource;
+	}
+
+	@Nullable
+	private FileResource get(@NotNull String absKey) {
 		TemporaryFileResource hotItem = hotCache.getValue(absKey);
 		TemporaryFileResource coldItem = coldCache.removeKey(absKey); // Remove from cold cache
 		
@@ -141,6 +366,12 @@ public final class HotColdFileCache {
 		}
 		else if (coldItem != null) {
 			assert coldItem.useCount == 0;
+			coldBytes -= coldItem.size;
+			if (!coldItem.isValid()) {
+				delete(coldItem);
+				saveManifest();
+				return null;
+			}
 			coldItem.useCount = 1;
 			hotCache.put(absKey, coldItem);
 			return new DisposeOnceProxyResource(coldItem);
@@ -163,7 +394,8 @@ public final class HotColdFileCache {
 													@NotNull File file,
 													@NotNull File deletable) {
 		Util.checkNotNull(key, file, deletable);
-		FileResource fileResource = get(key);
+		String absKey = key.getCanonicalPath();
+		FileResource fileResource = get(absKey);
 		if (fileResource != null) {
 			try {
 				Util.deleteRecursively(deletable);
@@ -173,10 +405,45 @@ public final class HotColdFileCache {
 			}
 			return new DisposeOnceProxyResource(fileResource);
 		}
-		String absKey = key.getCanonicalPath();
+		sketch.increment(absKey);
+
+		// Remember the archive the item was unpacked from
+		File archiveFile = null;
+		long archiveLastModified = 0;
+		try {
+			archiveFile = key.splitAtExistingFile().getLeft().getCanonicalFile();
+			archiveLastModified = archiveFile.lastModified();
+		}
+		catch (FileNotFoundException e) {
+			// Item can't be validated later, so it won't be stored on disk
+		}
+
+		// Move the unpacked files into the cache directory
+		if (cacheDir != null && archiveFile != null) {
+			File itemDir = createItemDir();
+			if (itemDir != null) {
+				File newDeletable = new File(itemDir, deletable.getName());
+				if (deletable.renameTo(newDeletable)) {
+					if (!file.equals(deletable)) {
+						String relPath = UtilModel.getRelativePath(deletable, file);
+						file = new File(newDeletable, relPath);
+					}
+					else {
+						file = newDeletable;
+					}
+					deletable = itemDir;
+				}
+				else {
+					// Probably on another file system; leave the files where they are
+					itemDir.delete();
+				}
+			}
+		}
+
 		TemporaryFileResource newFileResource = new TemporaryFileResource(
-			file, this, absKey, deletable, 1);
+			file, this, absKey, deletable, archiveFile, archiveLastModified, 1);
 		hotCache.put(absKey, newFileResource);
+		saveManifest();
 		return new DisposeOnceProxyResource(newFileResource);
 	}
 	
@@ -198,33 +465,193 @@ public final class HotColdFileCache {
 		if (hotItem.useCount == 0) {
 			hotCache.removeKey(absKey);
 			coldCache.put(absKey, hotItem); // Move to front
+			coldBytes += hotItem.size;
+			evict();
+			saveManifest();
 		}
 	}
 	
-	// A simple LRU cache
-	private static final class ColdCache extends LinkedHashMap<String, TemporaryFileResource> {
-		private static final long serialVersionUID = 1L;
+	/*
+	 * Deletes cold items until both limits are met. The most recently used
+	 * item is never deleted, so it can always be reopened for a while.
+	 */
+	private void evict() {
+		while (coldCache.size() > 1
+				&& (coldCache.size() > coldCacheSize || coldBytes > coldCacheBytes)) {
+			TemporaryFileResource victim = null;
+			int victimFrequency = Integer.MAX_VALUE;
+			Iterator<TemporaryFileResource> it = coldCache.values().iterator();
+			for (int i = 0; i < EVICTION_SAMPLE_SIZE && i < coldCache.size() - 1; i++) {
+				TemporaryFileResource candidate = it.next();
+				int frequency = sketch.frequency(candidate.key);
+				if (frequency < victimFrequency) {
+					victim = candidate;
+					victimFrequency = frequency;
+				}
+			}
+			coldCache.removeKey(victim.key);
+			coldBytes -= victim.size;
+			evictionCount++;
+			evictedBytes += victim.size;
+			delete(victim);
+		}
+	}
 		
-		@VisibleForTesting final int capacity;
+	private static void delete(@NotNull TemporaryFileResource item) {
+		assert item.deletable != null;
+		try {
+			// This will delete both files and directories
+			Util.deleteRecursively(item.deletable);
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+		}
+	}
 		
-		public ColdCache(int capacity) {
-			super(capacity + 1, 0.75f, true);
-			this.capacity = capacity;
+	@Nullable
+	private File createItemDir() {
+		cacheDir.mkdirs();
+		for (int i = 0; i < 100; i++) {
+			File itemDir = new File(cacheDir, String.valueOf(nextItemId++));
+			if (itemDir.mkdir())
+				return itemDir;
 		}
-		protected boolean removeEldestEntry(Map.Entry<String, TemporaryFileResource> eldest) {
-			if (size() <= capacity)
-				return false;
-			TemporaryFileResource fileResource = eldest.getValue();
-			assert fileResource.deletable != null;
+		return null;
+	}
+
+	private static long getSize(@NotNull File file) {
+		if (!file.isDirectory())
+			return file.length();
+		long size = 0;
+		for (File child : Util.listFiles(file))
+			size += getSize(child);
+		return size;
+	}
+
+	/*
+	 * Writes the items stored in the cache directory to the manifest file,
+	 * first the cold ones in LRU order, then the hot ones, which will be cold
+	 * after a restart.
+	 */
+	private void saveManifest() {
+		if (cacheDir == null)
+			return;
+		List<TemporaryFileResource> items = new ArrayList<TemporaryFileResource>();
+		for (TemporaryFileResource item : coldCache.values())
+			if (isStoredInCacheDir(item))
+				items.add(item);
+		for (TemporaryFileResource item : hotCache.values())
+			if (isStoredInCacheDir(item))
+				items.add(item);
+
+		File manifest = new File(cacheDir, MANIFEST_FILENAME);
+		File tempFile = new File(cacheDir, MANIFEST_FILENAME + ".tmp");
+		DataOutputStream out = null;
+		try {
+			cacheDir.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)));
+			out.writeInt(MANIFEST_VERSION);
+			out.writeInt(items.size());
+			for (TemporaryFileResource item : items) {
+				out.writeUTF(item.key);
+				out.writeUTF(item.deletable.getName());
+				out.writeUTF(UtilModel.getRelativePath(item.deletable, item.file));
+				out.writeUTF(item.archiveFile.getPath());
+				out.writeLong(item.archiveLastModified);
+				out.writeByte(sketch.frequency(item.key));
+			}
+			out.close();
+			out = null;
+			manifest.delete();
+			if (!tempFile.renameTo(manifest))
+				throw new IOException("Failed to rename " + tempFile);
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+		}
+		finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+
+	private boolean isStoredInCacheDir(@NotNull TemporaryFileResource item) {
+		return item.archiveFile != null
+			&& cacheDir.equals(item.deletable.getParentFile());
+	}
+
+	/*
+	 * Restores the items from the manifest file as cold items and deletes all
+	 * files in the cache directory that don't belong to a valid item.
+	 */
+	private void load(@NotNull File cacheDir) {
+		File manifest = new File(cacheDir, MANIFEST_FILENAME);
+		Set<String> itemDirNames = new HashSet<String>();
+		if (manifest.isFile()) {
+			DataInputStream in = null;
 			try {
-				// This will delete both files and directories
-				Util.deleteRecursively(fileResource.deletable);
+				in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(manifest)));
+				if (in.readInt() == MANIFEST_VERSION) {
+					int count = in.readInt();
+					for (int i = 0; i < count; i++) {
+						String key = in.readUTF();
+						String itemDirName = in.readUTF();
+						String relPath = in.readUTF();
+						File archiveFile = new File(in.readUTF());
+						long archiveLastModified = in.readLong();
+						int frequency = in.readByte();
+
+						File itemDir = new File(cacheDir, itemDirName);
+						File file = new File(itemDir, relPath);
+						if (coldCache.containsKeySafe(key))
+							continue;
+						TemporaryFileResource item = new TemporaryFileResource(
+							file, this, key, itemDir, archiveFile,
+							archiveLastModified, 0);
+						if (!item.isValid())
+							continue;
+						for (int j = 0; j < frequency; j++)
+							sketch.increment(key);
+						coldCache.put(key, item);
+						coldBytes += item.size;
+						itemDirNames.add(itemDirName);
+					}
+				}
 			}
 			catch (IOException e) {
+				// Keep what could be read so far
 				Util.printErr(e);
 			}
-			return true;
+			finally {
+				Closeables.closeQuietly(in);
+			}
 		}
+
+		/*
+		 * Delete leftovers, e.g. from items that were hot when the program
+		 * quit. This is safe because no other cache uses the directory while
+		 * this one owns it.
+		 */
+		for (File file : Util.listFiles(cacheDir)) {
+			String name = file.getName();
+			if (name.equals(MANIFEST_FILENAME) || name.equals(LOCK_FILENAME)
+					|| itemDirNames.contains(name))
+				continue;
+			try {
+				Util.deleteRecursively(file);
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+			}
+		}
+
+		for (String name : itemDirNames)
+			nextItemId = Math.max(nextItemId, Util.toInt(name, -1) + 1);
+
+		// Evict items if the limits were lowered since the last session
+		evict();
+		saveManifest();
 	}
 
 }
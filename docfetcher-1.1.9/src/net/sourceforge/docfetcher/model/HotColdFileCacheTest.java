@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class HotColdFileCacheTest {
+
+	static {
+		AppUtil.Const.autoInit();
+	}
+
+	@Test
+	public void testSizeLimit() throws Exception {
+		File archive = createArchive();
+		HotColdFileCache cache = new HotColdFileCache(10, 100, null);
+		for (int i = 0; i < 5; i++)
+			put(cache, archive, "entry" + i, 40).dispose();
+		assertEquals(80, cache.getColdBytes());
+		assertEquals(3, cache.getEvictionCount());
+		assertEquals(120, cache.getEvictedBytes());
+		assertEquals(2, cache.getActualCacheSize());
+
+		// A single item above the limit is kept until the next one cools down
+		FileResource large = put(cache, archive, "large", 500);
+		assertEquals(80, cache.getColdBytes()); // Hot items don't count
+		large.dispose();
+		assertEquals(1, cache.getActualCacheSize());
+		assertTrue(large.getFile().isFile());
+		put(cache, archive, "small", 10).dispose();
+		assertFalse(large.getFile().exists());
+		assertEquals(10, cache.getColdBytes());
+	}
+
+	@Test
+	public void testFrequentItemSurvives() throws Exception {
+		File archive = createArchive();
+		HotColdFileCache cache = new HotColdFileCache(3, Long.MAX_VALUE, null);
+		Path frequentKey = new Path(archive).createSubPath("frequent");
+		put(cache, archive, "frequent", 10).dispose();
+		for (int i = 0; i < 5; i++)
+			cache.get(frequentKey).dispose();
+
+		// Burst of one-off unpacks
+		for (int i = 0; i < 20; i++)
+			put(cache, archive, "once" + i, 10).dispose();
+		assertNotNull(cache.get(frequentKey));
+		assertEquals(6, cache.getHitCount());
+		assertEquals(18, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File archive = createArchive();
+		File cacheDir = Util.createTempDir();
+		Path key = new Path(archive).createSubPath("dir/entry.txt");
+		HotColdFileCache cache = new HotColdFileCache(10, Long.MAX_VALUE, cacheDir);
+		FileResource resource = put(cache, archive, "dir/entry.txt", 10);
+		File file = resource.getFile();
+		assertTrue(Util.getAbsPath(file).startsWith(Util.getAbsPath(cacheDir)));
+		resource.dispose();
+
+		// A second cache on the same directory doesn't touch the owner's files
+		HotColdFileCache otherCache = new HotColdFileCache(10, Long.MAX_VALUE, cacheDir);
+		FileResource otherResource = put(otherCache, archive, "other", 10);
+		assertFalse(Util.getAbsPath(otherResource.getFile()).startsWith(Util.getAbsPath(cacheDir)));
+		otherResource.dispose();
+		assertTrue(file.exists());
+		resource = cache.get(key);
+		assertNotNull(resource);
+		resource.dispose();
+
+		// Cache is restored on restart
+		cache.releaseCacheDir();
+		cache = new HotColdFileCache(10, Long.MAX_VALUE, cacheDir);
+		assertEquals(10, cache.getColdBytes());
+		resource = cache.get(key);
+		assertNotNull(resource);
+		assertEquals(file, resource.getFile());
+		assertEquals(Strings.repeat("x", 10), Files.toString(file, Charsets.UTF_8));
+		resource.dispose();
+
+		// Unpacked files of hot items that weren't disposed are kept as well
+		put(cache, archive, "other", 10);
+		cache.releaseCacheDir();
+		cache = new HotColdFileCache(10, Long.MAX_VALUE, cacheDir);
+		assertEquals(2, cache.getActualCacheSize());
+
+		// Items become invalid when the archive changes
+		archive.setLastModified(archive.lastModified() - 10000);
+		cache.releaseCacheDir();
+		cache = new HotColdFileCache(10, Long.MAX_VALUE, cacheDir);
+		assertNull(cache.get(key));
+		assertEquals(1, cache.getMissCount());
+		assertFalse(file.exists());
+		assertEquals(2, Util.listFiles(cacheDir).length); // Manifest and lock file
+	}
+
+	@NotNull
+	private static File createArchive() throws Exception {
+		File archive = new File(Util.createTempDir(), "archive.zip");
+		Files.write("not really a zip file", archive, Charsets.UTF_8);
+		return archive;
+	}
+
+	@NotNull
+	private static FileResource put(@NotNull HotColdFileCache cache,
+									@NotNull File archive,
+									@NotNull String entryPath,
+									int size) throws Exception {
+		File file = Util.createTempFile("entry", ".txt");
+		Files.write(Strings.repeat("x", size), file, Charsets.UTF_8);
+		Path key = new Path(archive).createSubPath(entryPath);
+		return cache.putIfAbsent(key, file);
+	}
+
+}
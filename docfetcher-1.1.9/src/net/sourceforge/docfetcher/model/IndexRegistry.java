@@ -13,10 +13,8 @@ package net.sourceforge.docfetcher.model;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Reader;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
@@ -33,6 +31,7 @@ import net.contentobjects.jnotify.JNotify;
 import net.contentobjects.jnotify.JNotifyException;
 import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
+import net.sourceforge.docfetcher.model.TreeIndexStore.PendingSave;
 import net.sourceforge.docfetcher.model.index.IndexingQueue;
 import net.sourceforge.docfetcher.model.index.file.FileFactory;
 import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
@@ -90,6 +89,17 @@ public final class IndexRegistry {
 	@Nullable
 	public static volatile File indexPathOverride = null;
 
+	/**
+	 * The name of the folder inside the index folder where the unpack cache is
+	 * kept across restarts.
+	 */
+	private static final String UNPACK_CACHE_DIRNAME = "unpack-cache";
+
+	/**
+	 * The file format used for tree indexes before the introduction of the
+	 * {@link TreeIndexStore}. Files in this format are still loaded, and are
+	 * replaced with the new format when the index is saved the next time.
+	 */
 	private static final String SER_FILENAME = "tree-index.ser";
 
 	/*
@@ -140,9 +150,25 @@ public final class IndexRegistry {
 	public IndexRegistry(	@NotNull File indexParentDir,
 							int cacheSize,
 							int reporterCapacity) {
+		this(indexParentDir, cacheSize, reporterCapacity, 1);
+	}
+
+	/**
+	 * @param indexingWorkerCount
+	 *            The number of worker threads the indexing queue will use for
+	 *            processing tasks on independent indexes concurrently.
+	 */
+	public IndexRegistry(	@NotNull File indexParentDir,
+							int cacheSize,
+							int reporterCapacity,
+							int indexingWorkerCount) {
 		Util.checkNotNull(indexParentDir);
 		this.indexParentDir = indexParentDir;
-		this.unpackCache = new HotColdFileCache(cacheSize);
+		long cacheBytes = ProgramConf.Int.UnpackCacheMaxMegabytes.get() * 1024L * 1024L;
+		File cacheDir = ProgramConf.Bool.PersistentUnpackCache.get()
+			? new File(indexParentDir, UNPACK_CACHE_DIRNAME)
+			: null;
+		this.unpackCache = new HotColdFileCache(cacheSize, cacheBytes, cacheDir);
 		this.fileFactory = new FileFactory(unpackCache);
 		this.outlookMailFactory = new OutlookMailFactory(unpackCache);
 
@@ -150,7 +176,8 @@ public final class IndexRegistry {
 		 * Giving out a reference to the IndexRegistry before it is fully
 		 * constructed might be a little dangerous :-/
 		 */
-		this.queue = new IndexingQueue(this, reporterCapacity);
+		this.queue = new IndexingQueue(
+			this, reporterCapacity, indexingWorkerCount);
 	}
 
 	@NotNull
@@ -338,10 +365,10 @@ public final class IndexRegistry {
 			if (cancelable.isCanceled())
 				break;
 			if (file.isDirectory()) {
-				File serFile = new File(file, SER_FILENAME);
+				File serFile = getTreeIndexFile(file);
 				if (serFile.isFile()) {
 					/*
-					 * Try to load the tree-index.ser. If this fails, we're
+					 * Try to load the tree index file. If this fails, we're
 					 * probably dealing with a tree-index.ser from DocFetcher
 					 * 1.1 beta 1 through DocFetcher 1.1 beta 6, because the
 					 * serialization version UID was changed after 1.1 beta 6.
@@ -383,7 +410,9 @@ public final class IndexRegistry {
 
 			final int watchId = new SimpleJNotifyListener() {
 				protected void handleEvent(File targetFile, EventType eventType) {
-					if (!targetFile.getName().equals(SER_FILENAME))
+					String filename = targetFile.getName();
+					if (!filename.equals(TreeIndexStore.FILENAME)
+							&& !filename.equals(SER_FILENAME))
 						return;
 					executor.schedule(new Runnable() {
 						public void run() {
@@ -411,12 +440,39 @@ public final class IndexRegistry {
 		return loadingProblems;
 	}
 
+	/**
+	 * Returns the tree index file in the given index directory, which is
+	 * either a file in the current format or, if there's no such file, a file
+	 * in the old format. The returned file might not exist.
+	 */
+	@NotNull
+	private static File getTreeIndexFile(@NotNull File indexDir) {
+		File storeFile = new File(indexDir, TreeIndexStore.FILENAME);
+		if (storeFile.exists())
+			return storeFile;
+		return new File(indexDir, SER_FILENAME);
+	}
+
 	/**
 	 * Load the given tree index file. Returns whether the file was successfully
 	 * loaded.
 	 */
 	@ThreadSafe
 	private boolean loadIndex(@NotNull File serFile) {
+		if (serFile.getName().equals(TreeIndexStore.FILENAME)) {
+			LuceneIndex index;
+			try {
+				index = TreeIndexStore.load(serFile);
+			}
+			catch (Exception e) {
+				// Fall back to the file in the old format, if it's still there
+				File oldFile = new File(Util.getParentFile(serFile), SER_FILENAME);
+				return oldFile.isFile() && loadIndex(oldFile);
+			}
+			addIndex(index, serFile.lastModified());
+			return true;
+		}
+
 		ObjectInputStream in = null;
 		try {
 			FileInputStream fin = new FileInputStream(serFile);
@@ -457,7 +513,7 @@ public final class IndexRegistry {
 			for (File indexDir : Util.listFiles(indexParentDir)) {
 				if (!indexDir.isDirectory())
 					continue;
-				File serFile = new File(indexDir, SER_FILENAME);
+				File serFile = getTreeIndexFile(indexDir);
 				if (!serFile.isFile())
 					continue;
 
@@ -493,42 +549,69 @@ public final class IndexRegistry {
 
 	@VisibleForPackageGroup
 	public void save(@NotNull LuceneIndex index) {
+		save(index, prepareSave(index));
+	}
+
+	/**
+	 * Encodes the given index so that it can be passed to
+	 * {@link #save(LuceneIndex, PendingSave)} later. Returns null if the
+	 * encoding failed. This method does not acquire the registry lock, so the
+	 * caller must make sure the index isn't modified concurrently.
+	 */
+	@Nullable
+	@ThreadSafe
+	@VisibleForPackageGroup
+	public static PendingSave prepareSave(@NotNull LuceneIndex index) {
+		Util.checkNotNull(index);
+		try {
+			return TreeIndexStore.prepare(index);
+		}
+		catch (IOException e) {
+			Util.printErr(e); // The average user doesn't need to know
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the given encoded form of the given index to disk. The encoded
+	 * form should have been obtained via {@link #prepareSave(LuceneIndex)}. If
+	 * it is null, nothing is written, but the cached last-modified value of
+	 * the index is updated anyway.
+	 */
+	@VisibleForPackageGroup
+	public void save(	@NotNull LuceneIndex index,
+						@Nullable PendingSave pendingSave) {
 		Util.checkNotNull(index);
 		writeLock.lock();
 		try {
 			File indexDir = index.getIndexDirPath().getCanonicalFile();
 			indexDir.mkdirs();
-			File serFile = new File(indexDir, SER_FILENAME);
+			File storeFile = new File(indexDir, TreeIndexStore.FILENAME);
 
 			/*
 			 * DocFetcher might have been burned onto a CD-ROM; if so, then just
 			 * ignore it.
 			 */
-			if (serFile.exists() && !serFile.canWrite())
+			File oldFile = getTreeIndexFile(indexDir);
+			if (oldFile.exists() && !oldFile.canWrite())
 				return;
 
-			ObjectOutputStream out = null;
-			try {
-				serFile.createNewFile();
-				FileOutputStream fout = new FileOutputStream(serFile);
-				FileLock lock = fout.getChannel().lock();
+			if (pendingSave != null) {
 				try {
-					out = new ObjectOutputStream(fout);
-					out.writeObject(index);
+					pendingSave.writeTo(storeFile);
+					
+					// The file in the old format is obsolete now
+					File serFile = new File(indexDir, SER_FILENAME);
+					if (serFile.isFile())
+						serFile.delete();
 				}
-				finally {
-					lock.release();
+				catch (IOException e) {
+					Util.printErr(e); // The average user doesn't need to know
 				}
 			}
-			catch (IOException e) {
-				Util.printErr(e); // The average user doesn't need to know
-			}
-			finally {
-				Closeables.closeQuietly(out);
-			}
 
 			// Update cached last-modified value of index
-			indexes.put(index, serFile.lastModified());
+			indexes.put(index, storeFile.lastModified());
 		}
 		finally {
 			writeLock.unlock();
@@ -53,6 +53,7 @@ public abstract class TreeIndex <
 	@Nullable private final Path fileIndexDirPath;
 	@Nullable private transient RAMDirectory ramIndexDir;
 	@Nullable private transient File indexParentDir;
+	@Nullable transient volatile TreeIndexStore.SaveState storeState;
 	
 	// if indexDir is null, all content is written to a RAM index, which
 	// can be retrieved via getLuceneDir
@@ -110,6 +111,45 @@ public abstract class TreeIndex <
 	
 	@NotNull
 	protected abstract F createRootFolder(@NotNull Path path);
+	
+	/*
+	 * The following methods are used by the TreeIndexStore for writing the
+	 * folder tree to disk and restoring it. Subclasses that have additional
+	 * per-node data must override the methods with default implementations.
+	 */
+	
+	@NotNull
+	protected abstract F createFolder(	@NotNull F parent,
+										@NotNull String name,
+										@Nullable Long lastModified);
+	
+	@NotNull
+	protected abstract D createDocument(@NotNull F parent,
+										@NotNull String name,
+										@NotNull String displayName,
+										long lastModified);
+	
+	protected boolean getFolderFlag(@NotNull F folder) {
+		return false;
+	}
+	
+	protected void setFolderFlag(@NotNull F folder, boolean flag) {
+	}
+	
+	/**
+	 * Returns the root folder of a separate tree that belongs to the given
+	 * document, such as the folder of an HTML file, or null if there's no such
+	 * folder.
+	 */
+	@Nullable
+	protected abstract F getAttachedFolder(@NotNull D doc);
+	
+	/**
+	 * Creates a root folder with the given path and attaches it to the given
+	 * document, so that it will be returned by {@link #getAttachedFolder}.
+	 */
+	@NotNull
+	protected abstract F attachFolder(@NotNull D doc, @NotNull Path path);
 
 	@NotNull
 	public final IndexingConfig getConfig() {
@@ -0,0 +1,843 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingError.ErrorType;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * Stores tree indexes on disk in a compact format that can be updated
+ * incrementally. This replaces the Java serialization of entire tree indexes
+ * into files named "tree-index.ser", which becomes slow and memory hungry when
+ * an index contains hundreds of thousands of files, and which requires
+ * rewriting the entire file after each index update.
+ * <p>
+ * A store file starts with a small header, followed by a sequence of records.
+ * Each record is either a snapshot, which contains the complete tree, or a
+ * delta, which only contains the folders that were added, modified or removed
+ * since the previous record. A record consists of:
+ * <ul>
+ * <li>The index itself, Java-serialized, but without the children of the root
+ * folder. This part is small; it only holds the indexing configuration and the
+ * attributes of the root folder.</li>
+ * <li>One entry per folder, keyed by the folder's path relative to the root
+ * folder. The documents of a folder are stored column by column: First all
+ * names, then all last-modified values, then the optional attributes, such as
+ * display names and errors, for those documents that have them.</li>
+ * <li>For deltas, the keys of the removed folders.</li>
+ * </ul>
+ * Saving an index appends a delta to the file, unless the deltas would grow
+ * larger than the last snapshot, in which case the file is rewritten as a
+ * single snapshot. Loading maps the file into memory and replays the records.
+ * Trailing records that are incomplete or corrupted, e.g. due to a crash
+ * during a write, are ignored.
+ * <p>
+ * Saving is split into two steps: {@link #prepare(LuceneIndex)} encodes the
+ * index, and {@link PendingSave#writeTo(File)} writes the result to disk. This
+ * allows doing the expensive encoding without holding any locks.
+ *
+ * @author Tran Nam Quang
+ */
+@VisibleForPackageGroup
+public final class TreeIndexStore {
+
+	public static final String FILENAME = "tree-index.dat";
+
+	private static final int MAGIC = 0x44465449; // "DFTI"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	// Record layout: type (1 byte), payload length (4 bytes), payload, CRC32 of payload (8 bytes)
+	private static final int RECORD_OVERHEAD = 13;
+	private static final byte SNAPSHOT = 1;
+	private static final byte DELTA = 2;
+
+	private static final int HAS_LAST_MODIFIED = 1;
+	private static final int IS_CHECKED = 2;
+	private static final int FOLDER_FLAG = 4;
+
+	/*
+	 * The folder keys are built from the folder names, separated by a
+	 * character that can't occur in filenames or in Outlook folder names.
+	 */
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	/**
+	 * The state of a store file after it was last written or loaded, which is
+	 * needed for computing deltas. Instances of this class are immutable.
+	 */
+	static final class SaveState {
+		private final Map<String, Integer> checksums;
+		private final long snapshotSize;
+		private final long fileSize;
+
+		private SaveState(	@NotNull Map<String, Integer> checksums,
+							long snapshotSize,
+							long fileSize) {
+			this.checksums = checksums;
+			this.snapshotSize = snapshotSize;
+			this.fileSize = fileSize;
+		}
+	}
+
+	private static final class Entry {
+		private final String key;
+		private final byte[] bytes;
+		private final int checksum;
+
+		private Entry(@NotNull String key, @NotNull byte[] bytes) {
+			this.key = key;
+			this.bytes = bytes;
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			this.checksum = (int) crc.getValue();
+		}
+	}
+
+	/**
+	 * The encoded form of an index, as returned by
+	 * {@link TreeIndexStore#prepare(LuceneIndex)}.
+	 */
+	public static final class PendingSave {
+		private final TreeIndex<?, ?> index;
+		@Nullable private final SaveState baseState;
+		private final byte[] shell;
+		private final List<Entry> entries;
+		private final Map<String, Integer> checksums;
+		@Nullable private final List<Entry> changedEntries;
+		@Nullable private final List<String> removedKeys;
+
+		private PendingSave(@NotNull TreeIndex<?, ?> index,
+							@NotNull byte[] shell,
+							@NotNull List<Entry> entries) {
+			this.index = index;
+			this.baseState = index.storeState;
+			this.shell = shell;
+			this.entries = entries;
+
+			checksums = Maps.newHashMapWithExpectedSize(entries.size());
+			for (Entry entry : entries)
+				checksums.put(entry.key, entry.checksum);
+
+			if (baseState == null) {
+				changedEntries = null;
+				removedKeys = null;
+				return;
+			}
+			changedEntries = new ArrayList<Entry>();
+			for (Entry entry : entries) {
+				Integer oldChecksum = baseState.checksums.get(entry.key);
+				if (oldChecksum == null || oldChecksum != entry.checksum)
+					changedEntries.add(entry);
+			}
+			removedKeys = new ArrayList<String>();
+			for (String key : baseState.checksums.keySet())
+				if (!checksums.containsKey(key))
+					removedKeys.add(key);
+		}
+
+		/**
+		 * Writes the encoded index to the given file. If the file was written
+		 * or loaded by this class earlier and hasn't been changed since then,
+		 * only the differences are appended to it; otherwise the file is
+		 * rewritten.
+		 */
+		public void writeTo(@NotNull File file) throws IOException {
+			boolean append = false;
+			byte[] record = null;
+			if (baseState != null && baseState == index.storeState
+					&& file.length() == baseState.fileSize) {
+				record = encodeRecord(DELTA, shell, changedEntries, removedKeys);
+				append = baseState.fileSize + record.length <= 2 * baseState.snapshotSize;
+			}
+			if (!append)
+				record = encodeRecord(SNAPSHOT, shell, entries, Collections.<String>emptyList());
+
+			index.storeState = null; // In case the write fails
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				FileLock lock = raf.getChannel().lock();
+				try {
+					if (append) {
+						raf.seek(baseState.fileSize);
+						raf.write(record);
+					}
+					else {
+						raf.setLength(0);
+						raf.writeInt(MAGIC);
+						raf.writeInt(VERSION);
+						raf.write(record);
+					}
+				}
+				finally {
+					lock.release();
+				}
+			}
+			finally {
+				Closeables.closeQuietly(raf);
+			}
+
+			if (append) {
+				long fileSize = baseState.fileSize + record.length;
+				index.storeState = new SaveState(
+					checksums, baseState.snapshotSize, fileSize);
+			}
+			else {
+				long fileSize = HEADER_SIZE + record.length;
+				index.storeState = new SaveState(checksums, fileSize, fileSize);
+			}
+		}
+
+		/**
+		 * Returns whether {@link #writeTo(File)} would append a delta to the
+		 * file rather than rewrite it, provided that the file hasn't been
+		 * changed in the meantime.
+		 */
+		boolean isDelta() {
+			return baseState != null && baseState == index.storeState;
+		}
+	}
+
+	private TreeIndexStore() {
+	}
+
+	/**
+	 * Encodes the given index, so that it can be written to disk later via
+	 * {@link PendingSave#writeTo(File)}. The index must not be modified while
+	 * this method is running.
+	 */
+	@NotNull
+	public static PendingSave prepare(@NotNull LuceneIndex index)
+			throws IOException {
+		return doPrepare((TreeIndex<?, ?>) index);
+	}
+
+	@NotNull
+	private static <D extends Document<D, F>, F extends Folder<D, F>> PendingSave doPrepare(@NotNull TreeIndex<D, F> index)
+			throws IOException {
+		// Write index without the children of the root folder
+		ByteArrayOutputStream shellOut = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(shellOut);
+		Folder.childlessFolder.set(index.getRootFolder());
+		try {
+			out.writeObject(index);
+			out.close();
+		}
+		finally {
+			Folder.childlessFolder.remove();
+		}
+
+		// Write folder entries in pre-order
+		List<Entry> entries = new ArrayList<Entry>();
+		Encoder encoder = new Encoder();
+		LinkedList<F> folderStack = new LinkedList<F>();
+		LinkedList<String> keyStack = new LinkedList<String>();
+		folderStack.add(index.getRootFolder());
+		keyStack.add("");
+		while (!folderStack.isEmpty()) {
+			F folder = folderStack.removeLast();
+			String key = keyStack.removeLast();
+			List<F> subFolders = folder.getSubFolders();
+			encoder.reset();
+			encoder.writeString(key);
+			writeFolder(encoder, index, folder, subFolders, false);
+			entries.add(new Entry(key, encoder.toByteArray()));
+			for (F subFolder : subFolders) {
+				folderStack.add(subFolder);
+				keyStack.add(getChildKey(key, subFolder.getName()));
+			}
+		}
+
+		return new PendingSave(index, shellOut.toByteArray(), entries);
+	}
+
+	/**
+	 * Loads an index from the given store file.
+	 *
+	 * @throws IOException
+	 *             If the file can't be read or isn't a valid store file.
+	 * @throws ClassNotFoundException
+	 *             If the Java-serialized part of the file is incompatible with
+	 *             the current program version.
+	 */
+	@NotNull
+	public static LuceneIndex load(@NotNull File file)
+			throws IOException, ClassNotFoundException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+			try {
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("File too large: " + file);
+				ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+				try {
+					return decode(buffer);
+				}
+				catch (RuntimeException e) {
+					throw new IOException("Corrupted file: " + file, e);
+				}
+				finally {
+					unmap(buffer);
+				}
+			}
+			finally {
+				lock.release();
+			}
+		}
+		finally {
+			Closeables.closeQuietly(raf);
+		}
+	}
+
+	@NotNull
+	private static LuceneIndex decode(@NotNull ByteBuffer buffer)
+			throws IOException, ClassNotFoundException {
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a tree index file.");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported tree index file version.");
+
+		// Replay records, remembering where the latest version of each entry is
+		byte[] shell = null;
+		Map<String, Integer> entryPositions = Maps.newHashMap();
+		Map<String, Integer> checksums = Maps.newHashMap();
+		long snapshotSize = 0;
+		int pos = HEADER_SIZE;
+		Decoder decoder = new Decoder(buffer);
+		while (pos + RECORD_OVERHEAD <= buffer.limit()) {
+			byte type = buffer.get(pos);
+			int length = buffer.getInt(pos + 1);
+			int payloadStart = pos + 5;
+			if (length < 0 || payloadStart + length + 8 > buffer.limit())
+				break;
+			if (buffer.getLong(payloadStart + length) != getChecksum(buffer, payloadStart, length))
+				break;
+			if (type == SNAPSHOT) {
+				entryPositions.clear();
+				checksums.clear();
+			}
+			else if (type != DELTA || shell == null) {
+				break;
+			}
+
+			decoder.position(payloadStart);
+			shell = decoder.readBytes(decoder.readVarInt());
+			int entryCount = decoder.readVarInt();
+			for (int i = 0; i < entryCount; i++) {
+				int checksum = decoder.readInt();
+				int entryLength = decoder.readVarInt();
+				int entryStart = decoder.position();
+				String key = decoder.readString();
+				entryPositions.put(key, entryStart);
+				checksums.put(key, checksum);
+				decoder.position(entryStart + entryLength);
+			}
+			int removedCount = decoder.readVarInt();
+			for (int i = 0; i < removedCount; i++) {
+				String key = decoder.readString();
+				entryPositions.remove(key);
+				checksums.remove(key);
+			}
+
+			pos = payloadStart + length + 8;
+			if (type == SNAPSHOT)
+				snapshotSize = pos;
+		}
+		if (shell == null)
+			throw new IOException("Tree index file contains no snapshot.");
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(shell));
+		TreeIndex<?, ?> index;
+		try {
+			index = (TreeIndex<?, ?>) in.readObject();
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+
+		Folder.restoring.set(true);
+		try {
+			restoreTree(decoder, index, entryPositions);
+		}
+		finally {
+			Folder.restoring.remove();
+		}
+		index.storeState = new SaveState(checksums, snapshotSize, pos);
+		return index;
+	}
+
+	private static <D extends Document<D, F>, F extends Folder<D, F>> void restoreTree(	@NotNull Decoder decoder,
+																						@NotNull TreeIndex<D, F> index,
+																						@NotNull Map<String, Integer> entryPositions)
+			throws IOException {
+		LinkedList<F> folderStack = new LinkedList<F>();
+		LinkedList<String> keyStack = new LinkedList<String>();
+		folderStack.add(index.getRootFolder());
+		keyStack.add("");
+		while (!folderStack.isEmpty()) {
+			F folder = folderStack.removeLast();
+			String key = keyStack.removeLast();
+			Integer entryPosition = entryPositions.get(key);
+			if (entryPosition == null)
+				throw new IOException("Missing folder entry: " + folder.getPath());
+			decoder.position(entryPosition);
+			decoder.readString(); // skip key
+			for (String name : readFolder(decoder, index, folder, false)) {
+				folderStack.add(index.createFolder(folder, name, null));
+				keyStack.add(getChildKey(key, name));
+			}
+		}
+	}
+
+	/**
+	 * Writes the attributes and documents of the given folder, as well as the
+	 * names of its subfolders. If <tt>inline</tt> is true, the subfolders are
+	 * written recursively right after their names instead of getting their own
+	 * entries. This is used for the folders attached to documents.
+	 */
+	private static <D extends Document<D, F>, F extends Folder<D, F>> void writeFolder(	@NotNull Encoder out,
+																						@NotNull TreeIndex<D, F> index,
+																						@NotNull F folder,
+																						@NotNull List<F> subFolders,
+																						boolean inline)
+			throws IOException {
+		Long lastModified = folder.getLastModified();
+		int flags = 0;
+		if (lastModified != null)
+			flags |= HAS_LAST_MODIFIED;
+		if (folder.isChecked())
+			flags |= IS_CHECKED;
+		if (index.getFolderFlag(folder))
+			flags |= FOLDER_FLAG;
+		out.writeByte(flags);
+		if (lastModified != null)
+			out.writeVarLong(zigZag(lastModified));
+		out.writeErrors(folder.getErrors());
+
+		// Documents, column by column
+		List<D> docs = folder.getDocuments();
+		out.writeVarInt(docs.size());
+		for (D doc : docs)
+			out.writeString(doc.getName());
+		long previous = 0;
+		for (D doc : docs) {
+			long docLastModified = doc.getLastModified();
+			out.writeVarLong(zigZag(docLastModified - previous));
+			previous = docLastModified;
+		}
+
+		// Optional document attributes, written as (document index, value) pairs
+		int displayNameCount = 0;
+		int errorCount = 0;
+		int attachedCount = 0;
+		for (D doc : docs) {
+			if (!doc.getDisplayName().equals(doc.getName()))
+				displayNameCount++;
+			if (doc.hasErrors())
+				errorCount++;
+			if (index.getAttachedFolder(doc) != null)
+				attachedCount++;
+		}
+		out.writeVarInt(displayNameCount);
+		for (int i = 0; displayNameCount > 0 && i < docs.size(); i++) {
+			D doc = docs.get(i);
+			if (doc.getDisplayName().equals(doc.getName()))
+				continue;
+			out.writeVarInt(i);
+			out.writeString(doc.getDisplayName());
+		}
+		out.writeVarInt(errorCount);
+		for (int i = 0; errorCount > 0 && i < docs.size(); i++) {
+			D doc = docs.get(i);
+			if (!doc.hasErrors())
+				continue;
+			out.writeVarInt(i);
+			out.writeErrors(doc.getErrors());
+		}
+		out.writeVarInt(attachedCount);
+		for (int i = 0; attachedCount > 0 && i < docs.size(); i++) {
+			F attachedFolder = index.getAttachedFolder(docs.get(i));
+			if (attachedFolder == null)
+				continue;
+			out.writeVarInt(i);
+			out.writeString(attachedFolder.getPath().getPath());
+			writeFolder(out, index, attachedFolder, attachedFolder.getSubFolders(), true);
+		}
+
+		// Subfolders
+		out.writeVarInt(subFolders.size());
+		for (F subFolder : subFolders) {
+			out.writeString(subFolder.getName());
+			if (inline)
+				writeFolder(out, index, subFolder, subFolder.getSubFolders(), true);
+		}
+	}
+
+	/**
+	 * Reads what was written by {@link #writeFolder} into the given folder and
+	 * returns the names of the subfolders that weren't written inline.
+	 */
+	@NotNull
+	private static <D extends Document<D, F>, F extends Folder<D, F>> List<String> readFolder(	@NotNull Decoder in,
+																								@NotNull TreeIndex<D, F> index,
+																								@NotNull F folder,
+																								boolean inline)
+			throws IOException {
+		int flags = in.readByte();
+		if ((flags & HAS_LAST_MODIFIED) != 0)
+			folder.setLastModified(unZigZag(in.readVarLong()));
+		folder.setChecked((flags & IS_CHECKED) != 0);
+		index.setFolderFlag(folder, (flags & FOLDER_FLAG) != 0);
+		folder.setErrors(in.readErrors(folder));
+
+		// Documents
+		int docCount = in.readVarInt();
+		String[] names = new String[docCount];
+		for (int i = 0; i < docCount; i++)
+			names[i] = in.readString();
+		long[] lastModifieds = new long[docCount];
+		long previous = 0;
+		for (int i = 0; i < docCount; i++) {
+			previous += unZigZag(in.readVarLong());
+			lastModifieds[i] = previous;
+		}
+		String[] displayNames = names;
+		int displayNameCount = in.readVarInt();
+		if (displayNameCount > 0) {
+			displayNames = names.clone();
+			for (int i = 0; i < displayNameCount; i++)
+				displayNames[in.readVarInt()] = in.readString();
+		}
+		List<D> docs = new ArrayList<D>(docCount);
+		for (int i = 0; i < docCount; i++)
+			docs.add(index.createDocument(
+				folder, names[i], displayNames[i], lastModifieds[i]));
+		int errorCount = in.readVarInt();
+		for (int i = 0; i < errorCount; i++) {
+			D doc = docs.get(in.readVarInt());
+			doc.setErrors(in.readErrors(doc));
+		}
+		int attachedCount = in.readVarInt();
+		for (int i = 0; i < attachedCount; i++) {
+			D doc = docs.get(in.readVarInt());
+			F attachedFolder = index.attachFolder(doc, new Path(in.readString()));
+			readFolder(in, index, attachedFolder, true);
+		}
+
+		// Subfolders
+		int subFolderCount = in.readVarInt();
+		List<String> subFolderNames = new ArrayList<String>(inline ? 0 : subFolderCount);
+		for (int i = 0; i < subFolderCount; i++) {
+			String name = in.readString();
+			if (inline)
+				readFolder(in, index, index.createFolder(folder, name, null), true);
+			else
+				subFolderNames.add(name);
+		}
+		return subFolderNames;
+	}
+
+	@NotNull
+	private static byte[] encodeRecord(	byte type,
+										@NotNull byte[] shell,
+										@NotNull List<Entry> entries,
+										@NotNull List<String> removedKeys)
+			throws IOException {
+		Encoder payload = new Encoder();
+		payload.writeVarInt(shell.length);
+		payload.write(shell);
+		payload.writeVarInt(entries.size());
+		for (Entry entry : entries) {
+			payload.writeInt(entry.checksum);
+			payload.writeVarInt(entry.bytes.length);
+			payload.write(entry.bytes);
+		}
+		payload.writeVarInt(removedKeys.size());
+		for (String key : removedKeys)
+			payload.writeString(key);
+		byte[] payloadBytes = payload.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(payloadBytes);
+		Encoder record = new Encoder();
+		record.writeByte(type);
+		record.writeInt(payloadBytes.length);
+		record.write(payloadBytes);
+		record.writeLong(crc.getValue());
+		return record.toByteArray();
+	}
+
+	private static long getChecksum(@NotNull ByteBuffer buffer,
+									int offset,
+									int length) {
+		CRC32 crc = new CRC32();
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		byte[] chunk = new byte[Math.min(length, 64 * 1024)];
+		while (length > 0) {
+			int n = Math.min(length, chunk.length);
+			view.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+			length -= n;
+		}
+		return crc.getValue();
+	}
+
+	@NotNull
+	private static String getChildKey(@NotNull String key, @NotNull String name) {
+		return key.isEmpty() ? name : key + KEY_SEPARATOR + name;
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/*
+	 * Releases the given mapped buffer right away instead of waiting for it to
+	 * be garbage collected, because on Windows, a file that is still mapped
+	 * can't be truncated, which is necessary for rewriting it. This relies on
+	 * JVM internals, so failures are ignored.
+	 */
+	private static void unmap(@NotNull ByteBuffer buffer) {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Method method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			method.invoke(field.get(null), buffer);
+			return;
+		}
+		catch (Exception e) {
+		}
+		try {
+			// Java 8 and earlier
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch (Exception e) {
+		}
+	}
+
+	private static final class Encoder extends DataOutputStream {
+		private final ByteArrayOutputStream bytesOut;
+
+		public Encoder() {
+			this(new ByteArrayOutputStream());
+		}
+
+		private Encoder(@NotNull ByteArrayOutputStream bytesOut) {
+			super(bytesOut);
+			this.bytesOut = bytesOut;
+		}
+
+		public void reset() {
+			bytesOut.reset();
+			written = 0;
+		}
+
+		@NotNull
+		public byte[] toByteArray() {
+			return bytesOut.toByteArray();
+		}
+
+		public void writeVarInt(int value) throws IOException {
+			writeVarLong(value & 0xFFFFFFFFL);
+		}
+
+		public void writeVarLong(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		public void writeString(@NotNull String value) throws IOException {
+			byte[] bytes = value.getBytes(Charsets.UTF_8);
+			writeVarInt(bytes.length);
+			write(bytes);
+		}
+
+		public void writeErrors(@NotNull List<IndexingError> errors)
+				throws IOException {
+			writeVarInt(errors.size());
+			for (IndexingError error : errors) {
+				writeString(error.getErrorType().name());
+				byte[] throwable = serializeThrowable(error.getThrowable());
+				writeVarInt(throwable == null ? 0 : throwable.length);
+				if (throwable != null)
+					write(throwable);
+			}
+		}
+
+		@Nullable
+		private static byte[] serializeThrowable(@Nullable Throwable throwable) {
+			if (throwable == null)
+				return null;
+			try {
+				ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+				ObjectOutputStream out = new ObjectOutputStream(bytesOut);
+				out.writeObject(throwable);
+				out.close();
+				return bytesOut.toByteArray();
+			}
+			catch (IOException e) {
+				return null; // Not serializable; keep the error without its cause
+			}
+		}
+	}
+
+	private static final class Decoder {
+		private final ByteBuffer buffer;
+
+		/*
+		 * Identical names are shared between tree nodes in order to reduce the
+		 * memory footprint of the restored tree.
+		 */
+		private final Map<String, String> strings = new HashMap<String, String>();
+		private byte[] scratch = new byte[256];
+
+		public Decoder(@NotNull ByteBuffer buffer) {
+			this.buffer = buffer.duplicate();
+		}
+
+		public int position() {
+			return buffer.position();
+		}
+
+		public void position(int position) {
+			buffer.position(position);
+		}
+
+		public int readByte() {
+			return buffer.get() & 0xFF;
+		}
+
+		public int readInt() {
+			return buffer.getInt();
+		}
+
+		public int readVarInt() throws IOException {
+			long value = readVarLong();
+			if (value < 0 || value > Integer.MAX_VALUE)
+				throw new IOException("Invalid integer value: " + value);
+			return (int) value;
+		}
+
+		public long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					break;
+			}
+			return value;
+		}
+
+		@NotNull
+		public byte[] readBytes(int length) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return bytes;
+		}
+
+		@NotNull
+		public String readString() throws IOException {
+			int length = readVarInt();
+			if (scratch.length < length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			buffer.get(scratch, 0, length);
+			String value = new String(scratch, 0, length, Charsets.UTF_8);
+			String existing = strings.get(value);
+			if (existing != null)
+				return existing;
+			strings.put(value, value);
+			return value;
+		}
+
+		@Nullable
+		public List<IndexingError> readErrors(@NotNull TreeNode treeNode)
+				throws IOException {
+			int count = readVarInt();
+			if (count == 0)
+				return null;
+			List<IndexingError> errors = new ArrayList<IndexingError>(count);
+			for (int i = 0; i < count; i++) {
+				String typeName = readString();
+				Throwable throwable = deserializeThrowable(readBytes(readVarInt()));
+				ErrorType errorType;
+				try {
+					errorType = ErrorType.valueOf(typeName);
+				}
+				catch (IllegalArgumentException e) {
+					continue; // Error type from a different program version
+				}
+				errors.add(new IndexingError(errorType, treeNode, throwable));
+			}
+			return errors;
+		}
+
+		@Nullable
+		private static Throwable deserializeThrowable(@NotNull byte[] bytes) {
+			if (bytes.length == 0)
+				return null;
+			try {
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+				return (Throwable) in.readObject();
+			}
+			catch (Exception e) {
+				return null;
+			}
+		}
+	}
+
+}
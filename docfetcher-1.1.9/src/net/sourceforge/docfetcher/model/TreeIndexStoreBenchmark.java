@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+
+import net.sourceforge.docfetcher.model.index.file.FileDocument;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+
+import com.google.common.io.Files;
+
+/**
+ * Compares the Java serialization of a large tree index (the old
+ * tree-index.ser file) with the tree index store, in terms of file size,
+ * saving time, loading time and the heap retained by the loaded index.
+ * <p>
+ * This is not a unit test and is therefore not run by the build. For
+ * meaningful heap numbers, run it with a fixed heap size, e.g. -Xms1g -Xmx1g.
+ * 
+ * @author Tran Nam Quang
+ */
+public final class TreeIndexStoreBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		AppUtil.Const.autoInit();
+		FileIndex index = TreeIndexStoreTest.createIndex(3, 12, 100); // about 190,000 documents
+		File dir = Util.createTempDir();
+		File serFile = new File(dir, "tree-index.ser");
+		File storeFile = new File(dir, TreeIndexStore.FILENAME);
+
+		// Warm-up
+		for (int i = 0; i < 2; i++) {
+			deserialize(TreeIndexStoreTest.serialize(index, serFile));
+			TreeIndexStore.prepare(index).writeTo(storeFile);
+			TreeIndexStore.load(storeFile);
+		}
+
+		long start = System.currentTimeMillis();
+		TreeIndexStoreTest.serialize(index, serFile);
+		long serSaveTime = System.currentTimeMillis() - start;
+		long heapBefore = getUsedHeap();
+		start = System.currentTimeMillis();
+		Object serIndex = deserialize(serFile);
+		long serLoadTime = System.currentTimeMillis() - start;
+		long serHeap = getUsedHeap() - heapBefore;
+		Util.checkNotNull(serIndex); // Keep the index reachable until here
+		Util.println(String.format(
+			"tree-index.ser: %d KB, save %d ms, load %d ms, heap %d KB",
+			serFile.length() / 1024, serSaveTime, serLoadTime, serHeap / 1024));
+		serIndex = null;
+
+		storeFile.delete();
+		start = System.currentTimeMillis();
+		TreeIndexStore.prepare(index).writeTo(storeFile);
+		long storeSaveTime = System.currentTimeMillis() - start;
+		heapBefore = getUsedHeap();
+		start = System.currentTimeMillis();
+		Object storeIndex = TreeIndexStore.load(storeFile);
+		long storeLoadTime = System.currentTimeMillis() - start;
+		long storeHeap = getUsedHeap() - heapBefore;
+		Util.checkNotNull(storeIndex);
+
+		new FileDocument(index.getRootFolder(), "new.txt", 1);
+		start = System.currentTimeMillis();
+		TreeIndexStore.prepare(index).writeTo(storeFile);
+		long deltaSaveTime = System.currentTimeMillis() - start;
+
+		Util.println(String.format(
+			"%s: %d KB, save %d ms, load %d ms, heap %d KB, delta save %d ms",
+			TreeIndexStore.FILENAME, storeFile.length() / 1024,
+			storeSaveTime, storeLoadTime, storeHeap / 1024, deltaSaveTime));
+	}
+
+	@NotNull
+	private static Object deserialize(@NotNull File file) throws Exception {
+		byte[] bytes = Files.toByteArray(file);
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return in.readObject();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
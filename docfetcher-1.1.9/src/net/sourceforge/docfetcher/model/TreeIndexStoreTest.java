@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import net.sourceforge.docfetcher.model.TreeIndexStore.PendingSave;
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingError.ErrorType;
+import net.sourceforge.docfetcher.model.index.file.FileDocument;
+import net.sourceforge.docfetcher.model.index.file.FileFolder;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class TreeIndexStoreTest {
+
+	static {
+		AppUtil.Const.autoInit();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		FileIndex index = createIndex(3, 4, 5);
+		FileFolder root = index.getRootFolder();
+		FileFolder folder = root.getSubFolder("folder1");
+		folder.setChecked(false);
+		FileDocument doc = folder.getDocument("file2.txt");
+		doc.setError(new IndexingError(
+			ErrorType.PARSING, doc, new IOException("Parse error")));
+		FileDocument htmlDoc = new FileDocument(folder, "page.html", 42);
+		FileFolder htmlFolder = new FileFolder(new Path("/some/page_files"), null);
+		new FileDocument(htmlFolder, "image.png", 43);
+		new FileFolder(htmlFolder, "sub", 44L);
+		htmlDoc.setHtmlFolder(htmlFolder);
+
+		File file = new File(Util.createTempDir(), TreeIndexStore.FILENAME);
+		TreeIndexStore.prepare(index).writeTo(file);
+		FileIndex loadedIndex = (FileIndex) TreeIndexStore.load(file);
+		assertTreeEquals(root, loadedIndex.getRootFolder());
+
+		FileFolder loadedFolder = loadedIndex.getRootFolder().getSubFolder("folder1");
+		assertFalse(loadedFolder.isChecked());
+		FileDocument loadedDoc = loadedFolder.getDocument("file2.txt");
+		IndexingError loadedError = loadedDoc.getErrors().get(0);
+		assertEquals(ErrorType.PARSING, loadedError.getErrorType());
+		assertTrue(loadedError.getTreeNode() == loadedDoc);
+		assertEquals("Parse error", loadedError.getThrowable().getMessage());
+		FileFolder loadedHtmlFolder = loadedFolder.getDocument("page.html").getHtmlFolder();
+		assertEquals("/some/page_files", loadedHtmlFolder.getPath().getPath());
+		assertEquals(Long.valueOf(44), loadedHtmlFolder.getSubFolder("sub").getLastModified());
+		assertEquals(
+			index.getConfig().getHtmlExtensions(),
+			loadedIndex.getConfig().getHtmlExtensions());
+	}
+
+	@Test
+	public void testDeltas() throws Exception {
+		FileIndex index = createIndex(2, 10, 10);
+		FileFolder root = index.getRootFolder();
+		File file = new File(Util.createTempDir(), TreeIndexStore.FILENAME);
+		TreeIndexStore.prepare(index).writeTo(file);
+		long snapshotSize = file.length();
+
+		// Small modification results in small delta
+		FileFolder folder = root.getSubFolder("folder3");
+		new FileDocument(folder, "new.txt", 1000);
+		folder.getDocument("file0.txt").setLastModified(2000);
+		root.removeSubFolder(root.getSubFolder("folder5"));
+		PendingSave pendingSave = TreeIndexStore.prepare(index);
+		assertTrue(pendingSave.isDelta());
+		pendingSave.writeTo(file);
+		assertTrue(file.length() - snapshotSize < snapshotSize / 5);
+		assertTreeEquals(root, ((FileIndex) TreeIndexStore.load(file)).getRootFolder());
+
+		// Index loaded from file can be saved incrementally, too
+		FileIndex loadedIndex = (FileIndex) TreeIndexStore.load(file);
+		loadedIndex.getRootFolder().getSubFolder("folder1").removeChildren();
+		pendingSave = TreeIndexStore.prepare(loadedIndex);
+		assertTrue(pendingSave.isDelta());
+		pendingSave.writeTo(file);
+		FileIndex reloadedIndex = (FileIndex) TreeIndexStore.load(file);
+		assertTreeEquals(loadedIndex.getRootFolder(), reloadedIndex.getRootFolder());
+		assertNull(reloadedIndex.getRootFolder().getSubFolder("folder1").getSubFolder("folder1"));
+
+		// Deltas are compacted eventually
+		for (int i = 0; i < 50; i++) {
+			root.getSubFolder("folder0").getSubFolder("folder" + (i % 10)).removeChildren();
+			new FileFolder(root, "added" + i, null);
+			TreeIndexStore.prepare(index).writeTo(file);
+		}
+		assertTrue(file.length() <= 2 * snapshotSize);
+		assertTreeEquals(root, ((FileIndex) TreeIndexStore.load(file)).getRootFolder());
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws Exception {
+		FileIndex index = createIndex(2, 5, 5);
+		FileFolder root = index.getRootFolder();
+		File file = new File(Util.createTempDir(), TreeIndexStore.FILENAME);
+		TreeIndexStore.prepare(index).writeTo(file);
+		long snapshotSize = file.length();
+
+		new FileFolder(root, "added", null);
+		TreeIndexStore.prepare(index).writeTo(file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(file.length() - 3);
+		raf.close();
+
+		FileIndex loadedIndex = (FileIndex) TreeIndexStore.load(file);
+		assertNull(loadedIndex.getRootFolder().getSubFolder("added"));
+		assertNotNull(loadedIndex.getRootFolder().getSubFolder("folder4"));
+
+		// Next write replaces the damaged file
+		TreeIndexStore.prepare(loadedIndex).writeTo(file);
+		assertEquals(snapshotSize, file.length());
+	}
+
+	@Test
+	public void testLargeTreeIsSmallerThanSerialization() throws Exception {
+		FileIndex index = createIndex(2, 12, 50);
+		File dir = Util.createTempDir();
+		File serFile = serialize(index, new File(dir, "tree-index.ser"));
+		File storeFile = new File(dir, TreeIndexStore.FILENAME);
+		TreeIndexStore.prepare(index).writeTo(storeFile);
+		assertTrue(storeFile.length() < serFile.length() / 2);
+		assertTreeEquals(
+			index.getRootFolder(),
+			((FileIndex) TreeIndexStore.load(storeFile)).getRootFolder());
+	}
+
+	@NotNull
+	static FileIndex createIndex(	int depth,
+									int foldersPerFolder,
+									int docsPerFolder)
+			throws IOException {
+		FileIndex index = new FileIndex(null, Util.createTempDir());
+		addChildren(index.getRootFolder(), depth, foldersPerFolder, docsPerFolder);
+		return index;
+	}
+
+	private static void addChildren(@NotNull FileFolder folder,
+									int depth,
+									int foldersPerFolder,
+									int docsPerFolder) {
+		for (int i = 0; i < docsPerFolder; i++)
+			new FileDocument(folder, "file" + i + ".txt", 1300000000000L + i * 1000);
+		if (depth == 0)
+			return;
+		for (int i = 0; i < foldersPerFolder; i++) {
+			FileFolder subFolder = new FileFolder(folder, "folder" + i, null);
+			addChildren(subFolder, depth - 1, foldersPerFolder, docsPerFolder);
+		}
+	}
+
+	private static void assertTreeEquals(	@NotNull FileFolder expected,
+											@NotNull FileFolder actual) {
+		assertEquals(expected.getPath(), actual.getPath());
+		assertEquals(expected.getLastModified(), actual.getLastModified());
+		assertEquals(expected.isChecked(), actual.isChecked());
+		assertEquals(expected.getErrors().size(), actual.getErrors().size());
+		assertEquals(expected.getDocumentCount(), actual.getDocumentCount());
+		for (FileDocument doc : expected.getDocuments()) {
+			FileDocument actualDoc = actual.getDocument(doc.getName());
+			assertNotNull(actualDoc);
+			assertEquals(doc.getLastModified(), actualDoc.getLastModified());
+			assertEquals(doc.getErrors().size(), actualDoc.getErrors().size());
+			assertEquals(doc.getHtmlFolder() == null, actualDoc.getHtmlFolder() == null);
+			if (doc.getHtmlFolder() != null)
+				assertTreeEquals(doc.getHtmlFolder(), actualDoc.getHtmlFolder());
+		}
+		List<FileFolder> subFolders = expected.getSubFolders();
+		assertEquals(subFolders.size(), actual.getSubFolderCount());
+		for (FileFolder subFolder : subFolders) {
+			FileFolder actualSubFolder = actual.getSubFolder(subFolder.getName());
+			assertNotNull(actualSubFolder);
+			assertTreeEquals(subFolder, actualSubFolder);
+		}
+	}
+
+	@NotNull
+	static File serialize(@NotNull Object object, @NotNull File file)
+			throws IOException {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytesOut);
+		out.writeObject(object);
+		out.close();
+		Files.write(bytesOut.toByteArray(), file);
+		return file;
+	}
+
+}
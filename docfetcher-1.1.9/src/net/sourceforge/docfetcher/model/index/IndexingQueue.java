@@ -15,12 +15,14 @@ import java.io.File;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import net.sourceforge.docfetcher.model.IndexRegistry;
 import net.sourceforge.docfetcher.model.LuceneIndex;
 import net.sourceforge.docfetcher.model.PendingDeletion;
 import net.sourceforge.docfetcher.model.TreeIndex.IndexingResult;
+import net.sourceforge.docfetcher.model.TreeIndexStore.PendingSave;
 import net.sourceforge.docfetcher.model.index.Task.CancelAction;
 import net.sourceforge.docfetcher.model.index.Task.CancelHandler;
 import net.sourceforge.docfetcher.model.index.Task.IndexAction;
@@ -39,6 +41,10 @@ import net.sourceforge.docfetcher.util.collect.LazyList;
 import com.google.common.collect.ImmutableList;
 
 /**
+ * A queue of indexing tasks that are processed by a fixed number of worker
+ * threads. Tasks on independent indexes may run concurrently, whereas tasks
+ * whose targets are identical or overlapping are always run one after another.
+ * 
  * @author Tran Nam Quang
  */
 public final class IndexingQueue {
@@ -59,14 +65,22 @@ public final class IndexingQueue {
 	
 	// may be called from a different thread
 	public final Event<Void> evtQueueEmpty = new Event<Void>();
+	// fired once, after the last worker thread has terminated
 	public final Event<Void> evtWorkerThreadTerminated = new Event<Void>();
 
 	private final Event<Task> evtAdded = new Event<Task>();
 	private final Event<Task> evtRemoved = new Event<Task>();
 
-	private final Thread thread;
 	private final IndexRegistry indexRegistry;
 	private final LinkedList<Task> tasks = new LinkedList<Task>(); // guarded by lock
+	
+	/*
+	 * The tasks currently being processed by the worker threads. A task stays
+	 * in this list until its worker is completely done with it, even if it was
+	 * removed from the task queue in the meantime.
+	 */
+	private final LinkedList<Task> activeTasks = new LinkedList<Task>(); // guarded by lock
+	private final AtomicInteger liveWorkerCount;
 
 	private volatile boolean shutdown = false; // guarded by lock
 	final Lock readLock;
@@ -76,8 +90,20 @@ public final class IndexingQueue {
 
 	public IndexingQueue(	@NotNull final IndexRegistry indexRegistry,
 							int reporterCapacity) {
+		this(indexRegistry, reporterCapacity, 1);
+	}
+
+	/**
+	 * Creates a new indexing queue whose tasks are processed by the given
+	 * number of worker threads, which must be at least 1.
+	 */
+	public IndexingQueue(	@NotNull final IndexRegistry indexRegistry,
+							int reporterCapacity,
+							int workerCount) {
+		Util.checkThat(workerCount >= 1);
 		this.indexRegistry = indexRegistry;
 		this.reporterCapacity = reporterCapacity;
+		liveWorkerCount = new AtomicInteger(workerCount);
 		
 		readLock = indexRegistry.getReadLock();
 		writeLock = indexRegistry.getWriteLock();
@@ -111,13 +137,18 @@ public final class IndexingQueue {
 			}
 		});
 		
-		thread = new Thread(IndexingQueue.class.getName()) {
-			public void run() {
-				while (threadLoop());
-				evtWorkerThreadTerminated.fire(null);
-			}
-		};
-		thread.start();
+		for (int i = 0; i < workerCount; i++) {
+			String threadName = IndexingQueue.class.getName();
+			if (workerCount > 1)
+				threadName += " (worker " + (i + 1) + ")";
+			new Thread(threadName) {
+				public void run() {
+					while (threadLoop());
+					if (liveWorkerCount.decrementAndGet() == 0)
+						evtWorkerThreadTerminated.fire(null);
+				}
+			}.start();
+		}
 	}
 	
 	// returns whether the loop should continue
@@ -133,6 +164,14 @@ public final class IndexingQueue {
 			}
 			if (shutdown)
 				return false;
+			
+			/*
+			 * The task must be claimed while the lock is held, otherwise
+			 * another worker thread might pick up the same task.
+			 */
+			assertValidRegistryState(indexRegistry, task);
+			task.set(TaskState.INDEXING);
+			activeTasks.add(task);
 		}
 		catch (InterruptedException e) {
 			// Do not interrupt this thread, call Condition.signal*() instead.
@@ -142,10 +181,7 @@ public final class IndexingQueue {
 			writeLock.unlock();
 		}
 
-		assertValidRegistryState(indexRegistry, task);
-
 		// Indexing
-		task.set(TaskState.INDEXING);
 		LuceneIndex luceneIndex = task.getLuceneIndex();
 		if (task.is(IndexAction.REBUILD)) {
 			/*
@@ -163,6 +199,19 @@ public final class IndexingQueue {
 
 		boolean doDelete = false;
 		boolean fireRemoved = false;
+		boolean replaceSearcher = false;
+		
+		/*
+		 * Encoding a large index tree can take a while, so we'll do it before
+		 * acquiring the lock in order to keep the time during which searches
+		 * and other workers are blocked as short as possible. This is safe
+		 * because no other task can modify the index while it is in the list
+		 * of active tasks. If it turns out below that the index doesn't need to
+		 * be saved, the encoded data is simply discarded.
+		 */
+		PendingSave pendingSave = null;
+		if (task.is(IndexAction.UPDATE) || result == IndexingResult.SUCCESS_CHANGED)
+			pendingSave = IndexRegistry.prepareSave(luceneIndex);
 		
 		// Post-processing
 		writeLock.lock();
@@ -193,8 +242,8 @@ public final class IndexingQueue {
 					 * fails and crashes the program.
 					 */
 					if (indexRegistry.getIndexes().contains(luceneIndex)) {
-						indexRegistry.save(luceneIndex);
-						indexRegistry.getSearcher().replaceLuceneSearcher();
+						indexRegistry.save(luceneIndex, pendingSave);
+						replaceSearcher = true;
 					}
 					
 					// Output for index updates from the command-line
@@ -216,17 +265,31 @@ public final class IndexingQueue {
 			else {
 				indexRegistry.addIndex(luceneIndex);
 				if (result == IndexingResult.SUCCESS_CHANGED)
-					indexRegistry.save(luceneIndex);
+					indexRegistry.save(luceneIndex, pendingSave);
 				boolean keep = task.is(CancelAction.KEEP);
 				if (keep || shutdown || !hasErrors)
 					fireRemoved = tasks.remove(task);
 			}
 			task.set(TaskState.FINISHED);
+			
+			/*
+			 * Wake up idle workers, since tasks that were waiting for this
+			 * task to finish due to overlapping targets may now be run.
+			 */
+			activeTasks.remove(task);
+			readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
 		}
 		
+		/*
+		 * Replacing the Lucene searcher acquires the write lock on its own, so
+		 * there's no need to hold the lock any longer than necessary here.
+		 */
+		if (replaceSearcher)
+			indexRegistry.getSearcher().replaceLuceneSearcher();
+		
 		if (fireRemoved)
 			evtRemoved.fire(task);
 		
@@ -259,10 +322,27 @@ public final class IndexingQueue {
 	@Nullable
 	private Task getReadyTask() {
 		for (Task task : tasks)
-			if (task.is(TaskState.READY) && task.cancelAction == null)
+			if (task.is(TaskState.READY) && task.cancelAction == null
+					&& !conflictsWithActiveTask(task))
 				return task;
 		return null;
 	}
+	
+	/**
+	 * Returns whether the given task has the same target as or a target
+	 * overlapping with any of the tasks currently being processed by other
+	 * worker threads. Such tasks must not run concurrently.
+	 */
+	@NotThreadSafe
+	private boolean conflictsWithActiveTask(@NotNull Task task) {
+		File f1 = task.getLuceneIndex().getCanonicalRootFile();
+		for (Task activeTask : activeTasks) {
+			File f2 = activeTask.getLuceneIndex().getCanonicalRootFile();
+			if (f1.equals(f2) || isOverlapping(f1, f2))
+				return true;
+		}
+		return false;
+	}
 
 	@ThreadSafe
 	private void assertValidRegistryState(	@NotNull IndexRegistry indexRegistry,
@@ -495,20 +575,27 @@ public final class IndexingQueue {
 	private boolean removeAll(	@NotNull CancelHandler handler,
 								@NotNull LazyList<Task> removedTasks) {
 		/*
-		 * Cancel active task if there is one. Note that if the cancel
-		 * handler returns null, no tasks are removed.
+		 * Cancel the active tasks, if there are any. The cancel handler is
+		 * asked only once, and its answer applies to all active tasks that
+		 * aren't updates. If the cancel handler returns null, no tasks are
+		 * cancelled or removed.
 		 */
+		CancelAction cancelAction = null;
+		for (Task task : tasks) {
+			if (task.is(TaskState.INDEXING) && !task.is(IndexAction.UPDATE)) {
+				cancelAction = handler.cancel();
+				if (cancelAction == null)
+					return false;
+				break;
+			}
+		}
 		for (Task task : tasks) {
 			if (!task.is(TaskState.INDEXING))
 				continue;
-			if (task.is(IndexAction.UPDATE)) {
+			if (task.is(IndexAction.UPDATE))
 				task.cancelAction = CancelAction.KEEP;
-			}
-			else {
-				task.cancelAction = handler.cancel();
-				if (task.cancelAction == null)
-					return false;
-			}
+			else
+				task.cancelAction = cancelAction;
 		}
 
 		// Remove all tasks (including active task)
@@ -685,11 +772,12 @@ public final class IndexingQueue {
 			shutdown = true;
 			
 			/*
-			 * Wake up and terminate worker thread if it was waiting. Do *not*
-			 * call thread.interrupt here, otherwise we'll get an exception when
-			 * trying to close the current Lucene index, if there is one.
+			 * Wake up and terminate worker threads if they were waiting. Do
+			 * *not* call thread.interrupt here, otherwise we'll get an
+			 * exception when trying to close the current Lucene index, if there
+			 * is one.
 			 */
-			readyTaskAvailable.signal();
+			readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index;
+
+import java.io.File;
+
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Util;
+
+/**
+ * Compares the wall-clock time needed for indexing a number of independent
+ * folders with a single worker thread against the time needed with one worker
+ * thread per available processor.
+ * <p>
+ * This is not a unit test and is therefore not run by the build. Optional
+ * arguments: number of folders, number of files per folder.
+ * 
+ * @author Tran Nam Quang
+ */
+public final class IndexingQueueBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		AppUtil.Const.autoInit();
+		int rootCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int filesPerRoot = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int cores = Runtime.getRuntime().availableProcessors();
+		File[] roots = IndexingQueueTest.createRoots(rootCount, filesPerRoot);
+
+		// Warm-up run, so that class loading doesn't distort the results
+		IndexingQueueTest.shutdown(IndexingQueueTest.runIndexing(
+			IndexingQueueTest.createRoots(2, 10), 1));
+
+		long singleTime = time(roots, 1);
+		long multiTime = time(roots, cores);
+
+		Util.println(String.format(
+			"Indexing %d folders with %d files each: 1 worker: %d ms, %d workers: %d ms",
+			rootCount, filesPerRoot, singleTime, cores, multiTime));
+	}
+
+	private static long time(File[] roots, int workerCount) throws Exception {
+		long start = System.currentTimeMillis();
+		IndexingQueueTest.shutdown(IndexingQueueTest.runIndexing(
+			roots, workerCount));
+		return System.currentTimeMillis() - start;
+	}
+
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.index.Task.CancelAction;
+import net.sourceforge.docfetcher.model.index.Task.CancelHandler;
+import net.sourceforge.docfetcher.model.index.Task.IndexAction;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Event;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class IndexingQueueTest {
+
+	static {
+		AppUtil.Const.autoInit();
+	}
+
+	private static final int ROOT_COUNT = 8;
+
+	@Test
+	public void testParallelIndexing() throws Exception {
+		File[] roots = createRoots(ROOT_COUNT, 20);
+		IndexRegistry registry = runIndexing(roots, 4);
+		assertEquals(ROOT_COUNT, registry.getIndexes().size());
+		shutdown(registry);
+	}
+
+	@Test
+	public void testOverlappingRootsAreRejected() throws Exception {
+		File parent = Util.createTempDir();
+		File child = new File(parent, "child");
+		child.mkdirs();
+
+		IndexRegistry registry = createRegistry(4);
+		IndexingQueue queue = registry.getQueue();
+		File indexParentDir = registry.getIndexParentDir();
+		assertNull(queue.addTask(
+			new FileIndex(indexParentDir, parent), IndexAction.CREATE));
+		assertEquals(IndexingQueue.Rejection.OVERLAP_WITH_QUEUE, queue.addTask(
+			new FileIndex(indexParentDir, child), IndexAction.CREATE));
+		shutdown(registry);
+	}
+
+	@NotNull
+	static File[] createRoots(int rootCount, int fileCount)
+			throws Exception {
+		File[] roots = new File[rootCount];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++)
+			sb.append("lorem ipsum dolor sit amet ").append(i).append(' ');
+		String text = sb.toString();
+		for (int i = 0; i < rootCount; i++) {
+			roots[i] = Util.createTempDir();
+			for (int j = 0; j < fileCount; j++) {
+				File file = new File(roots[i], "file" + j + ".txt");
+				Files.write(text, file, Charsets.UTF_8);
+			}
+		}
+		return roots;
+	}
+
+	/*
+	 * Note: The registry is not loaded here, so the tests must stick to index
+	 * creation, which is the only indexing action that doesn't need a searcher.
+	 */
+	@NotNull
+	private static IndexRegistry createRegistry(int workerCount)
+			throws Exception {
+		/*
+		 * Set the index path override, otherwise the index directories would
+		 * be stored relative to the working directory in portable mode.
+		 */
+		File indexParentDir = Util.createTempDir();
+		IndexRegistry.indexPathOverride = indexParentDir;
+		return new IndexRegistry(indexParentDir, 20, 100, workerCount);
+	}
+
+	@NotNull
+	static IndexRegistry runIndexing(	@NotNull File[] roots,
+										int workerCount)
+			throws Exception {
+		IndexRegistry registry = createRegistry(workerCount);
+		IndexingQueue queue = registry.getQueue();
+		final CountDownLatch latch = new CountDownLatch(roots.length);
+		for (File root : roots) {
+			FileIndex index = new FileIndex(registry.getIndexParentDir(), root);
+			queue.addTask(index, IndexAction.CREATE);
+		}
+		queue.addListeners(new IndexingQueue.ExistingTasksHandler() {
+			public void handleExistingTasks(List<Task> tasks) {
+				for (Task task : tasks) {
+					task.evtFinished.add(new Event.Listener<Boolean>() {
+						public void update(Boolean eventData) {
+							latch.countDown();
+						}
+					});
+					task.setReady();
+				}
+			}
+		}, new Event.Listener<Task>() {
+			public void update(Task eventData) {}
+		}, new Event.Listener<Task>() {
+			public void update(Task eventData) {}
+		});
+		assertTrue(latch.await(10, TimeUnit.MINUTES));
+		return registry;
+	}
+
+	static void shutdown(@NotNull IndexRegistry registry) {
+		registry.getQueue().shutdown(new CancelHandler() {
+			public CancelAction cancel() {
+				return CancelAction.KEEP;
+			}
+		});
+		IndexRegistry.indexPathOverride = null;
+	}
+
+}
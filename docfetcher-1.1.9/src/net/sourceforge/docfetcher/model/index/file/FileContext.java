@@ -49,6 +49,7 @@ class FileContext {
 	private final Cancelable cancelable;
 	private final MutableInt fileCount;
 	@Nullable private final File indexParentDir; // null if index only exists in RAM
+	@Nullable private ParsePipeline pipeline; // not inherited by subcontexts
 
 	protected FileContext(	@NotNull IndexingConfig config,
 							@NotNull TArchiveDetector zipDetector,
@@ -134,6 +135,15 @@ class FileContext {
 		return indexParentDir;
 	}
 	
+	/**
+	 * Sets the parse pipeline to be used by
+	 * {@link #indexOrSchedule(FileDocument, File, boolean)}. If the pipeline is
+	 * null, all files are indexed immediately.
+	 */
+	public final void setParsePipeline(@Nullable ParsePipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+	
 	// returns success
 	// if the indexing is canceled before or during the execution of this method,
 	// the last-modified value of the given document will be set to -1.
@@ -141,22 +151,77 @@ class FileContext {
 								@NotNull File file,
 								boolean isAdded) throws IndexingException {
 		info(InfoType.EXTRACTING, doc);
+		ParseResult parseResult;
 		try {
 			// Text extraction; may throw OutOfMemoryErrors
-			ParseResult parseResult = ParseService.parse(
-				config, file, doc.getName(), doc.getPath(), reporter, cancelable);
-			
-			/*
-			 * If we detect a cancel request at this point, the request probably
-			 * came in during the parsing step above. In that case, we'll keep
-			 * the partially extracted text and feed it to Lucene, but set the
-			 * stored last-modified value to -1 so that the next index update
-			 * will see the file as "modified" and therefore reindex it.
-			 */
-			if (cancelable.isCanceled())
-				doc.setLastModified(-1);
-
-			// Add to index or update in index; may also throw OutOfMemoryErrors
+			parseResult = parse(doc.getPath(), doc.getName(), file);
+		}
+		catch (ParseException e) {
+			fail(ErrorType.PARSING, doc, e);
+			return false;
+		}
+		catch (CheckedOutOfMemoryError e) {
+			fail(ErrorType.OUT_OF_MEMORY, doc, e.getCause());
+			return false;
+		}
+		return write(doc, file, parseResult, isAdded);
+	}
+	
+	/**
+	 * Indexes the given file, like {@link #index(FileDocument, File, boolean)}
+	 * does, and removes the given document from the Lucene index if this
+	 * fails and the document was not newly added. If a parse pipeline was set
+	 * on the receiver and the given file is an ordinary file outside of any
+	 * archive, the file is handed to the pipeline instead, so that this method
+	 * may return before the file is actually indexed.
+	 */
+	public final void indexOrSchedule(	@NotNull FileDocument doc,
+										@NotNull File file,
+										boolean isAdded)
+			throws IndexingException {
+		if (pipeline != null && !isArchiveEntry(file)) {
+			pipeline.submit(this, doc, file, isAdded);
+			return;
+		}
+		if (!index(doc, file, isAdded) && !isAdded)
+			deleteFromIndex(doc.getUniqueId());
+	}
+	
+	private static boolean isArchiveEntry(@NotNull File file) {
+		return file instanceof TFile && ((TFile) file).isEntry();
+	}
+	
+	/**
+	 * Extracts the text from the given file. This method does not touch the
+	 * receiver's file tree and can therefore be called from a thread other than
+	 * the one traversing the tree.
+	 */
+	@NotNull
+	final ParseResult parse(@NotNull Path path,
+							@NotNull String filename,
+							@NotNull File file)
+			throws ParseException, CheckedOutOfMemoryError {
+		return ParseService.parse(
+			config, file, filename, path, reporter, cancelable);
+	}
+	
+	// returns success
+	final boolean write(@NotNull FileDocument doc,
+						@NotNull File file,
+						@NotNull ParseResult parseResult,
+						boolean isAdded) throws IndexingException {
+		/*
+		 * If we detect a cancel request at this point, the request probably
+		 * came in during the parsing step. In that case, we'll keep the
+		 * partially extracted text and feed it to Lucene, but set the stored
+		 * last-modified value to -1 so that the next index update will see the
+		 * file as "modified" and therefore reindex it.
+		 */
+		if (cancelable.isCanceled())
+			doc.setLastModified(-1);
+		
+		try {
+			// Add to index or update in index; may throw OutOfMemoryErrors
 			if (isAdded)
 				writer.add(doc, file, parseResult);
 			else
@@ -170,9 +235,6 @@ class FileContext {
 		catch (IOException e) {
 			throw new IndexingException(e);
 		}
-		catch (ParseException e) {
-			fail(ErrorType.PARSING, doc, e);
-		}
 		catch (CheckedOutOfMemoryError e) {
 			fail(ErrorType.OUT_OF_MEMORY, doc, e.getCause());
 		}
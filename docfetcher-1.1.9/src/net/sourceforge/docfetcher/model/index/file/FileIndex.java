@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.sourceforge.docfetcher.enums.Msg;
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.DocumentType;
 import net.sourceforge.docfetcher.model.Path;
@@ -108,6 +109,34 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 	protected FileFolder createRootFolder(@NotNull Path path) {
 		return new FileFolder(path, null);
 	}
+	
+	@NotNull
+	protected FileFolder createFolder(	@NotNull FileFolder parent,
+										@NotNull String name,
+										@Nullable Long lastModified) {
+		return new FileFolder(parent, name, lastModified);
+	}
+	
+	@NotNull
+	protected FileDocument createDocument(	@NotNull FileFolder parent,
+											@NotNull String name,
+											@NotNull String displayName,
+											long lastModified) {
+		return new FileDocument(parent, name, lastModified);
+	}
+	
+	@Nullable
+	protected FileFolder getAttachedFolder(@NotNull FileDocument doc) {
+		return doc.getHtmlFolder();
+	}
+	
+	@NotNull
+	protected FileFolder attachFolder(	@NotNull FileDocument doc,
+										@NotNull Path path) {
+		FileFolder htmlFolder = new FileFolder(path, null);
+		doc.setHtmlFolder(htmlFolder);
+		return htmlFolder;
+	}
 
 	public boolean isEmailIndex() {
 		return false;
@@ -124,6 +153,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 		FileFolder rootFolder = getRootFolder();
 		rootFolder.setError(null);
 		SimpleDocWriter writer = null;
+		ParsePipeline pipeline = null;
 
 		/*
 		 * Wrap the stored root file in a TFile to enable zip archive support.
@@ -156,7 +186,29 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 				FileContext context = new FileContext(
 					config, zipDetector, writer, reporter, null, cancelable,
 					new MutableInt(0), getIndexParentDir());
+				
+				/*
+				 * If more than one parser thread is configured, ordinary files
+				 * are parsed in parallel while the directory traversal and the
+				 * writing to the Lucene index continue on this thread.
+				 */
+				int parserCount = ProgramConf.Int.ParserThreadCount.get();
+				if (parserCount > 1) {
+					pipeline = new ParsePipeline(parserCount, 2 * parserCount);
+					context.setParsePipeline(pipeline);
+					context.setReporter(ParsePipeline.synchronizedReporter(
+						context.getReporter()));
+				}
 				visitDirOrZip(context, rootFolder, rootFile);
+				
+				/*
+				 * Write the pending parse results, even if the traversal was
+				 * canceled. If the traversal failed with an exception instead,
+				 * the pending results are discarded when the pipeline is
+				 * closed.
+				 */
+				if (pipeline != null)
+					pipeline.flush();
 			}
 			else {
 				// Return immediately if the root file wasn't modified
@@ -206,6 +258,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 			report(ErrorType.STACK_OVERFLOW, reporter, e);
 		}
 		finally {
+			Closeables.closeQuietly(pipeline);
 			Closeables.closeQuietly(writer);
 			reporter.setEndTime(System.currentTimeMillis());
 		}
@@ -285,7 +338,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 					// File added
 					if (doc == null) {
 						doc = createFileDoc(folder, file);
-						context.index(doc, file, true);
+						context.indexOrSchedule(doc, file, true);
 					}
 					// File modified
 					else if (doc.isModified(context, file, null)) {
@@ -297,8 +350,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						 * the Lucene index, but keep it in the tree so we won't
 						 * index it again on the next index update.
 						 */
-						if (!context.index(doc, file, false))
-							context.deleteFromIndex(doc.getUniqueId());
+						context.indexOrSchedule(doc, file, false);
 					}
 				}
 				catch (IndexingException e) {
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.List;
 
 import net.sourceforge.docfetcher.TestFiles;
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.UtilModel;
 import net.sourceforge.docfetcher.model.index.IndexingError;
 import net.sourceforge.docfetcher.model.index.IndexingInfo;
@@ -197,6 +198,49 @@ public final class FileIndexTest {
 		}
 	}
 	
+	/**
+	 * Checks that indexing with several parser threads yields the same results
+	 * as indexing with a single thread, including index updates.
+	 */
+	@Test
+	public void testParallelParsing() throws Exception {
+		File tempDir = Util.createTempDir();
+		int fileCount = 50;
+		for (int i = 0; i < fileCount; i++) {
+			File subDir = new File(tempDir, "dir" + (i % 5));
+			subDir.mkdirs();
+			File textFile = new File(subDir, "file" + i + ".txt");
+			Files.write("Hello World " + i, textFile, Charsets.UTF_8);
+		}
+		
+		ProgramConf.Int.ParserThreadCount.load("4");
+		try {
+			FileIndex index = new FileIndex(null, tempDir);
+			CountingReporter reporter = new CountingReporter();
+			index.update(reporter, null);
+			assertEquals(fileCount, reporter.extractCount);
+			assertEquals(0, reporter.errorCount);
+			UtilModel.assertDocCount(index.getLuceneDir(), fileCount);
+			UtilModel.assertResultCount(index.getLuceneDir(), "hello", fileCount);
+			UtilModel.assertResultCount(index.getLuceneDir(), "7", 1);
+			
+			// Modify one file and delete another, then update the index
+			File modifiedFile = new File(tempDir, "dir2/file7.txt");
+			Files.write("Modified", modifiedFile, Charsets.UTF_8);
+			modifiedFile.setLastModified(System.currentTimeMillis() + 1000);
+			new File(tempDir, "dir3/file8.txt").delete();
+			index.update(reporter, null);
+			assertEquals(fileCount + 1, reporter.extractCount);
+			UtilModel.assertDocCount(index.getLuceneDir(), fileCount - 1);
+			UtilModel.assertResultCount(index.getLuceneDir(), "7", 0);
+			UtilModel.assertResultCount(index.getLuceneDir(), "modified", 1);
+		}
+		finally {
+			ProgramConf.Int.ParserThreadCount.load("1");
+			Util.deleteRecursively(tempDir);
+		}
+	}
+	
 	/**
 	 * Checks that the index update works correctly after a folder is renamed.
 	 */
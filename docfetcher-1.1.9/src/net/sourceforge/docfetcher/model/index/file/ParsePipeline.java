@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingError.ErrorType;
+import net.sourceforge.docfetcher.model.index.IndexingException;
+import net.sourceforge.docfetcher.model.index.IndexingInfo;
+import net.sourceforge.docfetcher.model.index.IndexingInfo.InfoType;
+import net.sourceforge.docfetcher.model.index.IndexingReporter;
+import net.sourceforge.docfetcher.model.parse.ParseException;
+import net.sourceforge.docfetcher.model.parse.ParseResult;
+import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.NotThreadSafe;
+
+/**
+ * A bounded producer/consumer pipeline for indexing ordinary files: The thread
+ * that traverses the file tree submits files to this pipeline, which parses
+ * them on a fixed number of parser threads, while the results are written to
+ * the Lucene index one after another, in submission order, by the traversing
+ * thread. Thus, parsing and disk I/O can overlap, and all modifications of the
+ * file tree and the Lucene index still happen on a single thread.
+ * <p>
+ * The number of files that have been submitted but not yet written is bounded,
+ * so that the memory needed for holding extracted texts doesn't grow with the
+ * number of files. If the bound is reached, {@link #submit} blocks until the
+ * oldest pending file has been written.
+ * <p>
+ * Instances of this class must be closed after usage by calling
+ * {@link #close()}.
+ *
+ * @author Tran Nam Quang
+ */
+@NotThreadSafe
+final class ParsePipeline implements Closeable {
+
+	private static final class Job {
+		private final FileContext context;
+		private final FileDocument doc;
+		private final File file;
+		private final boolean isAdded;
+		private final Future<ParseResult> future;
+
+		private Job(@NotNull FileContext context,
+					@NotNull FileDocument doc,
+					@NotNull File file,
+					boolean isAdded,
+					@NotNull Future<ParseResult> future) {
+			this.context = context;
+			this.doc = doc;
+			this.file = file;
+			this.isAdded = isAdded;
+			this.future = future;
+		}
+	}
+
+	private final ExecutorService executor;
+	private final int capacity;
+	private final LinkedList<Job> pendingJobs = new LinkedList<Job>();
+
+	/**
+	 * @param threadCount
+	 *            The number of parser threads, must be at least 1.
+	 * @param capacity
+	 *            The maximum number of files that have been submitted but not
+	 *            yet written, must be at least 1.
+	 */
+	public ParsePipeline(int threadCount, int capacity) {
+		Util.checkThat(threadCount >= 1 && capacity >= 1);
+		this.capacity = capacity;
+		executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+			public Thread newThread(Runnable r) {
+				String name = ParsePipeline.class.getName() + " (parser "
+						+ count.incrementAndGet() + ")";
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submits the given file for parsing. If the parsing fails and the given
+	 * document was not newly added, the document will be removed from the
+	 * Lucene index. Writing the parse results of previously submitted files may
+	 * happen during this call.
+	 *
+	 * @throws IndexingException
+	 *             If writing the parse result of one of the previously
+	 *             submitted files failed.
+	 */
+	public void submit(	@NotNull final FileContext context,
+						@NotNull FileDocument doc,
+						@NotNull final File file,
+						boolean isAdded) throws IndexingException {
+		Util.checkNotNull(context, doc, file);
+		context.info(InfoType.EXTRACTING, doc);
+
+		/*
+		 * The document's path must be computed here rather than on the parser
+		 * thread, since the latter must not access the file tree.
+		 */
+		final Path path = doc.getPath();
+		final String filename = doc.getName();
+		Future<ParseResult> future = executor.submit(new Callable<ParseResult>() {
+			public ParseResult call() throws Exception {
+				return context.parse(path, filename, file);
+			}
+		});
+		pendingJobs.add(new Job(context, doc, file, isAdded, future));
+
+		// Write results that are already available, without blocking
+		while (!pendingJobs.isEmpty() && pendingJobs.getFirst().future.isDone())
+			writeNext();
+
+		// Block until there's room for more jobs
+		while (pendingJobs.size() >= capacity)
+			writeNext();
+	}
+
+	/**
+	 * Waits for all submitted files to be parsed and writes the results.
+	 *
+	 * @throws IndexingException
+	 *             If writing one of the parse results failed.
+	 */
+	public void flush() throws IndexingException {
+		while (!pendingJobs.isEmpty())
+			writeNext();
+	}
+
+	private void writeNext() throws IndexingException {
+		Job job = pendingJobs.removeFirst();
+		ParseResult parseResult = null;
+		Throwable error = null;
+		boolean interrupted = false;
+		while (true) {
+			try {
+				parseResult = job.future.get();
+				break;
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+			catch (ExecutionException e) {
+				error = e.getCause();
+				break;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		boolean success;
+		if (parseResult != null) {
+			success = job.context.write(
+				job.doc, job.file, parseResult, job.isAdded);
+		}
+		else {
+			if (error instanceof ParseException)
+				job.context.fail(ErrorType.PARSING, job.doc, error);
+			else if (error instanceof CheckedOutOfMemoryError)
+				job.context.fail(ErrorType.OUT_OF_MEMORY, job.doc, error.getCause());
+			/*
+			 * Rethrow unchecked throwables unchanged, as if the file had been
+			 * parsed on this thread, so that e.g. StackOverflowErrors still
+			 * reach the handling in FileIndex.
+			 */
+			else if (error instanceof Error)
+				throw (Error) error;
+			else if (error instanceof RuntimeException)
+				throw (RuntimeException) error;
+			else
+				throw new IllegalStateException(error);
+			success = false;
+		}
+		if (!success && !job.isAdded)
+			job.context.deleteFromIndex(job.doc.getUniqueId());
+	}
+
+	/**
+	 * Returns a reporter that forwards all calls to the given reporter while
+	 * holding a lock, since the parser threads report their progress
+	 * concurrently with each other and with the traversing thread.
+	 */
+	@NotNull
+	public static IndexingReporter synchronizedReporter(@NotNull final IndexingReporter reporter) {
+		Util.checkNotNull(reporter);
+		return new IndexingReporter() {
+			public synchronized void setStartTime(long time) {
+				reporter.setStartTime(time);
+			}
+			public synchronized void setEndTime(long time) {
+				reporter.setEndTime(time);
+			}
+			public synchronized void info(@NotNull IndexingInfo info) {
+				reporter.info(info);
+			}
+			public synchronized void subInfo(int current, int total) {
+				reporter.subInfo(current, total);
+			}
+			public synchronized void fail(@NotNull IndexingError error) {
+				reporter.fail(error);
+			}
+		};
+	}
+
+	/**
+	 * Stops the parser threads. Documents whose parse results haven't been
+	 * written at this point get a last-modified value of -1, so that they will
+	 * be reindexed on the next index update.
+	 */
+	public void close() {
+		executor.shutdownNow();
+		for (Job job : pendingJobs)
+			job.doc.setLastModified(-1);
+		pendingJobs.clear();
+	}
+
+}
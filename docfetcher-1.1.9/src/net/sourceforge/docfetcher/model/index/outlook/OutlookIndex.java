@@ -76,6 +76,46 @@ public final class OutlookIndex extends TreeIndex<MailDocument, MailFolder> {
 		return new MailFolder(path);
 	}
 	
+	@NotNull
+	protected MailFolder createFolder(	@NotNull MailFolder parent,
+										@NotNull String name,
+										@Nullable Long lastModified) {
+		return new MailFolder(parent, name);
+	}
+	
+	@NotNull
+	protected MailDocument createDocument(	@NotNull MailFolder parent,
+											@NotNull String name,
+											@NotNull String displayName,
+											long lastModified) {
+		return new MailDocument(parent, name, displayName, lastModified);
+	}
+	
+	protected boolean getFolderFlag(@NotNull MailFolder folder) {
+		return folder.hasDeepContent();
+	}
+	
+	protected void setFolderFlag(@NotNull MailFolder folder, boolean flag) {
+		folder.setHasDeepContent(flag);
+	}
+	
+	@Nullable
+	protected MailFolder getAttachedFolder(@NotNull MailDocument doc) {
+		return null;
+	}
+	
+	/**
+	 * Mail documents never have attached folders, so none are written to the
+	 * tree index file. Reaching this method therefore means the file is
+	 * corrupted.
+	 */
+	@NotNull
+	protected MailFolder attachFolder(	@NotNull MailDocument doc,
+										@NotNull Path path) {
+		throw new IllegalArgumentException(
+			"Mail document with attached folder: " + path);
+	}
+	
 	public boolean isEmailIndex() {
 		return true;
 	}
@@ -427,7 +427,14 @@ public final class ParseService {
 			in = new TFileInputStream(file);
 			in = new BufferedInputStream(in); // must support mark and reset
 			
-			Collection<?> mimeTypes = mimeDetector.getMimeTypes(in);
+			/*
+			 * The mime detector may be used by several parser threads at the
+			 * same time, and it isn't documented to be thread-safe.
+			 */
+			Collection<?> mimeTypes;
+			synchronized (mimeDetector) {
+				mimeTypes = mimeDetector.getMimeTypes(in);
+			}
 			Collection<String> textTypes = textParser.getTypes();
 			List<String> result = Util.createEmptyList(mimeTypes, textTypes);
 			
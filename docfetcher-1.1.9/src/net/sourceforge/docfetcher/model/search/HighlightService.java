@@ -12,22 +12,29 @@
 package net.sourceforge.docfetcher.model.search;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.IndexRegistry;
-import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.MutableCopy;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import org.apache.lucene.analysis.Token;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.highlight.Formatter;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.NullFragmenter;
@@ -37,11 +44,9 @@ import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
 import org.apache.lucene.search.vectorhighlight.FieldPhraseList;
 import org.apache.lucene.search.vectorhighlight.FieldPhraseList.WeightedPhraseInfo;
 import org.apache.lucene.search.vectorhighlight.FieldQuery;
+import org.apache.lucene.search.vectorhighlight.FieldQuery.QueryPhraseMap;
 import org.apache.lucene.search.vectorhighlight.FieldTermStack;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
-
-import com.google.common.io.Closeables;
+import org.apache.lucene.search.vectorhighlight.FieldTermStack.TermInfo;
 
 /**
  * @author Tran Nam Quang
@@ -49,6 +54,9 @@ import com.google.common.io.Closeables;
 @VisibleForPackageGroup
 public final class HighlightService {
 	
+	/** How many terms are processed between two checks for cancellation. */
+	private static final int CANCEL_CHECK_INTERVAL = 1024;
+	
 	private HighlightService() {
 	}
 	
@@ -58,10 +66,24 @@ public final class HighlightService {
 												boolean isPhraseQuery,
 												@NotNull String text)
 			throws CheckedOutOfMemoryError {
+		return highlight(query, isPhraseQuery, text, Cancelable.nullCancelable);
+	}
+	
+	/**
+	 * Same as {@link #highlight(Query, boolean, String)}, except that the
+	 * phrase highlighting can be aborted via the given cancelable, in which
+	 * case the returned string has no highlighted ranges.
+	 */
+	@NotNull
+	public static HighlightedString highlight(	@NotNull Query query,
+												boolean isPhraseQuery,
+												@NotNull String text,
+												@NotNull Cancelable cancelable)
+			throws CheckedOutOfMemoryError {
 		text = trimDocument(text);
 		List<Range> ranges;
 		if (isPhraseQuery)
-			ranges = highlightPhrases(query, text);
+			ranges = highlightPhrases(query, text, cancelable);
 		else
 			ranges = highlight(query, text);
 		return new HighlightedString(text, ranges);
@@ -94,36 +116,36 @@ public final class HighlightService {
 	
 	@MutableCopy
 	@NotNull
-	@SuppressWarnings("unchecked")
 	private static List<Range> highlightPhrases(@NotNull Query query,
-												@NotNull String text)
+												@NotNull String text,
+												@NotNull Cancelable cancelable)
 			throws CheckedOutOfMemoryError {
 		// FastVectorHighlighter only supports TermQuery, PhraseQuery and BooleanQuery
 		FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, null, null);
 		FieldQuery fieldQuery = highlighter.getFieldQuery(query);
-		Directory directory = new RAMDirectory();
+		String key = Fields.CONTENT.key();
+		Set<String> queryTerms = new HashSet<String>();
+		collectTerms(query, key, queryTerms);
+		if (queryTerms.isEmpty())
+			return new ArrayList<Range> (0);
 		try {
 			/*
-			 * Hack: We have to put the given text in a RAM index, because the
-			 * fast-vector highlighter can only work on index readers
+			 * The fast-vector highlighter can only work on index readers, so
+			 * we'll give it a reader that contains nothing but a term vector
+			 * computed from the token stream. This is much cheaper than
+			 * putting the text into a RAM index.
 			 */
-			IndexWriterAdapter writer = new IndexWriterAdapter(directory);
-			Document doc = new Document();
-			doc.add(Fields.createContent(text, true)); // must store token positions and offsets
-			writer.add(doc);
-			Closeables.closeQuietly(writer); // flush unwritten documents into index
-			IndexReader indexReader = IndexReader.open(directory);
-			
-			// This might throw an OutOfMemoryError
+			QueryTermVector termVector = QueryTermVector.create(
+				IndexRegistry.analyzer, key, text, queryTerms, cancelable);
+			if (termVector == null)
+				return new ArrayList<Range> (0);
 			FieldTermStack fieldTermStack = new FieldTermStack(
-				indexReader, 0, Fields.CONTENT.key(), fieldQuery);
-			
-			FieldPhraseList fieldPhraseList = new FieldPhraseList(fieldTermStack, fieldQuery);
+				termVector.asIndexReader(), 0, key, fieldQuery);
 			
-			// Hack: We'll use reflection to access a private field
-			java.lang.reflect.Field field = fieldPhraseList.getClass().getDeclaredField("phraseList");
-			field.setAccessible(true);
-			LinkedList<WeightedPhraseInfo> infoList = (LinkedList<WeightedPhraseInfo>) field.get(fieldPhraseList);
+			List<WeightedPhraseInfo> infoList = findPhrases(
+				fieldTermStack, fieldQuery, cancelable);
+			if (infoList == null)
+				return new ArrayList<Range> (0);
 			
 			List<Range> ranges = new ArrayList<Range> (infoList.size());
 			for (WeightedPhraseInfo phraseInfo : infoList) {
@@ -141,6 +163,125 @@ public final class HighlightService {
 		}
 	}
 	
+	/**
+	 * Finds the phrases of the given query in the given term stack. This does
+	 * the same as the constructor of {@link FieldPhraseList}, which however
+	 * compares each new phrase with all previously found phrases to check for
+	 * overlaps, and so takes quadratic time on texts with many matches. Here,
+	 * we'll take advantage of the fact that the phrases are found in the order
+	 * of their start offsets: A new phrase that starts at or behind the end of
+	 * all previous phrases can't overlap with any of them.
+	 * <p>
+	 * Returns null if the given cancelable was canceled in the meantime.
+	 */
+	@Nullable
+	private static List<WeightedPhraseInfo> findPhrases(@NotNull FieldTermStack fieldTermStack,
+														@NotNull FieldQuery fieldQuery,
+														@NotNull Cancelable cancelable) {
+		String field = fieldTermStack.getFieldName();
+		List<WeightedPhraseInfo> phraseList = new ArrayList<WeightedPhraseInfo>();
+		LinkedList<TermInfo> phraseCandidate = new LinkedList<TermInfo>();
+		int maxEndOffset = 0;
+		int termCount = 0;
+		while (!fieldTermStack.isEmpty()) {
+			if (++termCount % CANCEL_CHECK_INTERVAL == 0 && cancelable.isCanceled())
+				return null;
+			phraseCandidate.clear();
+			TermInfo ti = fieldTermStack.pop();
+			QueryPhraseMap currMap = fieldQuery.getFieldTermMap(field, ti.getText());
+			if (currMap == null)
+				continue;
+			
+			// Search the longest phrase starting with the current term
+			phraseCandidate.add(ti);
+			WeightedPhraseInfo phrase = null;
+			while (true) {
+				ti = fieldTermStack.pop();
+				QueryPhraseMap nextMap = ti == null ? null : currMap.getTermMap(ti.getText());
+				if (nextMap != null) {
+					phraseCandidate.add(ti);
+					currMap = nextMap;
+					continue;
+				}
+				if (ti != null)
+					fieldTermStack.push(ti);
+				if (currMap.isValidTermOrPhrase(phraseCandidate)) {
+					phrase = new WeightedPhraseInfo(
+						phraseCandidate, currMap.getBoost(),
+						currMap.getTermOrPhraseNumber());
+				}
+				else {
+					while (phraseCandidate.size() > 1) {
+						fieldTermStack.push(phraseCandidate.removeLast());
+						currMap = fieldQuery.searchPhrase(field, phraseCandidate);
+						if (currMap != null) {
+							phrase = new WeightedPhraseInfo(
+								phraseCandidate, currMap.getBoost(),
+								currMap.getTermOrPhraseNumber());
+							break;
+						}
+					}
+				}
+				break;
+			}
+			if (phrase == null)
+				continue;
+			
+			// Add phrase if it doesn't overlap with a previous phrase
+			int startOffset = phrase.getStartOffset();
+			int endOffset = phrase.getEndOffset();
+			if (startOffset >= maxEndOffset && startOffset < endOffset) {
+				phraseList.add(phrase);
+			}
+			else {
+				boolean overlaps = false;
+				for (WeightedPhraseInfo existingPhrase : phraseList) {
+					if (existingPhrase.isOffsetOverlap(phrase)) {
+						overlaps = true;
+						break;
+					}
+				}
+				if (overlaps)
+					continue;
+				phraseList.add(phrase);
+			}
+			maxEndOffset = Math.max(maxEndOffset, endOffset);
+		}
+		return phraseList;
+	}
+	
+	/**
+	 * Collects the terms of the given field from the given query, considering
+	 * the same query types as the fast-vector highlighter.
+	 */
+	private static void collectTerms(	@NotNull Query query,
+										@NotNull String field,
+										@NotNull Set<String> terms) {
+		if (query instanceof BooleanQuery) {
+			for (BooleanClause clause : ((BooleanQuery) query).getClauses())
+				if (!clause.isProhibited())
+					collectTerms(clause.getQuery(), field, terms);
+		}
+		else if (query instanceof DisjunctionMaxQuery) {
+			for (Query disjunct : (DisjunctionMaxQuery) query)
+				collectTerms(disjunct, field, terms);
+		}
+		else if (query instanceof TermQuery) {
+			addTerm(((TermQuery) query).getTerm(), field, terms);
+		}
+		else if (query instanceof PhraseQuery) {
+			for (Term term : ((PhraseQuery) query).getTerms())
+				addTerm(term, field, terms);
+		}
+	}
+	
+	private static void addTerm(@NotNull Term term,
+								@NotNull String field,
+								@NotNull Set<String> terms) {
+		if (term.field().equals(field))
+			terms.add(term.text());
+	}
+	
 	@MutableCopy
 	@NotNull
 	private static List<Range> highlight(	@NotNull Query query,
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.util.List;
+
+import net.sourceforge.docfetcher.util.Util;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Compares the phrase highlighting on large texts with the previous approach
+ * of putting the text into a RAM index.
+ * <p>
+ * This is not a unit test and is therefore not run by the build. Optional
+ * argument: the number of words of the largest text.
+ * 
+ * @author Tran Nam Quang
+ */
+public final class HighlightServiceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int maxWordCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Query query = HighlightServiceTest.parse("\"lorem ipsum\" \"dolor sit\"");
+
+		// Warm-up
+		String warmUpText = HighlightServiceTest.createText(100000);
+		for (int i = 0; i < 3; i++) {
+			HighlightServiceTest.highlightWithRamIndex(query, warmUpText);
+			HighlightService.highlight(query, true, warmUpText);
+		}
+
+		for (int wordCount = maxWordCount / 4; wordCount <= maxWordCount; wordCount *= 2) {
+			String text = HighlightServiceTest.createText(wordCount);
+			int runs = 5;
+			long start = System.currentTimeMillis();
+			List<Range> expected = null;
+			for (int i = 0; i < runs; i++)
+				expected = HighlightServiceTest.highlightWithRamIndex(query, text);
+			long ramIndexTime = (System.currentTimeMillis() - start) / runs;
+
+			start = System.currentTimeMillis();
+			List<Range> actual = null;
+			for (int i = 0; i < runs; i++)
+				actual = HighlightService.highlight(query, true, text).getRanges();
+			long termVectorTime = (System.currentTimeMillis() - start) / runs;
+
+			HighlightServiceTest.assertRangesEqual(expected, actual);
+			Util.println(String.format(
+				"Phrase highlighting of %d KB text: RAM index %d ms, term vector %d ms",
+				text.length() / 1024, ramIndexTime, termVectorTime));
+		}
+	}
+
+}
@@ -12,12 +12,19 @@
 package net.sourceforge.docfetcher.model.search;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
 
+import net.sourceforge.docfetcher.model.Cancelable;
+import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.IndexRegistry;
 import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -26,6 +33,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.TermVector;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -80,5 +88,119 @@ public final class HighlightServiceTest {
 	    assertEquals(5, list.get(0).getStartOffset());
 	    assertEquals(9, list.get(0).getEndOffset());
 	}
+	
+	@Test
+	public void testPhraseHighlightingWithoutIndex() throws Exception {
+		String text = "The quick brown fox jumps over the lazy dog.\n"
+				+ "A quick brown dog, a lazy fox, and the brown fox again.\n"
+				+ "Brown foxes are not brown fox-like. Quick! Brown fox.";
+		String[] queries = {
+			"\"brown fox\"",
+			"\"quick brown\" dog",
+			"\"lazy dog\" OR \"lazy fox\"",
+			"fox AND \"the lazy\"",
+			"\"brown fox\" -cat",
+			"\"fox jumps over\"",
+		};
+		for (String queryString : queries) {
+			Query query = parse(queryString);
+			List<Range> expected = highlightWithRamIndex(query, text);
+			List<Range> actual = HighlightService.highlight(
+				query, true, text).getRanges();
+			assertFalse(queryString, expected.isEmpty());
+			assertRangesEqual(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testPhraseHighlightingCancel() throws Exception {
+		String text = createText(100000);
+		Query query = parse("\"lorem ipsum\"");
+		assertFalse(HighlightService.highlight(query, true, text).getRanges().isEmpty());
+		HighlightedString string = HighlightService.highlight(
+			query, true, text, new Cancelable() {
+				public boolean isCanceled() {
+					return true;
+				}
+			});
+		assertEquals(text, string.getString());
+		assertEquals(0, string.getRangeCount());
+	}
+	
+	/**
+	 * Checks that phrase highlighting on a larger text still gives the same
+	 * results as the previous approach of putting the text into a RAM index.
+	 */
+	@Test
+	public void testPhraseHighlightingLargeText() throws Exception {
+		String text = createText(20000);
+		Query query = parse("\"lorem ipsum\" \"dolor sit\"");
+		List<Range> expected = highlightWithRamIndex(query, text);
+		List<Range> actual = HighlightService.highlight(query, true, text).getRanges();
+		assertFalse(expected.isEmpty());
+		assertRangesEqual(expected, actual);
+	}
+	
+	@NotNull
+	static Query parse(@NotNull String queryString) throws Exception {
+		QueryParser queryParser = new QueryParser(
+			IndexRegistry.LUCENE_VERSION, Fields.CONTENT.key(),
+			IndexRegistry.analyzer);
+		return queryParser.parse(queryString);
+	}
+	
+	@NotNull
+	static String createText(int wordCount) {
+		String[] words = {
+			"lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+			"adipiscing", "elit", "sed", "do", "eiusmod", "tempor" };
+		Random random = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < wordCount; i++) {
+			sb.append(words[random.nextInt(words.length)]);
+			sb.append(i % 15 == 14 ? ".\n" : " ");
+		}
+		return sb.toString().trim();
+	}
+	
+	// The previous implementation of phrase highlighting
+	@NotNull
+	@SuppressWarnings("unchecked")
+	static List<Range> highlightWithRamIndex(	@NotNull Query query,
+												@NotNull String text)
+			throws Exception {
+		FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, null, null);
+		FieldQuery fieldQuery = highlighter.getFieldQuery(query);
+		Directory directory = new RAMDirectory();
+		IndexWriterAdapter writer = new IndexWriterAdapter(directory);
+		Document doc = new Document();
+		doc.add(Fields.createContent(text, true));
+		writer.add(doc);
+		Closeables.closeQuietly(writer);
+		IndexReader indexReader = IndexReader.open(directory);
+		FieldTermStack fieldTermStack = new FieldTermStack(
+			indexReader, 0, Fields.CONTENT.key(), fieldQuery);
+		FieldPhraseList fieldPhraseList = new FieldPhraseList(fieldTermStack, fieldQuery);
+		java.lang.reflect.Field field = fieldPhraseList.getClass().getDeclaredField("phraseList");
+		field.setAccessible(true);
+		LinkedList<WeightedPhraseInfo> infoList = (LinkedList<WeightedPhraseInfo>) field.get(fieldPhraseList);
+		List<Range> ranges = new ArrayList<Range>(infoList.size());
+		for (WeightedPhraseInfo phraseInfo : infoList) {
+			int start = phraseInfo.getStartOffset();
+			int end = phraseInfo.getEndOffset();
+			ranges.add(new Range(start, end - start));
+		}
+		indexReader.close();
+		return ranges;
+	}
+	
+	static void assertRangesEqual(	@NotNull List<Range> expected,
+									@NotNull List<Range> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).start, actual.get(i).start);
+			assertEquals(expected.get(i).length, actual.get(i).length);
+		}
+	}
 
 }
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+
+import net.sourceforge.docfetcher.model.Cancelable;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArrayMap;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositionVector;
+import org.apache.lucene.index.TermVectorOffsetInfo;
+
+/**
+ * A term vector with positions and offsets that is computed directly from the
+ * token stream of a text, rather than read from an index. Only the given query
+ * terms are recorded, so the memory usage depends on the number of matches
+ * rather than on the size of the text.
+ * <p>
+ * This is what the fast-vector highlighter would get from an index in which
+ * the text was stored with {@code TermVector.WITH_POSITIONS_OFFSETS}, but
+ * without the cost of creating such an index.
+ *
+ * @author Tran Nam Quang
+ */
+final class QueryTermVector implements TermPositionVector {
+
+	/** How many tokens are processed between two checks for cancellation. */
+	private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+	/** An empty reader to which the term vector readers delegate. */
+	private static final IndexReader emptyReader = new MultiReader(new IndexReader[0]);
+
+	private static final class Occurrences {
+		private int size = 0;
+		private int[] positions = new int[4];
+		private int[] startOffsets = new int[4];
+		private int[] endOffsets = new int[4];
+
+		private void add(int position, int startOffset, int endOffset) {
+			if (size == positions.length) {
+				int newLength = size * 2;
+				positions = Arrays.copyOf(positions, newLength);
+				startOffsets = Arrays.copyOf(startOffsets, newLength);
+				endOffsets = Arrays.copyOf(endOffsets, newLength);
+			}
+			positions[size] = position;
+			startOffsets[size] = startOffset;
+			endOffsets[size] = endOffset;
+			size++;
+		}
+	}
+
+	private final String field;
+	private final String[] terms; // sorted, like in a term vector from an index
+	private final Occurrences[] occurrences;
+
+	private QueryTermVector(@NotNull String field,
+							@NotNull String[] terms,
+							@NotNull Occurrences[] occurrences) {
+		this.field = field;
+		this.terms = terms;
+		this.occurrences = occurrences;
+	}
+
+	/**
+	 * Tokenizes the given text with the given analyzer and records the
+	 * positions and offsets of the given query terms. Returns null if the
+	 * given cancelable was canceled in the meantime.
+	 */
+	@Nullable
+	public static QueryTermVector create(	@NotNull Analyzer analyzer,
+											@NotNull String field,
+											@NotNull String text,
+											@NotNull Collection<String> queryTerms,
+											@NotNull Cancelable cancelable)
+			throws IOException {
+		String[] terms = queryTerms.toArray(new String[queryTerms.size()]);
+		Arrays.sort(terms);
+		Occurrences[] occurrences = new Occurrences[terms.length];
+		CharArrayMap<Occurrences> termMap = new CharArrayMap<Occurrences>(
+			IndexRegistry.LUCENE_VERSION, terms.length, false);
+		for (int i = 0; i < terms.length; i++) {
+			occurrences[i] = new Occurrences();
+			termMap.put(terms[i], occurrences[i]);
+		}
+
+		TokenStream tokenStream = analyzer.reusableTokenStream(
+			field, new StringReader(text));
+		CharTermAttribute termAtt = tokenStream.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = tokenStream.addAttribute(OffsetAttribute.class);
+		PositionIncrementAttribute posIncAtt = tokenStream.addAttribute(PositionIncrementAttribute.class);
+		try {
+			tokenStream.reset();
+			int position = -1;
+			int tokenCount = 0;
+			while (tokenStream.incrementToken()) {
+				if (++tokenCount % CANCEL_CHECK_INTERVAL == 0
+						&& cancelable.isCanceled())
+					return null;
+				position += posIncAtt.getPositionIncrement();
+				Occurrences occ = termMap.get(
+					termAtt.buffer(), 0, termAtt.length());
+				if (occ != null)
+					occ.add(position, offsetAtt.startOffset(), offsetAtt.endOffset());
+			}
+			tokenStream.end();
+		}
+		finally {
+			tokenStream.close();
+		}
+		return new QueryTermVector(field, terms, occurrences);
+	}
+
+	/**
+	 * Returns an index reader that contains nothing but the receiver as the
+	 * term vector of the given field for any document number. This is
+	 * sufficient for building a
+	 * {@link org.apache.lucene.search.vectorhighlight.FieldTermStack
+	 * FieldTermStack}.
+	 */
+	@NotNull
+	public IndexReader asIndexReader() {
+		return new FilterIndexReader(emptyReader) {
+			public TermFreqVector getTermFreqVector(int docNumber, String field) {
+				return QueryTermVector.this.field.equals(field)
+					? QueryTermVector.this
+					: null;
+			}
+		};
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int size() {
+		return terms.length;
+	}
+
+	public String[] getTerms() {
+		return terms;
+	}
+
+	public int[] getTermFrequencies() {
+		int[] freqs = new int[occurrences.length];
+		for (int i = 0; i < occurrences.length; i++)
+			freqs[i] = occurrences[i].size;
+		return freqs;
+	}
+
+	public int indexOf(String term) {
+		int index = Arrays.binarySearch(terms, term);
+		return index >= 0 ? index : -1;
+	}
+
+	public int[] indexesOf(String[] terms, int start, int len) {
+		int[] indexes = new int[len];
+		for (int i = 0; i < len; i++)
+			indexes[i] = indexOf(terms[start + i]);
+		return indexes;
+	}
+
+	public int[] getTermPositions(int index) {
+		Occurrences occ = occurrences[index];
+		return Arrays.copyOf(occ.positions, occ.size);
+	}
+
+	public TermVectorOffsetInfo[] getOffsets(int index) {
+		Occurrences occ = occurrences[index];
+		TermVectorOffsetInfo[] offsets = new TermVectorOffsetInfo[occ.size];
+		for (int i = 0; i < occ.size; i++)
+			offsets[i] = new TermVectorOffsetInfo(occ.startOffsets[i], occ.endOffsets[i]);
+		return offsets;
+	}
+
+}
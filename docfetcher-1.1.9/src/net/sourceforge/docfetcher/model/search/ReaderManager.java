@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.NotThreadSafe;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.collect.LazyList;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searchable;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps one Lucene index reader per index and hands out sets of readers for
+ * building Lucene searchers. When the indexes change, the readers of modified
+ * indexes are reopened, so that only the changed segments are loaded, while
+ * the readers of unmodified indexes are reused as they are, along with their
+ * cached norms and field caches.
+ * <p>
+ * The readers are reference-counted: Each reader set holds one reference on
+ * each of its readers, and a reader is closed when the last reader set that
+ * uses it is released.
+ *
+ * @author Tran Nam Quang
+ */
+@NotThreadSafe
+final class ReaderManager {
+
+	/**
+	 * A set of readers for a list of indexes, as returned by
+	 * {@link ReaderManager#update(List)}. Must be released after usage by
+	 * calling {@link #release()}.
+	 */
+	public static final class ReaderSet {
+		public final List<LuceneIndex> indexes;
+		public final List<CorruptedIndex> corruptedIndexes;
+
+		// Null entries for indexes that couldn't be opened
+		private final IndexReader[] readers;
+
+		private ReaderSet(	@NotNull List<LuceneIndex> indexes,
+							@NotNull IndexReader[] readers,
+							@NotNull List<CorruptedIndex> corruptedIndexes) {
+			this.indexes = indexes;
+			this.readers = readers;
+			this.corruptedIndexes = corruptedIndexes;
+		}
+
+		/**
+		 * Creates a Lucene searcher over the readers of this set. Closing the
+		 * returned searcher does not close the readers.
+		 */
+		@NotNull
+		public MultiSearcher createSearcher() throws IOException {
+			Searchable[] searchables = new Searchable[readers.length];
+			for (int i = 0; i < readers.length; i++) {
+				if (readers[i] == null)
+					searchables[i] = new DummySearchable();
+				else
+					searchables[i] = new IndexSearcher(readers[i]);
+			}
+			return new MultiSearcher(searchables);
+		}
+
+		// Returns null if the index at the given position couldn't be opened
+		@Nullable
+		@VisibleForTesting
+		IndexReader getReader(int index) {
+			return readers[index];
+		}
+
+		/**
+		 * Gives up this set's references on its readers. Readers that aren't
+		 * used by any other reader set anymore are closed.
+		 */
+		public void release() {
+			for (IndexReader reader : readers) {
+				if (reader == null)
+					continue;
+				try {
+					reader.decRef();
+				}
+				catch (IOException e) {
+					Util.printErr(e);
+				}
+			}
+		}
+	}
+
+	private final List<Query> warmUpQueries;
+	private Map<LuceneIndex, IndexReader> readers = new IdentityHashMap<LuceneIndex, IndexReader>();
+
+	/**
+	 * @param warmUpQueries
+	 *            Queries that are run on newly opened and reopened readers
+	 *            before they're handed out, so that the first searches by the
+	 *            user don't have to pay for loading norms, term indexes, etc.
+	 */
+	public ReaderManager(@NotNull List<Query> warmUpQueries) {
+		this.warmUpQueries = Util.checkNotNull(warmUpQueries);
+	}
+
+	/**
+	 * Returns a set of readers for the given indexes. Readers of indexes that
+	 * haven't changed since the last call are reused, readers of changed
+	 * indexes are reopened, and readers for new indexes are opened. Indexes
+	 * that can't be opened are reported as corrupted and get no reader.
+	 * <p>
+	 * The returned reader set holds its own references on the readers, so the
+	 * reader set returned by the previous call remains usable until it is
+	 * released.
+	 */
+	@NotNull
+	public ReaderSet update(@NotNull List<LuceneIndex> indexes) {
+		Util.checkNotNull(indexes);
+		Map<LuceneIndex, IndexReader> newReaders = new IdentityHashMap<LuceneIndex, IndexReader>();
+		IndexReader[] readerArray = new IndexReader[indexes.size()];
+		LazyList<CorruptedIndex> corrupted = new LazyList<CorruptedIndex>();
+		for (int i = 0; i < indexes.size(); i++) {
+			LuceneIndex index = indexes.get(i);
+			try {
+				IndexReader reader = getReader(readers.get(index), index);
+				newReaders.put(index, reader);
+				readerArray[i] = reader;
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+				corrupted.add(new CorruptedIndex(index, e));
+			}
+		}
+		readers = newReaders;
+		return new ReaderSet(indexes, readerArray, corrupted);
+	}
+
+	/**
+	 * Returns a reader for the given index with a reference owned by the
+	 * caller.
+	 */
+	@NotNull
+	private IndexReader getReader(	@Nullable IndexReader oldReader,
+									@NotNull LuceneIndex index)
+			throws IOException {
+		if (oldReader != null) {
+			IndexReader newReader = IndexReader.openIfChanged(oldReader);
+			if (newReader == null) {
+				oldReader.incRef();
+				return oldReader;
+			}
+			warmUp(newReader);
+			return newReader;
+		}
+		IndexReader newReader = IndexReader.open(index.getLuceneDir());
+		warmUp(newReader);
+		return newReader;
+	}
+
+	private void warmUp(@NotNull IndexReader reader) {
+		// Lucene 3.5 rejects searches on empty indexes, see bug #390
+		if (warmUpQueries.isEmpty() || reader.maxDoc() == 0)
+			return;
+		IndexSearcher searcher = new IndexSearcher(reader);
+		try {
+			for (Query query : warmUpQueries)
+				searcher.search(query, 10);
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+		}
+		finally {
+			try {
+				searcher.close(); // Doesn't close the reader
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+			}
+		}
+	}
+
+	/**
+	 * Forgets about all readers handed out so far. The readers are closed when
+	 * the reader sets using them are released.
+	 */
+	public void clear() {
+		readers = new IdentityHashMap<LuceneIndex, IndexReader>();
+	}
+
+}
@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Date;
 
+import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.DocumentType;
 import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.FileResource;
@@ -37,6 +38,8 @@ import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.search.Query;
 
 /**
@@ -54,6 +57,18 @@ public final class ResultDocument {
 		public boolean isStopped();
 	}
 	
+	/**
+	 * Selects the stored fields of a Lucene document that are needed by this
+	 * class. Fields that aren't displayed on the result table, such as the
+	 * email recipients, are not loaded. When a field is added to the code
+	 * below, it must be added here, too.
+	 */
+	static final FieldSelector fieldSelector = new MapFieldSelector(
+		Fields.UID.key(), Fields.TITLE.key(), Fields.SUBJECT.key(),
+		Fields.SIZE.key(), Fields.PARSER.key(), Fields.FILENAME.key(),
+		Fields.SENDER.key(), Fields.TYPE.key(), Fields.AUTHOR.key(),
+		Fields.LAST_MODIFIED.key(), Fields.DATE.key());
+	
 	private final Document luceneDoc;
 	private final float score;
 	private final Query query;
@@ -239,10 +254,13 @@ public final class ResultDocument {
 	
 	// Should be run in a thread
 	// thrown parse exception has localized error message
+	// if canceled, the returned string has no highlighting
 	@NotNull
-	public HighlightedString getHighlightedText() throws ParseException,
-			FileNotFoundException, CheckedOutOfMemoryError {
-		return HighlightService.highlight(query, isPhraseQuery, getText());
+	public HighlightedString getHighlightedText(@NotNull Cancelable cancelable)
+			throws ParseException, FileNotFoundException,
+			CheckedOutOfMemoryError {
+		return HighlightService.highlight(
+			query, isPhraseQuery, getText(), cancelable);
 	}
 	
 	// should be run in a thread
@@ -252,6 +270,11 @@ public final class ResultDocument {
 		// TODO i18n of error messages
 		onlyFiles();
 		Util.checkNotNull(pageHandler);
+		final Cancelable cancelable = new Cancelable() {
+			public boolean isCanceled() {
+				return pageHandler.isStopped();
+			}
+		};
 		FileResource fileResource = null;
 		try {
 			fileResource = getFileResource();
@@ -260,7 +283,7 @@ public final class ResultDocument {
 					HighlightedString string;
 					try {
 						string = HighlightService.highlight(
-								query, isPhraseQuery, pageText
+								query, isPhraseQuery, pageText, cancelable
 						);
 					}
 					catch (CheckedOutOfMemoryError e) {
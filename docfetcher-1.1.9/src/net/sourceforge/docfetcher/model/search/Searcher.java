@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -36,17 +37,18 @@ import net.sourceforge.docfetcher.model.index.IndexingConfig;
 import net.sourceforge.docfetcher.model.index.file.FileFactory;
 import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
 import net.sourceforge.docfetcher.model.parse.Parser;
+import net.sourceforge.docfetcher.model.search.ReaderManager.ReaderSet;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Event;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.ImmutableCopy;
+import net.sourceforge.docfetcher.util.annotations.MutableCopy;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.NotThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 import net.sourceforge.docfetcher.util.collect.AlphanumComparator;
-import net.sourceforge.docfetcher.util.collect.LazyList;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
@@ -54,7 +56,6 @@ import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.ChainedFilter;
 import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MultiSearcher;
 import org.apache.lucene.search.MultiTermQuery;
@@ -63,7 +64,6 @@ import org.apache.lucene.search.NumericRangeFilter;
 import org.apache.lucene.search.PrefixFilter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.Searchable;
 import org.apache.lucene.search.TermsFilter;
 import org.apache.lucene.search.TopDocs;
 
@@ -110,9 +110,85 @@ public final class Searcher {
 		}
 	}
 	
+	/**
+	 * The hits of a search, ordered by decreasing score. Only the Lucene
+	 * document numbers and the scores of the hits are kept in memory; the
+	 * stored fields are loaded on demand via {@link #getResults(int, int)}.
+	 * <p>
+	 * The document numbers are only valid for the Lucene searcher that was in
+	 * use when the search was run. Since indexes may be deleted after the
+	 * search, the hits can't be loaded anymore once that searcher has been
+	 * replaced, e.g. after an index update or the removal of an index.
+	 */
+	public static final class ResultCursor {
+		private final Searcher searcher;
+		private final MultiSearcher luceneSearcher;
+		private final List<LuceneIndex> indexes;
+		private final Query query;
+		private final boolean isPhraseQuery;
+		private final int[] docIds;
+		private final float[] scores;
+		
+		private ResultCursor(	@NotNull Searcher searcher,
+								@NotNull Query query,
+								boolean isPhraseQuery,
+								@NotNull ScoreDoc[] scoreDocs) {
+			this.searcher = searcher;
+			this.luceneSearcher = searcher.luceneSearcher;
+			this.indexes = searcher.indexes;
+			this.query = query;
+			this.isPhraseQuery = isPhraseQuery;
+			docIds = new int[scoreDocs.length];
+			scores = new float[scoreDocs.length];
+			for (int i = 0; i < scoreDocs.length; i++) {
+				docIds[i] = scoreDocs[i].doc;
+				scores[i] = scoreDocs[i].score;
+			}
+		}
+		
+		/** Returns the total number of hits. */
+		public int getResultCount() {
+			return docIds.length;
+		}
+		
+		/**
+		 * Loads and returns the hits from index <tt>start</tt> (inclusive) to
+		 * <tt>end</tt> (exclusive).
+		 * 
+		 * @throws SearchException
+		 *             If the hits can't be loaded anymore because the Lucene
+		 *             searcher has been replaced since the search was run.
+		 */
+		@ImmutableCopy
+		@NotNull
+		@ThreadSafe
+		public List<ResultDocument> getResults(int start, int end)
+				throws SearchException, CheckedOutOfMemoryError {
+			List<ResultDocument> results = searcher.loadResults(this, start, end);
+			if (results == null)
+				throw new SearchException("The indexes have changed since the search was run. Please repeat the search."); // TODO i18n
+			return results;
+		}
+	}
+	
 	private static final int PAGE_SIZE = ProgramConf.Int.WebInterfacePageSize.get();
 	public static final int MAX_RESULTS = ProgramConf.Int.MaxResultsTotal.get();
 	
+	/**
+	 * The number of results that are loaded at once when all results of a
+	 * search are requested. The registry read lock is released between these
+	 * windows, so that index updates aren't blocked for too long.
+	 */
+	private static final int LOAD_WINDOW_SIZE = 500;
+	
+	/**
+	 * The number of times a search is run with intermittent releasing of the
+	 * read lock before giving up and loading all results while holding the
+	 * read lock. Retries are necessary if the Lucene searcher is replaced
+	 * while the results are being loaded.
+	 */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+	
 	private final IndexRegistry indexRegistry;
 	private final FileFactory fileFactory;
 	private final OutlookMailFactory outlookMailFactory;
@@ -123,6 +199,10 @@ public final class Searcher {
 	
 	@NotNull private MultiSearcher luceneSearcher; // guarded by read-write lock
 	@NotNull private List<LuceneIndex> indexes; // guarded by read-write lock
+	@NotNull private ReaderSet readerSet; // guarded by read-write lock
+	
+	private final ReaderManager readerManager; // guarded by replaceLock
+	private final Object replaceLock = new Object();
 	@Nullable private volatile IOException ioException;
 	
 	private final Lock readLock;
@@ -149,6 +229,7 @@ public final class Searcher {
 		
 		readLock = indexRegistry.getReadLock();
 		writeLock = indexRegistry.getWriteLock();
+		readerManager = new ReaderManager(createWarmUpQueries());
 		
 		// Handler for index additions
 		addedListener = new Event.Listener<LuceneIndex>() {
@@ -159,24 +240,30 @@ public final class Searcher {
 		
 		/*
 		 * This lock could be moved into the indexes handler, but we'll put it
-		 * here to avoid releasing and reacquiring it.
+		 * here to avoid releasing and reacquiring it. The replace lock must be
+		 * acquired first, as in replaceLuceneSearcher().
 		 */
-		writeLock.lock();
-		try {
-			indexRegistry.addListeners(new ExistingIndexesHandler() {
-				// Handle existing indexes
-				public void handleExistingIndexes(List<LuceneIndex> indexes) {
-					try {
-						corruptedIndexes.addAll(setLuceneSearcher(indexes));
-					}
-					catch (IOException e) {
-						ioException = e;
+		synchronized (replaceLock) {
+			writeLock.lock();
+			try {
+				indexRegistry.addListeners(new ExistingIndexesHandler() {
+					// Handle existing indexes
+					public void handleExistingIndexes(List<LuceneIndex> indexes) {
+						ReaderSet newReaderSet = readerManager.update(indexes);
+						corruptedIndexes.addAll(newReaderSet.corruptedIndexes);
+						try {
+							setLuceneSearcher(newReaderSet);
+						}
+						catch (IOException e) {
+							newReaderSet.release();
+							ioException = e;
+						}
 					}
-				}
-			}, addedListener, null); // removedListener is null, see deletion thread below
-		}
-		finally {
-			writeLock.unlock();
+				}, addedListener, null); // removedListener is null, see deletion thread below
+			}
+			finally {
+				writeLock.unlock();
+			}
 		}
 		
 		if (ioException != null)
@@ -204,44 +291,63 @@ public final class Searcher {
 	/**
 	 * Updates the cached indexes and replaces the current Lucene searcher with
 	 * a new one.
+	 * <p>
+	 * Index readers are not recreated from scratch: Readers of unmodified
+	 * indexes are reused, and readers of modified indexes are reopened, so
+	 * that only new segments have to be loaded. The new readers are prepared
+	 * and warmed up before the write lock is acquired, so that ongoing
+	 * searches are only blocked for the actual swap. The old readers are
+	 * closed after the swap, unless they're still in use by the new searcher.
 	 */
 	@ThreadSafe
 	@VisibleForPackageGroup
 	public void replaceLuceneSearcher() {
-		writeLock.lock();
-		try {
-			Closeables.close(luceneSearcher, false);
-			setLuceneSearcher(indexRegistry.getIndexes());
-		}
-		catch (IOException e) {
-			ioException = e; // Will be thrown later
-		}
-		finally {
-			writeLock.unlock();
+		synchronized (replaceLock) {
+			ReaderSet newReaderSet = readerManager.update(indexRegistry.getIndexes());
+			ReaderSet oldReaderSet;
+			writeLock.lock();
+			try {
+				oldReaderSet = readerSet;
+				Closeables.close(luceneSearcher, false); // Doesn't close the readers
+				setLuceneSearcher(newReaderSet);
+			}
+			catch (IOException e) {
+				newReaderSet.release();
+				ioException = e; // Will be thrown later
+				return;
+			}
+			finally {
+				writeLock.unlock();
+			}
+			
+			/*
+			 * Searches that are still running on the old readers hold the read
+			 * lock, so at this point no one is using the old readers anymore.
+			 */
+			oldReaderSet.release();
 		}
 	}
 	
-	// Caller must close returned searcher
-	@NotNull
 	@NotThreadSafe
-	private List<CorruptedIndex> setLuceneSearcher(@NotNull List<LuceneIndex> indexes)
+	private void setLuceneSearcher(@NotNull ReaderSet readerSet)
 			throws IOException {
-		this.indexes = Util.checkNotNull(indexes);
-        Searchable[] searchables = new Searchable[indexes.size()];
-        LazyList<CorruptedIndex> corrupted = new LazyList<CorruptedIndex>();
-		for (int i = 0; i < indexes.size(); i++) {
-			LuceneIndex index = indexes.get(i);
-            try {
-                searchables[i] = new IndexSearcher(index.getLuceneDir());
-            }
-            catch (IOException e) {
-            	Util.printErr(e);
-                searchables[i] = new DummySearchable();
-                corrupted.add(new CorruptedIndex(index, e));
-            }
-        }
-        luceneSearcher = new MultiSearcher(searchables);
-        return corrupted;
+		luceneSearcher = readerSet.createSearcher();
+		indexes = readerSet.indexes;
+		this.readerSet = readerSet;
+	}
+	
+	@NotNull
+	private static List<Query> createWarmUpQueries() {
+		List<Query> queries = new ArrayList<Query>();
+		for (String queryString : ProgramConf.StrList.SearcherWarmUpQueries.get()) {
+			try {
+				queries.add(createQuery(queryString).query);
+			}
+			catch (SearchException e) {
+				Util.printErr(e);
+			}
+		}
+		return queries;
 	}
 	
 	@ImmutableCopy
@@ -258,41 +364,41 @@ public final class Searcher {
 		
 		// Create Lucene query
 		QueryWrapper queryWrapper = createQuery(queryString);
-		Query query = queryWrapper.query;
-		boolean isPhraseQuery = queryWrapper.isPhraseQuery;
-		
+		return Collections.unmodifiableList(loadAll(
+			queryWrapper.query, null, queryWrapper.isPhraseQuery));
+	}
+	
+	/**
+	 * Runs a search for the given query and returns a cursor for loading the
+	 * hits page by page. The registry read lock is only held while the hits
+	 * are collected.
+	 */
+	@NotNull
+	@ThreadSafe
+	public ResultCursor openCursor(@NotNull String queryString)
+			throws SearchException, CheckedOutOfMemoryError {
+		QueryWrapper queryWrapper = createQuery(queryString);
+		return openCursor(queryWrapper.query, null, queryWrapper.isPhraseQuery);
+	}
+	
+	@NotNull
+	@ThreadSafe
+	private ResultCursor openCursor(@NotNull Query query,
+									@Nullable Filter filter,
+									boolean isPhraseQuery)
+			throws SearchException, CheckedOutOfMemoryError {
 		/*
-		 * Notes regarding the following code:
-		 * 
-		 * 1) Lucene will throw an IOException if the user deletes one or more
+		 * Lucene will throw an IOException if the user deletes one or more
 		 * indexes while a search is running over the affected indexes. This can
 		 * happen when two DocFetcher instances are running.
-		 * 
-		 * 2) All the information needed for displaying the results must be
-		 * loaded and returned immediately rather than lazily, because after the
-		 * search the user might delete one or more indexes. This also means the
-		 * result documents must not access the indexes later on.
 		 */
-
 		readLock.lock();
 		try {
 			checkIndexesExist();
 			
 			// Perform search; might throw OutOfMemoryError
-			ScoreDoc[] scoreDocs = luceneSearcher.search(query, MAX_RESULTS).scoreDocs;
-
-			// Create result documents
-			ResultDocument[] results = new ResultDocument[scoreDocs.length];
-			for (int i = 0; i < scoreDocs.length; i++) {
-				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
-				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(luceneSearcher.subSearcher(i));
-				IndexingConfig config = index.getConfig();
-				results[i] = new ResultDocument(
-					doc, score, query, isPhraseQuery, config, fileFactory,
-					outlookMailFactory);
-			}
-			return Arrays.asList(results);
+			ScoreDoc[] scoreDocs = luceneSearcher.search(query, filter, MAX_RESULTS).scoreDocs;
+			return new ResultCursor(this, query, isPhraseQuery, scoreDocs);
 		}
 		catch (IllegalArgumentException e) {
 			throw wrapEmptyIndexException(e);
@@ -308,6 +414,96 @@ public final class Searcher {
 		}
 	}
 	
+	/**
+	 * Loads the given range of hits of the given cursor. Returns null if the
+	 * cursor is stale, i.e. if the Lucene searcher has been replaced since the
+	 * cursor was created.
+	 */
+	@Nullable
+	@ThreadSafe
+	private List<ResultDocument> loadResults(	@NotNull ResultCursor cursor,
+												int start,
+												int end)
+			throws SearchException, CheckedOutOfMemoryError {
+		Util.checkThat(0 <= start && start <= end && end <= cursor.docIds.length);
+		
+		/*
+		 * All the information needed for displaying the results must be
+		 * loaded here rather than lazily by the result documents, because
+		 * after the search the user might delete one or more indexes. This
+		 * also means the result documents must not access the indexes later
+		 * on.
+		 */
+		readLock.lock();
+		try {
+			if (cursor.luceneSearcher != luceneSearcher)
+				return null;
+			checkIndexesExist();
+			
+			ResultDocument[] results = new ResultDocument[end - start];
+			for (int i = start; i < end; i++) {
+				int docId = cursor.docIds[i];
+				Document doc = luceneSearcher.doc(docId, ResultDocument.fieldSelector);
+				LuceneIndex index = cursor.indexes.get(luceneSearcher.subSearcher(docId));
+				IndexingConfig config = index.getConfig();
+				results[i - start] = new ResultDocument(
+					doc, cursor.scores[i], cursor.query, cursor.isPhraseQuery,
+					config, fileFactory, outlookMailFactory);
+			}
+			return Arrays.asList(results);
+		}
+		catch (IOException e) {
+			throw new SearchException(e.getMessage()); // TODO i18n
+		}
+		catch (OutOfMemoryError e) {
+			throw new CheckedOutOfMemoryError(e);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	/**
+	 * Runs a search and loads all of its results. The results are loaded in
+	 * windows, and the read lock is released between the windows. If the
+	 * Lucene searcher is replaced in the meantime, the search is repeated.
+	 */
+	@MutableCopy
+	@NotNull
+	@ThreadSafe
+	private List<ResultDocument> loadAll(	@NotNull Query query,
+											@Nullable Filter filter,
+											boolean isPhraseQuery)
+			throws SearchException, CheckedOutOfMemoryError {
+		for (int attempt = 1; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+			ResultCursor cursor = openCursor(query, filter, isPhraseQuery);
+			int count = cursor.getResultCount();
+			List<ResultDocument> results = new ArrayList<ResultDocument>(count);
+			for (int start = 0; start < count; start += LOAD_WINDOW_SIZE) {
+				int end = Math.min(count, start + LOAD_WINDOW_SIZE);
+				List<ResultDocument> window = loadResults(cursor, start, end);
+				if (window == null) {
+					results = null;
+					break;
+				}
+				results.addAll(window);
+			}
+			if (results != null)
+				return results;
+		}
+		
+		// Last attempt: Hold the read lock until all results are loaded
+		readLock.lock();
+		try {
+			ResultCursor cursor = openCursor(query, filter, isPhraseQuery);
+			int count = cursor.getResultCount();
+			return new ArrayList<ResultDocument>(loadResults(cursor, 0, count));
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
 	@NotNull
 	private static SearchException wrapEmptyIndexException(@NotNull IllegalArgumentException e)
 			throws SearchException {
@@ -337,48 +533,17 @@ public final class Searcher {
 			uidFilter.addTerm(new Term(fieldName, uid));
 		
 		Query query = new MatchAllDocsQuery();
+		List<ResultDocument> results = loadAll(query, uidFilter, true);
 		
-		readLock.lock();
-		try {
-			checkIndexesExist();
-			
-			// Perform search; might throw OutOfMemoryError
-			ScoreDoc[] scoreDocs = luceneSearcher.search(query, uidFilter, MAX_RESULTS).scoreDocs;
-			
-			// Create result documents
-			ResultDocument[] results = new ResultDocument[scoreDocs.length];
-			for (int i = 0; i < results.length; i++) {
-				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
-				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(luceneSearcher.subSearcher(i));
-				IndexingConfig config = index.getConfig();
-				results[i] = new ResultDocument(
-					doc, score, query, true, config, fileFactory,
-					outlookMailFactory);
+		// Sort results by title
+		Collections.sort(results, new Comparator<ResultDocument>() {
+			public int compare(ResultDocument o1, ResultDocument o2) {
+				return AlphanumComparator.ignoreCaseInstance.compare(
+					o1.getTitle(), o2.getTitle());
 			}
-			
-			// Sort results by title
-			Arrays.sort(results, new Comparator<ResultDocument>() {
-				public int compare(ResultDocument o1, ResultDocument o2) {
-					return AlphanumComparator.ignoreCaseInstance.compare(
-						o1.getTitle(), o2.getTitle());
-				}
-			});
-			
-			return Arrays.asList(results);
-		}
-		catch (IllegalArgumentException e) {
-			throw wrapEmptyIndexException(e);
-		}
-		catch (IOException e) {
-			throw new SearchException(e.getMessage()); // TODO i18n
-		}
-		catch (OutOfMemoryError e) {
-			throw new CheckedOutOfMemoryError(e);
-		}
-		finally {
-			readLock.unlock();
-		}
+		});
+		
+		return Collections.unmodifiableList(results);
 	}
 	
 	/**
@@ -461,9 +626,10 @@ public final class Searcher {
 			// Create and fill list of result documents to return
 			ResultDocument[] results = new ResultDocument[end - start];
 			for (int i = start; i < end; i++) {
-				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
+				int docId = scoreDocs[i].doc;
+				Document doc = luceneSearcher.doc(docId, ResultDocument.fieldSelector);
 				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(luceneSearcher.subSearcher(i));
+				LuceneIndex index = indexes.get(luceneSearcher.subSearcher(docId));
 				IndexingConfig config = index.getConfig();
 				results[i - start] = new ResultDocument(
 					doc, score, query, isPhraseQuery, config, fileFactory,
@@ -578,6 +744,10 @@ public final class Searcher {
 		finally {
 			writeLock.unlock();
 		}
+		synchronized (replaceLock) {
+			readerManager.clear();
+			readerSet.release();
+		}
 		
 		/*
 		 * This should be done after closing the Lucene searcher in order to
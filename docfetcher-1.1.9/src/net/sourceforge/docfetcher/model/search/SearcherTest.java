@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.HotColdFileCache;
+import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.index.file.FileFactory;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
+import net.sourceforge.docfetcher.model.search.ReaderManager.ReaderSet;
+import net.sourceforge.docfetcher.model.search.Searcher.ResultCursor;
+import net.sourceforge.docfetcher.util.AppUtil;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MultiSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class SearcherTest {
+
+	static {
+		AppUtil.Const.autoInit();
+	}
+
+	private static final int FILE_COUNT = 1234;
+
+	@Test
+	public void testResultCursor() throws Exception {
+		File root = Util.createTempDir();
+		for (int i = 0; i < FILE_COUNT; i++) {
+			File file = new File(root, "file" + i + ".txt");
+			Files.write("lorem ipsum " + i, file, Charsets.UTF_8);
+		}
+
+		/*
+		 * Set the index path override, otherwise the index directory would be
+		 * stored relative to the working directory in portable mode.
+		 */
+		File indexParentDir = Util.createTempDir();
+		IndexRegistry.indexPathOverride = indexParentDir;
+		try {
+			IndexRegistry registry = new IndexRegistry(indexParentDir, 10, 10);
+			FileIndex index = new FileIndex(indexParentDir, root);
+			index.update(null, null);
+			registry.addIndex(index);
+
+			HotColdFileCache cache = new HotColdFileCache(10);
+			Searcher searcher = new Searcher(
+				registry, new FileFactory(cache),
+				new OutlookMailFactory(cache), new ArrayList<CorruptedIndex>());
+			try {
+				// Load hits page by page
+				ResultCursor cursor = searcher.openCursor("lorem");
+				assertEquals(FILE_COUNT, cursor.getResultCount());
+				Set<String> filenames = new HashSet<String>();
+				for (int start = 0; start < FILE_COUNT; start += 100) {
+					int end = Math.min(FILE_COUNT, start + 100);
+					for (ResultDocument doc : cursor.getResults(start, end))
+						filenames.add(doc.getFilename());
+				}
+				assertEquals(FILE_COUNT, filenames.size());
+
+				// Load all hits at once
+				List<ResultDocument> results = searcher.search("ipsum");
+				assertEquals(FILE_COUNT, results.size());
+				assertEquals(1, searcher.search("file7.txt").size());
+
+				// Cursor becomes stale when the Lucene searcher is replaced
+				searcher.replaceLuceneSearcher();
+				try {
+					cursor.getResults(0, 10);
+					fail();
+				}
+				catch (SearchException e) {
+				}
+				assertEquals(10, searcher.openCursor("lorem").getResults(0, 10).size());
+			}
+			finally {
+				searcher.shutdown();
+			}
+		}
+		finally {
+			IndexRegistry.indexPathOverride = null;
+		}
+	}
+
+	@Test
+	public void testReaderReuse() throws Exception {
+		File root1 = Util.createTempDir();
+		File root2 = Util.createTempDir();
+		Files.write("lorem ipsum", new File(root1, "file1.txt"), Charsets.UTF_8);
+		Files.write("lorem ipsum", new File(root2, "file2.txt"), Charsets.UTF_8);
+
+		File indexParentDir = Util.createTempDir();
+		IndexRegistry.indexPathOverride = indexParentDir;
+		try {
+			FileIndex index1 = new FileIndex(indexParentDir, root1);
+			FileIndex index2 = new FileIndex(indexParentDir, root2);
+			index1.update(null, null);
+			index2.update(null, null);
+			List<LuceneIndex> indexes = new ArrayList<LuceneIndex>();
+			indexes.add(index1);
+			indexes.add(index2);
+
+			List<Query> warmUpQueries = new ArrayList<Query>();
+			warmUpQueries.add(new TermQuery(new Term(Fields.CONTENT.key(), "lorem")));
+			ReaderManager readerManager = new ReaderManager(warmUpQueries);
+			ReaderSet oldSet = readerManager.update(indexes);
+			IndexReader oldReader1 = oldSet.getReader(0);
+			IndexReader oldReader2 = oldSet.getReader(1);
+
+			// Only the reader of the modified index is replaced
+			Files.write("lorem", new File(root2, "file3.txt"), Charsets.UTF_8);
+			index2.update(null, null);
+			ReaderSet newSet = readerManager.update(indexes);
+			assertSame(oldReader1, newSet.getReader(0));
+			assertNotSame(oldReader2, newSet.getReader(1));
+			assertEquals(2, newSet.getReader(1).numDocs());
+
+			// Old set remains usable until it is released
+			assertEquals(1, oldReader2.numDocs());
+			oldSet.release();
+			assertEquals(0, oldReader2.getRefCount());
+			assertEquals(1, oldReader1.getRefCount());
+
+			MultiSearcher searcher = newSet.createSearcher();
+			assertEquals(3, searcher.search(warmUpQueries.get(0), 10).totalHits);
+			searcher.close();
+			assertEquals(1, oldReader1.getRefCount());
+
+			readerManager.clear();
+			newSet.release();
+			assertEquals(0, oldReader1.getRefCount());
+		}
+		finally {
+			IndexRegistry.indexPathOverride = null;
+		}
+	}
+
+}
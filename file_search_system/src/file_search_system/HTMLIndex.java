@@ -272,6 +272,8 @@ public class HTMLIndex {
 			fsIndexWriter.flush();
 			fsIndexWriter.optimize();
 			fsIndexWriter.close();
+			//ùµ
+			SearcherHolder.getInstance(htmlIndexPath).refresh();
 			// һʱ
 			long endTime = new Date().getTime();
 
@@ -66,7 +66,7 @@ public class HTMLSearch {
 			else
 				query = queryParser.parse(queryString);
 
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 
 			long stime = (new Date()).getTime();
 			topDocs = indexSearcher.search(query, indexSearcher.maxDoc());//, sort);
@@ -74,9 +74,10 @@ public class HTMLSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 		return topDocs;
 	}
@@ -92,7 +93,7 @@ public class HTMLSearch {
 			Query query = null;
 			query = queryParser.parse(queryString);
 
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 
 			//				 ============== ׼
 			Formatter formatter = new SimpleHTMLFormatter("<font color='red'><strong>", "</strong></font>");
@@ -151,9 +152,10 @@ public class HTMLSearch {
 				recordList.add(doc);
 
 			}
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 
 		return recordList;
@@ -199,7 +201,7 @@ public class HTMLSearch {
 		IndexSearcher indexSearcher = null;
 		try {
 			//òѯ
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 			QueryParser queryParser = null;//= new QueryParser(field, analyzer);
 			BooleanQuery boolQuery = new BooleanQuery();
 			Query query = null;
@@ -220,9 +222,10 @@ public class HTMLSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 
 		return topDocs;
@@ -235,7 +238,7 @@ public class HTMLSearch {
 		IndexSearcher indexSearcher = null;
 
 		try {
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 			QueryParser queryParser = null;//= new QueryParser(field, analyzer);
 			BooleanQuery boolQuery = new BooleanQuery();
 			Query query = null;
@@ -313,9 +316,10 @@ public class HTMLSearch {
 
 				recordList.add(doc);
 			}
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 
 		return recordList;
@@ -327,7 +331,7 @@ public class HTMLSearch {
 		TopDocs topDocs = null;
 		IndexSearcher indexSearcher = null;
 		try {
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 
 			Map<String, Float> boosts = new HashMap<String, Float>();
 			for (int i = 0; i < field.length; i++)
@@ -345,9 +349,10 @@ public class HTMLSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 
 		return topDocs;
@@ -360,7 +365,7 @@ public class HTMLSearch {
 		IndexSearcher indexSearcher = null;
 
 		try {
-			indexSearcher = new IndexSearcher(htmlIndexpath);
+			indexSearcher = SearcherHolder.getInstance(htmlIndexpath).acquire();
 			//QueryParser queryParser=null;//= new QueryParser(field, analyzer);
 			//BooleanQuery boolQuery=new BooleanQuery();
 			Map<String, Float> boosts = new HashMap<String, Float>();
@@ -435,6 +440,8 @@ public class HTMLSearch {
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(htmlIndexpath).release(indexSearcher);
 		}
 
 		return recordList;
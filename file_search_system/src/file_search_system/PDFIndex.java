@@ -1,21 +1,41 @@
 package file_search_system;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.IndexWriter.MaxFieldLength;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.util.PDFTextStripper;
 
@@ -25,464 +45,67 @@ import org.apache.pdfbox.util.PDFTextStripper;
  */
 public class PDFIndex {
 
-	int flag = 0;// ȫֵָ
-
 	Analyzer analyzer = new StandardAnalyzer();
 
 	String pdfIndexPath = "pdfIndexes";
 
-	String pdfFilePath = "E:\\hfz\\ִϢ\\TopConferences\\SIGIR\\pdf\\SIGIR";
+	String segmentCachePath = "pdfSegmentCache";// MD5ķֶν
 
-	/**
-	 * ȡļķ ڵʽΪWhile not matching (Author infomation)and (lineNum<=3) add to TILE
-	 */
-	public Document getTile(String fullContent, Document doc) {
-		// System.out.println(" ");
-		int count1 = 0;
-		int count2 = 0;
-		// int lineNum = 0;
-		String temTile1, temTitle2, title = null;
-		boolean bool = false;
-		for (int i = 0; i < 2; i++) {
-			if (i == 0) {
-				char temp = fullContent.charAt(flag);
-				while (temp == ' ' || temp == '\n' || temp == '\r') {
-					flag++;
-					// System.out.println(flag);
-					temp = fullContent.charAt(flag);
-				}
-				count1 = flag;
-				// System.out.println(temp);
-				while (temp != '\n') {
-					flag++;
-					// System.out.println(flag);
-					temp = fullContent.charAt(flag);
-				}
-				title = fullContent.substring(count1, flag - 1);
-				title = title + " ";
-				// System.out.println("herre"+title);
-				flag++;
-				count1 = flag;
-			} else {
-
-				char temp = fullContent.charAt(flag);
-				while (temp != '\n') {
-					flag++;
-					// System.out.println(flag);
-					temp = fullContent.charAt(flag);
-					// System.out.println("here");
-				}
-				temTile1 = fullContent.substring(count1, flag);
-				flag++;
-				count2 = flag;
-				// System.out.println(temTile1);
-				char dtemp = fullContent.charAt(flag);
-				// System.out.println(dtemp);
-				while (dtemp != '\n') {
-					flag++;
-					// System.out.println(flag);
-					dtemp = fullContent.charAt(flag);
-					// System.out.println("2");
+	private static final double RAM_BUFFER_SIZE_MB = 32;// IndexWriterڴ滺С˾д
 
-				}
-				temTitle2 = fullContent.substring(count2, flag + 1);
-				// System.out.println(temTitle2);
-				// System.out.println("hehheheh");
-				// System.out.println(temTitle2.trim());
-				flag++;
-				if (isInstituteInfo(temTitle2) || isAbstractInfo(temTitle2) || isAddressInfo(temTitle2) || isEmailInfo(temTitle2)) {
-					bool = true;
-				}
-				if (!bool) {
-					title = title + temTile1;
-					flag = count2;
-					// System.out.println(content.charAt(flag));
-				} else {
-					flag = count1;
-					// System.out.println(content.charAt(flag));
-				}
-			}
-
-		}
-		doc.add(new Field("title", title, Store.YES, Index.ANALYZED));
-		// System.out.println(":" + title);
-		return doc;
-	}
-
-	/**
-	 * ȡķ ڵʽΪ((Creatorname)*(creatorname))RT (creatorAfflition)RT ܸʱûʵ
-	 */
-
-	/**
-	 * ȡժҪķ ժҪϢϢ档жժҪϢĸ£ A. 'Abstract'+Description û: B B.Overview+Description ժҪֻһλεݣжժҪȡ Բ°취
-	 * һУֻسͻзôժҪͳȡ Ϊֹ һɹؼKeywordsCategories and Subject DescriptorsGeneral Terms Digital. INTRODUCTION
-	 */
-	public Document getAbstract(String fullContent, Document doc) {
-		int maxlength = 0;
-		boolean bool = false;
-		int count = flag;
-		int num = 0;
-		int numAthor = 0;
-		int startPoint;
-		char testChar = fullContent.charAt(flag);
-		maxlength++;
-		String abstractString;
-		boolean endFlag = true;
-		// System.out.println("here: "+testChar);
-		String testTerm = null;
-		String testLine = null;
-		while (testChar == ' ' || testChar == '\n' || testChar == '\r') {
-			bool = true;
-			flag++;
-			testChar = fullContent.charAt(flag);
-			maxlength++;
-		}
-		if (bool) {
-			count = flag;
-			bool = false;
-		}
-		while (testChar != ' ' && testChar != '\n') {
-			flag++;
-			maxlength++;
-			testChar = fullContent.charAt(flag);
-
-		}
-		testTerm = fullContent.substring(count, flag);
-		// System.out.println("here: "+testTerm);
-		flag++;
-		maxlength++;
-		count = flag;
-		testChar = fullContent.charAt(flag);
-		while (!testTerm.trim().equalsIgnoreCase("ABSTRACT")) {
-			while (testChar == ' ' || testChar == '\n' || testChar == '\r') {
-				bool = true;
-				flag++;
-				maxlength++;
-
-				if (flag >= fullContent.length())
-					break;
-				testChar = fullContent.charAt(flag);
-			}
-			if (flag >= fullContent.length())
-				break;
-			if (bool) {
-				count = flag;
-				bool = false;
-			}
-			while (testChar != ' ' && testChar != '\n') {
-				flag++;
-				maxlength++;
-				testChar = fullContent.charAt(flag);
-				// System.out.println("22222: "+(int)testChar);
-			}
-			testTerm = fullContent.substring(count, flag);
-			// System.out.println("here1: "+testTerm);
-			// flag++;
-			// count=flag;
-			// testChar = content.charAt(flag);
-			// System.out.println("11111: "+(int)testChar);
-		}
-		// System.out.println("11111: "+testChar);
-		startPoint = count;
-		// System.out.println("11111: "+content.charAt(startPoint));
-		while (endFlag)
-		// for(int i=0;i<22;i++)
-		{
-			// System.out.println("----------:"+content.length()+"vs"+flag);
-			if (flag >= fullContent.length())
-				break;
-			flag++;
-			count = flag;
-			if (flag >= fullContent.length())
-				break;
-			testChar = fullContent.charAt(flag);
-			while (testChar == ' ' || testChar == '\n' || testChar == '\r') {
-				bool = true;
-				flag++;
-				if (flag >= fullContent.length())
-					break;
-				testChar = fullContent.charAt(flag);
-			}
-			if (flag >= fullContent.length())
-				break;
-			if (bool) {
-				count = flag;
-				bool = false;
-			}
-			while (testChar != '\n') {
-				flag++;
-				if (flag >= fullContent.length())
-					break;
-				testChar = fullContent.charAt(flag);
-			}
-			if (flag >= fullContent.length())
-				break;
-			testLine = fullContent.substring(count, flag);
-			// System.out.println("11111----------: "+testLine);
-			endFlag = isAbstractEnd(testLine);
-		}
-		abstractString = fullContent.substring(startPoint, count);
-		doc.add(new Field("abstract", abstractString, Store.YES, Index.ANALYZED));
-		// System.out.println("-----------------ժҪ:"+abstractString);
-		flag = count;
-		return doc;
-	}
-
-	/**
-	 * ĵ ȡժҪԺȫȡ
-	 */
-	public Document getContent(String fullContent, Document doc) {
-		// System.out.println("*************:"+content.charAt(flag));
-		int count = 0;
-		char testChar;
-		boolean endFlag = true;
-		boolean bool = false;
-		String testLine;
-		String contentLine;
-		int startPoint = flag--;
-		while (endFlag)
-		// for(int i=0;i<22;i++)
-		{
-			// System.out.println("----------:"+content.length()+"vs"+flag);
-			if (flag >= fullContent.length())
-				break;
-			flag++;
-			count = flag;
-			if (flag >= fullContent.length())
-				break;
-			testChar = fullContent.charAt(flag);
-			while (testChar == ' ' || testChar == '\n' || testChar == '\r') {
-				bool = true;
-				flag++;
-				if (flag >= fullContent.length())
-					break;
-				testChar = fullContent.charAt(flag);
-			}
-			if (flag >= fullContent.length())
-				break;
-			if (bool) {
-				count = flag;
-				bool = false;
-			}
-			while (testChar != '\n') {
-				flag++;
-				if (flag >= fullContent.length())
-					break;
-				testChar = fullContent.charAt(flag);
-			}
-			if (flag >= fullContent.length())
-				break;
-			testLine = fullContent.substring(count, flag);
-			// System.out.println("11111----------: "+testLine);
-			endFlag = isContentEnd(testLine);
-		}
-		contentLine = fullContent.substring(startPoint, count);
-
-		doc.add(new Field("content", contentLine, Store.YES, Index.ANALYZED));
-		// System.out.println("*************:"+contentLine);
-		return doc;
-	}
-
-	/**
-	 * ȥReference
-	 * 
-	 */
-	public boolean isContentEnd(String testLine) {
-		boolean bool = true;
-		int index = 0;
-		int startPoint = index;
-		String cstring;
-		char testChar;
-		int length = testLine.length();
-		testChar = testLine.charAt(index);
-		if (!Character.isDigit(testChar)) {
-			return bool;
-		} else {
-			index++;
-			startPoint = index;
-			testChar = testLine.charAt(index);
-			while (testChar == ' ' || testChar == '.') {
-				index++;
-				startPoint = index;
-				if (index >= length)
-					break;
-
-				testChar = testLine.charAt(index);
-			}
-			while (testChar != '\n') {
-				index++;
-				if (index >= length)
-					break;
-				testChar = testLine.charAt(index);
-			}
-			cstring = testLine.substring(startPoint, index);
-
-			if (cstring.trim().equalsIgnoreCase("REFERENCES"))
-				bool = false;
-		}
-		return bool;
-	}
-
-	/*
-	 * жǷAbstractĽ
-	 */
-
-	public boolean isAbstractEnd(String testLine) {
-		boolean bool = true;
-		int startPoint = 0;
-		int endPoint = 0;
-		char checkChar;
-		String checkTerm;
-		// 
-
-		String[] check1 = { "Keywords", "Keywords:" };
-		String[] check2 = { "Categories and Subject Descriptors", "Categories & Subject Descriptors" };
-		String[] check3 = { "General Terms", "General Terms:" };
-		String[] check4 = { "Keywords", "Keywords:" };
-		String[] check5 = { "1. INTRODUCTION", "1 INTRODUCTION" };
-		// int length=check1[0].length();
-		/*
-		 * System.out.println("2222:"+length); for(int i=0;i<length;i++) { System.out.println("---------:"+check1[0].charAt(i)); }
-		 */
-		checkChar = testLine.charAt(endPoint);
-		// System.out.println("2222:---------"+testLine);
-		while (checkChar != ':' && checkChar != '\n' && checkChar != '\r') {
-			endPoint++;
-			// System.out.println("4444:"+endPoint);
-			checkChar = testLine.charAt(endPoint);
-			// System.out.println("4444:"+checkChar);
-			// System.out.println("22222: "+(int)testChar);
-		}
-		checkTerm = testLine.substring(startPoint, endPoint);
-		if (checkTerm.trim().equalsIgnoreCase(check1[0]) || checkTerm.trim().equalsIgnoreCase(check2[0])
-				|| checkTerm.trim().equalsIgnoreCase(check2[1]) || checkTerm.trim().equalsIgnoreCase(check3[0])
-				|| checkTerm.trim().equalsIgnoreCase(check4[0]) || checkTerm.trim().equalsIgnoreCase(check5[0])
-				|| checkTerm.trim().equalsIgnoreCase(check5[1])) {
-			// System.out.println("3333:-----------------"+checkTerm);
-			bool = false;
-		}
-		// System.out.println("2222:---------"+bool);
-		return bool;
-	}
-
-	/*
-	 * жǷߵĵλϢ
-	 */
-	public boolean isInstituteInfo(String tempIns) {
-		boolean bool = false;
-		String[] check = { "Department", "Microsoft", "Laboratory", "University", "Research", "Studies", "Center", "Dept.", "Science", "School",
-				"IBM", "Computer", "Federal", "Technical", "Inc.", "Institue" };
-		int posStart = 0;
-		int posEnd = 0;
-		char temp = tempIns.charAt(posStart);
-		String term = null;
-		while (temp != '\n') {
-			while (temp != ' ' && temp != '\n')// temp!='\n'
-			{
-				posStart++;
-				// System.out.println("1:"+temp);
-				// System.out.println("1:"+posStart);
-				temp = tempIns.charAt(posStart);
-				// System.out.println("2:"+posStart);
-			}
-			// System.out.println("here");
-			term = tempIns.substring(posEnd, posStart);
-			// System.out.println("here");
-			for (int i = 0; i < 16; i++) {
-				if (term.trim().equalsIgnoreCase(check[i])) {
-					bool = true;
-					// System.out.println("isInstituteInfo::here");
-					break;
-				}
-			}
-			if (temp != '\n')
-				posStart++;
-			posEnd = posStart;
-			temp = tempIns.charAt(posStart);
-			// System.out.println("here!!");
-		}
+	int threadCount = Runtime.getRuntime().availableProcessors();// ȡPDFı߳
 
-		return bool;
-	}
+	private static final ThreadLocal<PDFTextStripper> textStrippers = new ThreadLocal<PDFTextStripper>();// ÿȡ߳һPDFTextStripper
 
-	/*
-	 * жǷߵĵַϢ
-	 */
-	public boolean isAddressInfo(String tempAddr) {
-		boolean bool = false;
-		String[] check = { "Asia", "Road", "China", "Germany", "Slovenia", "Israel", "U.S.A.", "United Kingdom", "USA", "Australia", "Singapore" };
-		int posStart = 0;
-		int posEnd = 0;
-		char temp = tempAddr.charAt(posStart);
-		String term = null;
-		while (temp != '\n') {
-			while (temp != ' ' && temp != '\n')// temp!='\n'
-			{
-				posStart++;
-				// System.out.println("1:"+posStart);
-				temp = tempAddr.charAt(posStart);
-				// System.out.println("2:"+posStart);
-			}
-			term = tempAddr.substring(posEnd, posStart);
-			// System.out.println(term);
-			for (int i = 0; i < 11; i++) {
-				if (term.trim().equalsIgnoreCase(check[i])) {
-					bool = true;
-					// System.out.println("isAddressInfo::here");
-					break;
-				}
-			}
-			if (temp != '\n')
-				posStart++;
-			posEnd = posStart;
-			temp = tempAddr.charAt(posStart);
-			// System.out.println("here!!");
-		}
-		return bool;
-	}
+	String pdfFilePath = "E:\\hfz\\ִϢ\\TopConferences\\SIGIR\\pdf\\SIGIR";
 
-	/*
-	 * жǷַ
-	 */
-	public boolean isEmailInfo(String tempEmail) {
-		boolean bool = false;
-		int startPos = 0;
-		while (tempEmail.charAt(startPos) != '\n' && tempEmail.charAt(startPos) != ' ') {
-			if (tempEmail.charAt(startPos) == '@') {
-				bool = true;
-				// System.out.println("isEmailInfo::here");
-				break;
-			}
-			startPos++;
-		}
-		return bool;
+	public String createPdfIndex() {
+		return createPdfIndex(false);
 	}
 
 	/*
-	 * жǷʼժҪ
+	 * PDF̲߳еسȡPDFıֱӼͬһIndexWriter
+	 * IndexWriterڴ滺˾д̣ȰRAMDirectoryС
+	 * incrementalΪtrueʱֻµĺ޸ĹPDF޸ʱMD5жϣ
+	 * ɾѲڵPDF󱨸׶εĺʱ
+	 * PDFķֶνMD5segmentCachePathУûиıPDFҪ³ȡͷֶΡ
 	 */
-	public boolean isAbstractInfo(String tempAbstract) {
-		boolean bool = false;
-		return bool;
-	}
-
-
-	public String createPdfIndex() {
+	public String createPdfIndex(boolean incremental) {
 		// String
 		// path="F:\\hfz\\ִϢ\\TopConferences\\SIGIR\\HTML\\SIGIR2002";
 		String path = "";
 
-		String process = "";
-		// Document document=new Document();
-		// File indexDir = new File(pdfIndexPath);
+		StringBuilder process = new StringBuilder();
+		final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicLong extractTime = new AtomicLong();// ȡıʱ䣨֮߳ͣ룩
+		final AtomicLong indexTime = new AtomicLong();// ʱ䣨֮߳ͣ룩
+		final AtomicInteger unchanged = new AtomicInteger();// ޸ʱûиıļ
+		final AtomicInteger sameContent = new AtomicInteger();// ޸ʱıˣMD5ûиıļ
+		final AtomicInteger cacheHits = new AtomicInteger();
+		final Set<String> usedHashes = Collections.synchronizedSet(new HashSet<String>());
+		int submitted = 0;
+		IndexWriter indexWriter = null;
+		ThreadPoolExecutor executor = null;
 		try {
-			Analyzer luceneAnalyzer = new StandardAnalyzer();
-			// Ϊ٣׼ýڴн
-			Directory fsDir = FSDirectory.getDirectory(pdfIndexPath);
-			// 1ʱȡ
-			Directory ramDir = new RAMDirectory(fsDir);
-			// гʱ ramDir
-			IndexWriter ramIndexWriter = new IndexWriter(ramDir, luceneAnalyzer, MaxFieldLength.LIMITED);
+			long startTime = new Date().getTime();
+			Directory fsDir = FSDirectory.open(new File(pdfIndexPath));
+			// ģʽȡļ·޸ʱMD5
+			Map<String, String[]> indexedFiles = null;
+			if (incremental && IndexReader.indexExists(fsDir))
+				indexedFiles = readIndexedFiles(fsDir);
+			final boolean create = indexedFiles == null;
+			if (create)
+				indexedFiles = new HashMap<String, String[]>();
+
+			indexWriter = new IndexWriter(fsDir, analyzer, create, MaxFieldLength.LIMITED);
+			indexWriter.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+			final IndexWriter writer = indexWriter;
+			final File cacheDir = new File(segmentCachePath);
+			cacheDir.mkdirs();
+
+			// ʱɵǰ̳߳ȡڴеPDF޵
+			executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(threadCount * 2), new ThreadPoolExecutor.CallerRunsPolicy());
 
 			int[] No = new int[33];
 			No[0] = 1971;
@@ -490,73 +113,213 @@ public class PDFIndex {
 			for (int i = 2; i <= 32; i++)
 				No[i] = No[i - 1] + 1;
 
-			Document doc = null;
-			InputStream input = null;
-
-			PDDocument pdfDoc = null;
 			File fileDir = null;
 
-			File[] htmlFiles = null;
-
-			PDFTextStripper pts = new PDFTextStripper();
+			File[] pdfFiles = null;
 
-			long startTime = new Date().getTime();
 			for (int j = 0; j < 33; j++) {
 
-				process += "<strong>Year:" + No[j] + "</strong><br>";
+				process.append("<strong>Year:" + No[j] + "</strong><br>");
 				path = pdfFilePath + Integer.toString(No[j]);
 				fileDir = new File(path);
-				htmlFiles = fileDir.listFiles();
-				for (int i = 0; i < htmlFiles.length; i++) {
-					String name = htmlFiles[i].getName();
-					String filePath = htmlFiles[i].getAbsolutePath();
+				pdfFiles = fileDir.listFiles();
+				if (pdfFiles == null)
+					continue;
+				for (int i = 0; i < pdfFiles.length; i++) {
+					String name = pdfFiles[i].getName();
+					final String filePath = pdfFiles[i].getAbsolutePath();
 					// System.out.println(htmlFiles[i].getAbsolutePath());
-					if (htmlFiles[i].isFile() && name.endsWith(".pdf") && name.startsWith("P")) {
-						process += "<p>==No.&nbsp;&nbsp;" + (i + 1) + "" + filePath + "&nbsp;&nbsp;   OK</p>";
-						// System.out.println("===========" + (i + 1) + "ƪϢ=============");
-						// System.out.println(fpath);
-						input = new FileInputStream(filePath);
-						//  pdf ĵ
-						pdfDoc = PDDocument.load(input);
-						String fullContent = pts.getText(pdfDoc);
-						// 
-						doc = new Document();
-						doc = getTile(fullContent, doc);
-						doc = getAbstract(fullContent, doc);
-						doc = getContent(fullContent, doc);
-						System.out.println(doc);
-						ramIndexWriter.addDocument(doc);
-
-						flag = 0;
-						if (null != input)
-							input.close();
-						if (null != pdfDoc)
-							pdfDoc.close();
+					if (pdfFiles[i].isFile() && name.endsWith(".pdf") && name.startsWith("P")) {
+						final File file = pdfFiles[i];
+						final String[] indexedInfo = indexedFiles.remove(filePath);
+						if (indexedInfo != null && indexedInfo[0].equals(Long.toString(file.lastModified()))) {
+							unchanged.incrementAndGet();
+							continue;
+						}
+						process.append("<p>==No.&nbsp;&nbsp;" + (i + 1) + "" + filePath + "&nbsp;&nbsp;   OK</p>");
+						executor.execute(new Runnable() {
+							public void run() {
+								try {
+									String oldMd5 = indexedInfo == null ? null : indexedInfo[1];
+									if (!indexPdf(writer, file, filePath, oldMd5, !create, cacheDir, usedHashes, cacheHits, extractTime, indexTime))
+										sameContent.incrementAndGet();
+								} catch (Exception e) {
+									e.printStackTrace();
+									failures.add(filePath);
+								}
+							}
+						});
+						submitted++;
 					}
 
 				}
 			}
-
-			// optimize()ǶŻ
-			ramIndexWriter.optimize();
-			ramIndexWriter.close();
-			// 2˳ʱ
-			IndexWriter fsIndexWriter = new IndexWriter(pdfIndexPath, luceneAnalyzer, true, MaxFieldLength.LIMITED);
-			fsIndexWriter.addIndexesNoOptimize(new Directory[] { ramDir });
-
-			fsIndexWriter.flush();
-			fsIndexWriter.optimize();
-			fsIndexWriter.close();
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+			// ɾѲڵPDF
+			for (String removedPath : indexedFiles.keySet())
+				indexWriter.deleteDocuments(new Term("path", removedPath));
+			// ؽʱɾʹõķֶλ
+			if (create)
+				deleteUnusedCacheFiles(cacheDir, usedHashes);
+
+			long commitStartTime = new Date().getTime();
+			// optimize()ǶŻʱд
+			if (create)
+				indexWriter.optimize();
+			indexWriter.close();
+			indexWriter = null;
+			//ùµ
+			SearcherHolder.getInstance(pdfIndexPath).refresh();
 			// һʱ
 			long endTime = new Date().getTime();
 
-			process += "It costs " + (endTime - startTime) + "milliseconds to index all the HTML files!";
+			for (String failure : failures)
+				process.append("<p>==Failed:&nbsp;&nbsp;" + failure + "</p>");
+			int indexed = submitted - failures.size() - sameContent.get();
+			process.append("<p>Indexed: " + indexed + ", unchanged: " + (unchanged.get() + sameContent.get()) + ", removed: "
+					+ indexedFiles.size() + ", failed: " + failures.size() + ", segments from cache: " + cacheHits.get() + "</p>");
+			process.append("<p>Extracting text: " + extractTime.get() / 1000000 + " ms, adding to index: " + indexTime.get() / 1000000
+					+ " ms (summed over " + threadCount + " threads), " + (create ? "optimizing and " : "") + "committing: "
+					+ (endTime - commitStartTime) + " ms</p>");
+			process.append("It costs " + (endTime - startTime) + "milliseconds to index all the PDF files!");
 			//System.out.println("⻨" + (endTime - startTime) + " ĵӵȥ!");
 
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
+			if (indexWriter != null) {
+				try {
+					indexWriter.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
 		}
-		return process;
+		return process.toString();
+	}
+
+	/*
+	 * ȡһPDFļı⡢ժҪݣļMD5oldMd5ͬûиı䣬false
+	 * ȻûķֶνдĵԸе޸ʱ䣬´λҪ¶ȡͼMD5
+	 * ͬMD5ķֶνͲٳȡıͷֶ
+	 */
+	private static boolean indexPdf(IndexWriter writer, File file, String filePath, String oldMd5, boolean update, File cacheDir,
+			Set<String> usedHashes, AtomicInteger cacheHits, AtomicLong extractTime, AtomicLong indexTime) throws Exception {
+		long lastModified = file.lastModified();
+		long startTime = System.nanoTime();
+		byte[] content = readFile(file);
+		String md5 = md5(content);
+		boolean changed = !md5.equals(oldMd5);
+		usedHashes.add(md5);
+		File cacheFile = new File(cacheDir, md5 + ".seg");
+		PaperSegmenter.Sections sections = PaperSegmenter.Sections.read(cacheFile);
+		if (sections != null) {
+			cacheHits.incrementAndGet();
+		} else {
+			PDFTextStripper textStripper = textStrippers.get();
+			if (textStripper == null) {
+				textStripper = new PDFTextStripper();
+				textStrippers.set(textStripper);
+			}
+			//  pdf ĵ
+			PDDocument pdfDoc = PDDocument.load(new ByteArrayInputStream(content));
+			String fullContent;
+			try {
+				fullContent = textStripper.getText(pdfDoc);
+			} finally {
+				pdfDoc.close();
+			}
+			sections = PaperSegmenter.segment(fullContent);
+			try {
+				sections.write(cacheFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		// 
+		Document doc = new Document();
+		doc.add(new Field("title", sections.title, Store.YES, Index.ANALYZED));
+		doc.add(new Field("abstract", sections.abstractText, Store.YES, Index.ANALYZED));
+		doc.add(new Field("content", sections.content, Store.YES, Index.ANALYZED));
+		doc.add(new Field("path", filePath, Store.YES, Index.NOT_ANALYZED));
+		doc.add(new Field("modified", Long.toString(lastModified), Store.YES, Index.NO));
+		doc.add(new Field("md5", md5, Store.YES, Index.NO));
+		long extractEndTime = System.nanoTime();
+		extractTime.addAndGet(extractEndTime - startTime);
+
+		if (update)
+			writer.updateDocument(new Term("path", filePath), doc);
+		else
+			writer.addDocument(doc);
+		indexTime.addAndGet(System.nanoTime() - extractEndTime);
+		return changed;
+	}
+
+	/*
+	 * ȡиļ·޸ʱMD5еĵû·ɰ汾null
+	 */
+	private static Map<String, String[]> readIndexedFiles(Directory dir) throws IOException {
+		Map<String, String[]> indexedFiles = new HashMap<String, String[]>();
+		FieldSelector selector = new MapFieldSelector(new String[] { "path", "modified", "md5" });
+		IndexReader reader = IndexReader.open(dir, true);
+		try {
+			for (int i = 0; i < reader.maxDoc(); i++) {
+				if (reader.isDeleted(i))
+					continue;
+				Document doc = reader.document(i, selector);
+				String path = doc.get("path");
+				if (path == null)
+					return null;
+				indexedFiles.put(path, new String[] { doc.get("modified"), doc.get("md5") });
+			}
+		} finally {
+			reader.close();
+		}
+		return indexedFiles;
+	}
+
+	/*
+	 * ɾMD5usedHashesеķֶλļ
+	 */
+	private static void deleteUnusedCacheFiles(File cacheDir, Set<String> usedHashes) {
+		File[] cacheFiles = cacheDir.listFiles();
+		if (cacheFiles == null)
+			return;
+		for (int i = 0; i < cacheFiles.length; i++) {
+			String name = cacheFiles[i].getName();
+			int dot = name.indexOf('.');
+			if (dot < 0 || !usedHashes.contains(name.substring(0, dot)))
+				cacheFiles[i].delete();
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream input = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < bytes.length) {
+				int count = input.read(bytes, offset, bytes.length - offset);
+				if (count < 0)
+					throw new EOFException(file.getPath());
+				offset += count;
+			}
+		} finally {
+			input.close();
+		}
+		return bytes;
+	}
+
+	private static String md5(byte[] bytes) throws NoSuchAlgorithmException {
+		byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < digest.length; i++)
+			sb.append(Integer.toHexString((digest[i] & 0xff) | 0x100).substring(1));
+		return sb.toString();
 	}
 
 }
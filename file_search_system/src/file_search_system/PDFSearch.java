@@ -62,7 +62,7 @@ public class PDFSearch {
 			else
 				query = queryParser.parse(queryString);
 
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 
 			long stime = (new Date()).getTime();
 			topDocs = indexSearcher.search(query, indexSearcher.maxDoc());//, sort);
@@ -70,9 +70,10 @@ public class PDFSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 		return topDocs;
 	}
@@ -88,7 +89,7 @@ public class PDFSearch {
 			Query query = null;
 			query = queryParser.parse(queryString);
 
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 
 			//				 ============== ׼
 			Formatter formatter = new SimpleHTMLFormatter("<font color='red'><strong>", "</strong></font>");
@@ -144,9 +145,10 @@ public class PDFSearch {
 
 				recordList.add(doc);
 			}
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 
 		return recordList;
@@ -179,7 +181,7 @@ public class PDFSearch {
 		IndexSearcher indexSearcher = null;
 		try {
 			//òѯ
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 			QueryParser queryParser = null;//= new QueryParser(field, analyzer);
 			BooleanQuery boolQuery = new BooleanQuery();
 			Query query = null;
@@ -200,9 +202,10 @@ public class PDFSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 
 		return topDocs;
@@ -215,7 +218,7 @@ public class PDFSearch {
 		IndexSearcher indexSearcher = null;
 
 		try {
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 			QueryParser queryParser = null;//= new QueryParser(field, analyzer);
 			BooleanQuery boolQuery = new BooleanQuery();
 			Query query = null;
@@ -288,9 +291,10 @@ public class PDFSearch {
 
 				recordList.add(doc);
 			}
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 
 		return recordList;
@@ -302,7 +306,7 @@ public class PDFSearch {
 		TopDocs topDocs = null;
 		IndexSearcher indexSearcher = null;
 		try {
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 
 			Map<String, Float> boosts = new HashMap<String, Float>();
 			for (int i = 0; i < field.length; i++)
@@ -320,9 +324,10 @@ public class PDFSearch {
 			time = etime - stime;
 
 			recordCount = topDocs.totalHits;
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 
 		return topDocs;
@@ -335,7 +340,7 @@ public class PDFSearch {
 		IndexSearcher indexSearcher = null;
 
 		try {
-			indexSearcher = new IndexSearcher(pdfIndexPath);
+			indexSearcher = SearcherHolder.getInstance(pdfIndexPath).acquire();
 			//QueryParser queryParser=null;//= new QueryParser(field, analyzer);
 			//BooleanQuery boolQuery=new BooleanQuery();
 			Map<String, Float> boosts = new HashMap<String, Float>();
@@ -403,9 +408,10 @@ public class PDFSearch {
 
 				recordList.add(doc);
 			}
-			indexSearcher.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SearcherHolder.getInstance(pdfIndexPath).release(indexSearcher);
 		}
 
 		return recordList;
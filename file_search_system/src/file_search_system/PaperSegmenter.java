@@ -0,0 +1,356 @@
+package file_search_system;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * ĵķֶPDFȡȫķΪ⡢ժҪ֡
+ * ֶεĹԭPDFIndexgetTilegetAbstractgetContentȫֻͬͷβɨһȫģ
+ * жʱΪÿʺÿһдַؼԤȽõTrieؼԶƥ䡣
+ * ȫĸʽҪʱԭķһ׳StringIndexOutOfBoundsException
+ * ֶν԰PDFļMD5ڴϣؽʱֻҪ޸Ĺ³ȡͷֶΡ
+ */
+public class PaperSegmenter {
+
+	// ֶν
+	public static class Sections {
+
+		private static final int CACHE_VERSION = 1;// ֶιıʱҪӰ汾ţʹɵĻʧЧ
+
+		public final String title;
+
+		public final String abstractText;
+
+		public final String content;
+
+		public Sections(String title, String abstractText, String content) {
+			this.title = title;
+			this.abstractText = abstractText;
+			this.content = content;
+		}
+
+		// ӻļȡֶνļڻʱnull
+		public static Sections read(File cacheFile) {
+			if (!cacheFile.isFile())
+				return null;
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new java.io.BufferedInputStream(new FileInputStream(cacheFile)));
+				if (in.readInt() != CACHE_VERSION)
+					return null;
+				return new Sections(readString(in), readString(in), readString(in));
+			} catch (IOException e) {
+				return null;
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		// ѷֶνд뻺ļдʱļٸ²ļ
+		// ͬMD5PDFܱ߳ͬʱд룬ÿζһµʱļ
+		public void write(File cacheFile) throws IOException {
+			File tempFile = File.createTempFile(cacheFile.getName() + ".", ".tmp", cacheFile.getParentFile());
+			try {
+				DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(new FileOutputStream(tempFile)));
+				try {
+					out.writeInt(CACHE_VERSION);
+					writeString(out, title);
+					writeString(out, abstractText);
+					writeString(out, content);
+				} finally {
+					out.close();
+				}
+				cacheFile.delete();
+				// ʧܵļѴʱ˵һ̸߳дͬ
+				if (!tempFile.renameTo(cacheFile) && !cacheFile.isFile())
+					throw new IOException("Cannot rename " + tempFile + " to " + cacheFile);
+			} finally {
+				tempFile.delete();
+			}
+		}
+
+		// writeUTF()ֻд64KBԼд
+		private static void writeString(DataOutputStream out, String str) throws IOException {
+			byte[] bytes = str.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+	}
+
+	/*
+	 * ؼԶִСдTrieжһȥβհ׺Ƿĳؼ
+	 */
+	static class KeywordMatcher {
+
+		private final Map<Character, KeywordMatcher> next = new HashMap<Character, KeywordMatcher>();
+
+		private boolean terminal = false;
+
+		KeywordMatcher(String[] keywords) {
+			for (int i = 0; i < keywords.length; i++) {
+				KeywordMatcher node = this;
+				for (int j = 0; j < keywords[i].length(); j++) {
+					Character key = Character.valueOf(fold(keywords[i].charAt(j)));
+					KeywordMatcher child = node.next.get(key);
+					if (child == null) {
+						child = new KeywordMatcher();
+						node.next.put(key, child);
+					}
+					node = child;
+				}
+				node.terminal = true;
+			}
+		}
+
+		private KeywordMatcher() {
+		}
+
+		// String.trim()equalsIgnoreCase()Ĺͬ
+		boolean matches(String text, int start, int end) {
+			while (start < end && text.charAt(start) <= ' ')
+				start++;
+			while (start < end && text.charAt(end - 1) <= ' ')
+				end--;
+			KeywordMatcher node = this;
+			for (int i = start; i < end && node != null; i++)
+				node = node.next.get(Character.valueOf(fold(text.charAt(i))));
+			return node != null && node.terminal;
+		}
+
+		// жһǷԿոֿĴǹؼ
+		boolean matchesAnyWord(String text, int start, int end) {
+			int wordStart = start;
+			for (int i = start; i <= end; i++) {
+				if (i == end || text.charAt(i) == ' ') {
+					if (matches(text, wordStart, i))
+						return true;
+					wordStart = i + 1;
+				}
+			}
+			return false;
+		}
+
+		private static char fold(char c) {
+			return Character.toLowerCase(Character.toUpperCase(c));
+		}
+	}
+
+	private static final KeywordMatcher instituteWords = new KeywordMatcher(new String[] { "Department", "Microsoft", "Laboratory", "University",
+			"Research", "Studies", "Center", "Dept.", "Science", "School", "IBM", "Computer", "Federal", "Technical", "Inc.", "Institue" });
+
+	private static final KeywordMatcher addressWords = new KeywordMatcher(new String[] { "Asia", "Road", "China", "Germany", "Slovenia", "Israel",
+			"U.S.A.", "United Kingdom", "USA", "Australia", "Singapore" });
+
+	private static final KeywordMatcher abstractWord = new KeywordMatcher(new String[] { "ABSTRACT" });
+
+	private static final KeywordMatcher abstractEndWords = new KeywordMatcher(new String[] { "Keywords", "Categories and Subject Descriptors",
+			"Categories & Subject Descriptors", "General Terms", "1. INTRODUCTION", "1 INTRODUCTION" });
+
+	private static final KeywordMatcher referencesWord = new KeywordMatcher(new String[] { "REFERENCES" });
+
+	private final String text;
+
+	private final int length;
+
+	private int pos = 0;// ǰɨλ
+
+	private PaperSegmenter(String text) {
+		this.text = text;
+		this.length = text.length();
+	}
+
+	// ȫķΪ⡢ժҪ
+	public static Sections segment(String fullContent) {
+		PaperSegmenter segmenter = new PaperSegmenter(fullContent);
+		String title = segmenter.readTitle();
+		String abstractText = segmenter.readAbstract();
+		String content = segmenter.readContent();
+		return new Sections(title, abstractText, content);
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\n' || c == '\r';
+	}
+
+	/*
+	 * ⣺һǿУвߵĵλַ䣬ڶҲڱ
+	 */
+	private String readTitle() {
+		char c = text.charAt(pos);
+		while (isSpace(c))
+			c = text.charAt(++pos);
+		int line1Start = pos;
+		while (c != '\n')
+			c = text.charAt(++pos);
+		int line1End = pos - 1;// Ҫβ'\r'
+		int line2Start = ++pos;
+		c = text.charAt(pos);
+		while (c != '\n')
+			c = text.charAt(++pos);
+		int line2End = pos;
+		int line3Start = ++pos;
+		c = text.charAt(pos);
+		while (c != '\n')
+			c = text.charAt(++pos);
+		int line3End = pos;
+
+		String title = text.substring(line1Start, line1End) + " ";
+		if (instituteWords.matchesAnyWord(text, line3Start, line3End) || addressWords.matchesAnyWord(text, line3Start, line3End)
+				|| isEmail(line3Start)) {
+			pos = line2Start;
+		} else {
+			title = title + text.substring(line2Start, line2End);
+			pos = line3Start;
+		}
+		return title;
+	}
+
+	// һеĵһ'@'
+	private boolean isEmail(int start) {
+		for (int i = start; text.charAt(i) != '\n' && text.charAt(i) != ' '; i++) {
+			if (text.charAt(i) == '@')
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * ժҪABSTRACTʿʼKeywordsȹؼʿʼΪֹ
+	 */
+	private String readAbstract() {
+		int count = pos;
+		boolean skipped = false;
+		char c = text.charAt(pos);
+		while (isSpace(c)) {
+			skipped = true;
+			c = text.charAt(++pos);
+		}
+		if (skipped)
+			count = pos;
+		while (c != ' ' && c != '\n')
+			c = text.charAt(++pos);
+		boolean found = abstractWord.matches(text, count, pos);
+		count = ++pos;
+		c = text.charAt(pos);
+		skipped = false;
+		while (!found) {
+			while (isSpace(c)) {
+				skipped = true;
+				if (++pos >= length)
+					break;
+				c = text.charAt(pos);
+			}
+			if (pos >= length)
+				break;
+			if (skipped) {
+				count = pos;
+				skipped = false;
+			}
+			while (c != ' ' && c != '\n')
+				c = text.charAt(++pos);
+			found = abstractWord.matches(text, count, pos);
+		}
+
+		int startPoint = count;
+		count = readLines(count, skipped, true);
+		pos = count;
+		return text.substring(startPoint, count);
+	}
+
+	/*
+	 * ݣժҪԺֱREFERENCESĲ
+	 */
+	private String readContent() {
+		int startPoint = pos--;
+		int count = readLines(0, false, false);
+		return text.substring(startPoint, count);
+	}
+
+	/*
+	 * ɨ裬ֱժҪݵĽУؽУȥǰĿհףĿʼλá
+	 * ȫĽʱصλԭķͬ
+	 */
+	private int readLines(int count, boolean skipped, boolean isAbstract) {
+		while (true) {
+			if (pos >= length)
+				break;
+			count = ++pos;
+			if (pos >= length)
+				break;
+			char c = text.charAt(pos);
+			while (isSpace(c)) {
+				skipped = true;
+				if (++pos >= length)
+					break;
+				c = text.charAt(pos);
+			}
+			if (pos >= length)
+				break;
+			if (skipped) {
+				count = pos;
+				skipped = false;
+			}
+			while (c != '\n') {
+				if (++pos >= length)
+					break;
+				c = text.charAt(pos);
+			}
+			if (pos >= length)
+				break;
+			if (isAbstract ? isAbstractEnd(count, pos) : isContentEnd(count, pos))
+				break;
+		}
+		return count;
+	}
+
+	// ׵һ':'ΪֹKeywordsȹؼ
+	private boolean isAbstractEnd(int start, int end) {
+		int i = start;
+		while (true) {
+			if (i >= end)
+				throw new StringIndexOutOfBoundsException(i - start);
+			char c = text.charAt(i);
+			if (c == ':' || c == '\n' || c == '\r')
+				break;
+			i++;
+		}
+		return abstractEndWords.matches(text, start, i);
+	}
+
+	// ֿͷREFERENCES
+	private boolean isContentEnd(int start, int end) {
+		if (!Character.isDigit(text.charAt(start)))
+			return false;
+		int index = 1;
+		if (start + index >= end)
+			throw new StringIndexOutOfBoundsException(index);
+		char c = text.charAt(start + index);
+		int wordStart = index;
+		while (c == ' ' || c == '.') {
+			wordStart = ++index;
+			if (start + index >= end)
+				break;
+			c = text.charAt(start + index);
+		}
+		if (start + index >= end)
+			throw new StringIndexOutOfBoundsException(index + 1);
+		return referencesWord.matches(text, start + wordStart, end);
+	}
+}
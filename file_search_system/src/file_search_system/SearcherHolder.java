@@ -0,0 +1,91 @@
+package file_search_system;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReader.FieldOption;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
+
+/*
+ * PDFSearchHTMLSearchãÿĿ¼ֻһʵ
+ * ֻڵһʹʱ򿪣Ժıʱͨreopen()ֻµĶΣ
+ * ÿβѯ´
+ * ÷
+ *   IndexSearcher searcher = SearcherHolder.getInstance(path).acquire();
+ *   try { ... } finally { SearcherHolder.getInstance(path).release(searcher); }
+ */
+public class SearcherHolder {
+
+	private static final Map<String, SearcherHolder> holders = new HashMap<String, SearcherHolder>();
+
+	private final String indexPath;
+
+	private IndexSearcher currentSearcher = null;//ǰreaderһ
+
+	private SearcherHolder(String indexPath) {
+		this.indexPath = indexPath;
+	}
+
+	//ȡĿ¼Ӧʵ
+	public static synchronized SearcherHolder getInstance(String indexPath) {
+		String key = new File(indexPath).getAbsolutePath();
+		SearcherHolder holder = holders.get(key);
+		if (holder == null) {
+			holder = new SearcherHolder(indexPath);
+			holders.put(key, holder);
+		}
+		return holder;
+	}
+
+	//ȡrelease()
+	public synchronized IndexSearcher acquire() throws IOException {
+		refresh();
+		currentSearcher.getIndexReader().incRef();
+		return currentSearcher;
+	}
+
+	//ͷacquire()ȡѱ滻readerһͷʱر
+	public void release(IndexSearcher searcher) {
+		if (searcher == null)
+			return;
+		try {
+			searcher.getIndexReader().decRef();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//Ѹı䣬´򿪲ԤȣȻ滻ǰ
+	public synchronized void refresh() throws IOException {
+		if (currentSearcher == null) {
+			IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)), true);
+			warmUp(reader);
+			currentSearcher = new IndexSearcher(reader);
+			return;
+		}
+		IndexReader oldReader = currentSearcher.getIndexReader();
+		if (oldReader.isCurrent())
+			return;
+		IndexReader newReader = oldReader.reopen();
+		if (newReader == oldReader)
+			return;
+		//Ԥ滻ѯʱõȴ
+		warmUp(newReader);
+		currentSearcher = new IndexSearcher(newReader);
+		oldReader.decRef();//ʹþreaderĲѯŹر
+	}
+
+	//ظֶεnormsµĶεĴʵڴʱѼ
+	private void warmUp(IndexReader reader) throws IOException {
+		Collection<?> fields = reader.getFieldNames(FieldOption.INDEXED);
+		for (Object field : fields) {
+			if (reader.hasNorms((String) field))
+				reader.norms((String) field);
+		}
+	}
+}
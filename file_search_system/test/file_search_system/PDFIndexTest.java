@@ -0,0 +1,145 @@
+package file_search_system;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * ̲߳нPDF뵥߳̽ͬĵ
+ */
+public class PDFIndexTest {
+
+	private File baseDir;
+
+	private String lineSeparator;
+
+	@Before
+	public void setUp() throws IOException {
+		// ֶιٶȡıWindowsĻзPDFTextStripperʱȡline.separator
+		lineSeparator = System.getProperty("line.separator");
+		System.setProperty("line.separator", "\r\n");
+		baseDir = File.createTempFile("PDFIndexTest", "");
+		baseDir.delete();
+		baseDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		System.setProperty("line.separator", lineSeparator);
+		delete(baseDir);
+	}
+
+	@Test
+	public void testParallelIndexSameAsSerial() throws Exception {
+		int[] years = { 1971, 1978, 1979 };
+		byte[] duplicate = createPdf(99);
+		int count = 0;
+		for (int j = 0; j < years.length; j++) {
+			File yearDir = new File(baseDir, "SIGIR" + years[j]);
+			yearDir.mkdirs();
+			for (int i = 0; i < 7; i++) {
+				writeFile(new File(yearDir, "P" + i + ".pdf"), createPdf(j * 10 + i));
+				count++;
+			}
+			// ÿ궼һƪͬģǵMD5ͬͬʱдͬһֶλ
+			writeFile(new File(yearDir, "P7.pdf"), duplicate);
+			count++;
+			writeFile(new File(yearDir, "other.pdf"), createPdf(98));
+		}
+
+		Map<String, String> serial = buildIndex("serial", 1);
+		Map<String, String> parallel = buildIndex("parallel", 4);
+		assertEquals(count, serial.size());
+		assertEquals(serial, parallel);
+		String[] cacheFiles = new File(baseDir, "parallel-cache").list();
+		assertEquals(count - years.length + 1, cacheFiles.length);
+		for (int i = 0; i < cacheFiles.length; i++)
+			assertTrue(cacheFiles[i], cacheFiles[i].endsWith(".seg"));
+	}
+
+	// ÿĵ·⡢ժҪݺMD5
+	private Map<String, String> buildIndex(String name, int threadCount) throws IOException {
+		PDFIndex pdfIndex = new PDFIndex();
+		pdfIndex.threadCount = threadCount;
+		pdfIndex.pdfFilePath = new File(baseDir, "SIGIR").getPath();
+		pdfIndex.pdfIndexPath = new File(baseDir, name).getPath();
+		pdfIndex.segmentCachePath = new File(baseDir, name + "-cache").getPath();
+		String report = pdfIndex.createPdfIndex();
+		assertTrue(report, report.indexOf("failed: 0") >= 0);
+
+		Map<String, String> docs = new HashMap<String, String>();
+		IndexReader reader = IndexReader.open(FSDirectory.open(new File(pdfIndex.pdfIndexPath)), true);
+		try {
+			for (int i = 0; i < reader.maxDoc(); i++) {
+				Document doc = reader.document(i);
+				docs.put(doc.get("path"), doc.get("title") + "|" + doc.get("abstract") + "|" + doc.get("content") + "|"
+						+ doc.get("md5"));
+			}
+		} finally {
+			reader.close();
+		}
+		return docs;
+	}
+
+	private static byte[] createPdf(int paper) throws Exception {
+		String[] lines = { "A Study of Topic " + paper, "Searching Paper Number " + paper, "Jane Doe", "Computer Science Department",
+				"ABSTRACT", "This paper " + paper + " studies retrieval.", "Keywords: retrieval", "1. INTRODUCTION",
+				"Paper " + paper + " has some content.", "More content about retrieval.", "2. REFERENCES", "[1] Nothing." };
+		PDDocument document = new PDDocument();
+		try {
+			PDPage page = new PDPage();
+			document.addPage(page);
+			PDPageContentStream stream = new PDPageContentStream(document, page);
+			stream.beginText();
+			stream.setFont(PDType1Font.HELVETICA, 12);
+			stream.moveTextPositionByAmount(50, 700);
+			for (int i = 0; i < lines.length; i++) {
+				stream.drawString(lines[i]);
+				stream.moveTextPositionByAmount(0, -20);
+			}
+			stream.endText();
+			stream.close();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			document.save(bytes);
+			return bytes.toByteArray();
+		} finally {
+			document.close();
+		}
+	}
+
+	private static void writeFile(File file, byte[] bytes) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		}
+		file.delete();
+	}
+}
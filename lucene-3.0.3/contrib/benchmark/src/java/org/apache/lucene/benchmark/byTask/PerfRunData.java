@@ -116,14 +116,15 @@ public class PerfRunData {
     }
     
     // directory (default is ram-dir).
-    if ("FSDirectory".equals(config.get("directory","RAMDirectory"))) {
+    String dirName = config.get("directory","RAMDirectory");
+    if (!"RAMDirectory".equals(dirName)) {
       File workDir = new File(config.get("work.dir","work"));
       File indexDir = new File(workDir,"index");
       if (eraseIndex && indexDir.exists()) {
         FileUtils.fullyDelete(indexDir);
       }
       indexDir.mkdirs();
-      directory = FSDirectory.open(indexDir);
+      directory = createFSDirectory(dirName, indexDir);
     } else {
       directory = new RAMDirectory();
     }
@@ -139,6 +140,17 @@ public class PerfRunData {
     setStartTimeMillis();
   }
   
+  // FSDirectory picks the implementation for the platform, other
+  // names are FSDirectory subclasses, by default in the store package
+  private Directory createFSDirectory(String dirName, File indexDir) throws Exception {
+    if ("FSDirectory".equals(dirName)) {
+      return FSDirectory.open(indexDir);
+    }
+    String className = dirName.indexOf('.') == -1 ? "org.apache.lucene.store." + dirName : dirName;
+    return Class.forName(className).asSubclass(FSDirectory.class)
+        .getConstructor(File.class).newInstance(indexDir);
+  }
+
   public long setStartTimeMillis() {
     startTimeMillis = System.currentTimeMillis();
     return startTimeMillis;
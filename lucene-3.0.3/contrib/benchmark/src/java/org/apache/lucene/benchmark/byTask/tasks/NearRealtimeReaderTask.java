@@ -17,20 +17,34 @@ package org.apache.lucene.benchmark.byTask.tasks;
  * limitations under the License.
  */
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import org.apache.lucene.benchmark.byTask.PerfRunData;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 
 /**
  * Spawns a BG thread that periodically (defaults to 3.0
  * seconds, but accepts param in seconds) wakes up and asks
- * IndexWriter for a near real-time reader.  Then runs a
- * single query (body: 1) sorted by docdate, and prints
- * time to reopen and time to run the search.
+ * IndexWriter for a near real-time reader.  When the task
+ * is stopped, it prints the min, 50th, 90th and 99th
+ * percentile and max time to reopen.
+ *
+ * <p>If <code>nrt.warm.sort.field</code> is set, a merged
+ * segment warmer that sorts by this field is installed on
+ * the writer, and a single query (all docs, sorted by this
+ * field) is run on each new reader; the percentiles of its
+ * time are printed as well.  Compare runs with and without
+ * <code>nrt.warm.merged.segments</code> (default true) to
+ * see the cost of loading the FieldCache after merges.</p>
  *
  * <b>NOTE</b>: this is very experimental at this point, and
- * subject to change.  It's also not generally usable, eg
- * you cannot change which query is executed.
+ * subject to change.
  */
 public class NearRealtimeReaderTask extends PerfTask {
 
@@ -54,6 +68,17 @@ public class NearRealtimeReaderTask extends PerfTask {
     if (runData.getIndexReader() != null) {
       throw new RuntimeException("please close the existing reader before invoking NearRealtimeReader");
     }
+
+    final String sortField = runData.getConfig().get("nrt.warm.sort.field", null);
+    final Sort sort = sortField == null ? null : new Sort(new SortField(sortField, SortField.STRING));
+    if (sort != null && runData.getConfig().get("nrt.warm.merged.segments", true)) {
+      w.setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
+        @Override
+        public void warm(IndexReader reader) throws IOException {
+          search(reader, sort);
+        }
+      });
+    }
     
     long t = System.currentTimeMillis();
     IndexReader r = w.getReader();
@@ -61,8 +86,8 @@ public class NearRealtimeReaderTask extends PerfTask {
     // Transfer our reference to runData
     r.decRef();
 
-    // TODO: gather basic metrics for reporting -- eg mean,
-    // stddev, min/max reopen latencies
+    long[] reopenNS = new long[16];
+    long[] searchNS = new long[16];
 
     // Parent sequence sets stopNow
     int reopenCount = 0;
@@ -73,20 +98,71 @@ public class NearRealtimeReaderTask extends PerfTask {
       }
 
       t = System.currentTimeMillis();
+      final long t0 = System.nanoTime();
       final IndexReader newReader = r.reopen();
+      final long t1 = System.nanoTime();
       if (r != newReader) {
-        // TODO: somehow we need to enable warming, here
         runData.setIndexReader(newReader);
         // Transfer our reference to runData
         newReader.decRef();
         r = newReader;
+        if (reopenCount == reopenNS.length) {
+          reopenNS = grow(reopenNS);
+          searchNS = grow(searchNS);
+        }
+        reopenNS[reopenCount] = t1 - t0;
+        if (sort != null) {
+          final long t2 = System.nanoTime();
+          search(r, sort);
+          searchNS[reopenCount] = System.nanoTime() - t2;
+        }
         reopenCount++;
       }
     }
 
+    if (reopenCount > 0) {
+      System.out.println("--> NRT reopen msec: " + percentiles(reopenNS, reopenCount));
+      if (sort != null) {
+        System.out.println("--> NRT first search sorted by " + sortField + " msec: " + percentiles(searchNS, reopenCount));
+      }
+    }
+
     return reopenCount;
   }
 
+  private static void search(IndexReader reader, Sort sort) throws IOException {
+    new IndexSearcher(reader).search(new MatchAllDocsQuery(), null, 10, sort);
+  }
+
+  private static long[] grow(long[] values) {
+    final long[] newValues = new long[values.length*2];
+    System.arraycopy(values, 0, newValues, 0, values.length);
+    return newValues;
+  }
+
+  /** Formats min, 50th, 90th, 99th percentile and max of the
+   *  first count nanosecond values, in milliseconds. */
+  static String percentiles(long[] valuesNS, int count) {
+    final long[] sorted = new long[count];
+    System.arraycopy(valuesNS, 0, sorted, 0, count);
+    Arrays.sort(sorted);
+    return "count=" + count
+      + " min=" + msec(sorted[0])
+      + " 50%=" + msec(sorted[percentileIndex(50, count)])
+      + " 90%=" + msec(sorted[percentileIndex(90, count)])
+      + " 99%=" + msec(sorted[percentileIndex(99, count)])
+      + " max=" + msec(sorted[count-1]);
+  }
+
+  // nearest-rank percentile
+  private static int percentileIndex(int percentile, int count) {
+    return Math.max(0, (int) Math.ceil(percentile * count / 100.0) - 1);
+  }
+
+  private static String msec(long ns) {
+    return String.format("%.1f", ns/1000000.0);
+  }
+
   @Override
   public void setParams(String params) {
     super.setParams(params);
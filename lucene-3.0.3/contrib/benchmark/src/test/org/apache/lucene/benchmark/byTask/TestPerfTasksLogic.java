@@ -44,6 +44,7 @@ import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.TermFreqVector;
 import org.apache.lucene.search.FieldCache.StringIndex;
 import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.store.ChunkedMMapDirectory;
 import org.apache.lucene.store.Directory;
 
 /**
@@ -782,6 +783,47 @@ public class TestPerfTasksLogic extends TestCase {
     assertEquals(3, infos.size());
   }
   
+  /**
+   * Test switching the directory implementation between rounds.
+   */
+  public void testDirectoryTypes() throws Exception {
+    // 1. alg definition (required in every "logic" test)
+    String algLines[] = {
+        "# ----- properties ",
+        "content.source="+Reuters20ContentSource.class.getName(),
+        "content.source.forever=false",
+        "directory=FSDirectory",
+        "doc.stored=true",
+        "# ----- alg ",
+        "ResetSystemErase",
+        "CreateIndex",
+        "{ AddDoc } : * ",
+        "CloseIndex",
+        "SetProp(directory,NIOFSDirectory)",
+        "ResetSystemSoft",
+        "OpenReader",
+        "{ CountingSearchTest } : 10",
+        "CloseReader",
+        "SetProp(directory,ChunkedMMapDirectory)",
+        "ResetSystemSoft",
+        "OpenReader",
+        "{ CountingSearchTest } : 10",
+        "CloseReader",
+    };
+
+    // 2. execute the algorithm  (required in every "logic" test)
+    CountingSearchTestTask.numSearches = 0;
+    Benchmark benchmark = execBenchmark(algLines);
+
+    // 3. test that the index was searched with the last directory
+    assertEquals(20, CountingSearchTestTask.numSearches);
+    Directory dir = benchmark.getRunData().getDirectory();
+    assertEquals(ChunkedMMapDirectory.class, dir.getClass());
+    IndexReader ir = IndexReader.open(dir, true);
+    assertEquals("wrong number of docs in the index!", 20, ir.numDocs());
+    ir.close();
+  }
+
   /**
    * Test disabling task count (LUCENE-1136).
    */
@@ -22,6 +22,11 @@ import org.apache.lucene.util.BitVector;
 class AllTermDocs extends AbstractAllTermDocs {
 
   protected BitVector deletedDocs;
+  // the first deleted doc at or after deletedFrom, as of deletedCount
+  // deletions
+  private int deletedFrom = Integer.MAX_VALUE;
+  private int nextDeleted;
+  private int deletedCount;
 
   protected AllTermDocs(SegmentReader parent) {
     super(parent.maxDoc());
@@ -30,7 +35,21 @@ class AllTermDocs extends AbstractAllTermDocs {
     }
   }
 
+  @Override
   public boolean isDeleted(int doc) {
-    return deletedDocs != null && deletedDocs.get(doc);
+    if (deletedDocs == null) {
+      return false;
+    }
+    // docs are mostly checked in increasing order, so only look for the
+    // next deleted doc once the previous one has been passed
+    if (doc < deletedFrom || doc > nextDeleted || deletedDocs.count() != deletedCount) {
+      deletedFrom = doc;
+      deletedCount = deletedDocs.count();
+      nextDeleted = deletedDocs.nextSetBit(doc);
+      if (nextDeleted == -1) {
+        nextDeleted = Integer.MAX_VALUE;
+      }
+    }
+    return doc == nextDeleted;
   }
 }
@@ -18,29 +18,66 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 
 /** A {@link MergeScheduler} that runs each merge using a
- *  separate thread, up until a maximum number of threads
- *  ({@link #setMaxThreadCount}) at which when a merge is
- *  needed, the thread(s) that are updating the index will
- *  pause until one or more merges completes.  This is a
- *  simple way to use concurrency in the indexing process
- *  without having to create and manage application level
- *  threads. */
+ *  separate thread.  At most {@link #setMaxThreadCount}
+ *  merges run at once; if more merges are pending, the
+ *  smallest ones run and the others are paused until a
+ *  running merge completes.  Once {@link #setMaxMergeCount}
+ *  merges are pending, the thread(s) that are updating the
+ *  index will pause until one or more merges completes.
+ *  This is a simple way to use concurrency in the indexing
+ *  process without having to create and manage application
+ *  level threads.
+ *
+ *  <p>The rate at which merges write their segment can be
+ *  limited ({@link #setMaxMergeWriteMBPerSec}), so that
+ *  large merges don't saturate the disk that searches use
+ *  at the same time.  Small merges have their own, usually
+ *  higher rate ({@link #setMaxSmallMergeWriteMBPerSec}), so
+ *  that they still complete quickly and the number of
+ *  segments stays low.  A {@link MergeListener} is notified
+ *  with the {@link MergeStats} of each completed merge.</p> */
 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
+  /** Default for {@link #setMaxThreadCount}: half the
+   *  available processors, at least 1 and at most 3. */
+  public static final int DEFAULT_MAX_THREAD_COUNT =
+    Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors()/2));
+
+  /** Default for {@link #setSmallMergeMB}: 64 MB. */
+  public static final double DEFAULT_SMALL_MERGE_MB = 64.0;
+
   private int mergeThreadPriority = -1;
 
   protected List<MergeThread> mergeThreads = new ArrayList<MergeThread>();
 
   // Max number of threads allowed to be merging at once
-  private int maxThreadCount = 1;
+  private int maxThreadCount = DEFAULT_MAX_THREAD_COUNT;
+
+  // Max number of merges we accept before stalling the
+  // threads that add documents
+  private int maxMergeCount = DEFAULT_MAX_THREAD_COUNT + 2;
+
+  // Merges of segments with less than this many bytes in
+  // total use smallMergeRateLimiter
+  private long smallMergeBytes = (long) (DEFAULT_SMALL_MERGE_MB*1024*1024);
+
+  // Shared by all merges of the same class, so that they
+  // together write at most at this rate
+  private final RateLimiter smallMergeRateLimiter = new RateLimiter(Double.POSITIVE_INFINITY);
+  private final RateLimiter largeMergeRateLimiter = new RateLimiter(Double.POSITIVE_INFINITY);
+
+  private volatile MergeListener mergeListener;
 
   protected Directory dir;
 
@@ -55,23 +92,160 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     }
   }
 
-  /** Sets the max # simultaneous threads that may be
-   *  running.  If a merge is necessary yet we already have
-   *  this many threads running, the incoming thread (that
-   *  is calling add/updateDocument) will block until
-   *  a merge thread has completed. */
-  public void setMaxThreadCount(int count) {
+  /** Sets the max # simultaneous merge threads that may be
+   *  running.  If more merges are pending, the larger ones
+   *  are paused until a running merge completes.  If {@link
+   *  #getMaxMergeCount} is smaller than count, it is raised
+   *  to count.  Default is {@link #DEFAULT_MAX_THREAD_COUNT};
+   *  on a spinning disk you may want to lower this to 1. */
+  public synchronized void setMaxThreadCount(int count) {
     if (count < 1)
       throw new IllegalArgumentException("count should be at least 1");
     maxThreadCount = count;
+    if (maxMergeCount < count)
+      maxMergeCount = count;
+    updateMergeThreads();
   }
 
   /** Get the max # simultaneous threads that may be
    *  running. @see #setMaxThreadCount. */
-  public int getMaxThreadCount() {
+  public synchronized int getMaxThreadCount() {
     return maxThreadCount;
   }
 
+  /** Sets the max # merges that may be pending (running or
+   *  paused).  If a merge is necessary yet we already have
+   *  this many merges, the incoming thread (that is calling
+   *  add/updateDocument) will block until a merge has
+   *  completed.  Must be at least {@link #getMaxThreadCount};
+   *  default is 2 more than that. */
+  public synchronized void setMaxMergeCount(int count) {
+    if (count < maxThreadCount)
+      throw new IllegalArgumentException("count should be at least maxThreadCount (= " + maxThreadCount + ")");
+    maxMergeCount = count;
+  }
+
+  /** Get the max # pending merges. @see #setMaxMergeCount. */
+  public synchronized int getMaxMergeCount() {
+    return maxMergeCount;
+  }
+
+  /** Sets the max rate, in MB per second, at which all
+   *  merges that are not small (see {@link #setSmallMergeMB})
+   *  together write their segments.  Default is {@link
+   *  Double#POSITIVE_INFINITY}, ie no limit. */
+  public void setMaxMergeWriteMBPerSec(double mbPerSec) {
+    largeMergeRateLimiter.setMbPerSec(mbPerSec);
+  }
+
+  /** @see #setMaxMergeWriteMBPerSec */
+  public double getMaxMergeWriteMBPerSec() {
+    return largeMergeRateLimiter.getMbPerSec();
+  }
+
+  /** Sets the max rate, in MB per second, at which all small
+   *  merges (see {@link #setSmallMergeMB}) together write
+   *  their segments.  This is usually higher than {@link
+   *  #setMaxMergeWriteMBPerSec}.  Default is {@link
+   *  Double#POSITIVE_INFINITY}, ie no limit. */
+  public void setMaxSmallMergeWriteMBPerSec(double mbPerSec) {
+    smallMergeRateLimiter.setMbPerSec(mbPerSec);
+  }
+
+  /** @see #setMaxSmallMergeWriteMBPerSec */
+  public double getMaxSmallMergeWriteMBPerSec() {
+    return smallMergeRateLimiter.getMbPerSec();
+  }
+
+  /** Merges of segments that are together smaller than this
+   *  many MB are small merges, which are written at the
+   *  rate of {@link #setMaxSmallMergeWriteMBPerSec}.
+   *  Default is {@link #DEFAULT_SMALL_MERGE_MB}. */
+  public synchronized void setSmallMergeMB(double mb) {
+    if (mb < 0)
+      throw new IllegalArgumentException("mb should be >= 0");
+    smallMergeBytes = (long) (mb*1024*1024);
+  }
+
+  /** @see #setSmallMergeMB */
+  public synchronized double getSmallMergeMB() {
+    return ((double) smallMergeBytes)/1024/1024;
+  }
+
+  /** Sets the listener that is notified of each completed
+   *  merge, or null for none. */
+  public void setMergeListener(MergeListener listener) {
+    mergeListener = listener;
+  }
+
+  /** @see #setMergeListener */
+  public MergeListener getMergeListener() {
+    return mergeListener;
+  }
+
+  /** Receives the statistics of completed merges.
+   *
+   * <p><b>NOTE:</b> This API is experimental and might change
+   * in incompatible ways in the next release.</p> */
+  public static interface MergeListener {
+    /** Called by the merge thread after a merge has
+     *  completed successfully.  This must return quickly
+     *  and not throw exceptions. */
+    void mergeFinished(MergeStats stats);
+  }
+
+  /** The statistics of a completed merge.
+   *
+   * <p><b>NOTE:</b> This API is experimental and might change
+   * in incompatible ways in the next release.</p> */
+  public static class MergeStats {
+    /** The name of the merged segment. */
+    public final String segment;
+    /** The number of segments that were merged. */
+    public final int numSegments;
+    /** The number of documents of the merged segment. */
+    public final int docCount;
+    /** The total size of the segments that were merged. */
+    public final long inputBytes;
+    /** The number of bytes the merge wrote. */
+    public final long bytesWritten;
+    /** Wall clock time of the merge, in milliseconds. */
+    public final long durationMillis;
+    /** Time the merge was paused, because other merges
+     *  were running, in milliseconds. */
+    public final long pausedMillis;
+    /** Time the merge waited to stay within its write
+     *  rate, in milliseconds. */
+    public final long throttledMillis;
+
+    public MergeStats(String segment, int numSegments, int docCount, long inputBytes,
+                      long bytesWritten, long durationMillis, long pausedMillis, long throttledMillis) {
+      this.segment = segment;
+      this.numSegments = numSegments;
+      this.docCount = docCount;
+      this.inputBytes = inputBytes;
+      this.bytesWritten = bytesWritten;
+      this.durationMillis = durationMillis;
+      this.pausedMillis = pausedMillis;
+      this.throttledMillis = throttledMillis;
+    }
+
+    /** Returns the average write rate in MB per second,
+     *  not counting the time the merge was paused. */
+    public double getWriteMBPerSec() {
+      final long millis = Math.max(1, durationMillis - pausedMillis);
+      return (bytesWritten/1024./1024.) / (millis/1000.);
+    }
+
+    @Override
+    public String toString() {
+      return segment + ": " + numSegments + " segments, " + docCount + " docs, "
+        + inputBytes + " bytes in, " + bytesWritten + " bytes written in "
+        + durationMillis + " msec (paused " + pausedMillis + " msec, throttled "
+        + throttledMillis + " msec)";
+    }
+  }
+
   /** Return the priority that merge threads run at.  By
    *  default the priority is 1 plus the priority of (ie,
    *  slightly higher priority than) the first thread that
@@ -192,9 +366,9 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       try {
         synchronized(this) {
           final MergeThread merger;
-          while (mergeThreadCount() >= maxThreadCount) {
+          while (mergeThreadCount() >= maxMergeCount) {
             if (verbose())
-              message("    too many merge threads running; stalling...");
+              message("    too many merges pending; stalling...");
             try {
               wait();
             } catch (InterruptedException ie) {
@@ -205,7 +379,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           if (verbose())
             message("  consider merge " + merge.segString(dir));
       
-          assert mergeThreadCount() < maxThreadCount;
+          assert mergeThreadCount() < maxMergeCount;
 
           // OK to spawn a new merge thread to handle this
           // merge:
@@ -225,6 +399,38 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     }
   }
 
+  /** Runs the smallest {@link #getMaxThreadCount} of the
+   *  running merges and pauses the others.  Called whenever
+   *  a merge starts or completes. */
+  protected synchronized void updateMergeThreads() {
+    final List<MergeThread> active = new ArrayList<MergeThread>();
+    final int numThreads = mergeThreads.size();
+    for(int i=0;i<numThreads;i++) {
+      final MergeThread t = mergeThreads.get(i);
+      if (t.isAlive() && t.getRunningMerge() != null)
+        active.add(t);
+    }
+    // Stable sort, so that of equally sized merges the
+    // older ones keep running
+    Collections.sort(active, new Comparator<MergeThread>() {
+      public int compare(MergeThread t1, MergeThread t2) {
+        final long b1 = t1.getRunningMergeBytes();
+        final long b2 = t2.getRunningMergeBytes();
+        return b1 < b2 ? -1 : (b1 == b2 ? 0 : 1);
+      }
+    });
+    for(int i=0;i<active.size();i++) {
+      final MergeThread t = active.get(i);
+      final MergePolicy.OneMerge merge = t.getRunningMerge();
+      final boolean pause = i >= maxThreadCount;
+      if (merge.getPause() != pause) {
+        if (verbose())
+          message((pause ? "pause " : "unpause ") + t.getName() + ": " + merge.segString(dir));
+        merge.setPause(pause);
+      }
+    }
+  }
+
   /** Does the actual merge, by calling {@link IndexWriter#merge} */
   protected void doMerge(MergePolicy.OneMerge merge)
     throws IOException {
@@ -245,6 +451,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     IndexWriter writer;
     MergePolicy.OneMerge startMerge;
     MergePolicy.OneMerge runningMerge;
+    long runningMergeBytes;
 
     public MergeThread(IndexWriter writer, MergePolicy.OneMerge startMerge) throws IOException {
       this.writer = writer;
@@ -259,6 +466,45 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       return runningMerge;
     }
 
+    /** Returns the total size of the segments of the
+     *  running merge. */
+    public synchronized long getRunningMergeBytes() {
+      return runningMergeBytes;
+    }
+
+    /* Makes the given merge the running one, and sets it
+     * up to be throttled and measured if needed. */
+    private ThrottledMergeDirectory beginMerge(MergePolicy.OneMerge merge) throws IOException {
+      long bytes = 0;
+      final int numSegments = merge.segments.size();
+      // Deletes may be flushed concurrently, which replaces
+      // the segment's deletes file; the writer's lock keeps
+      // the files of the segments stable
+      synchronized(writer) {
+        for(int i=0;i<numSegments;i++)
+          bytes += merge.segments.info(i).sizeInBytes();
+      }
+
+      final RateLimiter rateLimiter;
+      final boolean listen;
+      synchronized(ConcurrentMergeScheduler.this) {
+        rateLimiter = bytes < smallMergeBytes ? smallMergeRateLimiter : largeMergeRateLimiter;
+        listen = mergeListener != null;
+      }
+      ThrottledMergeDirectory mergeDir = null;
+      if (listen || !Double.isInfinite(rateLimiter.getMbPerSec())) {
+        mergeDir = new ThrottledMergeDirectory(writer.getDirectory(), rateLimiter);
+        merge.directory = mergeDir;
+      }
+
+      synchronized(this) {
+        runningMerge = merge;
+        runningMergeBytes = bytes;
+      }
+      updateMergeThreads();
+      return mergeDir;
+    }
+
     public void setThreadPriority(int pri) {
       try {
         setPriority(pri);
@@ -284,8 +530,27 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           message("  merge thread: start");
 
         while(true) {
-          setRunningMerge(merge);
+          final ThrottledMergeDirectory mergeDir;
+          boolean success = false;
+          try {
+            mergeDir = beginMerge(merge);
+            success = true;
+          } finally {
+            if (!success) {
+              // else IndexWriter would wait for this merge
+              // forever on close
+              writer.mergeFinish(merge);
+            }
+          }
+          final long startMS = System.currentTimeMillis();
           doMerge(merge);
+          final MergeListener listener = mergeListener;
+          if (listener != null && mergeDir != null && !merge.isAborted() && merge.getException() == null) {
+            listener.mergeFinished(new MergeStats(merge.info.name, merge.segments.size(), merge.info.docCount,
+                                                  getRunningMergeBytes(), mergeDir.getBytesWritten(),
+                                                  System.currentTimeMillis() - startMS,
+                                                  merge.pausedNS/1000000, mergeDir.getThrottledNS()/1000000));
+          }
 
           // Subsequent times through the loop we do any new
           // merge that writer says is necessary:
@@ -317,6 +582,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           ConcurrentMergeScheduler.this.notifyAll();
           boolean removed = mergeThreads.remove(this);
           assert removed;
+          updateMergeThreads();
         }
       }
     }
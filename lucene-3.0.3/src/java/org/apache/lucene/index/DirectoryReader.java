@@ -156,10 +156,11 @@ class DirectoryReader extends IndexReader implements Cloneable {
         success = true;
       } finally {
         if (!success) {
-          // Close all readers we had opened:
+          // Release all readers we had obtained; they may be
+          // shared with other near real-time readers:
           for(upto--;upto>=0;upto--) {
             try {
-              readers[upto].close();
+              readers[upto].decRef();
             } catch (Throwable ignore) {
               // keep going - we want to clean up as much as possible
             }
@@ -629,6 +630,22 @@ class DirectoryReader extends IndexReader implements Cloneable {
     }
   }
 
+  // reads from the segments, unless the top-level norms are cached
+  @Override
+  public synchronized NormValues normValues(String field) throws IOException {
+    ensureOpen();
+    byte[] bytes = normsCache.get(field);
+    if (bytes != null)
+      return NormValues.wrap(bytes);          // cache hit
+    if (!hasNorms(field))
+      return null;
+
+    NormValues[] subValues = new NormValues[subReaders.length];
+    for (int i = 0; i < subReaders.length; i++)
+      subValues[i] = subReaders[i].normValues(field);
+    return new NormValues.MultiNormValues(subValues, starts);
+  }
+
   @Override
   protected void doSetNorm(int n, String field, byte value)
     throws CorruptIndexException, IOException {
@@ -890,11 +890,21 @@ final class DocumentsWriter {
   }
 
   /** Called whenever a merge has completed and the merged segments had deletions */
-  synchronized void remapDeletes(SegmentInfos infos, int[][] docMaps, int[] delCounts, MergePolicy.OneMerge merge, int mergeDocCount) {
+  synchronized void remapDeletes(SegmentInfos infos, int[][] docMaps, int[] delCounts, MergePolicy.OneMerge merge, int mergeDocCount, boolean contiguous) {
     if (docMaps == null)
       // The merged segments had no deletes so docIDs did not change and we have nothing to do
       return;
-    MergeDocIDRemapper mapper = new MergeDocIDRemapper(infos, docMaps, delCounts, merge, mergeDocCount);
+    final MergeDocIDRemapper mapper;
+    if (contiguous)
+      mapper = new MergeDocIDRemapper(infos, docMaps, delCounts, merge, mergeDocCount);
+    else {
+      // IndexWriter applies the flushed deletes before it
+      // commits a merge of non-adjacent segments; the
+      // deletes that remain are against buffered docs,
+      // which all come after the merged segments
+      assert !deletesFlushed.any();
+      mapper = new MergeDocIDRemapper(merge, flushedDocCount, mergeDocCount);
+    }
     deletesInRAM.remap(mapper, infos, docMaps, delCounts, merge, mergeDocCount);
     deletesFlushed.remap(mapper, infos, docMaps, delCounts, merge, mergeDocCount);
     flushedDocCount -= mapper.docShift;
@@ -30,10 +30,13 @@ import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.cache.Cache;
+import org.apache.lucene.util.cache.SimpleLRUCache;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Class responsible for access to stored document fields.
@@ -65,6 +68,16 @@ final class FieldsReader implements Cloneable {
   private CloseableThreadLocal<IndexInput> fieldsStreamTL = new CloseableThreadLocal<IndexInput>();
   private boolean isOriginal = false;
 
+  // Number of decompressed blocks kept in blockCache
+  private static final int BLOCK_CACHE_SIZE = 8;
+
+  // Recently decompressed blocks by their position in the
+  // fields file, shared with all clones; null for formats
+  // before FORMAT_BLOCK_COMPRESSED
+  private final Cache<Long,Block> blockCache;
+  // Holds the docs returned by rawDocs
+  private byte[] rawDocsBuffer;
+
   /** Returns a cloned FieldsReader that shares open
    *  IndexInputs with the original one.  It is the caller's
    *  job not to close the original FieldsReader until all
@@ -73,12 +86,13 @@ final class FieldsReader implements Cloneable {
   @Override
   public Object clone() {
     ensureOpen();
-    return new FieldsReader(fieldInfos, numTotalDocs, size, format, formatSize, docStoreOffset, cloneableFieldsStream, cloneableIndexStream);
+    return new FieldsReader(fieldInfos, numTotalDocs, size, format, formatSize, docStoreOffset, cloneableFieldsStream, cloneableIndexStream, blockCache);
   }
   
   // Used only by clone
   private FieldsReader(FieldInfos fieldInfos, int numTotalDocs, int size, int format, int formatSize,
-                       int docStoreOffset, IndexInput cloneableFieldsStream, IndexInput cloneableIndexStream) {
+                       int docStoreOffset, IndexInput cloneableFieldsStream, IndexInput cloneableIndexStream,
+                       Cache<Long,Block> blockCache) {
     this.fieldInfos = fieldInfos;
     this.numTotalDocs = numTotalDocs;
     this.size = size;
@@ -87,6 +101,7 @@ final class FieldsReader implements Cloneable {
     this.docStoreOffset = docStoreOffset;
     this.cloneableFieldsStream = cloneableFieldsStream;
     this.cloneableIndexStream = cloneableIndexStream;
+    this.blockCache = blockCache;
     fieldsStream = (IndexInput) cloneableFieldsStream.clone();
     indexStream = (IndexInput) cloneableIndexStream.clone();
   }
@@ -148,6 +163,11 @@ final class FieldsReader implements Cloneable {
 
       indexStream = (IndexInput) cloneableIndexStream.clone();
       numTotalDocs = (int) (indexSize >> 3);
+      if (format >= FieldsWriter.FORMAT_BLOCK_COMPRESSED) {
+        blockCache = Cache.synchronizedCache(new SimpleLRUCache<Long,Block>(BLOCK_CACHE_SIZE));
+      } else {
+        blockCache = null;
+      }
       success = true;
     } finally {
       // With lock-less commits, it's entirely possible (and
@@ -216,7 +236,19 @@ final class FieldsReader implements Cloneable {
   final Document doc(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException {
     seekIndex(n);
     long position = indexStream.readLong();
-    fieldsStream.seek(position);
+    final IndexInput fieldsStream;
+    final byte[] blockBytes;
+    if (blockCache != null) {
+      final Block block = block(position);
+      final int docInBlock = docStoreOffset + n - block.firstDoc;
+      fieldsStream = new BlockInput(block.bytes, block.starts[block.starts.length-1]);
+      fieldsStream.seek(block.starts[docInBlock]);
+      blockBytes = block.bytes;
+    } else {
+      fieldsStream = this.fieldsStream;
+      fieldsStream.seek(position);
+      blockBytes = null;
+    }
 
     Document doc = new Document();
     int numFields = fieldsStream.readVInt();
@@ -236,24 +268,24 @@ final class FieldsReader implements Cloneable {
       //TODO: Find an alternative approach here if this list continues to grow beyond the
       //list of 5 or 6 currently here.  See Lucene 762 for discussion
       if (acceptField.equals(FieldSelectorResult.LOAD)) {
-        addField(doc, fi, binary, compressed, tokenize);
+        addField(fieldsStream, doc, fi, binary, compressed, tokenize);
       }
       else if (acceptField.equals(FieldSelectorResult.LOAD_AND_BREAK)){
-        addField(doc, fi, binary, compressed, tokenize);
+        addField(fieldsStream, doc, fi, binary, compressed, tokenize);
         break;//Get out of this loop
       }
       else if (acceptField.equals(FieldSelectorResult.LAZY_LOAD)) {
-        addFieldLazy(doc, fi, binary, compressed, tokenize);
+        addFieldLazy(fieldsStream, blockBytes, doc, fi, binary, compressed, tokenize);
       }
       else if (acceptField.equals(FieldSelectorResult.SIZE)){
-        skipField(binary, compressed, addFieldSize(doc, fi, binary, compressed));
+        skipField(fieldsStream, binary, compressed, addFieldSize(fieldsStream, doc, fi, binary, compressed));
       }
       else if (acceptField.equals(FieldSelectorResult.SIZE_AND_BREAK)){
-        addFieldSize(doc, fi, binary, compressed);
+        addFieldSize(fieldsStream, doc, fi, binary, compressed);
         break;
       }
       else {
-        skipField(binary, compressed);
+        skipField(fieldsStream, binary, compressed);
       }
     }
 
@@ -265,6 +297,9 @@ final class FieldsReader implements Cloneable {
    *  startDocID.  Returns the IndexInput (the fieldStream),
    *  already seeked to the starting point for startDocID.*/
   final IndexInput rawDocs(int[] lengths, int startDocID, int numDocs) throws IOException {
+    if (blockCache != null) {
+      return rawBlockDocs(lengths, startDocID, numDocs);
+    }
     seekIndex(startDocID);
     long startOffset = indexStream.readLong();
     long lastOffset = startOffset;
@@ -286,15 +321,140 @@ final class FieldsReader implements Cloneable {
     return fieldsStream;
   }
 
+  // Like rawDocs, but the docs are copied out of their
+  // decompressed blocks
+  private IndexInput rawBlockDocs(int[] lengths, int startDocID, int numDocs) throws IOException {
+    seekIndex(startDocID);
+    int length = 0;
+    for (int i = 0; i < numDocs; i++) {
+      final Block block = block(indexStream.readLong());
+      final int docInBlock = docStoreOffset + startDocID + i - block.firstDoc;
+      final int start = block.starts[docInBlock];
+      lengths[i] = block.starts[docInBlock+1] - start;
+      if (rawDocsBuffer == null || rawDocsBuffer.length < length + lengths[i]) {
+        final byte[] newBuffer = new byte[Math.max(2*(length + lengths[i]), FieldsWriter.BLOCK_SIZE)];
+        if (rawDocsBuffer != null) {
+          System.arraycopy(rawDocsBuffer, 0, newBuffer, 0, length);
+        }
+        rawDocsBuffer = newBuffer;
+      }
+      System.arraycopy(block.bytes, start, rawDocsBuffer, length, lengths[i]);
+      length += lengths[i];
+    }
+    return new BlockInput(rawDocsBuffer, length);
+  }
+
+  // Returns the decompressed block at the given position of
+  // the fields file
+  private Block block(long position) throws IOException {
+    final Long key = Long.valueOf(position);
+    Block block = blockCache.get(key);
+    if (block == null) {
+      fieldsStream.seek(position);
+      final int firstDoc = fieldsStream.readVInt();
+      final int numDocs = fieldsStream.readVInt();
+      final int[] starts = new int[numDocs+1];
+      for (int i = 0; i < numDocs; i++) {
+        starts[i+1] = starts[i] + fieldsStream.readVInt();
+      }
+      final byte[] compressed = new byte[fieldsStream.readVInt()];
+      fieldsStream.readBytes(compressed, 0, compressed.length);
+
+      final byte[] bytes = new byte[starts[numDocs]];
+      // Not kept per reader: clones are not closed when
+      // their thread dies, so the native memory would only
+      // be released by the finalizer
+      final Inflater inflater = new Inflater();
+      inflater.setInput(compressed);
+      try {
+        int upto = 0;
+        while (upto < bytes.length) {
+          final int count = inflater.inflate(bytes, upto, bytes.length - upto);
+          if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+            throw new CorruptIndexException("block at " + position + " is truncated: got " + upto + " of " + bytes.length + " bytes");
+          }
+          upto += count;
+        }
+      } catch (DataFormatException e) {
+        CorruptIndexException newException = new CorruptIndexException("block at " + position + " has wrong format: " + e.toString());
+        newException.initCause(e);
+        throw newException;
+      } finally {
+        inflater.end();
+      }
+
+      block = new Block(firstDoc, starts, bytes);
+      blockCache.put(key, block);
+    }
+    return block;
+  }
+
+  // The decompressed docs of a block
+  private static final class Block {
+    // Doc number in the fields file of the first doc
+    final int firstDoc;
+    // Offsets of the docs in bytes, and the total length
+    final int[] starts;
+    final byte[] bytes;
+
+    Block(int firstDoc, int[] starts, byte[] bytes) {
+      this.firstDoc = firstDoc;
+      this.starts = starts;
+      this.bytes = bytes;
+    }
+  }
+
+  // Reads the decompressed docs of a block
+  private static final class BlockInput extends IndexInput {
+    private final byte[] bytes;
+    private final int length;
+    private int pos;
+
+    BlockInput(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+    }
+
+    @Override
+    public byte readByte() {
+      return bytes[pos++];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) {
+      System.arraycopy(bytes, pos, b, offset, len);
+      pos += len;
+    }
+
+    @Override
+    public long getFilePointer() {
+      return pos;
+    }
+
+    @Override
+    public void seek(long pos) {
+      this.pos = (int) pos;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
   /**
    * Skip the field.  We still have to read some of the information about the field, but can skip past the actual content.
    * This will have the most payoff on large fields.
    */
-  private void skipField(boolean binary, boolean compressed) throws IOException {
-    skipField(binary, compressed, fieldsStream.readVInt());
+  private void skipField(IndexInput fieldsStream, boolean binary, boolean compressed) throws IOException {
+    skipField(fieldsStream, binary, compressed, fieldsStream.readVInt());
   }
   
-  private void skipField(boolean binary, boolean compressed, int toRead) throws IOException {
+  private void skipField(IndexInput fieldsStream, boolean binary, boolean compressed, int toRead) throws IOException {
    if (format >= FieldsWriter.FORMAT_VERSION_UTF8_LENGTH_IN_BYTES || binary || compressed) {
      fieldsStream.seek(fieldsStream.getFilePointer() + toRead);
    } else {
@@ -303,12 +463,12 @@ final class FieldsReader implements Cloneable {
    }
   }
 
-  private void addFieldLazy(Document doc, FieldInfo fi, boolean binary, boolean compressed, boolean tokenize) throws IOException {
+  private void addFieldLazy(IndexInput fieldsStream, byte[] blockBytes, Document doc, FieldInfo fi, boolean binary, boolean compressed, boolean tokenize) throws IOException {
     if (binary) {
       int toRead = fieldsStream.readVInt();
       long pointer = fieldsStream.getFilePointer();
       //was: doc.add(new Fieldable(fi.name, b, Fieldable.Store.YES));
-      doc.add(new LazyField(fi.name, Field.Store.YES, toRead, pointer, binary, compressed));
+      doc.add(new LazyField(fi.name, Field.Store.YES, toRead, pointer, blockBytes, binary, compressed));
       //Need to move the pointer ahead by toRead positions
       fieldsStream.seek(pointer + toRead);
     } else {
@@ -320,7 +480,7 @@ final class FieldsReader implements Cloneable {
       if (compressed) {
         int toRead = fieldsStream.readVInt();
         long pointer = fieldsStream.getFilePointer();
-        f = new LazyField(fi.name, store, toRead, pointer, binary, compressed);
+        f = new LazyField(fi.name, store, toRead, pointer, blockBytes, binary, compressed);
         //skip over the part that we aren't loading
         fieldsStream.seek(pointer + toRead);
         f.setOmitNorms(fi.omitNorms);
@@ -334,7 +494,7 @@ final class FieldsReader implements Cloneable {
         } else {
           fieldsStream.skipChars(length);
         }
-        f = new LazyField(fi.name, store, index, termVector, length, pointer, binary, compressed);
+        f = new LazyField(fi.name, store, index, termVector, length, pointer, blockBytes, binary, compressed);
         f.setOmitNorms(fi.omitNorms);
         f.setOmitTermFreqAndPositions(fi.omitTermFreqAndPositions);
       }
@@ -344,7 +504,7 @@ final class FieldsReader implements Cloneable {
 
   }
 
-  private void addField(Document doc, FieldInfo fi, boolean binary, boolean compressed, boolean tokenize) throws CorruptIndexException, IOException {
+  private void addField(IndexInput fieldsStream, Document doc, FieldInfo fi, boolean binary, boolean compressed, boolean tokenize) throws CorruptIndexException, IOException {
 
     //we have a binary stored field, and it may be compressed
     if (binary) {
@@ -393,7 +553,7 @@ final class FieldsReader implements Cloneable {
   // Add the size of field as a byte[] containing the 4 bytes of the integer byte size (high order byte first; char = 2 bytes)
   // Read just the size -- caller must skip the field content to continue reading fields
   // Return the size in bytes or chars, depending on field type
-  private int addFieldSize(Document doc, FieldInfo fi, boolean binary, boolean compressed) throws IOException {
+  private int addFieldSize(IndexInput fieldsStream, Document doc, FieldInfo fi, boolean binary, boolean compressed) throws IOException {
     int size = fieldsStream.readVInt(), bytesize = binary || compressed ? size : 2*size;
     byte[] sizebytes = new byte[4];
     sizebytes[0] = (byte) (bytesize>>>24);
@@ -411,13 +571,17 @@ final class FieldsReader implements Cloneable {
   private class LazyField extends AbstractField implements Fieldable {
     private int toRead;
     private long pointer;
+    // The decompressed block holding the field, or null if
+    // the field is read from the fields file
+    private final byte[] blockBytes;
     /** @deprecated Only kept for backward-compatbility with <3.0 indexes. Will be removed in 4.0. */
     private boolean isCompressed;
 
-    public LazyField(String name, Field.Store store, int toRead, long pointer, boolean isBinary, boolean isCompressed) {
+    public LazyField(String name, Field.Store store, int toRead, long pointer, byte[] blockBytes, boolean isBinary, boolean isCompressed) {
       super(name, store, Field.Index.NO, Field.TermVector.NO);
       this.toRead = toRead;
       this.pointer = pointer;
+      this.blockBytes = blockBytes;
       this.isBinary = isBinary;
       if (isBinary)
         binaryLength = toRead;
@@ -425,10 +589,11 @@ final class FieldsReader implements Cloneable {
       this.isCompressed = isCompressed;
     }
 
-    public LazyField(String name, Field.Store store, Field.Index index, Field.TermVector termVector, int toRead, long pointer, boolean isBinary, boolean isCompressed) {
+    public LazyField(String name, Field.Store store, Field.Index index, Field.TermVector termVector, int toRead, long pointer, byte[] blockBytes, boolean isBinary, boolean isCompressed) {
       super(name, store, index, termVector);
       this.toRead = toRead;
       this.pointer = pointer;
+      this.blockBytes = blockBytes;
       this.isBinary = isBinary;
       if (isBinary)
         binaryLength = toRead;
@@ -437,6 +602,9 @@ final class FieldsReader implements Cloneable {
     }
 
     private IndexInput getFieldStream() {
+      if (blockBytes != null) {
+        return new BlockInput(blockBytes, blockBytes.length);
+      }
       IndexInput localFieldsStream = fieldsStreamTL.get();
       if (localFieldsStream == null) {
         localFieldsStream = (IndexInput) cloneableFieldsStream.clone();
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
@@ -43,10 +44,18 @@ final class FieldsWriter
   // Lucene 3.0: Removal of compressed fields
   static final int FORMAT_LUCENE_3_0_NO_COMPRESSED_FIELDS = 2;
 
+  // Consecutive docs are compressed together in blocks;
+  // the fdx entry of a doc points to its block
+  static final int FORMAT_BLOCK_COMPRESSED = 3;
+
   // NOTE: if you introduce a new format, make it 1 higher
   // than the current one, and always change this if you
   // switch to a new format!
-  static final int FORMAT_CURRENT = FORMAT_LUCENE_3_0_NO_COMPRESSED_FIELDS;
+  static final int FORMAT_CURRENT = FORMAT_BLOCK_COMPRESSED;
+
+  // A block is written once its uncompressed docs take at
+  // least this many bytes
+  static final int BLOCK_SIZE = 1 << 14;
   
     private FieldInfos fieldInfos;
 
@@ -56,8 +65,18 @@ final class FieldsWriter
 
     private boolean doClose;
 
+    // Docs of the block that is not written yet; only used
+    // by the instance that owns the files
+    private BlockOutput block;
+    private int[] blockDocLengths;
+    private int numBlockDocs;
+    private int numDocs;
+    private Deflater deflater;
+
     FieldsWriter(Directory d, String segment, FieldInfos fn) throws IOException {
         fieldInfos = fn;
+        block = new BlockOutput();
+        blockDocLengths = new int[16];
 
         boolean success = false;
         final String fieldsName = segment + "." + IndexFileNames.FIELDS_EXTENSION;
@@ -105,6 +124,9 @@ final class FieldsWriter
           }
         }
 
+        // Created last: close() does not run until the
+        // streams are open, so a failure above would leak it
+        deflater = new Deflater(Deflater.BEST_SPEED);
         doClose = true;
     }
 
@@ -124,17 +146,77 @@ final class FieldsWriter
     // stream.  This assumes the buffer was already written
     // in the correct fields format.
     void flushDocument(int numStoredFields, RAMOutputStream buffer) throws IOException {
-      indexStream.writeLong(fieldsStream.getFilePointer());
-      fieldsStream.writeVInt(numStoredFields);
-      buffer.writeTo(fieldsStream);
+      final long start = startDocument();
+      block.writeVInt(numStoredFields);
+      buffer.writeTo(block);
+      finishDocument(start);
     }
 
     void skipDocument() throws IOException {
+      final long start = startDocument();
+      block.writeVInt(0);
+      finishDocument(start);
+    }
+
+    // Adds the index entry for the next doc, which points
+    // to the block that is not written yet
+    private long startDocument() throws IOException {
       indexStream.writeLong(fieldsStream.getFilePointer());
-      fieldsStream.writeVInt(0);
+      return block.getFilePointer();
+    }
+
+    private void finishDocument(long start) throws IOException {
+      if (numBlockDocs == blockDocLengths.length) {
+        final int[] newLengths = new int[2*numBlockDocs];
+        System.arraycopy(blockDocLengths, 0, newLengths, 0, numBlockDocs);
+        blockDocLengths = newLengths;
+      }
+      blockDocLengths[numBlockDocs++] = (int) (block.getFilePointer() - start);
+      numDocs++;
+      if (block.getFilePointer() >= BLOCK_SIZE) {
+        writeBlock();
+      }
+    }
+
+    // A block has the doc number (in this file) of its first
+    // doc, the number of docs, the uncompressed length of
+    // each doc, and then the compressed docs
+    private void writeBlock() throws IOException {
+      fieldsStream.writeVInt(numDocs - numBlockDocs);
+      fieldsStream.writeVInt(numBlockDocs);
+      for (int i = 0; i < numBlockDocs; i++) {
+        fieldsStream.writeVInt(blockDocLengths[i]);
+      }
+
+      final int length = (int) block.getFilePointer();
+      deflater.reset();
+      deflater.setInput(block.bytes, 0, length);
+      deflater.finish();
+      // Deflate may expand incompressible data a little
+      byte[] compressed = new byte[length + (length >> 8) + 64];
+      int compressedLength = 0;
+      while (!deflater.finished()) {
+        if (compressedLength == compressed.length) {
+          final byte[] newCompressed = new byte[2*compressed.length];
+          System.arraycopy(compressed, 0, newCompressed, 0, compressedLength);
+          compressed = newCompressed;
+        }
+        compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+      }
+      fieldsStream.writeVInt(compressedLength);
+      fieldsStream.writeBytes(compressed, 0, compressedLength);
+
+      block.reset();
+      numBlockDocs = 0;
     }
 
+    // Also writes the pending block, so that the docs of a
+    // flushed segment are in the file even if the doc store
+    // is never closed properly
     void flush() throws IOException {
+      if (numBlockDocs > 0) {
+        writeBlock();
+      }
       indexStream.flush();
       fieldsStream.flush();
     }
@@ -145,6 +227,9 @@ final class FieldsWriter
         try {
           if (fieldsStream != null) {
             try {
+              if (numBlockDocs > 0) {
+                writeBlock();
+              }
               fieldsStream.close();
             } finally {
               fieldsStream = null;
@@ -171,11 +256,16 @@ final class FieldsWriter
               indexStream = null;
             }
           }
+          deflater.end();
         }
       }
     }
 
     final void writeField(FieldInfo fi, Fieldable field) throws IOException {
+      writeField(fieldsStream, fi, field);
+    }
+
+    private static void writeField(IndexOutput fieldsStream, FieldInfo fi, Fieldable field) throws IOException {
       fieldsStream.writeVInt(fi.number);
       byte bits = 0;
       if (field.isTokenized())
@@ -203,22 +293,19 @@ final class FieldsWriter
 
     /** Bulk write a contiguous series of documents.  The
      *  lengths array is the length (in bytes) of each raw
-     *  document.  The stream IndexInput is the
-     *  fieldsStream from which we should bulk-copy all
+     *  (uncompressed) document.  The stream IndexInput is
+     *  the input from which we should bulk-copy all
      *  bytes. */
     final void addRawDocuments(IndexInput stream, int[] lengths, int numDocs) throws IOException {
-      long position = fieldsStream.getFilePointer();
-      long start = position;
       for(int i=0;i<numDocs;i++) {
-        indexStream.writeLong(position);
-        position += lengths[i];
+        final long start = startDocument();
+        block.copyBytes(stream, lengths[i]);
+        finishDocument(start);
       }
-      fieldsStream.copyBytes(stream, position-start);
-      assert fieldsStream.getFilePointer() == position;
     }
 
     final void addDocument(Document doc) throws IOException {
-        indexStream.writeLong(fieldsStream.getFilePointer());
+        final long start = startDocument();
 
         int storedCount = 0;
         List<Fieldable> fields = doc.getFields();
@@ -226,13 +313,71 @@ final class FieldsWriter
             if (field.isStored())
                 storedCount++;
         }
-        fieldsStream.writeVInt(storedCount);
+        block.writeVInt(storedCount);
 
         
 
         for (Fieldable field : fields) {
             if (field.isStored())
-              writeField(fieldInfos.fieldInfo(field.name()), field);
+              writeField(block, fieldInfos.fieldInfo(field.name()), field);
+        }
+
+        finishDocument(start);
+    }
+
+    // Growable in-memory output for the docs of a block
+    private static final class BlockOutput extends IndexOutput {
+      byte[] bytes = new byte[BLOCK_SIZE];
+      private int pos;
+
+      void reset() {
+        pos = 0;
+      }
+
+      @Override
+      public void writeByte(byte b) {
+        if (pos == bytes.length) {
+          grow(pos + 1);
         }
+        bytes[pos++] = b;
+      }
+
+      @Override
+      public void writeBytes(byte[] b, int offset, int length) {
+        if (pos + length > bytes.length) {
+          grow(pos + length);
+        }
+        System.arraycopy(b, offset, bytes, pos, length);
+        pos += length;
+      }
+
+      private void grow(int minSize) {
+        final byte[] newBytes = new byte[Math.max(minSize, 2*bytes.length)];
+        System.arraycopy(bytes, 0, newBytes, 0, pos);
+        bytes = newBytes;
+      }
+
+      @Override
+      public long getFilePointer() {
+        return pos;
+      }
+
+      @Override
+      public long length() {
+        return pos;
+      }
+
+      @Override
+      public void seek(long pos) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
     }
 }
@@ -194,6 +194,12 @@ public class FilterIndexReader extends IndexReader {
     in.norms(f, bytes, offset);
   }
 
+  @Override
+  public NormValues normValues(String f) throws IOException {
+    ensureOpen();
+    return in.normValues(f);
+  }
+
   @Override
   protected void doSetNorm(int d, String f, byte b) throws CorruptIndexException, IOException {
     in.setNorm(d, f, b);
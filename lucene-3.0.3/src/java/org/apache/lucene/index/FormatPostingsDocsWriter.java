@@ -64,6 +64,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
   int lastDocID;
   int df;
+  int maxFreq;
 
   /** Adds a new doc in this term.  If this returns null
    *  then we just skip consuming positions/payloads. */
@@ -84,13 +85,19 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
     assert docID < totalNumDocs: "docID=" + docID + " totalNumDocs=" + totalNumDocs;
 
     lastDocID = docID;
-    if (omitTermFreqAndPositions)
+    if (omitTermFreqAndPositions) {
       out.writeVInt(delta);
-    else if (1 == termDocFreq)
-      out.writeVInt((delta<<1) | 1);
-    else {
-      out.writeVInt(delta<<1);
-      out.writeVInt(termDocFreq);
+      // TermDocs reports a freq of 1
+      maxFreq = 1;
+    } else {
+      if (1 == termDocFreq)
+        out.writeVInt((delta<<1) | 1);
+      else {
+        out.writeVInt(delta<<1);
+        out.writeVInt(termDocFreq);
+      }
+      if (termDocFreq > maxFreq)
+        maxFreq = termDocFreq;
     }
 
     return posWriter;
@@ -106,7 +113,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
     // TODO: this is abstraction violation -- we should not
     // peek up into parents terms encoding format
-    termInfo.set(df, parent.freqStart, parent.proxStart, (int) (skipPointer - parent.freqStart));
+    termInfo.set(df, parent.freqStart, parent.proxStart, (int) (skipPointer - parent.freqStart), maxFreq);
 
     // TODO: we could do this incrementally
     UnicodeUtil.UTF16toUTF8(parent.currentTerm, parent.currentTermStart, utf8);
@@ -120,6 +127,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
     lastDocID = 0;
     df = 0;
+    maxFreq = 0;
   }
 
   void close() throws IOException {
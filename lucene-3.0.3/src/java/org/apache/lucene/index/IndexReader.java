@@ -720,6 +720,22 @@ public abstract class IndexReader implements Cloneable,Closeable {
   public abstract void norms(String field, byte[] bytes, int offset)
     throws IOException;
 
+  /** Returns random access to the byte-encoded normalization factors for
+   * the named field, or null if the field has no norms.  This is used by
+   * the search code to score documents.  Unlike {@link #norms(String)}, it
+   * does not need to load the norms of all documents into an array, see
+   * {@link NormValues}.  The default implementation wraps
+   * {@link #norms(String)}.
+   *
+   * <p><font color="red"><b>NOTE:</b> This API is experimental and might change in incompatible ways in the next release.</font></p>
+   *
+   * @see org.apache.lucene.document.Field#setBoost(float)
+   */
+  public NormValues normValues(String field) throws IOException {
+    final byte[] norms = norms(field);
+    return norms == null ? null : NormValues.wrap(norms);
+  }
+
   /** Expert: Resets the normalization factor for the named field of the named
    * document.  The norm represents the product of the field's {@link
    * org.apache.lucene.document.Fieldable#setBoost(float) boost} and its {@link Similarity#lengthNorm(String,
@@ -425,6 +425,11 @@ public class IndexWriter implements Closeable {
 
     private final Map<SegmentInfo,SegmentReader> readerMap = new HashMap<SegmentInfo,SegmentReader>();
 
+    // The last read-only clone handed out for each pooled
+    // reader; it is shared by all near real-time readers
+    // until the deletes or norms of the segment change
+    private final Map<SegmentInfo,PooledClone> cloneMap = new HashMap<SegmentInfo,PooledClone>();
+
     /** Forcefully clear changes for the specified segments,
      *  and remove from the pool.   This is called on successful merge. */
     synchronized void clear(SegmentInfos infos) throws IOException {
@@ -503,6 +508,7 @@ public class IndexWriter implements Closeable {
         // We are the last ref to this reader; since we're
         // not pooling readers, we release it:
         readerMap.remove(sr.getSegmentInfo());
+        dropClone(sr.getSegmentInfo());
 
         if (hasChanges) {
           // Must checkpoint w/ deleter, because this
@@ -544,6 +550,20 @@ public class IndexWriter implements Closeable {
         // IndexWriter instance is closed
         sr.decRef();
       }
+
+      for (PooledClone clone : cloneMap.values()) {
+        clone.reader.decRef();
+      }
+      cloneMap.clear();
+    }
+
+    /** Drops the pool's reference to the read-only clone of
+     *  the given segment, if any. */
+    private void dropClone(SegmentInfo info) throws IOException {
+      final PooledClone clone = cloneMap.remove(info);
+      if (clone != null) {
+        clone.reader.decRef();
+      }
     }
     
     /**
@@ -572,14 +592,32 @@ public class IndexWriter implements Closeable {
     }
     
     /**
-     * Returns a ref to a clone.  NOTE: this clone is not
-     * enrolled in the pool, so you should simply close()
-     * it when you're done (ie, do not call release()).
+     * Returns a ref to a read-only clone.  If the deletes
+     * and norms of the segment did not change since the
+     * last call, the same clone is returned again, so that
+     * successive near real-time readers share it.  NOTE:
+     * this clone is not enrolled in the pool, so you should
+     * simply decRef() it when you're done (ie, do not call
+     * release()).
      */
     public synchronized SegmentReader getReadOnlyClone(SegmentInfo info, boolean doOpenStores, int termInfosIndexDivisor) throws IOException {
       SegmentReader sr = get(info, doOpenStores, BufferedIndexInput.BUFFER_SIZE, termInfosIndexDivisor);
       try {
-        return (SegmentReader) sr.clone(true);
+        if (readerMap.get(info) != sr) {
+          // Not pooled (external)
+          return (SegmentReader) sr.clone(true);
+        }
+        PooledClone clone = cloneMap.get(info);
+        if (clone == null || clone.changeCount != sr.getChangeCount()) {
+          final SegmentReader newClone = (SegmentReader) sr.clone(true);
+          dropClone(info);
+          clone = new PooledClone(newClone, sr.getChangeCount());
+          cloneMap.put(info, clone);
+        }
+        // One ref for the caller; the pool keeps the ref
+        // from clone()
+        clone.reader.incRef();
+        return clone.reader;
       } finally {
         sr.decRef();
       }
@@ -657,6 +695,18 @@ public class IndexWriter implements Closeable {
       return sr;
     }
   }
+
+  /** A read-only clone of a pooled reader, along with the
+   *  change count of the pooled reader at clone time. */
+  private static final class PooledClone {
+    final SegmentReader reader;
+    final long changeCount;
+
+    PooledClone(SegmentReader reader, long changeCount) {
+      this.reader = reader;
+      this.changeCount = changeCount;
+    }
+  }
   
   /**
    * Obtain the number of deleted docs for a pooled reader.
@@ -3787,30 +3837,48 @@ public class IndexWriter implements Closeable {
     return docWriter.getNumDocsInRAM();
   }
 
-  private int ensureContiguousMerge(MergePolicy.OneMerge merge) {
+  /** Expert: returns the segments that are being merged,
+   *  including the segments that running merges will
+   *  produce.  MergePolicy uses this to leave them out of
+   *  new merges; the caller must hold the lock on this
+   *  writer, as {@link MergePolicy#findMerges} does. */
+  synchronized Collection<SegmentInfo> getMergingSegments() {
+    return mergingSegments;
+  }
 
-    int first = segmentInfos.indexOf(merge.segments.info(0));
-    if (first == -1)
-      throw new MergePolicy.MergeException("could not find segment " + merge.segments.info(0).name + " in current index " + segString(), directory);
+  /** Checks that all segments of the merge are in the
+   *  current index and returns the position of the first
+   *  of them.  The segments need not be adjacent. */
+  private int ensureValidMerge(MergePolicy.OneMerge merge) {
 
-    final int numSegments = segmentInfos.size();
-    
+    int first = -1;
     final int numSegmentsToMerge = merge.segments.size();
     for(int i=0;i<numSegmentsToMerge;i++) {
       final SegmentInfo info = merge.segments.info(i);
-
-      if (first + i >= numSegments || !segmentInfos.info(first+i).equals(info)) {
-        if (segmentInfos.indexOf(info) == -1)
-          throw new MergePolicy.MergeException("MergePolicy selected a segment (" + info.name + ") that is not in the current index " + segString(), directory);
-        else
-          throw new MergePolicy.MergeException("MergePolicy selected non-contiguous segments to merge (" + merge.segString(directory) + " vs " + segString() + "), which IndexWriter (currently) cannot handle",
-                                               directory);
-      }
+      final int index = segmentInfos.indexOf(info);
+      if (index == -1)
+        throw new MergePolicy.MergeException("MergePolicy selected a segment (" + info.name + ") that is not in the current index " + segString(), directory);
+      if (first == -1 || index < first)
+        first = index;
     }
 
     return first;
   }
 
+  /** Returns true if the segments of the merge are
+   *  adjacent in the index and in the same order, starting
+   *  at the given position. */
+  private boolean isContiguousMerge(MergePolicy.OneMerge merge, int first) {
+    final int numSegmentsToMerge = merge.segments.size();
+    if (first + numSegmentsToMerge > segmentInfos.size())
+      return false;
+    for(int i=0;i<numSegmentsToMerge;i++) {
+      if (!segmentInfos.info(first+i).equals(merge.segments.info(i)))
+        return false;
+    }
+    return true;
+  }
+
   /** Carefully merges deletes for the segments we just
    *  merged.  This is tricky because, although merging will
    *  clear all deletes (compacts the documents), new
@@ -3886,7 +3954,6 @@ public class IndexWriter implements Closeable {
     mergeReader.hasChanges = delCount > 0;
   }
 
-  /* FIXME if we want to support non-contiguous segment merges */
   synchronized private boolean commitMerge(MergePolicy.OneMerge merge, SegmentMerger merger, int mergedDocCount, SegmentReader mergedReader) throws IOException {
 
     assert testPoint("startCommitMerge");
@@ -3912,10 +3979,20 @@ public class IndexWriter implements Closeable {
       return false;
     }
 
-    final int start = ensureContiguousMerge(merge);
+    final int start = ensureValidMerge(merge);
+    final boolean contiguous = isContiguousMerge(merge, start);
+
+    if (!contiguous) {
+      // The merged segment takes the place of the first
+      // segment, so the docs of the segments in between
+      // move: flushed deletes, which are recorded against
+      // the old docIDs, cannot be remapped and must be
+      // applied first
+      applyDeletes();
+    }
 
     commitMergedDeletes(merge, mergedReader);
-    docWriter.remapDeletes(segmentInfos, merger.getDocMaps(), merger.getDelCounts(), merge, mergedDocCount);
+    docWriter.remapDeletes(segmentInfos, merger.getDocMaps(), merger.getDelCounts(), merge, mergedDocCount, contiguous);
       
     // If the doc store we are using has been closed and
     // is in now compound format (but wasn't when we
@@ -3925,7 +4002,10 @@ public class IndexWriter implements Closeable {
 
     merge.info.setHasProx(merger.hasProx());
 
-    segmentInfos.subList(start, start + merge.segments.size()).clear();
+    if (contiguous)
+      segmentInfos.subList(start, start + merge.segments.size()).clear();
+    else
+      segmentInfos.removeAll(merge.segments);
     assert !segmentInfos.contains(merge.info);
     segmentInfos.add(start, merge.info);
 
@@ -4065,7 +4145,7 @@ public class IndexWriter implements Closeable {
       }
     }
 
-    ensureContiguousMerge(merge);
+    ensureValidMerge(merge);
 
     pendingMerges.add(merge);
 
@@ -4526,7 +4606,10 @@ public class IndexWriter implements Closeable {
       final SegmentReader mergedReader = readerPool.get(merge.info, loadDocStores, BufferedIndexInput.BUFFER_SIZE, termsIndexDivisor);
       try {
         if (poolReaders && mergedSegmentWarmer != null) {
+          final long t0 = System.currentTimeMillis();
           mergedSegmentWarmer.warm(mergedReader);
+          if (infoStream != null)
+            message("merged segment " + merge.info.name + " warmed in " + (System.currentTimeMillis()-t0) + " msec");
         }
         if (!commitMerge(merge, merger, mergedDocCount, mergedReader)) {
           // commitMerge will return false if this merge was aborted
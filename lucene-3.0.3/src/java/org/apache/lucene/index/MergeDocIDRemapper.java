@@ -72,6 +72,20 @@ final class MergeDocIDRemapper {
     assert docShift == maxDocID - (newStarts[docMaps.length-1] + merge.segments.info(docMaps.length-1).docCount - delCounts[docMaps.length-1]);
   }
 
+  /** Only shifts docIDs at or after flushedDocCount, ie
+   *  the docs buffered in RAM, down by the number of deleted
+   *  docs the merge compacted away.  This is used when the
+   *  merged segments were not adjacent, in which case all
+   *  flushed deletes must have been applied first. */
+  public MergeDocIDRemapper(MergePolicy.OneMerge merge, int flushedDocCount, int mergedDocCount) {
+    int numDocs = 0;
+    for(int i=0;i<merge.segments.size();i++)
+      numDocs += merge.segments.info(i).docCount;
+    minDocID = flushedDocCount;
+    maxDocID = flushedDocCount;
+    docShift = numDocs - mergedDocCount;
+  }
+
   public int remap(int oldDocID) {
     if (oldDocID < minDocID)
       // Unaffected by merge
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 import java.io.IOException;
 import java.util.List;
@@ -84,6 +85,9 @@ public abstract class MergePolicy implements java.io.Closeable {
     final boolean useCompoundFile;
     boolean aborted;
     Throwable error;
+    boolean paused;
+    long pausedNS;                  // time spent paused in checkAborted
+    Directory directory;            // if set, the merged segment is written here
 
     public OneMerge(SegmentInfos segments, boolean useCompoundFile) {
       if (0 == segments.size())
@@ -109,6 +113,7 @@ public abstract class MergePolicy implements java.io.Closeable {
      *  not be committed. */
     synchronized void abort() {
       aborted = true;
+      notifyAll();
     }
 
     /** Returns true if this merge was aborted. */
@@ -119,6 +124,35 @@ public abstract class MergePolicy implements java.io.Closeable {
     synchronized void checkAborted(Directory dir) throws MergeAbortedException {
       if (aborted)
         throw new MergeAbortedException("merge is aborted: " + segString(dir));
+
+      if (paused) {
+        final long startNS = System.nanoTime();
+        while (paused && !aborted) {
+          try {
+            // In theory we could wait() indefinitely, but we
+            // do 1000 msec, defensively
+            wait(1000);
+          } catch (InterruptedException ie) {
+            throw new ThreadInterruptedException(ie);
+          }
+        }
+        pausedNS += System.nanoTime() - startNS;
+        if (aborted)
+          throw new MergeAbortedException("merge is aborted: " + segString(dir));
+      }
+    }
+
+    /** Pauses (or resumes) this merge at its next call to
+     *  {@link #checkAborted}. */
+    synchronized void setPause(boolean paused) {
+      this.paused = paused;
+      if (!paused)
+        notifyAll();
+    }
+
+    /** Returns true if this merge is paused. */
+    synchronized boolean getPause() {
+      return paused;
     }
 
     String segString(Directory dir) {
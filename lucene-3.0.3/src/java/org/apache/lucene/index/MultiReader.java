@@ -329,6 +329,22 @@ public class MultiReader extends IndexReader implements Cloneable {
     }
   }
 
+  // reads from the segments, unless the top-level norms are cached
+  @Override
+  public synchronized NormValues normValues(String field) throws IOException {
+    ensureOpen();
+    byte[] bytes = normsCache.get(field);
+    if (bytes != null)
+      return NormValues.wrap(bytes);          // cache hit
+    if (!hasNorms(field))
+      return null;
+
+    NormValues[] subValues = new NormValues[subReaders.length];
+    for (int i = 0; i < subReaders.length; i++)
+      subValues[i] = subReaders[i].normValues(field);
+    return new NormValues.MultiNormValues(subValues, starts);
+  }
+
   @Override
   protected void doSetNorm(int n, String field, byte value)
     throws CorruptIndexException, IOException {
@@ -0,0 +1,107 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Random access to the byte-encoded normalization factors of one field, as
+ * returned by {@link IndexReader#normValues(String)}.
+ * <p>
+ * Unlike {@link IndexReader#norms(String)}, this does not require the norms
+ * to be loaded into an array on the heap: a {@link SegmentReader} whose
+ * norms file is mapped into memory (see
+ * {@link org.apache.lucene.store.IndexInput#isMapped}), as with
+ * {@link org.apache.lucene.store.MMapDirectory} or
+ * {@link org.apache.lucene.store.ChunkedMMapDirectory} and non-compound
+ * segments, reads them straight from the mapped file until they are changed
+ * with {@link IndexReader#setNorm}, and a composite reader reads them from
+ * its segments rather than building a top-level array.
+ * <p>
+ * An instance must only be used by one thread.
+ *
+ * <p><font color="red"><b>NOTE:</b> This API is experimental and might change in incompatible ways in the next release.</font></p>
+ */
+public abstract class NormValues {
+
+  /** Returns the norm of the given document. */
+  public abstract byte get(int doc) throws IOException;
+
+  /** Returns NormValues reading from the given array. */
+  public static NormValues wrap(byte[] norms) {
+    return new ArrayNormValues(norms);
+  }
+
+  private static final class ArrayNormValues extends NormValues {
+    private final byte[] norms;
+
+    ArrayNormValues(byte[] norms) {
+      this.norms = norms;
+    }
+
+    @Override
+    public byte get(int doc) {
+      return norms[doc];
+    }
+  }
+
+  /* Reads the norms from a norms file, starting at the given position. */
+  static final class InputNormValues extends NormValues {
+    private final IndexInput in;
+    private final long start;
+
+    InputNormValues(IndexInput in, long start) {
+      this.in = in;
+      this.start = start;
+    }
+
+    @Override
+    public byte get(int doc) throws IOException {
+      in.seek(start + doc);
+      return in.readByte();
+    }
+  }
+
+  /* Reads the norms of a composite reader from its sub-readers. */
+  static final class MultiNormValues extends NormValues {
+    private static final byte DEFAULT_NORM = Similarity.encodeNorm(1.0f);
+
+    private final NormValues[] subValues;         // null if a sub-reader has no norms
+    private final int[] starts;
+    private int current;
+
+    MultiNormValues(NormValues[] subValues, int[] starts) {
+      this.subValues = subValues;
+      this.starts = starts;
+    }
+
+    @Override
+    public byte get(int doc) throws IOException {
+      // docs are mostly accessed in order, so first try the last sub-reader
+      if (doc < starts[current] || doc >= starts[current + 1]) {
+        current = ReaderUtil.subIndex(doc, starts);
+      }
+      final NormValues values = subValues[current];
+      return values == null ? DEFAULT_NORM : values.get(doc - starts[current]);
+    }
+  }
+}
@@ -361,6 +361,13 @@ public class ParallelReader extends IndexReader {
       reader.norms(field, result, offset);
   }
 
+  @Override
+  public NormValues normValues(String field) throws IOException {
+    ensureOpen();
+    IndexReader reader = fieldToReader.get(field);
+    return reader==null ? null : reader.normValues(field);
+  }
+
   @Override
   protected void doSetNorm(int n, String field, byte value)
     throws CorruptIndexException, IOException {
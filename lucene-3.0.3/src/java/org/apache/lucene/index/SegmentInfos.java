@@ -90,8 +90,13 @@ public final class SegmentInfos extends Vector<SegmentInfo> {
    *  diagnostics storage, and switches userData to Map */
   public static final int FORMAT_DIAGNOSTICS = -9;
 
+  /** This format allows deleted docs files to store the
+   *  deleted docs as a list of d-gaps or of runs, which
+   *  older versions cannot read. */
+  public static final int FORMAT_SPARSE_DELETES = -10;
+
   /* This must always point to the most recent file format. */
-  static final int CURRENT_FORMAT = FORMAT_DIAGNOSTICS;
+  static final int CURRENT_FORMAT = FORMAT_SPARSE_DELETES;
   
   public int counter = 0;    // used to name new segments
   /**
@@ -86,7 +86,9 @@ final class SegmentMerger {
   }
 
   SegmentMerger(IndexWriter writer, String name, MergePolicy.OneMerge merge) {
-    directory = writer.getDirectory();
+    // the merge scheduler may have given the merge its own
+    // (eg throttled) view of the writer's directory
+    directory = merge != null && merge.directory != null ? merge.directory : writer.getDirectory();
     segment = name;
     if (merge != null) {
       checkAbort = new CheckAbort(merge, directory);
@@ -65,6 +65,11 @@ public class SegmentReader extends IndexReader implements Cloneable {
   private SegmentInfo rollbackSegmentInfo;
   private int rollbackPendingDeleteCount;
 
+  // Incremented on every change to deletes or norms, so
+  // that IndexWriter's reader pool can tell whether a
+  // read-only clone it handed out is still current
+  private long changeCount;
+
   // optionally used for the .nrm file shared by multiple norms
   private IndexInput singleNormStream;
   private Ref singleNormRef;
@@ -364,6 +369,12 @@ public class SegmentReader extends IndexReader implements Cloneable {
     private boolean dirty;
     private int number;
     private boolean rollbackDirty;
+    // -1 until computed by maxNorm()
+    private int maxNorm = -1;
+    // true once values() handed out a view of the norms
+    // file: the origNorm then keeps its IndexInput open, and
+    // a clone keeps its origNorm, until they are closed
+    private boolean valuesShared;
     
     public Norm(IndexInput in, int number, long normSeek) {
       this.in = in;
@@ -453,9 +464,11 @@ public class SegmentReader extends IndexReader implements Cloneable {
           bytesRef.incRef();
 
           // Once we've loaded the bytes we no longer need
-          // origNorm:
-          origNorm.decRef();
-          origNorm = null;
+          // origNorm, unless values() are reading its file:
+          if (!valuesShared) {
+            origNorm.decRef();
+            origNorm = null;
+          }
 
         } else {
           // We are the origNorm, so load the bytes for real
@@ -473,13 +486,69 @@ public class SegmentReader extends IndexReader implements Cloneable {
           }
 
           bytesRef = new Ref();
-          closeInput();
+          if (!valuesShared) {
+            closeInput();
+          }
         }
       }
 
       return bytes;
     }
 
+    // Returns access to the norms that reads them from the
+    // norms file if it is memory-mapped and they are not
+    // loaded yet, else loads & caches the bytes
+    public synchronized NormValues values() throws IOException {
+      assert refCount > 0 && (origNorm == null || origNorm.refCount > 0);
+      final NormValues values = mappedValues();
+      if (values != null) {
+        return values;
+      }
+      return NormValues.wrap(bytes());
+    }
+
+    // Returns access to the norms that reads them from the
+    // norms file, or null if they are loaded or the file is
+    // not memory-mapped (eg, inside a compound file)
+    private synchronized NormValues mappedValues() {
+      if (bytes != null) {
+        return null;
+      }
+      NormValues values = null;
+      if (origNorm != null) {
+        // if origNorm loaded its bytes, values() loads ours
+        // so that we hold a reference to them
+        values = origNorm.mappedValues();
+      } else {
+        assert in != null;
+        if (in.isMapped()) {
+          final IndexInput clone;
+          synchronized(in) {
+            clone = (IndexInput) in.clone();
+          }
+          values = new NormValues.InputNormValues(clone, normSeek);
+        }
+      }
+      if (values != null) {
+        valuesShared = true;
+      }
+      return values;
+    }
+
+    // Returns the largest norm as unsigned byte value
+    public synchronized int maxNorm() throws IOException {
+      if (maxNorm == -1) {
+        final NormValues values = values();
+        final int maxDoc = maxDoc();
+        int max = 0;
+        for (int i = 0; i < maxDoc; i++) {
+          max = Math.max(max, values.get(i) & 0xFF);
+        }
+        maxNorm = max;
+      }
+      return maxNorm;
+    }
+
     // Only for testing
     Ref bytesRef() {
       return bytesRef;
@@ -503,6 +572,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
         oldRef.decRef();
       }
       dirty = true;
+      maxNorm = -1;
       return bytes;
     }
     
@@ -521,12 +591,14 @@ public class SegmentReader extends IndexReader implements Cloneable {
       }
       clone.refCount = 1;
 
+      clone.valuesShared = false;
       if (bytes != null) {
         assert bytesRef != null;
-        assert origNorm == null;
 
-        // Clone holds a reference to my bytes:
+        // Clone holds a reference to my bytes, and
+        // doesn't need my origNorm:
         clone.bytesRef.incRef();
+        clone.origNorm = null;
       } else {
         assert bytesRef == null;
         if (origNorm == null) {
@@ -896,6 +968,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
       oldRef.decRef();
     }
     deletedDocsDirty = true;
+    changeCount++;
     if (!deletedDocs.getAndSet(docNum))
       pendingDeleteCount++;
   }
@@ -903,6 +976,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
   @Override
   protected void doUndeleteAll() {
     deletedDocsDirty = false;
+    changeCount++;
     if (deletedDocs != null) {
       assert deletedDocsRef != null;
       deletedDocsRef.decRef();
@@ -1067,6 +1141,49 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return bytes;
   }
 
+  /**
+   * Returns the norms of the field, read from the norms
+   * file as long as it is memory-mapped and they have not
+   * been loaded by {@link #norms(String)} or changed by
+   * {@link #setNorm}.
+   */
+  @Override
+  public synchronized NormValues normValues(String field) throws IOException {
+    ensureOpen();
+    Norm norm = norms.get(field);
+    return norm == null ? null : norm.values();
+  }
+
+  /**
+   * Returns the largest norm of the field in this segment,
+   * as unsigned byte value, or -1 if the field has no norms.
+   * The value is computed on first use and kept until a
+   * norm of the field is changed.
+   */
+  public synchronized int maxNorm(String field) throws IOException {
+    ensureOpen();
+    Norm norm = norms.get(field);
+    return norm == null ? -1 : norm.maxNorm();
+  }
+
+  /**
+   * Returns the highest frequency of the term in any
+   * document of this segment, or 0 if the term does not
+   * occur.  Deleted documents are included, so the value is
+   * shared by all clones and reopened instances of this
+   * segment.  The value is stored in the term dictionary
+   * when the segment is written; segments written by
+   * older versions don't have it, and -1 is returned.
+   */
+  public int maxTermFreq(Term term) throws IOException {
+    ensureOpen();
+    TermInfo ti = core.getTermsReader().get(term);
+    if (ti != null)
+      return ti.maxFreq;
+    else
+      return 0;
+  }
+
   @Override
   protected void doSetNorm(int doc, String field, byte value)
           throws IOException {
@@ -1075,6 +1192,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
       return;
 
     normsDirty = true;
+    changeCount++;
     norm.copyOnWrite()[doc] = value;                    // set the value
   }
 
@@ -1139,6 +1257,12 @@ public class SegmentReader extends IndexReader implements Cloneable {
     }
   }
 
+  /** Returns a number that changes whenever deletes or
+   *  norms of this reader change. */
+  long getChangeCount() {
+    return changeCount;
+  }
+
   boolean termsIndexLoaded() {
     return core.termsIndexIsLoaded();
   }
@@ -27,6 +27,11 @@ class SegmentTermDocs implements TermDocs {
   protected int count;
   protected int df;
   protected BitVector deletedDocs;
+  // the first deleted doc at or after deletedFrom, as of deletedCount
+  // deletions
+  private int deletedFrom = Integer.MAX_VALUE;
+  private int nextDeleted;
+  private int deletedCount;
   int doc = 0;
   int freq;
 
@@ -124,13 +129,28 @@ class SegmentTermDocs implements TermDocs {
       
       count++;
 
-      if (deletedDocs == null || !deletedDocs.get(doc))
+      if (deletedDocs == null || !isDeleted(doc))
         break;
       skippingDoc();
     }
     return true;
   }
 
+  /* Docs are checked in increasing order between seeks, so rather than
+   * looking up every doc, this only looks for the next deleted doc once
+   * the previous one has been passed. */
+  private boolean isDeleted(int doc) {
+    if (doc < deletedFrom || doc > nextDeleted || deletedDocs.count() != deletedCount) {
+      deletedFrom = doc;
+      deletedCount = deletedDocs.count();
+      nextDeleted = deletedDocs.nextSetBit(doc);
+      if (nextDeleted == -1) {
+        nextDeleted = Integer.MAX_VALUE;
+      }
+    }
+    return doc == nextDeleted;
+  }
+
   /** Optimized implementation. */
   public int read(final int[] docs, final int[] freqs)
           throws IOException {
@@ -149,7 +169,7 @@ class SegmentTermDocs implements TermDocs {
           freq = freqStream.readVInt();     // else read freq
         count++;
 
-        if (deletedDocs == null || !deletedDocs.get(doc)) {
+        if (deletedDocs == null || !isDeleted(doc)) {
           docs[i] = doc;
           freqs[i] = freq;
           ++i;
@@ -166,7 +186,7 @@ class SegmentTermDocs implements TermDocs {
       doc += freqStream.readVInt();       
       count++;
 
-      if (deletedDocs == null || !deletedDocs.get(doc)) {
+      if (deletedDocs == null || !isDeleted(doc)) {
         docs[i] = doc;
         // Hardware freq to 1 when term freqs were not
         // stored in the index
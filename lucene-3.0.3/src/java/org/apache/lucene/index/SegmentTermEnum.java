@@ -147,6 +147,11 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
       if (termInfo.docFreq >= skipInterval) 
         termInfo.skipOffset = input.readVInt();
     }
+
+    if (format <= TermInfosWriter.FORMAT_MAX_FREQ)
+      termInfo.maxFreq = input.readVInt();	  // read max freq
+    else
+      termInfo.maxFreq = -1;
     
     if (isIndex)
       indexPointer += input.readVLong();	  // read index pointer
@@ -172,6 +177,12 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
     return termBuffer.toTerm();
   }
 
+  /** Returns the buffer holding the current term, to read it without
+   allocating a Term. Only valid until the next call to next().*/
+  final TermBuffer termBuffer() {
+    return termBuffer;
+  }
+
   /** Returns the previous Term enumerated. Initially null.*/
   final Term prev() {
     return prevBuffer.toTerm();
@@ -114,6 +114,20 @@ final class TermBuffer implements Cloneable {
     dirty = true;
   }
 
+  /** Returns the field of the current term, or null if unset. */
+  final String field() {
+    return field;
+  }
+
+  /** Returns the chars of the current term's text, valid up to {@link #textLength}. */
+  final char[] textChars() {
+    return text.result;
+  }
+
+  final int textLength() {
+    return text.length;
+  }
+
   public Term toTerm() {
     if (field == null)                            // unset
       return null;
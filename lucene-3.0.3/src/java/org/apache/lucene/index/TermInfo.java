@@ -26,6 +26,10 @@ final class TermInfo {
   long freqPointer = 0;
   long proxPointer = 0;
   int skipOffset;
+  /** The highest frequency of the term in a document, or
+   *  -1 if the term dictionary was written before {@link
+   *  TermInfosWriter#FORMAT_MAX_FREQ}. */
+  int maxFreq = 0;
 
   TermInfo() {}
 
@@ -40,14 +44,16 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
   }
 
   final void set(int docFreq,
-                 long freqPointer, long proxPointer, int skipOffset) {
+                 long freqPointer, long proxPointer, int skipOffset, int maxFreq) {
     this.docFreq = docFreq;
     this.freqPointer = freqPointer;
     this.proxPointer = proxPointer;
     this.skipOffset = skipOffset;
+    this.maxFreq = maxFreq;
   }
 
   final void set(TermInfo ti) {
@@ -55,5 +61,6 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
   }
 }
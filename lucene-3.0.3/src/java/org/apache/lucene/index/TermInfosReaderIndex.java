@@ -0,0 +1,280 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * The terms index of a {@link TermInfosReader}, i.e. every
+ * indexInterval'th term of the term dictionary along with its TermInfo and
+ * its pointer into the dictionary.
+ * <p>
+ * Instead of a Term, a TermInfo and a long per entry, all entries are
+ * serialized into a single byte[], and the start of each entry is kept in a
+ * packed array:
+ * <pre>
+ *   FieldNumber (VInt), TextLength (VInt), Text (bytes),
+ *   DocFreq (VInt), FreqPointer (VLong), ProxPointer (VLong),
+ *   SkipOffset (VInt), MaxFreq + 1 (VInt), IndexPointer (VLong)
+ * </pre>
+ * The text is encoded like UTF-8, except that every char (including each
+ * half of a surrogate pair) is encoded on its own. This way any text
+ * round-trips, and comparing the bytes gives the same order as comparing the
+ * chars, which is the order of {@link Term#compareTo}. Terms are compared
+ * against the bytes directly, without decoding them into Strings.
+ */
+final class TermInfosReaderIndex {
+
+  private final FieldInfos fieldInfos;
+  private final byte[] data;
+  private final PackedInts.Reader offsets;
+  private final int size;
+
+  /**
+   * Reads every indexDivisor'th entry of the given terms index enum.
+   */
+  TermInfosReaderIndex(SegmentTermEnum indexEnum, int indexDivisor, FieldInfos fieldInfos)
+      throws IOException {
+    this.fieldInfos = fieldInfos;
+    final int indexSize = 1 + ((int) indexEnum.size - 1) / indexDivisor;
+    final Writer writer = new Writer();
+    final int[] starts = new int[indexSize];
+    final TermInfo termInfo = new TermInfo();
+    String lastField = null;
+    int fieldNumber = -1;
+    int count = 0;
+    for (; indexEnum.next(); count++) {
+      final TermBuffer term = indexEnum.termBuffer();
+      if (term.field() != lastField) {
+        // fields are interned
+        lastField = term.field();
+        fieldNumber = fieldInfos.fieldNumber(lastField);
+      }
+      indexEnum.termInfo(termInfo);
+
+      starts[count] = writer.upto;
+      writer.writeVInt(fieldNumber);
+      writer.writeChars(term.textChars(), term.textLength());
+      writer.writeVInt(termInfo.docFreq);
+      writer.writeVLong(termInfo.freqPointer);
+      writer.writeVLong(termInfo.proxPointer);
+      writer.writeVInt(termInfo.skipOffset);
+      writer.writeVInt(termInfo.maxFreq + 1);       // -1 for old formats
+      writer.writeVLong(indexEnum.indexPointer);
+
+      for (int j = 1; j < indexDivisor; j++)
+        if (!indexEnum.next())
+          break;
+    }
+
+    this.size = count;
+    this.data = new byte[writer.upto];
+    System.arraycopy(writer.bytes, 0, data, 0, writer.upto);
+    final PackedInts.Mutable packedStarts =
+      PackedInts.getMutable(count, PackedInts.bitsRequired(writer.upto));
+    for (int i = 0; i < count; i++)
+      packedStarts.set(i, starts[i]);
+    this.offsets = packedStarts;
+  }
+
+  /** Returns the number of entries. */
+  int size() {
+    return size;
+  }
+
+  /** Returns the offset of the greatest index entry which is less than or equal to term.*/
+  int getIndexOffset(Term term) {
+    int lo = 0;					  // binary search the entries
+    int hi = size - 1;
+
+    while (hi >= lo) {
+      int mid = (lo + hi) >>> 1;
+      int delta = compareTo(term, mid);
+      if (delta < 0)
+        hi = mid - 1;
+      else if (delta > 0)
+        lo = mid + 1;
+      else
+        return mid;
+    }
+    return hi;
+  }
+
+  /**
+   * Compares the given term to the term of the given entry, with the same
+   * sign as {@link Term#compareTo}.
+   */
+  int compareTo(Term term, int index) {
+    final Reader reader = new Reader((int) offsets.get(index));
+    final String field = fieldInfos.fieldName(reader.readVInt());
+    if (term.field() != field) {
+      // fields are interned
+      final int cmp = term.field().compareTo(field);
+      if (cmp != 0)
+        return cmp;
+    }
+
+    final String text = term.text();
+    final int textLength = text.length();
+    final int length = reader.readVInt();
+    int pos = reader.pos;
+    final int end = pos + length;
+    int k = 0;
+    while (pos < end) {
+      if (k == textLength)
+        return -1; // text is a prefix of the entry
+      final int b = data[pos++] & 0xFF;
+      final char c;
+      if (b < 0x80) {
+        c = (char) b;
+      } else if (b < 0xE0) {
+        c = (char) (((b & 0x1F) << 6) | (data[pos++] & 0x3F));
+      } else {
+        c = (char) (((b & 0x0F) << 12) | ((data[pos] & 0x3F) << 6) | (data[pos + 1] & 0x3F));
+        pos += 2;
+      }
+      final int diff = text.charAt(k++) - c;
+      if (diff != 0)
+        return diff;
+    }
+    return textLength - k;
+  }
+
+  /**
+   * Positions the given enum at the given entry, as the entry with the given
+   * ordinal position in the term dictionary.
+   */
+  void seekEnum(SegmentTermEnum enumerator, int index, long position) throws IOException {
+    final Reader reader = new Reader((int) offsets.get(index));
+    final String field = fieldInfos.fieldName(reader.readVInt());
+    final int length = reader.readVInt();
+    final int end = reader.pos + length;
+    final char[] chars = new char[length];
+    int pos = reader.pos;
+    int k = 0;
+    while (pos < end) {
+      final int b = data[pos++] & 0xFF;
+      if (b < 0x80) {
+        chars[k++] = (char) b;
+      } else if (b < 0xE0) {
+        chars[k++] = (char) (((b & 0x1F) << 6) | (data[pos++] & 0x3F));
+      } else {
+        chars[k++] = (char) (((b & 0x0F) << 12) | ((data[pos] & 0x3F) << 6) | (data[pos + 1] & 0x3F));
+        pos += 2;
+      }
+    }
+    reader.pos = end;
+    final Term term = new Term(field, new String(chars, 0, k), false);
+    final TermInfo termInfo = new TermInfo();
+    termInfo.docFreq = reader.readVInt();
+    termInfo.freqPointer = reader.readVLong();
+    termInfo.proxPointer = reader.readVLong();
+    termInfo.skipOffset = reader.readVInt();
+    termInfo.maxFreq = reader.readVInt() - 1;
+    final long indexPointer = reader.readVLong();
+    enumerator.seek(indexPointer, position, term, termInfo);
+  }
+
+  /** Reads vInts and vLongs from data, starting at the given offset. */
+  private final class Reader {
+    int pos;
+
+    Reader(int pos) {
+      this.pos = pos;
+    }
+
+    int readVInt() {
+      byte b = data[pos++];
+      int i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = data[pos++];
+        i |= (b & 0x7F) << shift;
+      }
+      return i;
+    }
+
+    long readVLong() {
+      byte b = data[pos++];
+      long i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = data[pos++];
+        i |= (b & 0x7FL) << shift;
+      }
+      return i;
+    }
+  }
+
+  /** Appends to a growing byte[]. */
+  private static final class Writer {
+    byte[] bytes = new byte[1024];
+    int upto = 0;
+
+    private void ensureCapacity(int extra) {
+      if (upto + extra > bytes.length) {
+        // double, the index is usually large and the copies add up
+        final byte[] newBytes = new byte[Math.max(bytes.length * 2, upto + extra)];
+        System.arraycopy(bytes, 0, newBytes, 0, upto);
+        bytes = newBytes;
+      }
+    }
+
+    void writeVInt(int i) {
+      ensureCapacity(5);
+      while ((i & ~0x7F) != 0) {
+        bytes[upto++] = (byte) ((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      bytes[upto++] = (byte) i;
+    }
+
+    void writeVLong(long i) {
+      ensureCapacity(10);
+      while ((i & ~0x7FL) != 0) {
+        bytes[upto++] = (byte) ((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      bytes[upto++] = (byte) i;
+    }
+
+    /* Writes the byte length, then each char with 1 to 3 bytes. */
+    void writeChars(char[] chars, int length) {
+      int byteLength = 0;
+      for (int i = 0; i < length; i++) {
+        final char c = chars[i];
+        byteLength += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+      }
+      writeVInt(byteLength);
+      ensureCapacity(byteLength);
+      for (int i = 0; i < length; i++) {
+        final char c = chars[i];
+        if (c < 0x80) {
+          bytes[upto++] = (byte) c;
+        } else if (c < 0x800) {
+          bytes[upto++] = (byte) (0xC0 | (c >> 6));
+          bytes[upto++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+          bytes[upto++] = (byte) (0xE0 | (c >> 12));
+          bytes[upto++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          bytes[upto++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+  }
+}
@@ -34,8 +34,12 @@ final class TermInfosWriter {
   // length-in-chars
   public static final int FORMAT_VERSION_UTF8_LENGTH_IN_BYTES = -4;
 
+  // Adds the highest freq of the term in a doc, which
+  // bounds the term's score
+  public static final int FORMAT_MAX_FREQ = -5;
+
   // NOTE: always change this if you switch to a new format!
-  public static final int FORMAT_CURRENT = FORMAT_VERSION_UTF8_LENGTH_IN_BYTES;
+  public static final int FORMAT_CURRENT = FORMAT_MAX_FREQ;
 
   private FieldInfos fieldInfos;
   private IndexOutput output;
@@ -164,6 +168,7 @@ final class TermInfosWriter {
 
     assert ti.freqPointer >= lastTi.freqPointer: "freqPointer out of order (" + ti.freqPointer + " < " + lastTi.freqPointer + ")";
     assert ti.proxPointer >= lastTi.proxPointer: "proxPointer out of order (" + ti.proxPointer + " < " + lastTi.proxPointer + ")";
+    assert ti.maxFreq >= 0: "maxFreq=" + ti.maxFreq + " is negative";
 
     if (!isIndex && size % indexInterval == 0)
       other.add(lastFieldNumber, lastTermBytes, lastTermBytesLength, lastTi);                      // add an index term
@@ -178,6 +183,8 @@ final class TermInfosWriter {
       output.writeVInt(ti.skipOffset);
     }
 
+    output.writeVInt(ti.maxFreq);                       // write max freq
+
     if (isIndex) {
       output.writeVLong(other.output.getFilePointer() - lastIndexPointer);
       lastIndexPointer = other.output.getFilePointer(); // write pointer
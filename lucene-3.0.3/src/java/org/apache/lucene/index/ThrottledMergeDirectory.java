@@ -0,0 +1,189 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimiter;
+
+/**
+ * The Directory a single merge writes its segment to.  It
+ * delegates to the writer's directory, counts the bytes
+ * written, and pauses the merge thread with a {@link
+ * RateLimiter}, if any.  Only the merge thread writes
+ * through it.
+ */
+final class ThrottledMergeDirectory extends Directory {
+
+  // how many bytes to write between calls to the limiter
+  private static final int PAUSE_BYTES = 8192;
+
+  private final Directory delegate;
+  private final RateLimiter rateLimiter;
+
+  private volatile long bytesWritten;
+  private volatile long throttledNS;
+
+  ThrottledMergeDirectory(Directory delegate, RateLimiter rateLimiter) {
+    this.delegate = delegate;
+    this.rateLimiter = rateLimiter;
+    this.lockFactory = delegate.getLockFactory();
+  }
+
+  /** Returns the number of bytes written so far. */
+  long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /** Returns the nanoseconds spent waiting for the limiter. */
+  long getThrottledNS() {
+    return throttledNS;
+  }
+
+  private void written(int bytes) {
+    bytesWritten += bytes;
+    if (rateLimiter != null)
+      throttledNS += rateLimiter.pause(bytes);
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return delegate.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  @Override
+  public long fileModified(String name) throws IOException {
+    return delegate.fileModified(name);
+  }
+
+  @Override
+  public void touchFile(String name) throws IOException {
+    delegate.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    delegate.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    return new ThrottledIndexOutput(delegate.createOutput(name));
+  }
+
+  @Override
+  public void sync(String name) throws IOException {
+    delegate.sync(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return delegate.openInput(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return delegate.openInput(name, bufferSize);
+  }
+
+  /** Does not close the delegate, it belongs to the writer. */
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+
+  private final class ThrottledIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private int pending; // bytes not yet reported
+
+    ThrottledIndexOutput(IndexOutput out) {
+      this.out = out;
+    }
+
+    private void flushPending() {
+      written(pending);
+      pending = 0;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+      if (++pending >= PAUSE_BYTES)
+        flushPending();
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+      pending += length;
+      if (pending >= PAUSE_BYTES)
+        flushPending();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        flushPending();
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      out.seek(pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return out.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+      out.setLength(length);
+    }
+  }
+}
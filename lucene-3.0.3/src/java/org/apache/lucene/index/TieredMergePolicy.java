@@ -0,0 +1,762 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Merges segments of approximately equal size, subject to
+ * an allowed number of segments per tier.  This is similar
+ * to {@link LogByteSizeMergePolicy}, except this merge
+ * policy is able to merge non-adjacent segments, and
+ * separates how many segments are merged at once ({@link
+ * #setMaxMergeAtOnce}) from how many segments are allowed
+ * per tier ({@link #setSegmentsPerTier}).  This merge
+ * policy also does not over-merge (ie, cascade merges).</p>
+ *
+ * <p>For normal merging, this policy first computes a
+ * "budget" of how many segments are allowed to be in the
+ * index.  If the index is over-budget, then the policy
+ * sorts segments by decreasing size (pro-rating by percent
+ * deletes), and then finds the least-cost merge.  Merge
+ * cost is measured by a combination of the "skew" of the
+ * merge (size of largest segment divided by smallest
+ * segment), total merge size and percent deletes
+ * reclaimed, so that merges with lower skew, smaller size
+ * and those reclaiming more deletes are favored.</p>
+ *
+ * <p>If a merge will produce a segment that's larger than
+ * {@link #setMaxMergedSegmentMB}, then the policy will
+ * merge fewer segments (down to 1 at once, if that one has
+ * deletions) to keep the segment size under budget.</p>
+ *
+ * <p>{@link IndexWriter#expungeDeletes} merges away the
+ * segments with more than {@link
+ * #setExpungeDeletesPctAllowed} percent deleted docs.  Use
+ * {@link #setMaxExpungeDeletesMB} to bound how much is
+ * rewritten per call; the segments that reclaim the most
+ * deletes are merged first.</p>
+ *
+ * <p><b>NOTE</b>: this policy freely merges non-adjacent
+ * segments, so the docIDs of documents are not kept in the
+ * order they were added.</p>
+ *
+ * <p><font color="red"><b>NOTE:</b> This API is experimental and
+ * might change in incompatible ways in the next release.</font></p>
+ */
+public class TieredMergePolicy extends MergePolicy {
+
+  /** Default noCFSRatio.  If a merge's size is >= 10% of
+   *  the index, then we disable compound file for it.
+   *  @see #setNoCFSRatio */
+  public static final double DEFAULT_NO_CFS_RATIO = 0.1;
+
+  private int maxMergeAtOnce = 10;
+  private long maxMergedSegmentBytes = 5*1024*1024*1024L;
+  private int maxMergeAtOnceExplicit = 30;
+
+  private long floorSegmentBytes = 2*1024*1024L;
+  private double segsPerTier = 10.0;
+  private double expungeDeletesPctAllowed = 10.0;
+  private long maxExpungeDeletesBytes = Long.MAX_VALUE;
+  private boolean useCompoundFile = true;
+  private boolean useCompoundDocStore = true;
+  private double noCFSRatio = DEFAULT_NO_CFS_RATIO;
+  private double reclaimDeletesWeight = 2.0;
+
+  public TieredMergePolicy(IndexWriter writer) {
+    super(writer);
+  }
+
+  /** Maximum number of segments to be merged at a time
+   *  during "normal" merging.  For explicit merging (eg,
+   *  optimize or expungeDeletes was called), see {@link
+   *  #setMaxMergeAtOnceExplicit}.  Default is 10. */
+  public void setMaxMergeAtOnce(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("maxMergeAtOnce must be > 1 (got " + v + ")");
+    }
+    maxMergeAtOnce = v;
+  }
+
+  /** @see #setMaxMergeAtOnce */
+  public int getMaxMergeAtOnce() {
+    return maxMergeAtOnce;
+  }
+
+  /** Maximum number of segments to be merged at a time,
+   *  during optimize or expungeDeletes. Default is 30. */
+  public void setMaxMergeAtOnceExplicit(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("maxMergeAtOnceExplicit must be > 1 (got " + v + ")");
+    }
+    maxMergeAtOnceExplicit = v;
+  }
+
+  /** @see #setMaxMergeAtOnceExplicit */
+  public int getMaxMergeAtOnceExplicit() {
+    return maxMergeAtOnceExplicit;
+  }
+
+  /** Maximum sized segment to produce during normal
+   *  merging.  This setting is approximate: the estimate of
+   *  the merged segment size is made by summing sizes of
+   *  to-be-merged segments (compensating for percent
+   *  deleted docs).  Default is 5 GB. */
+  public void setMaxMergedSegmentMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("maxMergedSegmentMB must be > 0 (got " + v + ")");
+    }
+    maxMergedSegmentBytes = mbToBytes(v);
+  }
+
+  /** @see #setMaxMergedSegmentMB */
+  public double getMaxMergedSegmentMB() {
+    return maxMergedSegmentBytes/1024/1024.;
+  }
+
+  /** Controls how aggressively merges that reclaim more
+   *  deletions are favored.  Higher values favor selecting
+   *  merges that reclaim deletions.  A value of 0.0 means
+   *  deletions don't impact merge selection.  Default is
+   *  2.0. */
+  public void setReclaimDeletesWeight(double v) {
+    if (v < 0.0) {
+      throw new IllegalArgumentException("reclaimDeletesWeight must be >= 0.0 (got " + v + ")");
+    }
+    reclaimDeletesWeight = v;
+  }
+
+  /** @see #setReclaimDeletesWeight */
+  public double getReclaimDeletesWeight() {
+    return reclaimDeletesWeight;
+  }
+
+  /** Segments smaller than this are "rounded up" to this
+   *  size, ie treated as equal (floor) size for merge
+   *  selection.  This is to prevent frequent flushing of
+   *  tiny segments from allowing a long tail in the index.
+   *  Default is 2 MB. */
+  public void setFloorSegmentMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("floorSegmentMB must be > 0.0 (got " + v + ")");
+    }
+    floorSegmentBytes = mbToBytes(v);
+  }
+
+  /** @see #setFloorSegmentMB */
+  public double getFloorSegmentMB() {
+    return floorSegmentBytes/1024/1024.;
+  }
+
+  /** When expungeDeletes is called, we only merge away a
+   *  segment if its delete percentage is over this
+   *  threshold.  Default is 10%. */
+  public void setExpungeDeletesPctAllowed(double v) {
+    if (v < 0.0 || v > 100.0) {
+      throw new IllegalArgumentException("expungeDeletesPctAllowed must be between 0.0 and 100.0 inclusive (got " + v + ")");
+    }
+    expungeDeletesPctAllowed = v;
+  }
+
+  /** @see #setExpungeDeletesPctAllowed */
+  public double getExpungeDeletesPctAllowed() {
+    return expungeDeletesPctAllowed;
+  }
+
+  /** Maximum total size of the segments that one call to
+   *  expungeDeletes merges.  Segments with the highest
+   *  percentage of deleted docs are picked first; the
+   *  remaining ones are left for the next call.  At least
+   *  one segment is always picked, so that calling
+   *  expungeDeletes repeatedly reclaims all deletes.
+   *  Default is no limit. */
+  public void setMaxExpungeDeletesMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("maxExpungeDeletesMB must be > 0.0 (got " + v + ")");
+    }
+    maxExpungeDeletesBytes = mbToBytes(v);
+  }
+
+  /** @see #setMaxExpungeDeletesMB */
+  public double getMaxExpungeDeletesMB() {
+    return maxExpungeDeletesBytes == Long.MAX_VALUE ? Double.POSITIVE_INFINITY : maxExpungeDeletesBytes/1024/1024.;
+  }
+
+  /** Sets the allowed number of segments per tier.
+   *  Smaller values mean more merging but fewer segments.
+   *
+   *  <p><b>NOTE</b>: this value should be >= the {@link
+   *  #setMaxMergeAtOnce} otherwise you'll force too much
+   *  merging to occur.</p>
+   *
+   *  <p>Default is 10.0.</p> */
+  public void setSegmentsPerTier(double v) {
+    if (v < 2.0) {
+      throw new IllegalArgumentException("segmentsPerTier must be >= 2.0 (got " + v + ")");
+    }
+    segsPerTier = v;
+  }
+
+  /** @see #setSegmentsPerTier */
+  public double getSegmentsPerTier() {
+    return segsPerTier;
+  }
+
+  /** Sets whether compound file format should be used for
+   *  newly flushed and newly merged segments.  Default
+   *  true. */
+  public void setUseCompoundFile(boolean useCompoundFile) {
+    this.useCompoundFile = useCompoundFile;
+  }
+
+  /** @see #setUseCompoundFile */
+  public boolean getUseCompoundFile() {
+    return useCompoundFile;
+  }
+
+  /** Sets whether compound file format should be used for
+   *  newly flushed and newly merged doc store
+   *  segment files (term vectors and stored fields).
+   *  Default true. */
+  public void setUseCompoundDocStore(boolean useCompoundDocStore) {
+    this.useCompoundDocStore = useCompoundDocStore;
+  }
+
+  /** @see #setUseCompoundDocStore */
+  public boolean getUseCompoundDocStore() {
+    return useCompoundDocStore;
+  }
+
+  /** If a merged segment will be more than this percentage
+   *  of the total size of the index, leave the segment as
+   *  non-compound file even if compound file is enabled.
+   *  Set to 1.0 to always use CFS regardless of merge
+   *  size.  Default is 0.1. */
+  public void setNoCFSRatio(double noCFSRatio) {
+    if (noCFSRatio < 0.0 || noCFSRatio > 1.0) {
+      throw new IllegalArgumentException("noCFSRatio must be 0.0 to 1.0 inclusive; got " + noCFSRatio);
+    }
+    this.noCFSRatio = noCFSRatio;
+  }
+
+  /** @see #setNoCFSRatio */
+  public double getNoCFSRatio() {
+    return noCFSRatio;
+  }
+
+  private static long mbToBytes(double mb) {
+    final double bytes = mb*1024*1024;
+    return bytes > Long.MAX_VALUE ? Long.MAX_VALUE : (long) bytes;
+  }
+
+  // Sorts largest to smallest
+  private class SegmentByteSizeDescending implements Comparator<SegmentInfo> {
+    public int compare(SegmentInfo o1, SegmentInfo o2) {
+      try {
+        final long sz1 = size(o1);
+        final long sz2 = size(o2);
+        if (sz1 > sz2) {
+          return -1;
+        } else if (sz2 > sz1) {
+          return 1;
+        } else {
+          return o1.name.compareTo(o2.name);
+        }
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+    }
+  }
+
+  private final Comparator<SegmentInfo> segmentByteSizeDescending = new SegmentByteSizeDescending();
+
+  @Override
+  public MergeSpecification findMerges(SegmentInfos infos) throws IOException {
+    if (verbose()) {
+      message("findMerges: " + infos.size() + " segments");
+    }
+    if (infos.size() == 0) {
+      return null;
+    }
+    final Collection<SegmentInfo> merging = writer.getMergingSegments();
+    final Collection<SegmentInfo> toBeMerged = new HashSet<SegmentInfo>();
+
+    final List<SegmentInfo> infosSorted = new ArrayList<SegmentInfo>(infos);
+    Collections.sort(infosSorted, segmentByteSizeDescending);
+
+    // Compute total index bytes & print details about the index
+    long totIndexBytes = 0;
+    long minSegmentBytes = Long.MAX_VALUE;
+    for(SegmentInfo info : infosSorted) {
+      final long segBytes = size(info);
+      if (verbose()) {
+        String extra = merging.contains(info) ? " [merging]" : "";
+        if (segBytes >= maxMergedSegmentBytes/2.0) {
+          extra += " [skip: too large]";
+        } else if (segBytes < floorSegmentBytes) {
+          extra += " [floored]";
+        }
+        message("  seg=" + info.segString(writer.getDirectory()) + " size=" + String.format("%.3f", segBytes/1024/1024.) + " MB" + extra);
+      }
+
+      minSegmentBytes = Math.min(segBytes, minSegmentBytes);
+      // Accum total byte size
+      totIndexBytes += segBytes;
+    }
+
+    // If we have too-large segments, grace them out
+    // of the maxSegmentCount:
+    int tooBigCount = 0;
+    while (tooBigCount < infosSorted.size() && size(infosSorted.get(tooBigCount)) >= maxMergedSegmentBytes/2.0) {
+      totIndexBytes -= size(infosSorted.get(tooBigCount));
+      tooBigCount++;
+    }
+
+    minSegmentBytes = floorSize(minSegmentBytes);
+
+    // Compute max allowed segs in the index
+    long levelSize = minSegmentBytes;
+    long bytesLeft = totIndexBytes;
+    double allowedSegCount = 0;
+    while(true) {
+      final double segCountLevel = bytesLeft / (double) levelSize;
+      if (segCountLevel < segsPerTier) {
+        allowedSegCount += Math.ceil(segCountLevel);
+        break;
+      }
+      allowedSegCount += segsPerTier;
+      bytesLeft -= segsPerTier * levelSize;
+      levelSize *= maxMergeAtOnce;
+    }
+    final int allowedSegCountInt = (int) allowedSegCount;
+
+    MergeSpecification spec = null;
+
+    // Cycle to possibly select more than one merge:
+    while(true) {
+
+      long mergingBytes = 0;
+
+      // Gather eligible segments for merging, ie segments
+      // not already being merged and not already picked (by
+      // prior iteration of this loop) for merging:
+      final List<SegmentInfo> eligible = new ArrayList<SegmentInfo>();
+      for(int idx = tooBigCount; idx<infosSorted.size(); idx++) {
+        final SegmentInfo info = infosSorted.get(idx);
+        if (merging.contains(info)) {
+          mergingBytes += info.sizeInBytes();
+        } else if (!toBeMerged.contains(info)) {
+          eligible.add(info);
+        }
+      }
+
+      final boolean maxMergeIsRunning = mergingBytes >= maxMergedSegmentBytes;
+
+      if (verbose()) {
+        message("  allowedSegmentCount=" + allowedSegCountInt + " vs count=" + infosSorted.size() + " (eligible count=" + eligible.size() + ") tooBigCount=" + tooBigCount);
+      }
+
+      if (eligible.size() == 0) {
+        return spec;
+      }
+
+      if (eligible.size() < allowedSegCountInt) {
+        return spec;
+      }
+
+      // OK we are over budget -- find best merge!
+      double bestScore = 0.0;
+      List<SegmentInfo> best = null;
+      boolean bestTooLarge = false;
+      long bestMergeBytes = 0;
+
+      // Consider all merge starts:
+      for(int startIdx = 0;startIdx <= eligible.size()-maxMergeAtOnce; startIdx++) {
+
+        long totAfterMergeBytes = 0;
+
+        final List<SegmentInfo> candidate = new ArrayList<SegmentInfo>();
+        boolean hitTooLarge = false;
+        for(int idx = startIdx;idx<eligible.size() && candidate.size() < maxMergeAtOnce;idx++) {
+          final SegmentInfo info = eligible.get(idx);
+          final long segBytes = size(info);
+
+          if (totAfterMergeBytes + segBytes > maxMergedSegmentBytes) {
+            hitTooLarge = true;
+            // NOTE: we continue, so that we can try
+            // "packing" smaller segments into this merge
+            // to see if we can get closer to the max
+            // size; this in general is not perfect since
+            // this is really "bin packing" and we'd have
+            // to try different permutations.
+            continue;
+          }
+          candidate.add(info);
+          totAfterMergeBytes += segBytes;
+        }
+
+        final double score = score(candidate, hitTooLarge);
+        if (verbose()) {
+          message("  maybe=" + segString(candidate) + " score=" + score + " tooLarge=" + hitTooLarge + " size=" + String.format("%.3f MB", totAfterMergeBytes/1024./1024.));
+        }
+
+        // If we are already running a max sized merge
+        // (maxMergeIsRunning), don't allow another max
+        // sized merge to kick off:
+        if ((best == null || score < bestScore) && (!hitTooLarge || !maxMergeIsRunning)) {
+          best = candidate;
+          bestScore = score;
+          bestTooLarge = hitTooLarge;
+          bestMergeBytes = totAfterMergeBytes;
+        }
+      }
+
+      if (best == null) {
+        return spec;
+      }
+
+      if (spec == null) {
+        spec = new MergeSpecification();
+      }
+      final OneMerge merge = makeOneMerge(infos, best);
+      spec.add(merge);
+      toBeMerged.addAll(best);
+
+      if (verbose()) {
+        message("  add merge=" + segString(best) + " size=" + String.format("%.3f MB", bestMergeBytes/1024./1024.) + " score=" + String.format("%.3f", bestScore) + (bestTooLarge ? " [max merge]" : ""));
+      }
+    }
+  }
+
+  /** Expert: scores one merge; lower scores are better.
+   *  The score is the skew of the merge (the share of the
+   *  largest segment, so 1/n for n equal segments), gently
+   *  raised for larger merges and lowered by the fraction
+   *  of deleted docs the merge reclaims, weighted by {@link
+   *  #setReclaimDeletesWeight}.  The candidate is sorted by
+   *  decreasing size. */
+  protected double score(List<SegmentInfo> candidate, boolean hitTooLarge) throws IOException {
+    long totBeforeMergeBytes = 0;
+    long totAfterMergeBytes = 0;
+    long totAfterMergeBytesFloored = 0;
+    for(SegmentInfo info : candidate) {
+      final long segBytes = size(info);
+      totAfterMergeBytes += segBytes;
+      totAfterMergeBytesFloored += floorSize(segBytes);
+      totBeforeMergeBytes += info.sizeInBytes();
+    }
+
+    // Measure "skew" of the merge, which can range
+    // from 1.0/numSegsBeingMerged (good) to 1.0
+    // (poor):
+    final double skew;
+    if (hitTooLarge) {
+      // Pretend the merge has perfect skew; skew doesn't
+      // matter in this case because this merge will not
+      // "cascade" and so it cannot lead to N^2 merge cost
+      // over time:
+      skew = 1.0/maxMergeAtOnce;
+    } else {
+      skew = ((double) floorSize(size(candidate.get(0))))/totAfterMergeBytesFloored;
+    }
+
+    // Strongly favor merges with less skew (smaller
+    // mergeScore is better):
+    double mergeScore = skew;
+
+    // Gently favor smaller merges over bigger ones.  We
+    // don't want to make this exponent too large else we
+    // can end up doing poor merges of small segments in
+    // order to avoid the large merges:
+    mergeScore *= Math.pow(Math.max(1, totAfterMergeBytes), 0.05);
+
+    // Strongly favor merges that reclaim deletes:
+    if (totBeforeMergeBytes > 0) {
+      final double nonDelRatio = ((double) totAfterMergeBytes)/totBeforeMergeBytes;
+      mergeScore *= Math.pow(nonDelRatio, reclaimDeletesWeight);
+    }
+
+    return mergeScore;
+  }
+
+  @Override
+  public MergeSpecification findMergesForOptimize(SegmentInfos infos, int maxSegmentCount, Set<SegmentInfo> segmentsToOptimize) throws IOException {
+    if (verbose()) {
+      message("findMergesForOptimize maxSegmentCount=" + maxSegmentCount + " infos=" + segString(infos) + " segmentsToOptimize=" + segmentsToOptimize);
+    }
+
+    List<SegmentInfo> eligible = new ArrayList<SegmentInfo>();
+    boolean optimizeMergeRunning = false;
+    final Collection<SegmentInfo> merging = writer.getMergingSegments();
+    for(SegmentInfo info : infos) {
+      if (segmentsToOptimize.contains(info)) {
+        if (!merging.contains(info)) {
+          eligible.add(info);
+        } else {
+          optimizeMergeRunning = true;
+        }
+      }
+    }
+
+    if (eligible.size() == 0) {
+      return null;
+    }
+
+    if ((maxSegmentCount > 1 && eligible.size() <= maxSegmentCount) ||
+        (maxSegmentCount == 1 && eligible.size() == 1 && isOptimized(eligible.get(0)))) {
+      if (verbose()) {
+        message("already optimized");
+      }
+      return null;
+    }
+
+    Collections.sort(eligible, segmentByteSizeDescending);
+
+    if (verbose()) {
+      message("eligible=" + segString(eligible));
+      message("optimizeMergeRunning=" + optimizeMergeRunning);
+    }
+
+    int end = eligible.size();
+
+    MergeSpecification spec = null;
+
+    // Do full merges, first, backwards:
+    while(end >= maxMergeAtOnceExplicit + maxSegmentCount - 1) {
+      if (spec == null) {
+        spec = new MergeSpecification();
+      }
+      final OneMerge merge = makeOneMerge(infos, eligible.subList(end-maxMergeAtOnceExplicit, end));
+      if (verbose()) {
+        message("add merge=" + merge.segString(writer.getDirectory()));
+      }
+      spec.add(merge);
+      end -= maxMergeAtOnceExplicit;
+    }
+
+    if (spec == null && !optimizeMergeRunning) {
+      // Do final merge
+      final int numToMerge = end - maxSegmentCount + 1;
+      final OneMerge merge = makeOneMerge(infos, eligible.subList(end-numToMerge, end));
+      if (verbose()) {
+        message("add final merge=" + merge.segString(writer.getDirectory()));
+      }
+      spec = new MergeSpecification();
+      spec.add(merge);
+    }
+
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findMergesToExpungeDeletes(SegmentInfos infos)
+      throws CorruptIndexException, IOException {
+    if (verbose()) {
+      message("findMergesToExpungeDeletes infos=" + segString(infos) + " expungeDeletesPctAllowed=" + expungeDeletesPctAllowed);
+    }
+    final List<SegmentInfo> eligible = new ArrayList<SegmentInfo>();
+    final Collection<SegmentInfo> merging = writer.getMergingSegments();
+    for(SegmentInfo info : infos) {
+      if (info.docCount > 0 && !merging.contains(info) &&
+          pctDeletes(info) > expungeDeletesPctAllowed) {
+        eligible.add(info);
+      }
+    }
+
+    if (eligible.size() == 0) {
+      return null;
+    }
+
+    if (maxExpungeDeletesBytes != Long.MAX_VALUE) {
+      // Spend the budget on the segments that reclaim the
+      // most deletes:
+      Collections.sort(eligible, new Comparator<SegmentInfo>() {
+        public int compare(SegmentInfo o1, SegmentInfo o2) {
+          try {
+            final double pct1 = pctDeletes(o1);
+            final double pct2 = pctDeletes(o2);
+            if (pct1 > pct2) {
+              return -1;
+            } else if (pct2 > pct1) {
+              return 1;
+            } else {
+              return o1.name.compareTo(o2.name);
+            }
+          } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+          }
+        }
+      });
+      long budget = maxExpungeDeletesBytes;
+      int upto = 0;
+      while (upto < eligible.size()) {
+        final long segBytes = eligible.get(upto).sizeInBytes();
+        if (upto > 0 && segBytes > budget) {
+          break;
+        }
+        budget -= segBytes;
+        upto++;
+      }
+      if (verbose() && upto < eligible.size()) {
+        message("  over budget: leaving " + segString(eligible.subList(upto, eligible.size())) + " for the next call");
+      }
+      eligible.subList(upto, eligible.size()).clear();
+    }
+
+    Collections.sort(eligible, segmentByteSizeDescending);
+
+    if (verbose()) {
+      message("eligible=" + segString(eligible));
+    }
+
+    int start = 0;
+    MergeSpecification spec = null;
+
+    while(start < eligible.size()) {
+      // Don't enforce max merged size here: app is
+      // explicitly calling expungeDeletes, and knows this
+      // may take a long time / produce big segments (like
+      // optimize):
+      final int end = Math.min(start + maxMergeAtOnceExplicit, eligible.size());
+      if (spec == null) {
+        spec = new MergeSpecification();
+      }
+
+      final OneMerge merge = makeOneMerge(infos, eligible.subList(start, end));
+      if (verbose()) {
+        message("add merge=" + merge.segString(writer.getDirectory()));
+      }
+      spec.add(merge);
+      start = end;
+    }
+
+    return spec;
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos infos, SegmentInfo newSegment) {
+    return useCompoundFile;
+  }
+
+  @Override
+  public boolean useCompoundDocStore(SegmentInfos infos) {
+    return useCompoundDocStore;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private OneMerge makeOneMerge(SegmentInfos infos, List<SegmentInfo> infosToMerge) throws IOException {
+    final SegmentInfos segments = new SegmentInfos();
+    segments.addAll(infosToMerge);
+
+    final boolean doCFS;
+    if (!useCompoundFile) {
+      doCFS = false;
+    } else if (noCFSRatio == 1.0) {
+      doCFS = true;
+    } else {
+      long totSize = 0;
+      for(SegmentInfo info : infos) {
+        totSize += size(info);
+      }
+      long mergeSize = 0;
+      for(SegmentInfo info : infosToMerge) {
+        mergeSize += size(info);
+      }
+      doCFS = mergeSize <= noCFSRatio * totSize;
+    }
+
+    return new OneMerge(segments, doCFS);
+  }
+
+  private double pctDeletes(SegmentInfo info) throws IOException {
+    return 100.*((double) writer.numDeletedDocs(info))/info.docCount;
+  }
+
+  /** Returns the byte size of the segment, pro-rated by
+   *  the percentage of deleted docs. */
+  private long size(SegmentInfo info) throws IOException {
+    final long byteSize = info.sizeInBytes();
+    final int delCount = writer.numDeletedDocs(info);
+    final double delRatio = (info.docCount <= 0 ? 0.0f : ((double)delCount / (double)info.docCount));
+    assert delRatio <= 1.0;
+    return (long) (byteSize * (1.0-delRatio));
+  }
+
+  private long floorSize(long bytes) {
+    return Math.max(floorSegmentBytes, bytes);
+  }
+
+  private boolean isOptimized(SegmentInfo info)
+    throws IOException {
+    final boolean hasDeletions = writer.numDeletedDocs(info) > 0;
+    return !hasDeletions &&
+      !info.hasSeparateNorms() &&
+      info.dir == writer.getDirectory() &&
+      (info.getUseCompoundFile() == useCompoundFile || noCFSRatio < 1.0);
+  }
+
+  private String segString(List<SegmentInfo> infos) throws IOException {
+    final StringBuilder b = new StringBuilder();
+    for(SegmentInfo info : infos) {
+      if (b.length() > 0) {
+        b.append(' ');
+      }
+      b.append(info.segString(writer.getDirectory()));
+    }
+    return b.toString();
+  }
+
+  private boolean verbose() {
+    return writer != null && writer.verbose();
+  }
+
+  private void message(String message) {
+    if (verbose()) {
+      writer.message("TMP: " + message);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[" + getClass().getSimpleName() + ": ");
+    sb.append("maxMergeAtOnce=").append(maxMergeAtOnce).append(", ");
+    sb.append("maxMergeAtOnceExplicit=").append(maxMergeAtOnceExplicit).append(", ");
+    sb.append("maxMergedSegmentMB=").append(getMaxMergedSegmentMB()).append(", ");
+    sb.append("floorSegmentMB=").append(getFloorSegmentMB()).append(", ");
+    sb.append("expungeDeletesPctAllowed=").append(expungeDeletesPctAllowed).append(", ");
+    sb.append("maxExpungeDeletesMB=").append(getMaxExpungeDeletesMB()).append(", ");
+    sb.append("segmentsPerTier=").append(segsPerTier).append(", ");
+    sb.append("useCompoundFile=").append(useCompoundFile).append(", ");
+    sb.append("useCompoundDocStore=").append(useCompoundDocStore).append(", ");
+    sb.append("noCFSRatio=").append(noCFSRatio).append(", ");
+    sb.append("reclaimDeletesWeight=").append(reclaimDeletesWeight);
+    sb.append("]");
+    return sb.toString();
+  }
+}
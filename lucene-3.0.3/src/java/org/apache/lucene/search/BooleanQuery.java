@@ -18,6 +18,7 @@ package org.apache.lucene.search;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -336,6 +337,35 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       return new BooleanScorer2(similarity, minNrShouldMatch, required, prohibited, optional);
     }
     
+    /* Returns a scorer for the top hits of the collector
+     * that skips docs which cannot compete, or null if this
+     * is not a pure disjunction of terms or the scores of
+     * the terms in the reader cannot be bounded. */
+    Scorer wandScorer(IndexReader reader, TopScoreDocCollector collector)
+        throws IOException {
+      if (minNrShouldMatch != 0 || !(reader instanceof SegmentReader)) {
+        return null;
+      }
+      for (BooleanClause c : clauses) {
+        if (c.getOccur() != Occur.SHOULD || !(c.getQuery() instanceof TermQuery)) {
+          return null;
+        }
+      }
+      List<Weight> termWeights = new ArrayList<Weight>(weights.size());
+      List<Scorer> scorers = new ArrayList<Scorer>(weights.size());
+      for (Weight w : weights) {
+        Scorer subScorer = w.scorer(reader, true, false);
+        if (subScorer != null) {
+          termWeights.add(w);
+          scorers.add(subScorer);
+        }
+      }
+      if (scorers.size() == 0) {
+        return null;
+      }
+      return WANDScorer.create(similarity, (SegmentReader) reader, termWeights, scorers, collector);
+    }
+
     @Override
     public boolean scoresDocsOutOfOrder() {
       int numProhibited = 0;
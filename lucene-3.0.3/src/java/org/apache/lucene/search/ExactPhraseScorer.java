@@ -23,7 +23,7 @@ import org.apache.lucene.index.*;
 final class ExactPhraseScorer extends PhraseScorer {
 
   ExactPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets,
-      Similarity similarity, byte[] norms) {
+      Similarity similarity, NormValues norms) {
     super(weight, tps, offsets, similarity, norms);
   }
 
@@ -20,6 +20,7 @@ package org.apache.lucene.search;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.document.NumericField; // for javadocs
 import org.apache.lucene.analysis.NumericTokenStream; // for javadocs
 
@@ -87,6 +88,99 @@ public interface FieldCache {
     }
   }
 
+  /**
+   * Expert: Stores one numeric value per document in bit-packed form, as
+   * offsets from the smallest value. The number of bits per value is the
+   * number of bits that the range of the values requires, so a field with
+   * values between 1990 and 2010 costs 5 bits per document instead of 32.
+   * @see FieldCache#getPackedInts(IndexReader, String, FieldCache.IntParser)
+   */
+  public static final class PackedValues {
+
+    /** The value that is stored as 0. */
+    public final long minValue;
+
+    /** For each document, its value minus {@link #minValue}. */
+    public final PackedInts.Reader values;
+
+    /** Creates one of these objects */
+    public PackedValues(long minValue, PackedInts.Reader values) {
+      this.minValue = minValue;
+      this.values = values;
+    }
+
+    /** Returns the value of the given document. */
+    public long get(int doc) {
+      return minValue + values.get(doc);
+    }
+  }
+
+  /**
+   * Expert: A compact counterpart of {@link StringIndex}. The ords of the
+   * documents are bit-packed with as many bits as the number of distinct
+   * terms requires, and the terms share their common prefixes in a single
+   * UTF-8 encoded byte block, instead of being held as String objects.
+   * As in a StringIndex, ord 0 stands for documents without a term.
+   * @see FieldCache#getPackedStringIndex(IndexReader, String)
+   */
+  public static final class PackedStringIndex {
+
+    /** For each document, its ord, i.e. an index into {@link #lookup}. */
+    public final PackedInts.Reader order;
+
+    private final PrefixCodedTerms terms;
+
+    PackedStringIndex(PackedInts.Reader order, PrefixCodedTerms terms) {
+      this.order = order;
+      this.terms = terms;
+    }
+
+    /** Returns the estimated size of the terms in bytes. */
+    long termsRamBytes() {
+      return terms.ramBytesUsed();
+    }
+
+    /** Returns the number of ords, including ord 0. */
+    public int numOrds() {
+      return terms.size() + 1;
+    }
+
+    /**
+     * Returns the term with the given ord, or null for ord 0. Terms are
+     * decoded from the shared byte block on each call.
+     */
+    public String lookup(int ord) {
+      return ord == 0 ? null : terms.get(ord - 1);
+    }
+
+    /** Like {@link StringIndex#binarySearchLookup}. */
+    public int binarySearchLookup(String key) {
+      if (key == null)
+        return 0;
+      return binarySearchLookup(key, 1, numOrds() - 1);
+    }
+
+    /**
+     * Searches the ords between low and high (inclusive) for the given key,
+     * with ord 0 sorting before all terms. Returns the ord of the key if it
+     * is found, otherwise <code>(-(insertion point) - 1)</code>.
+     */
+    public int binarySearchLookup(String key, int low, int high) {
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = mid == 0 ? -1 : terms.get(mid - 1).compareTo(key);
+
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return mid; // key found
+      }
+      return -(low + 1);  // key not found.
+    }
+  }
+
   /**
    * Marker interface as super-interface to all parsers. It
    * is used to specify a custom parser to {@link
@@ -493,6 +587,50 @@ public interface FieldCache {
   public StringIndex getStringIndex (IndexReader reader, String field)
   throws IOException;
 
+  /** Checks the internal cache for an appropriate entry, and if none is
+   * found, reads the terms in <code>field</code> as integers and returns
+   * them in bit-packed form, with as many bits per document as the range
+   * of the values requires. Documents without a value have the value 0, as
+   * in {@link #getInts(IndexReader, String)}.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the integers.
+   * @param parser  Computes integer for string values, or null to use the
+   *                same defaults as {@link #getInts(IndexReader, String)}.
+   * @return The values in the given field for each document.
+   * @throws IOException  If any error occurs.
+   */
+  public PackedValues getPackedInts (IndexReader reader, String field, IntParser parser)
+  throws IOException;
+
+  /** Like {@link #getPackedInts(IndexReader, String, FieldCache.IntParser)},
+   * but for long values.
+   * @see #getLongs(IndexReader, String, FieldCache.LongParser)
+   */
+  public PackedValues getPackedLongs (IndexReader reader, String field, LongParser parser)
+  throws IOException;
+
+  /** Like {@link #getPackedInts(IndexReader, String, FieldCache.IntParser)},
+   * but for float values. The packed values are the
+   * {@link NumericUtils#floatToSortableInt sortable int} representations of
+   * the floats, so that {@link NumericUtils#sortableIntToFloat} has to be
+   * applied to {@link PackedValues#get} to get the float back.
+   * @see #getFloats(IndexReader, String, FieldCache.FloatParser)
+   */
+  public PackedValues getPackedFloats (IndexReader reader, String field, FloatParser parser)
+  throws IOException;
+
+  /** Checks the internal cache for an appropriate entry, and if none
+   * is found reads the term values in <code>field</code> and returns
+   * them in the compact form of a {@link PackedStringIndex}.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the strings.
+   * @return Terms and the ord of each document in compact form.
+   * @throws IOException  If any error occurs.
+   * @see #getStringIndex(IndexReader, String)
+   */
+  public PackedStringIndex getPackedStringIndex (IndexReader reader, String field)
+  throws IOException;
+
   /**
    * EXPERT: A unique Identifier/Description for each item in the FieldCache. 
    * Can be useful for logging/debugging.
@@ -557,6 +695,77 @@ public interface FieldCache {
   
   }
 
+  /**
+   * EXPERT: A snapshot of the memory usage and effectiveness of a FieldCache,
+   * as returned by {@link FieldCache#getStats}. Sizes are estimated from the
+   * lengths of the cached arrays, and only while a budget is set with {@link
+   * FieldCache#setMaxRamBytes}; without one, {@link #getRamBytesUsed} is 0.
+   * <p>
+   * <b>EXPERIMENTAL API:</b> This API is considered extremely advanced 
+   * and experimental.  It may be removed or altered w/o warning in future 
+   * releases 
+   * of Lucene.
+   * </p>
+   */
+  public static final class Stats {
+    private final int entryCount;
+    private final long ramBytesUsed;
+    private final long maxRamBytes;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long evictedBytes;
+
+    public Stats(int entryCount, long ramBytesUsed, long maxRamBytes,
+                 long hitCount, long missCount,
+                 long evictionCount, long evictedBytes) {
+      this.entryCount = entryCount;
+      this.ramBytesUsed = ramBytesUsed;
+      this.maxRamBytes = maxRamBytes;
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.evictedBytes = evictedBytes;
+    }
+
+    /** Number of values currently in the cache. */
+    public int getEntryCount() { return entryCount; }
+
+    /** Estimated size in bytes of all values currently in the cache. */
+    public long getRamBytesUsed() { return ramBytesUsed; }
+
+    /** The budget for {@link #getRamBytesUsed}, see {@link FieldCache#setMaxRamBytes}. */
+    public long getMaxRamBytes() { return maxRamBytes; }
+
+    /** Number of requests that were answered from the cache. */
+    public long getHitCount() { return hitCount; }
+
+    /** Number of requests for which a value had to be created. */
+    public long getMissCount() { return missCount; }
+
+    /** Number of values that were evicted to stay within the budget. */
+    public long getEvictionCount() { return evictionCount; }
+
+    /** Estimated size in bytes of all values that were evicted so far. */
+    public long getEvictedBytes() { return evictedBytes; }
+
+    @Override
+    public String toString() {
+      DecimalFormat df = new DecimalFormat("0.#");
+      StringBuilder b = new StringBuilder();
+      b.append(entryCount).append(" entries, ");
+      b.append(RamUsageEstimator.humanReadableUnits(ramBytesUsed, df));
+      if (maxRamBytes != Long.MAX_VALUE) {
+        b.append(" of ").append(RamUsageEstimator.humanReadableUnits(maxRamBytes, df));
+      }
+      b.append(", ").append(hitCount).append(" hits, ");
+      b.append(missCount).append(" misses, ");
+      b.append(evictionCount).append(" evictions (");
+      b.append(RamUsageEstimator.humanReadableUnits(evictedBytes, df)).append(')');
+      return b.toString();
+    }
+  }
+
   /**
    * EXPERT: Generates an array of CacheEntry objects representing all items 
    * currently in the FieldCache.
@@ -602,6 +811,40 @@ public interface FieldCache {
    */
   public abstract void purge(IndexReader r);
 
+  /**
+   * Expert: limits the estimated size of all cached values to the given
+   * number of bytes. When a new value exceeds this budget, the least recently
+   * used values are evicted until the cache is within the budget again; the
+   * new value itself is kept even if it exceeds the budget on its own. Evicted
+   * values are simply created again when they are requested the next time.
+   * The default is <code>Long.MAX_VALUE</code>, i.e. values are only dropped
+   * when their reader is garbage collected or purged, and are not sized at
+   * all. Setting a budget sizes the values that are already cached.
+   * <p>
+   * <b>EXPERIMENTAL API:</b> This API is considered extremely advanced 
+   * and experimental.  It may be removed or altered w/o warning in future 
+   * releases 
+   * of Lucene.
+   * </p>
+   * @see #getStats
+   */
+  public void setMaxRamBytes(long maxRamBytes);
+
+  /** counterpart of {@link #setMaxRamBytes(long)} */
+  public long getMaxRamBytes();
+
+  /**
+   * Expert: returns a snapshot of the size of this cache and of its hit,
+   * miss and eviction counts.
+   * <p>
+   * <b>EXPERIMENTAL API:</b> This API is considered extremely advanced 
+   * and experimental.  It may be removed or altered w/o warning in future 
+   * releases 
+   * of Lucene.
+   * </p>
+   */
+  public Stats getStats();
+
   /**
    * If non-null, FieldCacheImpl will warn whenever
    * entries are created that are not sane according to
@@ -19,22 +19,44 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.AverageGuessMemoryModel;
+import org.apache.lucene.util.MemoryModel;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.FieldCacheSanityChecker;
+import org.apache.lucene.util.packed.PackedInts;
 
 /**
  * Expert: The default cache implementation, storing all values in memory.
- * A WeakHashMap is used for storage.
+ * Values are kept per reader (see {@link IndexReader#getFieldCacheKey}) in
+ * concurrent maps; the readers are only weakly referenced, so that values
+ * are dropped once their reader is garbage collected. Each value is created
+ * only once, by the first thread asking for it.
+ *
+ * <p>The estimated size of all values can be limited with {@link
+ * #setMaxRamBytes}, in which case the least recently used values are evicted.
+ * Values are only sized while such a budget is set, and their size is
+ * estimated from the lengths of their arrays, so that creating a value
+ * doesn't cost a walk over all its objects.
  *
  * <p>Created: May 19, 2004 4:40:36 PM
  *
@@ -43,11 +65,22 @@ import org.apache.lucene.util.FieldCacheSanityChecker;
 class FieldCacheImpl implements FieldCache {
 	
   private Map<Class<?>,Cache> caches;
+
+  private volatile long maxRamBytes = Long.MAX_VALUE;
+  private final AtomicLong ramBytesUsed = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+  private final AtomicLong clock = new AtomicLong(); // for LRU eviction
+  private final Object evictLock = new Object();
+
   FieldCacheImpl() {
     init();
   }
   private synchronized void init() {
-    caches = new HashMap<Class<?>,Cache>(7);
+    Map<Class<?>,Cache> oldCaches = caches;
+    caches = new HashMap<Class<?>,Cache>(13);
     caches.put(Byte.TYPE, new ByteCache(this));
     caches.put(Short.TYPE, new ShortCache(this));
     caches.put(Integer.TYPE, new IntCache(this));
@@ -56,6 +89,16 @@ class FieldCacheImpl implements FieldCache {
     caches.put(Double.TYPE, new DoubleCache(this));
     caches.put(String.class, new StringCache(this));
     caches.put(StringIndex.class, new StringIndexCache(this));
+    // the packed variants of the numeric arrays are keyed by the wrapper types
+    caches.put(Integer.class, new PackedIntCache(this));
+    caches.put(Long.class, new PackedLongCache(this));
+    caches.put(Float.class, new PackedFloatCache(this));
+    caches.put(PackedStringIndex.class, new PackedStringIndexCache(this));
+    if (oldCaches != null) {
+      for(Cache c : oldCaches.values()) {
+        c.purgeAll();
+      }
+    }
   }
 
   public void purgeAllCaches() {
@@ -70,26 +113,62 @@ class FieldCacheImpl implements FieldCache {
   
   public CacheEntry[] getCacheEntries() {
     List<CacheEntry> result = new ArrayList<CacheEntry>(17);
-    for(final Class<?> cacheType: caches.keySet()) {
-      Cache cache = caches.get(cacheType);
-      for (final Object readerKey : cache.readerCache.keySet()) {
-        // we've now materialized a hard ref
-        
-        // innerKeys was backed by WeakHashMap, sanity check
-        // that it wasn't GCed before we made hard ref
-        if (null != readerKey && cache.readerCache.containsKey(readerKey)) {
-          Map<Entry, Object> innerCache = cache.readerCache.get(readerKey);
-          for (final Map.Entry<Entry, Object> mapEntry : innerCache.entrySet()) {
+    for(final Map.Entry<Class<?>,Cache> cacheEntry : caches.entrySet()) {
+      final Class<?> cacheType = cacheEntry.getKey();
+      final Cache cache = cacheEntry.getValue();
+      for (final Map.Entry<ReaderKey,ConcurrentMap<Entry,ValueHolder>> readerEntry : cache.readerCache.entrySet()) {
+        // we've now materialized a hard ref; the reader may have been
+        // GCed before that
+        final Object readerKey = readerEntry.getKey().get();
+        if (null != readerKey) {
+          for (final Map.Entry<Entry,ValueHolder> mapEntry : readerEntry.getValue().entrySet()) {
+            final Object value = mapEntry.getValue().value;
+            if (value == null) continue; // still being created
             Entry entry = mapEntry.getKey();
             result.add(new CacheEntryImpl(readerKey, entry.field,
                                           cacheType, entry.custom,
-                                          mapEntry.getValue()));
+                                          value));
           }
         }
       }
     }
     return result.toArray(new CacheEntry[result.size()]);
   }
+
+  public void setMaxRamBytes(long maxRamBytes) {
+    if (maxRamBytes < 0)
+      throw new IllegalArgumentException("maxRamBytes must be >= 0 (got " + maxRamBytes + ")");
+    this.maxRamBytes = maxRamBytes;
+    if (maxRamBytes == Long.MAX_VALUE) return;
+    // size the values that were created while there was no budget
+    for (Cache c : caches.values()) {
+      for (ConcurrentMap<Entry,ValueHolder> innerCache : c.readerCache.values()) {
+        for (ValueHolder holder : innerCache.values()) {
+          size(innerCache, holder);
+        }
+      }
+    }
+    evict(null);
+  }
+
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  public Stats getStats() {
+    int entryCount = 0;
+    for(Cache c : caches.values()) {
+      c.expungeStaleReaders();
+      for (ConcurrentMap<Entry,ValueHolder> innerCache : c.readerCache.values()) {
+        for (ValueHolder holder : innerCache.values()) {
+          if (holder.value != null) entryCount++;
+        }
+      }
+    }
+    return new Stats(entryCount, ramBytesUsed.get(), maxRamBytes,
+                     hitCount.get(), missCount.get(),
+                     evictionCount.get(), evictedBytes.get());
+  }
   
   private static final class CacheEntryImpl extends CacheEntry {
     private final Object readerKey;
@@ -133,19 +212,61 @@ class FieldCacheImpl implements FieldCache {
   static final class StopFillCacheException extends RuntimeException {
   }
 
-  /** Expert: Internal cache. */
-  abstract static class Cache {
-    Cache() {
-      this.wrapper = null;
+  /**
+   * Key of the per reader caches. Refers weakly to the reader's field cache
+   * key and compares by identity.
+   */
+  static final class ReaderKey extends WeakReference<Object> {
+    private final int hash;
+
+    ReaderKey(Object readerKey, ReferenceQueue<Object> queue) {
+      super(readerKey, queue);
+      this.hash = System.identityHashCode(readerKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (o instanceof ReaderKey) {
+        final Object readerKey = get();
+        return readerKey != null && readerKey == ((ReaderKey) o).get();
+      }
+      return false;
     }
+  }
 
-    Cache(FieldCache wrapper) {
+  /**
+   * A cached value. It is created by the first thread that asks for it while
+   * holding the holder's lock, so other threads asking meanwhile wait for it.
+   */
+  static final class ValueHolder {
+    volatile Object value;
+    volatile long lastAccess;
+
+    /* The estimated size that was added to ramBytesUsed for this value;
+     * -1 while it is being created, -2 after it was removed from the cache,
+     * -3 if it wasn't sized because no budget was set. Values shared with
+     * another entry (e.g. the arrays for the default parser) are counted
+     * only once.
+     */
+    private final AtomicLong ramBytes = new AtomicLong(-1);
+  }
+
+  /** Expert: Internal cache. */
+  abstract static class Cache {
+    Cache(FieldCacheImpl wrapper) {
       this.wrapper = wrapper;
     }
 
-    final FieldCache wrapper;
+    final FieldCacheImpl wrapper;
 
-    final Map<Object,Map<Entry,Object>> readerCache = new WeakHashMap<Object,Map<Entry,Object>>();
+    final ConcurrentMap<ReaderKey,ConcurrentMap<Entry,ValueHolder>> readerCache = new ConcurrentHashMap<ReaderKey,ConcurrentMap<Entry,ValueHolder>>();
+    private final ReferenceQueue<Object> staleReaders = new ReferenceQueue<Object>();
     
     protected abstract Object createValue(IndexReader reader, Entry key)
         throws IOException;
@@ -153,54 +274,93 @@ class FieldCacheImpl implements FieldCache {
     /** Remove this reader from the cache, if present. */
     public void purge(IndexReader r) {
       Object readerKey = r.getFieldCacheKey();
-      synchronized(readerCache) {
-        readerCache.remove(readerKey);
+      release(readerCache.remove(new ReaderKey(readerKey, null)));
+    }
+
+    /** Remove all readers from the cache. */
+    void purgeAll() {
+      for (Iterator<ConcurrentMap<Entry,ValueHolder>> it = readerCache.values().iterator(); it.hasNext();) {
+        ConcurrentMap<Entry,ValueHolder> innerCache = it.next();
+        it.remove();
+        release(innerCache);
+      }
+    }
+
+    /** Remove the readers that were garbage collected from the cache. */
+    void expungeStaleReaders() {
+      Object staleKey;
+      while ((staleKey = staleReaders.poll()) != null) {
+        release(readerCache.remove(staleKey));
+      }
+    }
+
+    private void release(ConcurrentMap<Entry,ValueHolder> innerCache) {
+      if (innerCache == null) return;
+      for (ValueHolder holder : innerCache.values()) {
+        wrapper.release(holder, false);
       }
     }
 
     public Object get(IndexReader reader, Entry key) throws IOException {
-      Map<Entry,Object> innerCache;
-      Object value;
+      expungeStaleReaders();
       final Object readerKey = reader.getFieldCacheKey();
-      synchronized (readerCache) {
-        innerCache = readerCache.get(readerKey);
-        if (innerCache == null) {
-          innerCache = new HashMap<Entry,Object>();
-          readerCache.put(readerKey, innerCache);
-          value = null;
-        } else {
-          value = innerCache.get(key);
-        }
-        if (value == null) {
-          value = new CreationPlaceholder();
-          innerCache.put(key, value);
-        }
+      ConcurrentMap<Entry,ValueHolder> innerCache = readerCache.get(new ReaderKey(readerKey, null));
+      if (innerCache == null) {
+        final ConcurrentMap<Entry,ValueHolder> newCache = new ConcurrentHashMap<Entry,ValueHolder>();
+        innerCache = readerCache.putIfAbsent(new ReaderKey(readerKey, staleReaders), newCache);
+        if (innerCache == null) innerCache = newCache;
+      }
+      ValueHolder holder = innerCache.get(key);
+      if (holder == null) {
+        final ValueHolder newHolder = new ValueHolder();
+        holder = innerCache.putIfAbsent(key, newHolder);
+        if (holder == null) holder = newHolder;
       }
-      if (value instanceof CreationPlaceholder) {
-        synchronized (value) {
-          CreationPlaceholder progress = (CreationPlaceholder) value;
-          if (progress.value == null) {
-            progress.value = createValue(reader, key);
-            synchronized (readerCache) {
-              innerCache.put(key, progress.value);
+
+      Object value = holder.value;
+      if (value == null) {
+        synchronized (holder) {
+          value = holder.value;
+          if (value == null) {
+            value = createValue(reader, key);
+            holder.value = value;
+            holder.lastAccess = wrapper.clock.incrementAndGet();
+            wrapper.missCount.incrementAndGet();
+            wrapper.added(innerCache, holder);
+            if (readerCache.get(new ReaderKey(readerKey, null)) != innerCache) {
+              wrapper.release(holder, false); // purged meanwhile
             }
 
             // Only check if key.custom (the parser) is
             // non-null; else, we check twice for a single
             // call to FieldCache.getXXX
-            if (key.custom != null && wrapper != null) {
+            if (key.custom != null) {
               final PrintStream infoStream = wrapper.getInfoStream();
               if (infoStream != null) {
-                printNewInsanity(infoStream, progress.value);
+                printNewInsanity(infoStream, value);
               }
             }
+            return value;
           }
-          return progress.value;
         }
       }
+      holder.lastAccess = wrapper.clock.incrementAndGet();
+      wrapper.hitCount.incrementAndGet();
       return value;
     }
 
+    /* Adds the created values of this cache to the given list. */
+    void collectEntries(List<CachedValue> entries) {
+      for (ConcurrentMap<Entry,ValueHolder> innerCache : readerCache.values()) {
+        for (Map.Entry<Entry,ValueHolder> mapEntry : innerCache.entrySet()) {
+          final ValueHolder holder = mapEntry.getValue();
+          if (holder.value != null) {
+            entries.add(new CachedValue(innerCache, mapEntry.getKey(), holder));
+          }
+        }
+      }
+    }
+
     private void printNewInsanity(PrintStream infoStream, Object value) {
       final FieldCacheSanityChecker.Insanity[] insanities = FieldCacheSanityChecker.checkSanity(wrapper);
       for(int i=0;i<insanities.length;i++) {
@@ -219,6 +379,174 @@ class FieldCacheImpl implements FieldCache {
     }
   }
 
+  /* A created value together with where it is stored, for eviction. */
+  private static final class CachedValue implements Comparable<CachedValue> {
+    final ConcurrentMap<Entry,ValueHolder> innerCache;
+    final Entry key;
+    final ValueHolder holder;
+    final long lastAccess;
+
+    CachedValue(ConcurrentMap<Entry,ValueHolder> innerCache, Entry key, ValueHolder holder) {
+      this.innerCache = innerCache;
+      this.key = key;
+      this.holder = holder;
+      this.lastAccess = holder.lastAccess;
+    }
+
+    public int compareTo(CachedValue other) {
+      return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+    }
+  }
+
+  /* Accounts for a newly created value and evicts other values if the cache
+   * is now over its budget.
+   */
+  private void added(ConcurrentMap<Entry,ValueHolder> innerCache, ValueHolder holder) {
+    if (!holder.ramBytes.compareAndSet(-1, -3)) {
+      return; // the holder was purged while its value was created
+    }
+    if (maxRamBytes != Long.MAX_VALUE && size(innerCache, holder)
+        && ramBytesUsed.get() > maxRamBytes) {
+      evict(holder.value);
+    }
+  }
+
+  /* Adds the estimated size of the given holder's value to ramBytesUsed, if
+   * it wasn't sized yet. Returns false if there was nothing to do.
+   */
+  private boolean size(ConcurrentMap<Entry,ValueHolder> innerCache, ValueHolder holder) {
+    if (holder.ramBytes.get() != -3) return false;
+    boolean shared = false;
+    for (ValueHolder other : innerCache.values()) {
+      if (other != holder && other.value == holder.value && other.ramBytes.get() > 0) {
+        shared = true; // already counted for the other entry
+        break;
+      }
+    }
+    final long ramBytes = shared ? 0 : estimateRamBytes(holder.value);
+    if (!holder.ramBytes.compareAndSet(-3, ramBytes)) return false;
+    ramBytesUsed.addAndGet(ramBytes);
+    return true;
+  }
+
+  private static final MemoryModel MEMORY_MODEL = new AverageGuessMemoryModel();
+  private static final int STRING_SAMPLE_SIZE = 64;
+
+  /* Estimates the size of a cached value from the lengths of its arrays, so
+   * that sizing doesn't walk the value's objects. The strings of a String[]
+   * or StringIndex are extrapolated from a sample of them. Other values,
+   * e.g. from custom caches, are walked with RamUsageEstimator.
+   */
+  static long estimateRamBytes(Object value) {
+    if (value instanceof byte[]) {
+      return arrayBytes(((byte[]) value).length, byte.class);
+    } else if (value instanceof short[]) {
+      return arrayBytes(((short[]) value).length, short.class);
+    } else if (value instanceof int[]) {
+      return arrayBytes(((int[]) value).length, int.class);
+    } else if (value instanceof float[]) {
+      return arrayBytes(((float[]) value).length, float.class);
+    } else if (value instanceof long[]) {
+      return arrayBytes(((long[]) value).length, long.class);
+    } else if (value instanceof double[]) {
+      return arrayBytes(((double[]) value).length, double.class);
+    } else if (value instanceof String[]) {
+      return stringArrayBytes((String[]) value);
+    } else if (value instanceof StringIndex) {
+      final StringIndex index = (StringIndex) value;
+      return objectBytes(2) + arrayBytes(index.order.length, int.class)
+          + stringArrayBytes(index.lookup);
+    } else if (value instanceof PackedValues) {
+      return objectBytes(1) + MEMORY_MODEL.getPrimitiveSize(long.class)
+          + packedBytes(((PackedValues) value).values);
+    } else if (value instanceof PackedStringIndex) {
+      final PackedStringIndex index = (PackedStringIndex) value;
+      return objectBytes(2) + packedBytes(index.order) + index.termsRamBytes();
+    }
+    return new RamUsageEstimator(false).estimateRamUsage(value);
+  }
+
+  private static long objectBytes(int refCount) {
+    return MEMORY_MODEL.getClassSize() + refCount * MEMORY_MODEL.getReferenceSize();
+  }
+
+  private static long arrayBytes(int length, Class<?> elementType) {
+    if (length == 0) return 0;
+    final int elementSize = elementType.isPrimitive()
+        ? MEMORY_MODEL.getPrimitiveSize(elementType) : MEMORY_MODEL.getReferenceSize();
+    return MEMORY_MODEL.getArraySize() + (long) length * elementSize;
+  }
+
+  private static long packedBytes(PackedInts.Reader values) {
+    return objectBytes(1) + MEMORY_MODEL.getArraySize()
+        + ((long) values.size() * values.getBitsPerValue() + 7) / 8;
+  }
+
+  /* Extrapolates the size of the strings in the array from evenly spaced
+   * samples. A string is only counted the first time it is sampled, since
+   * in a String[] value all documents with the same term share its string.
+   */
+  private static long stringArrayBytes(String[] strings) {
+    final long refBytes = arrayBytes(strings.length, String.class);
+    if (strings.length == 0) return refBytes;
+    final int samples = Math.min(strings.length, STRING_SAMPLE_SIZE);
+    final Map<String,Object> seen = new IdentityHashMap<String,Object>();
+    long sampleBytes = 0;
+    for (int i = 0; i < samples; i++) {
+      final String s = strings[(int) ((long) i * strings.length / samples)];
+      if (s == null || seen.put(s, s) != null) continue;
+      sampleBytes += objectBytes(1) + 3 * MEMORY_MODEL.getPrimitiveSize(int.class)
+          + arrayBytes(s.length(), char.class);
+    }
+    return refBytes + sampleBytes * strings.length / samples;
+  }
+
+  /* Takes the given holder's value out of the accounting; returns its size. */
+  private long release(ValueHolder holder, boolean evicted) {
+    final long ramBytes = holder.ramBytes.getAndSet(-2);
+    if (ramBytes > 0) {
+      ramBytesUsed.addAndGet(-ramBytes);
+      if (evicted) evictedBytes.addAndGet(ramBytes);
+    }
+    return ramBytes;
+  }
+
+  /* Evicts the least recently used values until the cache is within its
+   * budget again. The given value is kept, even if it is larger than the
+   * budget on its own, because it was just created for a caller.
+   */
+  private void evict(Object keep) {
+    synchronized (evictLock) {
+      if (ramBytesUsed.get() <= maxRamBytes) return;
+      final List<CachedValue> entries = new ArrayList<CachedValue>();
+      for (Cache c : caches.values()) {
+        c.collectEntries(entries);
+      }
+      // a heap instead of sorting all entries, since usually only a few
+      // of the least recently used ones are evicted
+      final PriorityQueue<CachedValue> queue = new PriorityQueue<CachedValue>(entries);
+      CachedValue entry;
+      while ((entry = queue.poll()) != null) {
+        if (ramBytesUsed.get() <= maxRamBytes) break;
+        final Object value = entry.holder.value;
+        if (value == keep) continue;
+        if (entry.innerCache.remove(entry.key, entry.holder)) {
+          release(entry.holder, true);
+          evictionCount.incrementAndGet();
+          // entries of the same reader sharing the value go as well, since
+          // they keep it in memory
+          for (Iterator<ValueHolder> it = entry.innerCache.values().iterator(); it.hasNext();) {
+            final ValueHolder other = it.next();
+            if (other.value == value) {
+              it.remove();
+              release(other, true);
+            }
+          }
+        }
+      }
+    }
+  }
+
   /** Expert: Every composite-key in the internal cache is of this type. */
   static class Entry {
     final String field;        // which Fieldable
@@ -265,7 +593,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class ByteCache extends Cache {
-    ByteCache(FieldCache wrapper) {
+    ByteCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
     @Override
@@ -311,7 +639,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class ShortCache extends Cache {
-    ShortCache(FieldCache wrapper) {
+    ShortCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -358,7 +686,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class IntCache extends Cache {
-    IntCache(FieldCache wrapper) {
+    IntCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -416,7 +744,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class FloatCache extends Cache {
-    FloatCache(FieldCache wrapper) {
+    FloatCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -471,7 +799,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class LongCache extends Cache {
-    LongCache(FieldCache wrapper) {
+    LongCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -526,7 +854,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class DoubleCache extends Cache {
-    DoubleCache(FieldCache wrapper) {
+    DoubleCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -576,7 +904,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class StringCache extends Cache {
-    StringCache(FieldCache wrapper) {
+    StringCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -612,7 +940,7 @@ class FieldCacheImpl implements FieldCache {
   }
 
   static final class StringIndexCache extends Cache {
-    StringIndexCache(FieldCache wrapper) {
+    StringIndexCache(FieldCacheImpl wrapper) {
       super(wrapper);
     }
 
@@ -669,6 +997,237 @@ class FieldCacheImpl implements FieldCache {
     }
   };
 
+  // inherit javadocs
+  public PackedValues getPackedInts(IndexReader reader, String field, IntParser parser)
+      throws IOException {
+    return (PackedValues) caches.get(Integer.class).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public PackedValues getPackedLongs(IndexReader reader, String field, LongParser parser)
+      throws IOException {
+    return (PackedValues) caches.get(Long.class).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public PackedValues getPackedFloats(IndexReader reader, String field, FloatParser parser)
+      throws IOException {
+    return (PackedValues) caches.get(Float.class).get(reader, new Entry(field, parser));
+  }
+
+  /**
+   * Base of the caches for {@link PackedValues}. The terms are read twice:
+   * once to find the range of the values, which determines the bits per
+   * value, and once more with their documents to fill the packed array.
+   */
+  static abstract class PackedNumericCache extends Cache {
+    PackedNumericCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    /** The parsers to try, in order, if no parser was given. */
+    abstract Parser[] defaultParsers();
+
+    /** Parses the given term with the given parser into a long. */
+    abstract long parse(Parser parser, String term);
+
+    @Override
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      String field = entry.field;
+      Parser parser = (Parser) entry.custom;
+      if (parser == null) {
+        Parser[] defaults = defaultParsers();
+        try {
+          return get(reader, new Entry(field, defaults[0]));
+        } catch (NumberFormatException ne) {
+          return get(reader, new Entry(field, defaults[1]));
+        }
+      }
+
+      long min = 0;
+      long max = 0;
+      long sumDocFreq = 0;
+      boolean first = true;
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          long termval = parse(parser, term.text());
+          if (first || termval < min) min = termval;
+          if (first || termval > max) max = termval;
+          first = false;
+          sumDocFreq += termEnum.docFreq();
+        } while (termEnum.next());
+      } catch (StopFillCacheException stop) {
+      } finally {
+        termEnum.close();
+      }
+
+      // documents without a term get the value 0, like in the plain arrays,
+      // which certainly happens if there are fewer postings than documents
+      final int maxDoc = reader.maxDoc();
+      if (sumDocFreq < maxDoc) {
+        min = Math.min(min, 0);
+        max = Math.max(max, 0);
+      }
+      PackedInts.Mutable values = fill(reader, field, parser, min, max);
+      if (values == null) {
+        // some documents have no term after all
+        min = Math.min(min, 0);
+        max = Math.max(max, 0);
+        values = fill(reader, field, parser, min, max);
+      }
+      return new PackedValues(min, values);
+    }
+
+    /* Returns the values of all documents as offsets from min, or null if
+     * there are documents without a term and 0 is not in [min, max].
+     */
+    private PackedInts.Mutable fill(IndexReader reader, String field, Parser parser,
+        long min, long max) throws IOException {
+      final int maxDoc = reader.maxDoc();
+      // max - min is an unsigned long, bitsRequired treats it as such
+      final PackedInts.Mutable values = PackedInts.getMutable(maxDoc, PackedInts.bitsRequired(max - min));
+      final OpenBitSet docsWithValue = new OpenBitSet(maxDoc);
+      TermDocs termDocs = reader.termDocs();
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          long termval = parse(parser, term.text());
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            final int doc = termDocs.doc();
+            values.set(doc, termval - min);
+            docsWithValue.fastSet(doc);
+          }
+        } while (termEnum.next());
+      } catch (StopFillCacheException stop) {
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+
+      if (docsWithValue.cardinality() < maxDoc && min != 0) {
+        if (min > 0 || max < 0)
+          return null;
+        for (int doc = 0; doc < maxDoc; doc++) {
+          if (!docsWithValue.fastGet(doc))
+            values.set(doc, -min);
+        }
+      }
+      return values;
+    }
+  }
+
+  static final class PackedIntCache extends PackedNumericCache {
+    PackedIntCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    Parser[] defaultParsers() {
+      return new Parser[] {DEFAULT_INT_PARSER, NUMERIC_UTILS_INT_PARSER};
+    }
+
+    @Override
+    long parse(Parser parser, String term) {
+      return ((IntParser) parser).parseInt(term);
+    }
+  }
+
+  static final class PackedLongCache extends PackedNumericCache {
+    PackedLongCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    Parser[] defaultParsers() {
+      return new Parser[] {DEFAULT_LONG_PARSER, NUMERIC_UTILS_LONG_PARSER};
+    }
+
+    @Override
+    long parse(Parser parser, String term) {
+      return ((LongParser) parser).parseLong(term);
+    }
+  }
+
+  static final class PackedFloatCache extends PackedNumericCache {
+    PackedFloatCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    Parser[] defaultParsers() {
+      return new Parser[] {DEFAULT_FLOAT_PARSER, NUMERIC_UTILS_FLOAT_PARSER};
+    }
+
+    @Override
+    long parse(Parser parser, String term) {
+      // 0.0f, the value of documents without a term, maps to 0
+      return NumericUtils.floatToSortableInt(((FloatParser) parser).parseFloat(term));
+    }
+  }
+
+  // inherit javadocs
+  public PackedStringIndex getPackedStringIndex(IndexReader reader, String field)
+      throws IOException {
+    return (PackedStringIndex) caches.get(PackedStringIndex.class).get(reader, new Entry(field, (Parser)null));
+  }
+
+  static final class PackedStringIndexCache extends Cache {
+    PackedStringIndexCache(FieldCacheImpl wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    protected Object createValue(IndexReader reader, Entry entryKey)
+        throws IOException {
+      String field = StringHelper.intern(entryKey.field);
+      final int maxDoc = reader.maxDoc();
+
+      // first collect the terms, to know how many bits the ords need
+      PrefixCodedTerms.Builder builder = new PrefixCodedTerms.Builder();
+      int numTerms = 0;
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field || numTerms >= maxDoc) break;
+          builder.add(term.text());
+          numTerms++;
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
+      }
+
+      // ord 0 is for documents that have no terms in this field, as in
+      // StringIndexCache
+      final PackedInts.Mutable order = PackedInts.getMutable(maxDoc, PackedInts.bitsRequired(numTerms));
+      TermDocs termDocs = reader.termDocs();
+      termEnum = reader.terms (new Term (field));
+      int t = 1;  // current term number
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field || t > numTerms) break;
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            order.set(termDocs.doc(), t);
+          }
+          t++;
+        } while (termEnum.next());
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+      return new PackedStringIndex(order, builder.finish());
+    }
+  };
+
   private volatile PrintStream infoStream;
 
   public void setInfoStream(PrintStream stream) {
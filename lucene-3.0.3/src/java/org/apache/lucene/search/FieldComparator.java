@@ -28,7 +28,10 @@ import org.apache.lucene.search.FieldCache.ByteParser;
 import org.apache.lucene.search.FieldCache.FloatParser;
 import org.apache.lucene.search.FieldCache.IntParser;
 import org.apache.lucene.search.FieldCache.ShortParser;
-import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.search.FieldCache.PackedStringIndex;
+import org.apache.lucene.search.FieldCache.PackedValues;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.packed.PackedInts;
 
 /**
  * Expert: a FieldComparator compares hits so as to determine their
@@ -317,10 +320,10 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as float (using {@link
-   *  FieldCache#getFloats} and sorts by ascending value */
+   *  FieldCache#getPackedFloats} and sorts by ascending value */
   public static final class FloatComparator extends FieldComparator {
     private final float[] values;
-    private float[] currentReaderValues;
+    private PackedValues currentReaderValues;
     private final String field;
     private FloatParser parser;
     private float bottom;
@@ -350,7 +353,7 @@ public abstract class FieldComparator {
     public int compareBottom(int doc) {
       // TODO: are there sneaky non-branch ways to compute
       // sign of float?
-      final float v2 = currentReaderValues[doc];
+      final float v2 = NumericUtils.sortableIntToFloat((int) currentReaderValues.get(doc));
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -362,12 +365,12 @@ public abstract class FieldComparator {
 
     @Override
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = NumericUtils.sortableIntToFloat((int) currentReaderValues.get(doc));
     }
 
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getFloats(reader, field, parser);
+      currentReaderValues = FieldCache.DEFAULT.getPackedFloats(reader, field, parser);
     }
     
     @Override
@@ -382,10 +385,10 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as int (using {@link
-   *  FieldCache#getInts} and sorts by ascending value */
+   *  FieldCache#getPackedInts} and sorts by ascending value */
   public static final class IntComparator extends FieldComparator {
     private final int[] values;
-    private int[] currentReaderValues;
+    private PackedValues currentReaderValues;
     private final String field;
     private IntParser parser;
     private int bottom;                           // Value of bottom of queue
@@ -419,7 +422,7 @@ public abstract class FieldComparator {
       // -1/+1/0 sign
       // Cannot return bottom - values[slot2] because that
       // may overflow
-      final int v2 = currentReaderValues[doc];
+      final int v2 = (int) currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -431,12 +434,12 @@ public abstract class FieldComparator {
 
     @Override
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = (int) currentReaderValues.get(doc);
     }
 
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getInts(reader, field, parser);
+      currentReaderValues = FieldCache.DEFAULT.getPackedInts(reader, field, parser);
     }
     
     @Override
@@ -451,10 +454,10 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as long (using {@link
-   *  FieldCache#getLongs} and sorts by ascending value */
+   *  FieldCache#getPackedLongs} and sorts by ascending value */
   public static final class LongComparator extends FieldComparator {
     private final long[] values;
-    private long[] currentReaderValues;
+    private PackedValues currentReaderValues;
     private final String field;
     private LongParser parser;
     private long bottom;
@@ -484,7 +487,7 @@ public abstract class FieldComparator {
     public int compareBottom(int doc) {
       // TODO: there are sneaky non-branch ways to compute
       // -1/+1/0 sign
-      final long v2 = currentReaderValues[doc];
+      final long v2 = currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -496,12 +499,12 @@ public abstract class FieldComparator {
 
     @Override
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getLongs(reader, field, parser);
+      currentReaderValues = FieldCache.DEFAULT.getPackedLongs(reader, field, parser);
     }
     
     @Override
@@ -686,25 +689,31 @@ public abstract class FieldComparator {
    *  ordinals.  This is functionally equivalent to {@link
    *  StringValComparator}, but it first resolves the string
    *  to their relative ordinal positions (using the index
-   *  returned by {@link FieldCache#getStringIndex}), and
+   *  returned by {@link FieldCache#getPackedStringIndex}), and
    *  does most comparisons using the ordinals.  For medium
    *  to large results, this comparator will be much faster
    *  than {@link StringValComparator}.  For very small
-   *  result sets it may be slower. */
+   *  result sets it may be slower.  The string value of a
+   *  slot is only decoded from the index when it is needed,
+   *  i.e. when slots from different readers are compared. */
   public static final class StringOrdValComparator extends FieldComparator {
 
     private final int[] ords;
     private final String[] values;
     private final int[] readerGen;
+    // the index the ord of each slot refers to, until its value is decoded
+    private final PackedStringIndex[] slotIndexes;
+    // false if the value of the slot lies between its ord and the next one
+    private final boolean[] exact;
 
     private int currentReaderGen = -1;
-    private String[] lookup;
-    private int[] order;
+    private PackedStringIndex lookup;
+    private PackedInts.Reader order;
     private final String field;
 
     private int bottomSlot = -1;
     private int bottomOrd;
-    private String bottomValue;
+    private boolean bottomExact;
     private final boolean reversed;
     private final int sortPos;
 
@@ -712,6 +721,8 @@ public abstract class FieldComparator {
       ords = new int[numHits];
       values = new String[numHits];
       readerGen = new int[numHits];
+      slotIndexes = new PackedStringIndex[numHits];
+      exact = new boolean[numHits];
       this.sortPos = sortPos;
       this.reversed = reversed;
       this.field = field;
@@ -721,13 +732,13 @@ public abstract class FieldComparator {
     public int compare(int slot1, int slot2) {
       if (readerGen[slot1] == readerGen[slot2]) {
         int cmp = ords[slot1] - ords[slot2];
-        if (cmp != 0) {
+        if (cmp != 0 || (exact[slot1] && exact[slot2])) {
           return cmp;
         }
       }
 
-      final String val1 = values[slot1];
-      final String val2 = values[slot2];
+      final String val1 = decode(slot1);
+      final String val2 = decode(slot2);
       if (val1 == null) {
         if (val2 == null) {
           return 0;
@@ -742,74 +753,77 @@ public abstract class FieldComparator {
     @Override
     public int compareBottom(int doc) {
       assert bottomSlot != -1;
-      int order = this.order[doc];
-      final int cmp = bottomOrd - order;
+      final int cmp = bottomOrd - (int) order.get(doc);
       if (cmp != 0) {
         return cmp;
       }
-
-      final String val2 = lookup[order];
-      if (bottomValue == null) {
-        if (val2 == null) {
-          return 0;
-        }
-        // bottom wins
-        return -1;
-      } else if (val2 == null) {
-        // doc wins
-        return 1;
-      }
-      return bottomValue.compareTo(val2);
+      // if the bottom value is not in this reader, it is greater than the
+      // term of its ord, or not null if that is ord 0: doc wins
+      return bottomExact ? 0 : 1;
     }
 
     private void convert(int slot) {
+      final String value = decode(slot);
       readerGen[slot] = currentReaderGen;
+      exact[slot] = true;
       int index = 0;
-      String value = values[slot];
       if (value == null) {
         ords[slot] = 0;
         return;
       }
 
+      final int numOrds = lookup.numOrds();
       if (sortPos == 0 && bottomSlot != -1 && bottomSlot != slot) {
         // Since we are the primary sort, the entries in the
         // queue are bounded by bottomOrd:
-        assert bottomOrd < lookup.length;
+        assert bottomOrd < numOrds;
         if (reversed) {
-          index = binarySearch(lookup, value, bottomOrd, lookup.length-1);
+          index = lookup.binarySearchLookup(value, bottomOrd, numOrds-1);
         } else {
-          index = binarySearch(lookup, value, 0, bottomOrd);
+          index = lookup.binarySearchLookup(value, 0, bottomOrd);
         }
       } else {
         // Full binary search
-        index = binarySearch(lookup, value);
+        index = lookup.binarySearchLookup(value, 0, numOrds-1);
       }
 
       if (index < 0) {
         index = -index - 2;
+        exact[slot] = false;
       }
       ords[slot] = index;
     }
 
+    /* Returns the value of the given slot, decoding it if necessary. */
+    private String decode(int slot) {
+      final PackedStringIndex index = slotIndexes[slot];
+      if (index != null) {
+        values[slot] = index.lookup(ords[slot]);
+        slotIndexes[slot] = null;
+      }
+      return values[slot];
+    }
+
     @Override
     public void copy(int slot, int doc) {
-      final int ord = order[doc];
+      final int ord = (int) order.get(doc);
       ords[slot] = ord;
       assert ord >= 0;
-      values[slot] = lookup[ord];
+      slotIndexes[slot] = lookup;
+      exact[slot] = true;
       readerGen[slot] = currentReaderGen;
     }
 
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      StringIndex currentReaderValues = FieldCache.DEFAULT.getStringIndex(reader, field);
+      lookup = FieldCache.DEFAULT.getPackedStringIndex(reader, field);
       currentReaderGen++;
-      order = currentReaderValues.order;
-      lookup = currentReaderValues.lookup;
-      assert lookup.length > 0;
+      order = lookup.order;
+      assert lookup.numOrds() > 0;
       if (bottomSlot != -1) {
         convert(bottomSlot);
         bottomOrd = ords[bottomSlot];
+        bottomExact = exact[bottomSlot];
       }
     }
     
@@ -820,17 +834,20 @@ public abstract class FieldComparator {
         convert(bottomSlot);
       }
       bottomOrd = ords[bottom];
+      bottomExact = exact[bottom];
       assert bottomOrd >= 0;
-      assert bottomOrd < lookup.length;
-      bottomValue = values[bottom];
+      assert bottomOrd < lookup.numOrds();
     }
 
     @Override
     public Comparable value(int slot) {
-      return values[slot];
+      return decode(slot);
     }
 
     public String[] getValues() {
+      for (int slot = 0; slot < values.length; slot++) {
+        decode(slot);
+      }
       return values;
     }
 
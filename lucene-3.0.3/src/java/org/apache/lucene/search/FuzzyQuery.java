@@ -27,8 +27,13 @@ import java.util.PriorityQueue;
 /** Implements the fuzzy search query. The similarity measurement
  * is based on the Levenshtein (edit distance) algorithm.
  * 
- * Warning: this query is not very scalable with its default prefix
- * length of 0 - in this case, *every* term will be enumerated and
+ * <p>If the maximum edit distance allowed by <code>minimumSimilarity</code>
+ * is at most 2, terms are enumerated with a Levenshtein automaton that seeks
+ * over terms which cannot be within this distance, so even with the default
+ * prefix length of 0 only a small part of the term dictionary is visited.
+ * Warning: with larger edit distances (long terms or low values of
+ * <code>minimumSimilarity</code>) this query is not very scalable with a
+ * prefix length of 0 - in this case, *every* term will be enumerated and
  * cause an edit score calculation.
  * 
  */
@@ -30,6 +30,22 @@ import org.apache.lucene.index.Term;
  */
 public final class FuzzyTermEnum extends FilteredTermEnum {
 
+  /* How many terms in a row must fail to match before the next possible
+   * match is computed, and how many terms are then skipped by calling next()
+   * on the underlying enum before seeking to it instead. Both computing the
+   * seek target and seeking (which scans half an index interval on average)
+   * are more expensive than checking a term against the automaton, so they
+   * only pay off for longer runs of terms.
+   */
+  private static final int MAX_REJECTED = 16;
+  private static final int MAX_SKIPPED = 64;
+
+  /* The largest edit distance for which the automaton is used. With larger
+   * distances almost every term prefix stays within reach, so hardly anything
+   * can be skipped and computing the seek targets costs more than it saves.
+   */
+  private static final int MAX_AUTOMATON_DISTANCE = 2;
+
   /* Allows us save time required to create a new array
    * every time similarity is called.
    */
@@ -47,6 +63,13 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   private final float minimumSimilarity;
   private final float scale_factor;
 
+  /* Accepts all terms within the maximum edit distance; null if this distance
+   * is too large for seeking to pay off, in which case all terms with the
+   * prefix are compared.
+   */
+  private final LevenshteinAutomaton automaton;
+  private final IndexReader reader;
+
   /**
    * Creates a FuzzyTermEnum with an empty prefix and a minSimilarity of 0.5f.
    * <p>
@@ -118,7 +141,77 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
     this.p = new int[this.text.length()+1];
     this.d = new int[this.text.length()+1];
 
-    setEnum(reader.terms(new Term(searchTerm.field(), prefix)));
+    // With a maximum distance of at least the text length, every short enough
+    // term matches, so there is nothing to skip either.
+    final int maxDistance = calculateMaxDistance(text.length());
+    if (maxDistance <= MAX_AUTOMATON_DISTANCE && maxDistance < text.length()) {
+      this.automaton = new LevenshteinAutomaton(text, maxDistance);
+      this.reader = reader;
+      this.actualEnum = reader.terms(new Term(field, prefix));
+      final Term first = actualEnum.term();
+      if (first != null)
+        findMatch(first);
+    } else {
+      this.automaton = null;
+      this.reader = null;
+      setEnum(reader.terms(new Term(searchTerm.field(), prefix)));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean next() throws IOException {
+    if (automaton == null)
+      return super.next();
+    if (actualEnum == null) return false;
+    currentTerm = null;
+    if (endEnum || !actualEnum.next())
+      return false;
+    return findMatch(actualEnum.term());
+  }
+
+  /**
+   * Positions this enum on the first matching term that is equal to or greater
+   * than the given term, which must be the current term of the underlying enum.
+   * After a run of terms that aren't within the maximum edit distance, the
+   * following terms up to the next string that the automaton accepts are
+   * skipped, by seeking if there are many of them.
+   */
+  private boolean findMatch(Term term) throws IOException {
+    String seekText = null;
+    int rejected = 0;
+    int skipped = 0;
+    while (term != null) {
+      if (term.field() != field) break;
+      final String termText = term.text();
+      if (seekText == null || termText.compareTo(seekText) >= 0) {
+        seekText = null;
+        if (!termText.startsWith(prefix)) break;
+        if (automaton.accepts(termText, prefix.length())) {
+          this.similarity = similarity(termText.substring(prefix.length()));
+          if (similarity > minimumSimilarity) {
+            currentTerm = term;
+            return true;
+          }
+        }
+        if (++rejected == MAX_REJECTED) {
+          final String next = automaton.nextString(termText.substring(prefix.length()));
+          if (next == null) break;
+          seekText = prefix + next;
+          rejected = 0;
+          skipped = 0;
+        }
+      }
+      if (seekText != null && skipped++ == MAX_SKIPPED) {
+        actualEnum.close();
+        actualEnum = reader.terms(new Term(field, seekText));
+      } else if (!actualEnum.next()) {
+        return false;
+      }
+      term = actualEnum.term();
+    }
+    endEnum = true;
+    return false;
   }
 
   /**
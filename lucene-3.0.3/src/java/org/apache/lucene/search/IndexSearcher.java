@@ -19,7 +19,13 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
@@ -28,6 +34,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.ReaderUtil;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /** Implements search over a single IndexReader.
  *
@@ -43,6 +50,15 @@ import org.apache.lucene.util.ReaderUtil;
  * external synchronization, you should <b>not</b>
  * synchronize on the <code>IndexSearcher</code> instance;
  * use your own (non-Lucene) objects instead.</p>
+ *
+ * <p>If an {@link ExecutorService} is passed to the constructor, the
+ * sub-readers are split into slices of about the same number of documents,
+ * and {@link #search(Query,Filter,int)} and {@link
+ * #search(Query,Filter,int,Sort)} search the slices concurrently, each with
+ * its own top hits collector. The top hits of the slices are merged into
+ * the same result as a sequential search would give. Searches with a
+ * {@link Collector} are always sequential, as collectors are not thread
+ * safe.</p>
  */
 public class IndexSearcher extends Searcher {
   IndexReader reader;
@@ -53,6 +69,10 @@ public class IndexSearcher extends Searcher {
   protected IndexReader[] subReaders;
   protected int[] docStarts;
 
+  private final ExecutorService executor;
+  // indexes into subReaders; each slice is searched by one task
+  private final int[][] slices;
+
   /** Creates a searcher searching the index in the named
    *  directory, with readOnly=true
    * @throws CorruptIndexException if the index is corrupt
@@ -60,7 +80,7 @@ public class IndexSearcher extends Searcher {
    * @param path directory where IndexReader will be opened
    */
   public IndexSearcher(Directory path) throws CorruptIndexException, IOException {
-    this(IndexReader.open(path, true), true);
+    this(IndexReader.open(path, true), true, null, 1);
   }
 
   /** Creates a searcher searching the index in the named
@@ -75,12 +95,40 @@ public class IndexSearcher extends Searcher {
    * will be opened readOnly
    */
   public IndexSearcher(Directory path, boolean readOnly) throws CorruptIndexException, IOException {
-    this(IndexReader.open(path, readOnly), true);
+    this(IndexReader.open(path, readOnly), true, null, 1);
   }
 
   /** Creates a searcher searching the provided index. */
   public IndexSearcher(IndexReader r) {
-    this(r, false);
+    this(r, false, null, 1);
+  }
+
+  /** Creates a searcher searching the provided index, which searches the
+   *  segments concurrently with the given executor, in as many slices as
+   *  there are available processors.
+   *
+   * <p><b>NOTE:</b> the executor is not shut down when this searcher is
+   * closed.
+   *
+   * <p><font color="red"><b>NOTE:</b> This API is experimental and
+   * might change in incompatible ways in the next
+   * release.</font></p> */
+  public IndexSearcher(IndexReader r, ExecutorService executor) {
+    this(r, executor, Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Like {@link #IndexSearcher(IndexReader, ExecutorService)}, but searches
+   *  the segments in at most the given number of slices.
+   *
+   * <p><font color="red"><b>NOTE:</b> This API is experimental and
+   * might change in incompatible ways in the next
+   * release.</font></p> */
+  public IndexSearcher(IndexReader r, ExecutorService executor, int maxSlices) {
+    this(r, false, executor, maxSlices);
+    if (executor == null)
+      throw new NullPointerException("executor must not be null");
+    if (maxSlices < 1)
+      throw new IllegalArgumentException("maxSlices must be >= 1: got " + maxSlices);
   }
 
   /** Expert: directly specify the reader, subReaders and
@@ -94,11 +142,14 @@ public class IndexSearcher extends Searcher {
     this.subReaders = subReaders;
     this.docStarts = docStarts;
     closeReader = false;
+    executor = null;
+    slices = null;
   }
   
-  private IndexSearcher(IndexReader r, boolean closeReader) {
+  private IndexSearcher(IndexReader r, boolean closeReader, ExecutorService executor, int maxSlices) {
     reader = r;
     this.closeReader = closeReader;
+    this.executor = executor;
 
     List<IndexReader> subReadersList = new ArrayList<IndexReader>();
     gatherSubReaders(subReadersList, reader);
@@ -109,6 +160,46 @@ public class IndexSearcher extends Searcher {
       docStarts[i] = maxDoc;
       maxDoc += subReaders[i].maxDoc();
     }
+    slices = executor == null ? null : slice(Math.max(1, maxSlices));
+  }
+
+  /* Distributes the sub-readers over at most maxSlices slices, so that the
+   * slices have about the same number of documents: the largest remaining
+   * sub-reader goes to the slice with the fewest documents so far. Within a
+   * slice, the sub-readers keep their order.
+   */
+  private int[][] slice(int maxSlices) {
+    final int numSlices = Math.min(maxSlices, subReaders.length);
+    final Integer[] bySize = new Integer[subReaders.length];
+    for (int i = 0; i < bySize.length; i++)
+      bySize[i] = Integer.valueOf(i);
+    Arrays.sort(bySize, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return subReaders[b.intValue()].maxDoc() - subReaders[a.intValue()].maxDoc();
+      }
+    });
+    final long[] sliceDocs = new long[numSlices];
+    final int[] sliceSizes = new int[numSlices];
+    final int[] sliceOf = new int[subReaders.length];
+    for (Integer index : bySize) {
+      int smallest = 0;
+      for (int j = 1; j < numSlices; j++) {
+        if (sliceDocs[j] < sliceDocs[smallest])
+          smallest = j;
+      }
+      sliceOf[index.intValue()] = smallest;
+      sliceDocs[smallest] += subReaders[index.intValue()].maxDoc();
+      sliceSizes[smallest]++;
+    }
+    final int[][] slices = new int[numSlices][];
+    for (int j = 0; j < numSlices; j++)
+      slices[j] = new int[sliceSizes[j]];
+    final int[] upto = new int[numSlices];
+    for (int i = 0; i < subReaders.length; i++) {
+      final int slice = sliceOf[i];
+      slices[slice][upto[slice]++] = i;
+    }
+    return slices;
   }
 
   protected void gatherSubReaders(List<IndexReader> allSubReaders, IndexReader r) {
@@ -158,7 +249,7 @@ public class IndexSearcher extends Searcher {
 
   // inherit javadoc
   @Override
-  public TopDocs search(Weight weight, Filter filter, int nDocs) throws IOException {
+  public TopDocs search(final Weight weight, final Filter filter, int nDocs) throws IOException {
 
     if (nDocs <= 0) {
       throw new IllegalArgumentException("nDocs must be > 0");
@@ -166,9 +257,44 @@ public class IndexSearcher extends Searcher {
 
     nDocs = Math.min(nDocs, reader.maxDoc());
 
-    TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
-    search(weight, filter, collector);
-    return collector.topDocs();
+    if (executor == null || slices.length < 2) {
+      TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
+      collector.totalHitsThreshold = totalHitsThreshold;
+      search(weight, filter, collector);
+      return collector.topDocs();
+    }
+
+    final int numHits = nDocs;
+    final List<Callable<TopDocs>> tasks = new ArrayList<Callable<TopDocs>>(slices.length);
+    for (final int[] slice : slices) {
+      tasks.add(new Callable<TopDocs>() {
+        public TopDocs call() throws IOException {
+          TopScoreDocCollector collector = TopScoreDocCollector.create(numHits, !weight.scoresDocsOutOfOrder());
+          collector.totalHitsThreshold = totalHitsThreshold;
+          search(slice, weight, filter, collector);
+          return collector.topDocs();
+        }
+      });
+    }
+
+    final HitQueue hq = new HitQueue(nDocs, false);
+    int totalHits = 0;
+    float maxScore = Float.NaN;
+    for (final TopDocs topDocs : execute(tasks)) {
+      totalHits += topDocs.totalHits;
+      maxScore = maxScore(maxScore, topDocs.getMaxScore());
+      for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+        // the hits of a slice are sorted, the rest won't fit either
+        if (scoreDoc == hq.insertWithOverflow(scoreDoc))
+          break;
+      }
+    }
+
+    final ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+      scoreDocs[i] = hq.pop();
+
+    return new TopDocs(totalHits, scoreDocs, maxScore);
   }
 
   @Override
@@ -188,35 +314,159 @@ public class IndexSearcher extends Searcher {
    * then pass that to {@link #search(Weight, Filter,
    * Collector)}.</p>
    */
-  public TopFieldDocs search(Weight weight, Filter filter, int nDocs,
-                             Sort sort, boolean fillFields)
+  public TopFieldDocs search(final Weight weight, final Filter filter, int nDocs,
+                             final Sort sort, boolean fillFields)
       throws IOException {
 
     nDocs = Math.min(nDocs, reader.maxDoc());
 
-    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs,
-        fillFields, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
-    search(weight, filter, collector);
-    return (TopFieldDocs) collector.topDocs();
+    if (executor == null || slices.length < 2 || !canMerge(sort)) {
+      TopFieldCollector collector = TopFieldCollector.create(sort, nDocs,
+          fillFields, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
+      search(weight, filter, collector);
+      return (TopFieldDocs) collector.topDocs();
+    }
+
+    final int numHits = nDocs;
+    final List<Callable<TopFieldDocs>> tasks = new ArrayList<Callable<TopFieldDocs>>(slices.length);
+    for (final int[] slice : slices) {
+      tasks.add(new Callable<TopFieldDocs>() {
+        public TopFieldDocs call() throws IOException {
+          // the fields are needed to merge the hits of the slices
+          TopFieldCollector collector = TopFieldCollector.create(sort, numHits,
+              true, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
+          search(slice, weight, filter, collector);
+          return (TopFieldDocs) collector.topDocs();
+        }
+      });
+    }
+
+    final FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue(nDocs);
+    int totalHits = 0;
+    float maxScore = Float.NaN;
+    for (final TopFieldDocs topFieldDocs : execute(tasks)) {
+      hq.setFields(topFieldDocs.fields);
+      totalHits += topFieldDocs.totalHits;
+      maxScore = maxScore(maxScore, topFieldDocs.getMaxScore());
+      for (final ScoreDoc scoreDoc : topFieldDocs.scoreDocs) {
+        // the hits of a slice are sorted, the rest won't fit either
+        if (scoreDoc == hq.insertWithOverflow((FieldDoc) scoreDoc))
+          break;
+      }
+    }
+
+    final ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+    for (int i = hq.size() - 1; i >= 0; i--) { // put docs in array
+      final FieldDoc fieldDoc = hq.pop();
+      if (!fillFields)
+        fieldDoc.fields = null;
+      scoreDocs[i] = fieldDoc;
+    }
+
+    return new TopFieldDocs(totalHits, scoreDocs, hq.getFields(), maxScore);
+  }
+
+  /* Whether hits sorted by the given sort can be merged by their field
+   * values. The values of custom comparators may not sort like the
+   * comparator does, and FieldDocSortedHitQueue cannot compare the null
+   * values of STRING_VAL.
+   */
+  private static boolean canMerge(Sort sort) {
+    for (SortField field : sort.getSort()) {
+      final int type = field.getType();
+      if (type == SortField.CUSTOM || type == SortField.STRING_VAL)
+        return false;
+    }
+    return true;
+  }
+
+  /* The larger of two max scores, either of which may be NaN if it was not
+   * tracked or if there were no hits.
+   */
+  private static float maxScore(float maxScore1, float maxScore2) {
+    if (Float.isNaN(maxScore1))
+      return maxScore2;
+    if (Float.isNaN(maxScore2))
+      return maxScore1;
+    return Math.max(maxScore1, maxScore2);
+  }
+
+  /* Runs the given tasks, the first one in the calling thread and the others
+   * with the executor, and returns their results in order.
+   */
+  private <T> List<T> execute(List<Callable<T>> tasks) throws IOException {
+    final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size() - 1);
+    for (int i = 1; i < tasks.size(); i++)
+      futures.add(executor.submit(tasks.get(i)));
+    final List<T> results = new ArrayList<T>(tasks.size());
+    boolean success = false;
+    try {
+      results.add(tasks.get(0).call());
+      for (Future<T> future : futures)
+        results.add(future.get());
+      success = true;
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new RuntimeException(cause);
+    } catch (IOException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (!success) {
+        // don't interrupt, that would close NIOFSDirectory's channels
+        for (Future<T> future : futures)
+          future.cancel(false);
+      }
+    }
+    return results;
   }
 
   @Override
   public void search(Weight weight, Filter filter, Collector collector)
       throws IOException {
-    
+    for (int i = 0; i < subReaders.length; i++) { // search each subreader
+      search(i, weight, filter, collector);
+    }
+  }
+
+  /* Searches the sub-readers of the given slice. */
+  private void search(int[] slice, Weight weight, Filter filter, Collector collector)
+      throws IOException {
+    for (int i = 0; i < slice.length; i++) {
+      search(slice[i], weight, filter, collector);
+    }
+  }
+
+  private void search(int subReader, Weight weight, Filter filter, Collector collector)
+      throws IOException {
+    collector.setNextReader(subReaders[subReader], docStarts[subReader]);
     if (filter == null) {
-      for (int i = 0; i < subReaders.length; i++) { // search each subreader
-        collector.setNextReader(subReaders[i], docStarts[i]);
-        Scorer scorer = weight.scorer(subReaders[i], !collector.acceptsDocsOutOfOrder(), true);
-        if (scorer != null) {
-          scorer.score(collector);
-        }
+      Scorer scorer = null;
+      if (collector instanceof TopScoreDocCollector
+          && ((TopScoreDocCollector) collector).totalHitsThreshold != Integer.MAX_VALUE
+          && weight instanceof BooleanQuery.BooleanWeight) {
+        scorer = ((BooleanQuery.BooleanWeight) weight).wandScorer(subReaders[subReader],
+            (TopScoreDocCollector) collector);
       }
-    } else {
-      for (int i = 0; i < subReaders.length; i++) { // search each subreader
-        collector.setNextReader(subReaders[i], docStarts[i]);
-        searchWithFilter(subReaders[i], weight, filter, collector);
+      if (scorer == null) {
+        scorer = weight.scorer(subReaders[subReader], !collector.acceptsDocsOutOfOrder(), true);
       }
+      if (scorer != null) {
+        scorer.score(collector);
+      }
+    } else {
+      searchWithFilter(subReaders[subReader], weight, filter, collector);
     }
   }
 
@@ -284,6 +534,40 @@ public class IndexSearcher extends Searcher {
     return weight.explain(subReaders[n], deBasedDoc);
   }
 
+  /** The default for {@link #setTotalHitsThreshold}. */
+  public static final int DEFAULT_TOTAL_HITS_THRESHOLD = 1000;
+
+  private int totalHitsThreshold = DEFAULT_TOTAL_HITS_THRESHOLD;
+
+  /**
+   * Sets how many hits {@link #search(Weight, Filter, int)},
+   * and the methods that delegate to it, count at least.
+   * Once a search without a {@link Filter} has counted that
+   * many hits, a {@link BooleanQuery} that is a disjunction
+   * of {@link TermQuery}s skips the documents that cannot
+   * make it into the top hits, so {@link TopDocs#totalHits}
+   * is only a lower bound if it is not below this
+   * threshold.  The top hits and their scores are the same
+   * either way.  Defaults to {@link
+   * #DEFAULT_TOTAL_HITS_THRESHOLD}, so that result counts
+   * are exact as long as they are small; pass {@link
+   * Integer#MAX_VALUE} to always count all hits, which
+   * turns skipping off.
+   *
+   * <p><font color="red"><b>NOTE:</b> This API is experimental and
+   * might change in incompatible ways in the next release.</font></p>
+   */
+  public void setTotalHitsThreshold(int totalHitsThreshold) {
+    if (totalHitsThreshold < 0)
+      throw new IllegalArgumentException("totalHitsThreshold must be >= 0: got " + totalHitsThreshold);
+    this.totalHitsThreshold = totalHitsThreshold;
+  }
+
+  /** Returns the threshold set with {@link #setTotalHitsThreshold}. */
+  public int getTotalHitsThreshold() {
+    return totalHitsThreshold;
+  }
+
   private boolean fieldSortDoTrackScores;
   private boolean fieldSortDoMaxScore;
 
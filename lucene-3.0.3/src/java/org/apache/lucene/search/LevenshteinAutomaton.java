@@ -0,0 +1,240 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Accepts all strings within a maximum Levenshtein distance of a given text.
+ * <p>
+ * The automaton is run lazily: a state is a row of the Levenshtein matrix
+ * (distances of the input read so far to every prefix of the text), with all
+ * values above the maximum distance folded into one. A state is live if one
+ * of its values is within the maximum distance, because appending the rest of
+ * the text then leads to an accepted string; it accepts if the distance to the
+ * whole text is within the maximum distance.
+ * <p>
+ * Besides testing single strings, the automaton can compute the smallest
+ * accepted string that is greater than a given string (in
+ * {@link String#compareTo} order). This lets {@link FuzzyTermEnum} seek over
+ * runs of terms that cannot match, instead of comparing every term.
+ * <p>
+ * The rows of the last input are kept, so that running strings with a common
+ * prefix, like consecutive terms of the term dictionary, only costs the
+ * differing suffix.
+ */
+final class LevenshteinAutomaton {
+
+  private final char[] text;
+  private final int maxDistance;
+  private final int dead; // the folded value for all distances > maxDistance
+
+  /* the distinct chars of the text in ascending order; all other chars
+   * lead to the same state, so only one of them has to be tried
+   */
+  private final char[] alphabet;
+
+  /* rows[i] is the state after reading input[0..i); rows[0..computed] are
+   * valid for the last input
+   */
+  private int[][] rows;
+  private char[] input;
+  private int computed = 0;
+
+  private int[] scratch1;
+  private int[] scratch2;
+
+  /**
+   * @param text the text to compare to
+   * @param maxDistance the maximum edit distance of accepted strings
+   */
+  LevenshteinAutomaton(String text, int maxDistance) {
+    if (maxDistance < 0)
+      throw new IllegalArgumentException("maxDistance cannot be less than 0");
+    this.text = text.toCharArray();
+    this.maxDistance = maxDistance;
+    this.dead = maxDistance + 1;
+
+    char[] sorted = text.toCharArray();
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1])
+        sorted[count++] = sorted[i];
+    }
+    this.alphabet = new char[count];
+    System.arraycopy(sorted, 0, alphabet, 0, count);
+
+    final int n = this.text.length;
+    this.rows = new int[Math.max(16, n + maxDistance + 1)][];
+    this.input = new char[rows.length];
+    for (int i = 0; i < rows.length; i++)
+      rows[i] = new int[n + 1];
+    for (int i = 0; i <= n; i++)
+      rows[0][i] = Math.min(i, dead);
+    this.scratch1 = new int[n + 1];
+    this.scratch2 = new int[n + 1];
+  }
+
+  /** Returns true if the given string is within the maximum distance. */
+  boolean accepts(String s) {
+    return accepts(s, 0);
+  }
+
+  /**
+   * Returns true if the suffix of the given string that starts at the given
+   * offset is within the maximum distance.
+   */
+  boolean accepts(String s, int offset) {
+    final int live = run(s, offset);
+    return live == s.length() - offset && isAccept(rows[live]);
+  }
+
+  /**
+   * Returns the smallest accepted string that is greater than the given
+   * string, or null if there is none.
+   */
+  String nextString(String s) {
+    final int live = run(s, 0);
+    final int[] to = scratch1;
+    if (live == s.length() && isLive(rows[live])) {
+      // the smallest greater strings are the extensions of s
+      final int c = nextLiveChar(rows[live], 0, to);
+      if (c != -1)
+        return complete(s, live, (char) c, to);
+    }
+    // replace a char of s by the smallest greater char that keeps us alive,
+    // going backwards from the end of the live part of s
+    for (int i = Math.min(live, s.length() - 1); i >= 0; i--) {
+      final int min = s.charAt(i) + 1;
+      if (min > Character.MAX_VALUE)
+        continue;
+      final int c = nextLiveChar(rows[i], min, to);
+      if (c != -1)
+        return complete(s, i, (char) c, to);
+    }
+    return null;
+  }
+
+  /* Returns s[0..length) + c + the smallest completion from the given state,
+   * which must be the (live) state after reading the c.
+   */
+  private String complete(String s, int length, char c, int[] state) {
+    final StringBuilder sb = new StringBuilder(length + text.length + maxDistance);
+    sb.append(s, 0, length).append(c);
+    int[] from = state;
+    int[] to = from == scratch1 ? scratch2 : scratch1;
+    while (!isAccept(from)) {
+      final int next = nextLiveChar(from, 0, to);
+      assert next != -1 : "a live state can always reach an accept state";
+      sb.append((char) next);
+      final int[] tmp = from;
+      from = to;
+      to = tmp;
+    }
+    return sb.toString();
+  }
+
+  /* Returns the smallest char >= min that leads from the given state to a live
+   * state, which is then stored in to; or -1 if there is no such char.
+   */
+  private int nextLiveChar(int[] from, int min, int[] to) {
+    // the smallest char >= min that does not occur in the text
+    int pos = Arrays.binarySearch(alphabet, (char) min);
+    if (pos < 0)
+      pos = -pos - 1;
+    int other = min;
+    for (int i = pos; i < alphabet.length && alphabet[i] == other; i++)
+      other++;
+    boolean otherLive = false;
+    if (other <= Character.MAX_VALUE) {
+      step(from, (char) other, to);
+      otherLive = isLive(to);
+    }
+
+    for (int i = pos; i < alphabet.length; i++) {
+      final char c = alphabet[i];
+      if (otherLive && other < c)
+        break;
+      step(from, c, to);
+      if (isLive(to))
+        return c;
+    }
+    if (otherLive) {
+      step(from, (char) other, to);
+      return other;
+    }
+    return -1;
+  }
+
+  /* Runs the suffix of the given string that starts at the given offset and
+   * returns the length of its prefix after which the automaton is still live,
+   * or the length of the suffix if it stays live all the way.
+   */
+  private int run(String s, int offset) {
+    final int length = s.length() - offset;
+    final int limit = Math.min(computed, length);
+    int common = 0;
+    while (common < limit && input[common] == s.charAt(offset + common))
+      common++;
+    computed = common;
+    while (computed < length && isLive(rows[computed])) {
+      if (computed + 1 == rows.length)
+        grow();
+      final char c = s.charAt(offset + computed);
+      input[computed] = c;
+      step(rows[computed], c, rows[computed + 1]);
+      computed++;
+    }
+    return isLive(rows[computed]) ? computed : computed - 1;
+  }
+
+  private void grow() {
+    final int oldLength = rows.length;
+    final int[][] newRows = new int[oldLength * 2][];
+    System.arraycopy(rows, 0, newRows, 0, oldLength);
+    for (int i = oldLength; i < newRows.length; i++)
+      newRows[i] = new int[text.length + 1];
+    final char[] newInput = new char[newRows.length];
+    System.arraycopy(input, 0, newInput, 0, oldLength);
+    rows = newRows;
+    input = newInput;
+  }
+
+  private void step(int[] from, char c, int[] to) {
+    to[0] = Math.min(from[0] + 1, dead);
+    for (int i = 1; i < to.length; i++) {
+      final int cost = text[i - 1] == c ? 0 : 1;
+      final int d = Math.min(Math.min(to[i - 1], from[i]) + 1, from[i - 1] + cost);
+      to[i] = Math.min(d, dead);
+    }
+  }
+
+  private boolean isLive(int[] state) {
+    for (int i = 0; i < state.length; i++) {
+      if (state[i] <= maxDistance)
+        return true;
+    }
+    return false;
+  }
+
+  private boolean isAccept(int[] state) {
+    return state[text.length] <= maxDistance;
+  }
+
+}
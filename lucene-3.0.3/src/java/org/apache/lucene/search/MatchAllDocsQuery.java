@@ -18,6 +18,7 @@ package org.apache.lucene.search;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.util.ToStringUtils;
@@ -47,11 +48,11 @@ public class MatchAllDocsQuery extends Query {
   private class MatchAllScorer extends Scorer {
     final TermDocs termDocs;
     final float score;
-    final byte[] norms;
+    final NormValues norms;
     private int doc = -1;
     
     MatchAllScorer(IndexReader reader, Similarity similarity, Weight w,
-        byte[] norms) throws IOException {
+        NormValues norms) throws IOException {
       super(similarity);
       this.termDocs = reader.termDocs(null);
       score = w.getValue();
@@ -69,8 +70,8 @@ public class MatchAllDocsQuery extends Query {
     }
     
     @Override
-    public float score() {
-      return norms == null ? score : score * Similarity.decodeNorm(norms[docID()]);
+    public float score() throws IOException {
+      return norms == null ? score : score * Similarity.decodeNorm(norms.get(docID()));
     }
 
     @Override
@@ -118,7 +119,7 @@ public class MatchAllDocsQuery extends Query {
     @Override
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
       return new MatchAllScorer(reader, similarity, this,
-          normsField != null ? reader.norms(normsField) : null);
+          normsField != null ? reader.normValues(normsField) : null);
     }
 
     @Override
@@ -22,6 +22,7 @@ import java.util.*;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultipleTermPositions;
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.util.ToStringUtils;
@@ -185,10 +186,10 @@ public class MultiPhraseQuery extends Query {
 
       if (slop == 0)
         return new ExactPhraseScorer(this, tps, getPositions(), similarity,
-                                     reader.norms(field));
+                                     reader.normValues(field));
       else
         return new SloppyPhraseScorer(this, tps, getPositions(), similarity,
-                                      slop, reader.norms(field));
+                                      slop, reader.normValues(field));
     }
 
     @Override
@@ -236,9 +237,9 @@ public class MultiPhraseQuery extends Query {
       fieldExpl.addDetail(idfExpl);
 
       Explanation fieldNormExpl = new Explanation();
-      byte[] fieldNorms = reader.norms(field);
+      NormValues fieldNorms = reader.normValues(field);
       float fieldNorm =
-        fieldNorms!=null ? Similarity.decodeNorm(fieldNorms[doc]) : 1.0f;
+        fieldNorms!=null ? Similarity.decodeNorm(fieldNorms.get(doc)) : 1.0f;
       fieldNormExpl.setValue(fieldNorm);
       fieldNormExpl.setDescription("fieldNorm(field="+field+", doc="+doc+")");
       fieldExpl.addDetail(fieldNormExpl);
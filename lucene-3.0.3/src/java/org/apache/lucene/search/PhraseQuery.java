@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.search.Explanation.IDFExplanation;
 import org.apache.lucene.util.ToStringUtils;
 
@@ -160,11 +161,11 @@ public class PhraseQuery extends Query {
 
       if (slop == 0)				  // optimize exact case
         return new ExactPhraseScorer(this, tps, getPositions(), similarity,
-                                     reader.norms(field));
+                                     reader.normValues(field));
       else
         return
           new SloppyPhraseScorer(this, tps, getPositions(), similarity, slop,
-                                 reader.norms(field));
+                                 reader.normValues(field));
 
     }
 
@@ -230,9 +231,9 @@ public class PhraseQuery extends Query {
       fieldExpl.addDetail(idfExpl);
 
       Explanation fieldNormExpl = new Explanation();
-      byte[] fieldNorms = reader.norms(field);
+      NormValues fieldNorms = reader.normValues(field);
       float fieldNorm =
-        fieldNorms!=null ? Similarity.decodeNorm(fieldNorms[doc]) : 1.0f;
+        fieldNorms!=null ? Similarity.decodeNorm(fieldNorms.get(doc)) : 1.0f;
       fieldNormExpl.setValue(fieldNorm);
       fieldNormExpl.setDescription("fieldNorm(field="+field+", doc="+doc+")");
       fieldExpl.addDetail(fieldNormExpl);
@@ -19,6 +19,7 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.TermPositions;
 
 /** Expert: Scoring functionality for phrase queries.
@@ -33,7 +34,7 @@ import org.apache.lucene.index.TermPositions;
  */
 abstract class PhraseScorer extends Scorer {
   private Weight weight;
-  protected byte[] norms;
+  protected NormValues norms;
   protected float value;
 
   private boolean firstTime = true;
@@ -45,6 +46,11 @@ abstract class PhraseScorer extends Scorer {
 
   PhraseScorer(Weight weight, TermPositions[] tps, int[] offsets,
       Similarity similarity, byte[] norms) {
+    this(weight, tps, offsets, similarity, norms == null ? null : NormValues.wrap(norms));
+  }
+
+  PhraseScorer(Weight weight, TermPositions[] tps, int[] offsets,
+      Similarity similarity, NormValues norms) {
     super(similarity);
     this.norms = norms;
     this.weight = weight;
@@ -110,7 +116,7 @@ abstract class PhraseScorer extends Scorer {
   public float score() throws IOException {
     //System.out.println("scoring " + first.doc);
     float raw = getSimilarity().tf(freq) * value; // raw score
-    return norms == null ? raw : raw * Similarity.decodeNorm(norms[first.doc]); // normalize
+    return norms == null ? raw : raw * Similarity.decodeNorm(norms.get(first.doc)); // normalize
   }
 
   @Override
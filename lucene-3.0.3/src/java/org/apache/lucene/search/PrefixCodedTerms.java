@@ -0,0 +1,153 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * A sorted list of terms that is stored in a single byte[], in the same way
+ * as the term dictionary: each term is UTF-8 encoded, and only the suffix
+ * that it does not share with the previous term is stored. Every
+ * {@link #INTERVAL}th term is stored in full, so that a term can be
+ * decoded without reading all terms before it.
+ */
+final class PrefixCodedTerms {
+
+  /** Every INTERVAL'th term is stored without a shared prefix. */
+  static final int INTERVAL = 16;
+
+  private final byte[] bytes;
+  private final PackedInts.Reader starts; // offset of every INTERVAL'th term
+  private final int size;
+  private final int maxLength; // length of the longest term in bytes
+
+  private PrefixCodedTerms(byte[] bytes, PackedInts.Reader starts, int size, int maxLength) {
+    this.bytes = bytes;
+    this.starts = starts;
+    this.size = size;
+    this.maxLength = maxLength;
+  }
+
+  /** Returns the number of terms. */
+  int size() {
+    return size;
+  }
+
+  /** Returns the estimated size of the encoded terms in bytes. */
+  long ramBytesUsed() {
+    return bytes.length + ((long) starts.size() * starts.getBitsPerValue() + 7) / 8;
+  }
+
+  /** Returns the term at the given index. */
+  String get(int index) {
+    if (index < 0 || index >= size)
+      throw new ArrayIndexOutOfBoundsException(index);
+    final byte[] term = new byte[maxLength];
+    int pos = (int) starts.get(index / INTERVAL);
+    int length = 0;
+    for (int i = index - index % INTERVAL; i <= index; i++) {
+      // vInts, as written by Builder.writeVInt
+      int prefix = 0;
+      if (i % INTERVAL != 0) {
+        byte b = bytes[pos++];
+        prefix = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+          b = bytes[pos++];
+          prefix |= (b & 0x7F) << shift;
+        }
+      }
+      byte b = bytes[pos++];
+      int suffix = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = bytes[pos++];
+        suffix |= (b & 0x7F) << shift;
+      }
+      System.arraycopy(bytes, pos, term, prefix, suffix);
+      pos += suffix;
+      length = prefix + suffix;
+    }
+    final UnicodeUtil.UTF16Result utf16 = new UnicodeUtil.UTF16Result();
+    UnicodeUtil.UTF8toUTF16(term, 0, length, utf16);
+    return new String(utf16.result, 0, utf16.length);
+  }
+
+  /** Appends terms in sorted order and builds a {@link PrefixCodedTerms}. */
+  static final class Builder {
+    private byte[] bytes = new byte[1024];
+    private int upto = 0;
+    private int[] starts = new int[16];
+    private int size = 0;
+    private int maxLength = 0;
+    private UnicodeUtil.UTF8Result last = new UnicodeUtil.UTF8Result();
+    private UnicodeUtil.UTF8Result current = new UnicodeUtil.UTF8Result();
+
+    /** Adds a term, which must not be less than the previously added term. */
+    void add(String term) {
+      UnicodeUtil.UTF16toUTF8(term, 0, term.length(), current);
+      final int length = current.length;
+      int prefix = 0;
+      if (size % INTERVAL == 0) {
+        final int block = size / INTERVAL;
+        if (block == starts.length)
+          starts = ArrayUtil.grow(starts);
+        starts[block] = upto;
+      } else {
+        final int limit = Math.min(length, last.length);
+        while (prefix < limit && current.result[prefix] == last.result[prefix])
+          prefix++;
+      }
+      final int suffix = length - prefix;
+      if (upto + suffix + 10 > bytes.length)
+        bytes = ArrayUtil.grow(bytes, upto + suffix + 10);
+      if (size % INTERVAL != 0)
+        writeVInt(prefix);
+      writeVInt(suffix);
+      System.arraycopy(current.result, prefix, bytes, upto, suffix);
+      upto += suffix;
+      maxLength = Math.max(maxLength, length);
+      size++;
+
+      final UnicodeUtil.UTF8Result tmp = last;
+      last = current;
+      current = tmp;
+    }
+
+    private void writeVInt(int i) {
+      while ((i & ~0x7F) != 0) {
+        bytes[upto++] = (byte) ((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      bytes[upto++] = (byte) i;
+    }
+
+    /** Returns the terms added so far; the builder must not be used afterwards. */
+    PrefixCodedTerms finish() {
+      final int numBlocks = (size + INTERVAL - 1) / INTERVAL;
+      final PackedInts.Mutable packedStarts =
+        PackedInts.getMutable(numBlocks, PackedInts.bitsRequired(upto));
+      for (int i = 0; i < numBlocks; i++)
+        packedStarts.set(i, starts[i]);
+      final byte[] trimmed = new byte[upto];
+      System.arraycopy(bytes, 0, trimmed, 0, upto);
+      return new PrefixCodedTerms(trimmed, packedStarts, size, maxLength);
+    }
+  }
+
+}
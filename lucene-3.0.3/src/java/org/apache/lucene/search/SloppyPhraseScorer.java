@@ -17,6 +17,7 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.TermPositions;
 
 import java.io.IOException;
@@ -29,7 +30,7 @@ final class SloppyPhraseScorer extends PhraseScorer {
     private boolean checkedRepeats;
 
     SloppyPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets, Similarity similarity,
-                       int slop, byte[] norms) {
+                       int slop, NormValues norms) {
         super(weight, tps, offsets, similarity, norms);
         this.slop = slop;
     }
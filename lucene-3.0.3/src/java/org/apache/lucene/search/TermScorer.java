@@ -19,6 +19,7 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.TermDocs;
 
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
@@ -29,7 +30,7 @@ final class TermScorer extends Scorer {
   
   private Weight weight;
   private TermDocs termDocs;
-  private byte[] norms;
+  private NormValues norms;
   private float weightValue;
   private int doc = -1;
 
@@ -55,6 +56,14 @@ final class TermScorer extends Scorer {
    *          The field norms of the document fields for the <code>Term</code>.
    */
   TermScorer(Weight weight, TermDocs td, Similarity similarity, byte[] norms) {
+    this(weight, td, similarity, norms == null ? null : NormValues.wrap(norms));
+  }
+
+  /**
+   * Construct a <code>TermScorer</code> that reads the norms through
+   * {@link NormValues}.
+   */
+  TermScorer(Weight weight, TermDocs td, Similarity similarity, NormValues norms) {
     super(similarity);
     this.weight = weight;
     this.termDocs = td;
@@ -119,7 +128,7 @@ final class TermScorer extends Scorer {
   }
   
   @Override
-  public float score() {
+  public float score() throws IOException {
     assert doc != -1;
     int f = freqs[pointer];
     float raw =                                   // compute tf(f)*weight
@@ -127,7 +136,7 @@ final class TermScorer extends Scorer {
       ? scoreCache[f]                             // cache hit
       : getSimilarity().tf(f)*weightValue;        // cache miss
 
-    return norms == null ? raw : raw * SIM_NORM_DECODER[norms[doc] & 0xFF]; // normalize for field
+    return norms == null ? raw : raw * SIM_NORM_DECODER[norms.get(doc) & 0xFF]; // normalize for field
   }
 
   /**
@@ -120,6 +120,8 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
   ScoreDoc pqTop;
   int docBase = 0;
   Scorer scorer;
+  // see IndexSearcher#setTotalHitsThreshold
+  int totalHitsThreshold = Integer.MAX_VALUE;
     
   // prevents instantiation
   private TopScoreDocCollector(int numHits) {
@@ -150,6 +152,14 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     return new TopDocs(totalHits, results, maxScore);
   }
   
+  // Returns the score a doc collected next in doc ID order
+  // must exceed to make it into the queue, once at least
+  // totalHitsThreshold hits were counted, and otherwise
+  // -Infinity, so that all hits get counted.
+  float minCompetitiveScore() {
+    return totalHits >= totalHitsThreshold ? pqTop.score : Float.NEGATIVE_INFINITY;
+  }
+
   @Override
   public void setNextReader(IndexReader reader, int base) {
     docBase = base;
@@ -0,0 +1,256 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+
+/** A Scorer for disjunctions of terms that skips the documents which cannot
+ * make it into the top hits of a {@link TopScoreDocCollector}, following the
+ * WAND ("weak AND") algorithm.
+ * <p>
+ * Each term gets an upper bound for its score in the segment, from the
+ * highest frequency of the term, which is stored in the term dictionary, and
+ * the highest norm of its field. Segments written by older versions don't
+ * store the frequency, so they are scored without skipping. The
+ * sub-scorers are kept ordered by their current doc. Walking that order, the
+ * first sub-scorer at which the sum of the upper bounds so far could beat the
+ * lowest score in the collector's queue is the pivot: no doc before the
+ * pivot's doc can compete, so the sub-scorers behind it are advanced to it.
+ * <p>
+ * Matching docs are scored exactly like {@link BooleanScorer} does, so the
+ * top hits are the same, but the skipped docs are not counted in
+ * {@link TopDocs#totalHits}. Docs are returned in order, hence a doc that
+ * only ties the lowest score in the queue cannot compete either.
+ * <p>
+ * {@link IndexSearcher} uses this scorer for searches without a custom
+ * {@link Collector}. Skipping starts once the number of hits given by
+ * {@link IndexSearcher#setTotalHitsThreshold} was counted.
+ */
+final class WANDScorer extends Scorer {
+
+  // larger term frequencies are not worth bounding for similarities that
+  // are not known to be monotonic in the frequency
+  private static final int MAX_BOUNDED_FREQ = 1 << 16;
+
+  private static final float[] SIM_NORM_DECODER = Similarity.getNormDecoder();
+
+  private final TopScoreDocCollector collector;
+
+  /** The sub-scorers, in the order in which BooleanScorer sums them. */
+  private final Scorer[] subScorers;
+
+  /** The upper bounds for the scores of the sub-scorers. */
+  private final float[] maxScores;
+
+  private final float[] coordFactors;
+
+  /** Multiplied into the sum of upper bounds: the largest coord factor, and
+   * some slack for float rounding when summing the actual scores. */
+  private final double boundFactor;
+
+  /** Indexes into subScorers of the sub-scorers that are not exhausted,
+   * ordered by their current doc. */
+  private final int[] order;
+  private int numActive;
+
+  private int doc = -1;
+
+  private WANDScorer(Similarity similarity, Scorer[] subScorers, float[] maxScores,
+      float[] coordFactors, float maxCoordFactor, TopScoreDocCollector collector) {
+    super(similarity);
+    this.subScorers = subScorers;
+    this.maxScores = maxScores;
+    this.coordFactors = coordFactors;
+    this.collector = collector;
+    boundFactor = maxCoordFactor * (1.0 + 1e-6 * (subScorers.length + 1));
+    order = new int[subScorers.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    numActive = order.length;
+  }
+
+  /** Creates a WANDScorer for the given term scorers, which have been
+   * created from the given term weights, or returns null if the scores of
+   * the terms cannot be bounded.
+   */
+  static WANDScorer create(Similarity similarity, SegmentReader reader,
+      List<Weight> weights, List<Scorer> scorers, TopScoreDocCollector collector)
+      throws IOException {
+    final int n = scorers.size();
+    final Scorer[] subScorers = new Scorer[n];
+    final float[] maxScores = new float[n];
+    for (int i = 0; i < n; i++) {
+      final Weight weight = weights.get(i);
+      final Scorer scorer = scorers.get(i);
+      final float maxScore = maxScore(reader, ((TermQuery) weight.getQuery()).getTerm(),
+          scorer.getSimilarity(), weight.getValue());
+      if (!(maxScore >= 0) || Float.isInfinite(maxScore)) {
+        return null;
+      }
+      // BooleanScorer sums its sub-scorers in reverse order
+      subScorers[n - 1 - i] = scorer;
+      maxScores[n - 1 - i] = maxScore;
+    }
+
+    final float[] coordFactors = new float[n + 1];
+    float maxCoordFactor = 0.0f;
+    for (int i = 0; i <= n; i++) {
+      coordFactors[i] = similarity.coord(i, n);
+      if (!(coordFactors[i] >= 0) || Float.isInfinite(coordFactors[i])) {
+        return null;
+      }
+      maxCoordFactor = Math.max(maxCoordFactor, coordFactors[i]);
+    }
+    return new WANDScorer(similarity, subScorers, maxScores, coordFactors, maxCoordFactor, collector);
+  }
+
+  /* The upper bound of the score TermScorer computes for the term, or NaN
+   * if there is none. */
+  private static float maxScore(SegmentReader reader, Term term, Similarity similarity,
+      float weightValue) throws IOException {
+    final int maxFreq = reader.maxTermFreq(term);
+    if (maxFreq < 0 || maxFreq > MAX_BOUNDED_FREQ) {
+      return Float.NaN;
+    }
+    float maxRaw = 0.0f;
+    for (int f = 1; f <= maxFreq; f++) {
+      final float raw = similarity.tf(f) * weightValue;
+      if (!(raw >= 0)) {
+        return Float.NaN;
+      }
+      maxRaw = Math.max(maxRaw, raw);
+    }
+
+    final int maxNorm = reader.maxNorm(term.field());
+    if (maxNorm == -1) {
+      return maxRaw;                              // TermScorer won't normalize
+    }
+    float maxDecodedNorm = 0.0f;
+    for (int b = 0; b <= maxNorm; b++) {
+      maxDecodedNorm = Math.max(maxDecodedNorm, SIM_NORM_DECODER[b]);
+    }
+    return maxRaw * maxDecodedNorm;
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    // the sub-scorers on the current doc are first in order
+    for (int i = 0; i < numActive && subScorers[order[i]].docID() <= doc; i++) {
+      subScorers[order[i]].nextDoc();
+    }
+    return doc = nextCandidate();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    for (int i = 0; i < numActive; i++) {
+      final Scorer subScorer = subScorers[order[i]];
+      if (subScorer.docID() < target) {
+        subScorer.advance(target);
+      }
+    }
+    return doc = nextCandidate();
+  }
+
+  /* Advances the sub-scorers to the first doc that may compete, and returns
+   * it. */
+  private int nextCandidate() throws IOException {
+    while (true) {
+      sortActive();
+      if (numActive == 0) {
+        return NO_MORE_DOCS;
+      }
+
+      final float minScore = collector.minCompetitiveScore();
+      double maxScore = 0.0;
+      int pivot = -1;
+      for (int i = 0; i < numActive; i++) {
+        maxScore += maxScores[order[i]];
+        if (maxScore * boundFactor > minScore) {
+          pivot = i;
+          break;
+        }
+      }
+      if (pivot == -1) {
+        // even a doc matching all remaining terms cannot compete
+        return NO_MORE_DOCS;
+      }
+
+      final int pivotDoc = subScorers[order[pivot]].docID();
+      if (subScorers[order[0]].docID() == pivotDoc) {
+        return pivotDoc;
+      }
+      for (int i = 0; i < pivot; i++) {
+        final Scorer subScorer = subScorers[order[i]];
+        if (subScorer.docID() < pivotDoc) {
+          subScorer.advance(pivotDoc);
+        }
+      }
+    }
+  }
+
+  /* Insertion sort of the active sub-scorers by their docs, which are mostly
+   * in order already, then drops the exhausted ones. */
+  private void sortActive() {
+    for (int i = 1; i < numActive; i++) {
+      final int index = order[i];
+      final int d = subScorers[index].docID();
+      int j = i - 1;
+      while (j >= 0 && subScorers[order[j]].docID() > d) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = index;
+    }
+    while (numActive > 0 && subScorers[order[numActive - 1]].docID() == NO_MORE_DOCS) {
+      numActive--;
+    }
+  }
+
+  @Override
+  public float score() throws IOException {
+    float sum = 0.0f;
+    int coord = 0;
+    for (int i = 0; i < subScorers.length; i++) {
+      final Scorer subScorer = subScorers[i];
+      if (subScorer.docID() == doc) {
+        final float score = subScorer.score();
+        // same additions as BooleanScorer's buckets
+        sum = coord == 0 ? score : sum + score;
+        coord++;
+      }
+    }
+    return sum * coordFactors[coord];
+  }
+}
@@ -18,6 +18,7 @@ package org.apache.lucene.search.payloads;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Searcher;
@@ -146,7 +147,7 @@ public class PayloadNearQuery extends SpanNearQuery {
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder,
         boolean topScorer) throws IOException {
       return new PayloadNearSpanScorer(query.getSpans(reader), this,
-          similarity, reader.norms(query.getField()));
+          similarity, reader.normValues(query.getField()));
     }
   }
 
@@ -157,12 +158,19 @@ public class PayloadNearQuery extends SpanNearQuery {
     private int payloadsSeen;
     Similarity similarity = getSimilarity();
 
+    /** @deprecated Use {@link #PayloadNearSpanScorer(Spans, Weight, Similarity, NormValues)} instead. */
     protected PayloadNearSpanScorer(Spans spans, Weight weight,
         Similarity similarity, byte[] norms) throws IOException {
       super(spans, weight, similarity, norms);
       this.spans = spans;
     }
 
+    protected PayloadNearSpanScorer(Spans spans, Weight weight,
+        Similarity similarity, NormValues norms) throws IOException {
+      super(spans, weight, similarity, norms);
+      this.spans = spans;
+    }
+
     // Get the payloads associated with all underlying subspans
     public void getPayloads(Spans[] subSpans) throws IOException {
       for (int i = 0; i < subSpans.length; i++) {
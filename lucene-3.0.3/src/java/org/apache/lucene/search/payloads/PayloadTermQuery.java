@@ -19,6 +19,7 @@ package org.apache.lucene.search.payloads;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Scorer;
@@ -76,7 +77,7 @@ public class PayloadTermQuery extends SpanTermQuery {
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder,
         boolean topScorer) throws IOException {
       return new PayloadTermSpanScorer((TermSpans) query.getSpans(reader),
-          this, similarity, reader.norms(query.getField()));
+          this, similarity, reader.normValues(query.getField()));
     }
 
     protected class PayloadTermSpanScorer extends SpanScorer {
@@ -86,12 +87,19 @@ public class PayloadTermQuery extends SpanTermQuery {
       protected float payloadScore;
       protected int payloadsSeen;
 
+      /** @deprecated Use {@link #PayloadTermSpanScorer(TermSpans, Weight, Similarity, NormValues)} instead. */
       public PayloadTermSpanScorer(TermSpans spans, Weight weight,
           Similarity similarity, byte[] norms) throws IOException {
         super(spans, weight, similarity, norms);
         positions = spans.getPositions();
       }
 
+      public PayloadTermSpanScorer(TermSpans spans, Weight weight,
+          Similarity similarity, NormValues norms) throws IOException {
+        super(spans, weight, similarity, norms);
+        positions = spans.getPositions();
+      }
+
       @Override
       protected boolean setFreqCurrentDoc() throws IOException {
         if (!more) {
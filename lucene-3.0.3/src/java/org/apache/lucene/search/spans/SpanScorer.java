@@ -19,6 +19,7 @@ package org.apache.lucene.search.spans;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.NormValues;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.Scorer;
@@ -30,7 +31,9 @@ import org.apache.lucene.search.Similarity;
 public class SpanScorer extends Scorer {
   protected Spans spans;
   protected Weight weight;
+  /** @deprecated Only set by the deprecated constructor, use {@link #normValues} instead. */
   protected byte[] norms;
+  protected NormValues normValues;
   protected float value;
 
   protected boolean more = true;
@@ -38,11 +41,18 @@ public class SpanScorer extends Scorer {
   protected int doc;
   protected float freq;
 
+  /** @deprecated Use {@link #SpanScorer(Spans, Weight, Similarity, NormValues)} instead. */
   protected SpanScorer(Spans spans, Weight weight, Similarity similarity, byte[] norms)
+  throws IOException {
+    this(spans, weight, similarity, norms == null ? null : NormValues.wrap(norms));
+    this.norms = norms;
+  }
+
+  protected SpanScorer(Spans spans, Weight weight, Similarity similarity, NormValues normValues)
   throws IOException {
     super(similarity);
     this.spans = spans;
-    this.norms = norms;
+    this.normValues = normValues;
     this.weight = weight;
     this.value = weight.getValue();
     if (this.spans.next()) {
@@ -95,7 +105,7 @@ public class SpanScorer extends Scorer {
   @Override
   public float score() throws IOException {
     float raw = getSimilarity().tf(freq) * value; // raw score
-    return norms == null? raw : raw * Similarity.decodeNorm(norms[doc]); // normalize
+    return normValues == null? raw : raw * Similarity.decodeNorm(normValues.get(doc)); // normalize
   }
 
   /** This method is no longer an official member of {@link Scorer},
@@ -0,0 +1,490 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.util.Constants;
+
+/** File-based {@link Directory} implementation that uses
+ *  mmap for reading, and {@link
+ *  SimpleFSDirectory.SimpleFSIndexOutput} for writing.
+ *
+ * <p>Unlike {@link MMapDirectory}, files are always mapped in
+ * chunks of a fixed, power-of-two size (see {@link
+ * #ChunkedMMapDirectory(File, LockFactory, int)}), so that a
+ * position is resolved to its chunk with a shift and a mask,
+ * and files of any size can be mapped even into a fragmented
+ * address space.
+ *
+ * <p>How a file is read can be chosen per file extension
+ * with {@link #setReadHint}: {@link ReadHint#RANDOM} files
+ * are just mapped, {@link ReadHint#PRELOAD} files are also
+ * loaded into physical memory when they are opened, and
+ * {@link ReadHint#SEQUENTIAL} files are not mapped at all but
+ * read through a large buffer, so that e.g. merging does not
+ * fill the page cache through the mappings.  As there is no
+ * way to tell the reason a file is opened for, use separate
+ * instances for the {@link org.apache.lucene.index.IndexWriter}
+ * and the searchers if they should use different hints.
+ *
+ * <p>If {@link #UNMAP_SUPPORTED} is <code>true</code>, the
+ * mapped chunks are unmapped as soon as an {@link IndexInput}
+ * is closed (see {@link #setUseUnmap}).  The input keeps track
+ * of its clones and invalidates them before unmapping, so that
+ * using a clone after its input was closed throws an {@link
+ * AlreadyClosedException} instead of accessing unmapped
+ * memory.  It is still not safe to close an input while
+ * another thread is reading from one of its clones.
+ *
+ * <p><font color="red"><b>NOTE:</b> This API is experimental and might change in incompatible ways in the next release.</font></p>
+ */
+public class ChunkedMMapDirectory extends FSDirectory {
+
+  /** How the files with a given extension are read. */
+  public static enum ReadHint {
+    /** Map the file and let the OS page it in on access. */
+    RANDOM,
+    /** Map the file and load it into physical memory when it is opened. */
+    PRELOAD,
+    /** Don't map the file, but read it sequentially through a large buffer. */
+    SEQUENTIAL
+  }
+
+  /** Default chunk size: 1 GB for 64 bit JVMs and 256 MB for 32 bit JVMs. */
+  public static final int DEFAULT_CHUNK_SIZE_POWER = Constants.JRE_IS_64BIT ? 30 : 28;
+
+  /** Buffer size used for {@link ReadHint#SEQUENTIAL} files. */
+  public static final int SEQUENTIAL_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * <code>true</code>, if this platform supports unmapping mmapped files.
+   */
+  public static final boolean UNMAP_SUPPORTED;
+
+  // Java 9 and later unmap with Unsafe.invokeCleaner, older
+  // JREs with the cleaner of the buffer:
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch (Exception e) {
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    UNMAP_SUPPORTED = INVOKE_CLEANER != null || MMapDirectory.UNMAP_SUPPORTED;
+  }
+
+  private final int chunkSizePower;
+  private volatile boolean useUnmap = UNMAP_SUPPORTED;
+  private volatile ReadHint defaultReadHint = ReadHint.RANDOM;
+  private final Map<String,ReadHint> readHints = new ConcurrentHashMap<String,ReadHint>();
+
+  /** Create a new ChunkedMMapDirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @param chunkSizePower files are mapped in chunks of
+   * <code>2^chunkSizePower</code> bytes, between 1 and 30
+   * @throws IOException
+   */
+  public ChunkedMMapDirectory(File path, LockFactory lockFactory, int chunkSizePower) throws IOException {
+    super(path, lockFactory);
+    if (chunkSizePower < 1 || chunkSizePower > 30) {
+      throw new IllegalArgumentException("chunkSizePower must be between 1 and 30, got " + chunkSizePower);
+    }
+    this.chunkSizePower = chunkSizePower;
+  }
+
+  /** Create a new ChunkedMMapDirectory for the named location and {@link NativeFSLockFactory},
+   * mapping in chunks of {@link #DEFAULT_CHUNK_SIZE_POWER}.
+   *
+   * @param path the path of the directory
+   * @throws IOException
+   */
+  public ChunkedMMapDirectory(File path) throws IOException {
+    this(path, null, DEFAULT_CHUNK_SIZE_POWER);
+  }
+
+  /** Returns the chunk size files are mapped in, as a power of two. */
+  public int getChunkSizePower() {
+    return chunkSizePower;
+  }
+
+  /**
+   * Sets whether the chunks of an {@link IndexInput} are unmapped
+   * when it is closed, which is the default if {@link
+   * #UNMAP_SUPPORTED} is <code>true</code>.  Otherwise they are
+   * only unmapped once they are garbage collected, and until then
+   * the files cannot be deleted on Windows and use disk space on
+   * other platforms.
+   * @throws IllegalArgumentException if {@link #UNMAP_SUPPORTED}
+   * is <code>false</code>.
+   */
+  public void setUseUnmap(boolean useUnmap) {
+    if (useUnmap && !UNMAP_SUPPORTED) {
+      throw new IllegalArgumentException("Unmap not supported on this platform!");
+    }
+    this.useUnmap = useUnmap;
+  }
+
+  /**
+   * Returns <code>true</code>, if chunks are unmapped on close.
+   * @see #setUseUnmap
+   */
+  public boolean getUseUnmap() {
+    return useUnmap;
+  }
+
+  /**
+   * Sets how files with the given extension (e.g. <code>"frq"</code>)
+   * are read from now on.  Inputs that are already open are not
+   * affected.
+   */
+  public void setReadHint(String extension, ReadHint hint) {
+    if (hint == null) {
+      throw new NullPointerException("hint must not be null");
+    }
+    readHints.put(extension, hint);
+  }
+
+  /** Sets how files without a read hint for their extension are read,
+   * {@link ReadHint#RANDOM} by default. */
+  public void setDefaultReadHint(ReadHint hint) {
+    if (hint == null) {
+      throw new NullPointerException("hint must not be null");
+    }
+    defaultReadHint = hint;
+  }
+
+  /** Returns how the file with the given name is read. */
+  public ReadHint getReadHint(String name) {
+    final int dot = name.lastIndexOf('.');
+    final ReadHint hint = dot == -1 ? null : readHints.get(name.substring(dot + 1));
+    return hint == null ? defaultReadHint : hint;
+  }
+
+  /** Creates an IndexInput for the file with the given name. */
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    ensureOpen();
+    final File file = new File(getFile(), name);
+    final ReadHint hint = getReadHint(name);
+    if (hint == ReadHint.SEQUENTIAL) {
+      return new NIOFSDirectory.NIOFSIndexInput(file, Math.max(bufferSize, SEQUENTIAL_BUFFER_SIZE),
+          getReadChunkSize());
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return new ChunkedIndexInput(raf, chunkSizePower, hint == ReadHint.PRELOAD, useUnmap);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /** Creates an IndexOutput for the file with the given name. */
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    initOutput(name);
+    return new SimpleFSDirectory.SimpleFSIndexOutput(new File(directory, name));
+  }
+
+  private static void unmap(final ByteBuffer buffer) throws IOException {
+    try {
+      AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
+        public Object run() throws Exception {
+          if (INVOKE_CLEANER != null) {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+          } else {
+            final Method getCleanerMethod = buffer.getClass().getMethod("cleaner");
+            getCleanerMethod.setAccessible(true);
+            final Object cleaner = getCleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+              cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+          }
+          return null;
+        }
+      });
+    } catch (PrivilegedActionException e) {
+      final IOException ioe = new IOException("unable to unmap the mapped buffer");
+      ioe.initCause(e.getCause());
+      throw ioe;
+    }
+  }
+
+  private static final class ChunkedIndexInput extends IndexInput {
+
+    private final int chunkSizePower;
+    private final long chunkSizeMask;
+    private final long length;
+
+    // the mapped chunks for the input that was opened, and
+    // duplicates of them for its clones; null once closed
+    private ByteBuffer[] buffers;
+    private int curBufIndex;
+    private ByteBuffer curBuf; // redundant for speed: buffers[curBufIndex]
+
+    private boolean isClone = false;
+    // the clones of the opened input and all its clones,
+    // only tracked if the chunks are unmapped on close;
+    // cloning must not contend on a lock, as every search
+    // clones the inputs of each segment
+    private Map<CloneRef,Boolean> clones;
+    private ReferenceQueue<ChunkedIndexInput> staleClones;
+
+    ChunkedIndexInput(RandomAccessFile raf, int chunkSizePower, boolean preload, boolean unmap)
+      throws IOException {
+      this.length = raf.length();
+      this.chunkSizePower = chunkSizePower;
+      this.chunkSizeMask = (1L << chunkSizePower) - 1;
+
+      // the last chunk may be empty, so that a file of a
+      // multiple of the chunk size can be positioned at its end
+      final long nrBuffers = (length >>> chunkSizePower) + 1;
+      if (nrBuffers > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("RandomAccessFile too big for chunk size: " + raf.toString());
+      }
+      buffers = new ByteBuffer[(int) nrBuffers];
+      final FileChannel channel = raf.getChannel();
+      long bufferStart = 0;
+      for (int bufNr = 0; bufNr < buffers.length; bufNr++) {
+        final long bufSize = Math.min(length - bufferStart, 1L << chunkSizePower);
+        final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, bufferStart, bufSize);
+        if (preload) {
+          buffer.load();
+        }
+        buffers[bufNr] = buffer;
+        bufferStart += bufSize;
+      }
+      if (unmap) {
+        clones = new ConcurrentHashMap<CloneRef,Boolean>();
+        staleClones = new ReferenceQueue<ChunkedIndexInput>();
+      }
+      curBufIndex = 0;
+      curBuf = buffers[0];
+    }
+
+    private AlreadyClosedException alreadyClosed() {
+      return new AlreadyClosedException("ChunkedIndexInput already closed");
+    }
+
+    // switches to the next chunk once the current one is exhausted
+    private ByteBuffer nextBuffer() throws IOException {
+      final ByteBuffer[] buffers = this.buffers;
+      if (buffers == null) {
+        throw alreadyClosed();
+      }
+      if (curBufIndex + 1 >= buffers.length) {
+        throw new IOException("read past EOF");
+      }
+      final ByteBuffer buffer = buffers[++curBufIndex];
+      buffer.position(0);
+      curBuf = buffer;
+      return buffer;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      try {
+        return curBuf.get();
+      } catch (BufferUnderflowException e) {
+        return nextBuffer().get();
+      } catch (NullPointerException npe) {
+        throw alreadyClosed();
+      }
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      try {
+        curBuf.get(b, offset, len);
+      } catch (BufferUnderflowException e) {
+        ByteBuffer buffer = curBuf;
+        int curAvail = buffer.remaining();
+        while (len > curAvail) {
+          buffer.get(b, offset, curAvail);
+          len -= curAvail;
+          offset += curAvail;
+          buffer = nextBuffer();
+          curAvail = buffer.remaining();
+        }
+        buffer.get(b, offset, len);
+      } catch (NullPointerException npe) {
+        throw alreadyClosed();
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      try {
+        return ((long) curBufIndex << chunkSizePower) + curBuf.position();
+      } catch (NullPointerException npe) {
+        throw alreadyClosed();
+      }
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      final ByteBuffer[] buffers = this.buffers;
+      if (buffers == null) {
+        throw alreadyClosed();
+      }
+      if (pos < 0 || pos > length) {
+        throw new IOException("seek out of bounds: " + pos + " (length=" + length + ")");
+      }
+      final int bufIndex = (int) (pos >>> chunkSizePower);
+      final ByteBuffer buffer = buffers[bufIndex];
+      buffer.position((int) (pos & chunkSizeMask));
+      curBufIndex = bufIndex;
+      curBuf = buffer;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public boolean isMapped() {
+      return true;
+    }
+
+    @Override
+    public Object clone() {
+      final ByteBuffer[] buffers = this.buffers;
+      if (buffers == null) {
+        throw alreadyClosed();
+      }
+      final ChunkedIndexInput clone = (ChunkedIndexInput) super.clone();
+      clone.isClone = true;
+      clone.buffers = new ByteBuffer[buffers.length];
+      for (int bufNr = 0; bufNr < buffers.length; bufNr++) {
+        clone.buffers[bufNr] = buffers[bufNr].duplicate();
+      }
+      clone.curBuf = clone.buffers[curBufIndex];
+      clone.curBuf.position(curBuf.position());
+      if (clones != null) {
+        expungeStaleClones();
+        clones.put(new CloneRef(clone, staleClones), Boolean.TRUE);
+      }
+      return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+      final ByteBuffer[] buffers = this.buffers;
+      if (buffers == null) {
+        return;
+      }
+      if (isClone) {
+        // closing a clone only unsets it
+        unsetBuffers();
+        if (clones != null) {
+          clones.remove(new CloneRef(this, null));
+        }
+        return;
+      }
+      try {
+        if (clones != null) {
+          // invalidate all clones before the chunks are unmapped
+          for (CloneRef ref : clones.keySet()) {
+            final ChunkedIndexInput clone = ref.get();
+            if (clone != null) {
+              clone.unsetBuffers();
+            }
+          }
+          clones.clear();
+        }
+        unsetBuffers();
+        if (clones != null) {
+          for (int bufNr = 0; bufNr < buffers.length; bufNr++) {
+            unmap(buffers[bufNr]);
+          }
+        }
+      } finally {
+        unsetBuffers();
+      }
+    }
+
+    private void unsetBuffers() {
+      buffers = null;
+      curBuf = null;
+      curBufIndex = 0;
+    }
+
+    // removes the clones that were garbage collected
+    private void expungeStaleClones() {
+      Object staleRef;
+      while ((staleRef = staleClones.poll()) != null) {
+        clones.remove(staleRef);
+      }
+    }
+  }
+
+  /* Refers weakly to a clone and compares by identity. */
+  private static final class CloneRef extends WeakReference<ChunkedIndexInput> {
+    private final int hash;
+
+    CloneRef(ChunkedIndexInput clone, ReferenceQueue<ChunkedIndexInput> queue) {
+      super(clone, queue);
+      this.hash = System.identityHashCode(clone);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (o instanceof CloneRef) {
+        final ChunkedIndexInput clone = get();
+        return clone != null && clone == ((CloneRef) o).get();
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,585 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * A memory-resident {@link Directory} for heavily concurrent use, such as
+ * indexing in RAM with many threads.
+ * <p>
+ * Unlike {@link RAMDirectory}, no operation synchronizes on the directory:
+ * files are kept in a {@link ConcurrentHashMap}, and {@link #sizeInBytes}
+ * is maintained atomically. File data lives in fixed-size blocks that are
+ * carved out of large slabs, either on the Java heap or, to keep large
+ * indexes from growing the heap the garbage collector has to walk, in
+ * direct {@link ByteBuffer}s. The blocks of deleted files are put on a free
+ * list and reused for new files, so slabs are only released when the
+ * directory is closed.
+ * <p>
+ * A deleted file's blocks are reused only once all inputs and outputs that
+ * were open on it are closed; an input or output that is never closed
+ * keeps its blocks from being reused. As with {@link MMapDirectory}, a
+ * clone of an input must not be used after the input was closed.
+ * <p>
+ * Locking implementation is by default the {@link SingleInstanceLockFactory}
+ * but can be changed with {@link #setLockFactory}.
+ *
+ * <p><font color="red"><b>NOTE:</b> This API is experimental and might change in incompatible ways in the next release.</font></p>
+ */
+public class ConcurrentRAMDirectory extends Directory {
+
+  /** Default size of the blocks that hold the data of files: 8 KB. */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 13;
+
+  /** Default size of the slabs blocks are allocated from: 1 MB. */
+  public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+  private final ConcurrentHashMap<String,SlabFile> fileMap = new ConcurrentHashMap<String,SlabFile>();
+
+  private final int blockShift;
+  private final int blockSize;
+  private final int blockMask;
+  private final int slabSize;
+  private final boolean direct;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final Object slabLock = new Object();
+
+  private final AtomicLong sizeInBytes = new AtomicLong();
+  private final AtomicLong allocatedBytes = new AtomicLong();
+
+  /** Constructs an empty directory that allocates its slabs on the heap,
+   * with the default block and slab sizes. */
+  public ConcurrentRAMDirectory() {
+    this(DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE, false);
+  }
+
+  /**
+   * Constructs an empty directory.
+   *
+   * @param blockSize size of the blocks that hold file data, which must be
+   *  a power of two; every file takes at least one block
+   * @param slabSize size of the slabs blocks are allocated from, which must
+   *  be a multiple of the block size
+   * @param direct whether to allocate slabs with
+   *  {@link ByteBuffer#allocateDirect} instead of on the heap
+   */
+  public ConcurrentRAMDirectory(int blockSize, int slabSize, boolean direct) {
+    if (blockSize <= 0 || (blockSize & (blockSize - 1)) != 0) {
+      throw new IllegalArgumentException("blockSize must be a power of two (got " + blockSize + ")");
+    }
+    if (slabSize < blockSize || slabSize % blockSize != 0) {
+      throw new IllegalArgumentException("slabSize must be a multiple of blockSize (got " + slabSize + ")");
+    }
+    this.blockSize = blockSize;
+    this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+    this.blockMask = blockSize - 1;
+    this.slabSize = slabSize;
+    this.direct = direct;
+    setLockFactory(new SingleInstanceLockFactory());
+  }
+
+  /**
+   * Creates a new <code>ConcurrentRAMDirectory</code> instance with the
+   * default settings, holding a copy of the files of a different
+   * <code>Directory</code>.
+   *
+   * @see RAMDirectory#RAMDirectory(Directory)
+   */
+  public ConcurrentRAMDirectory(Directory dir) throws IOException {
+    this();
+    Directory.copy(dir, this, false);
+  }
+
+  /** Returns the size of the blocks that hold file data. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** Returns the size of the slabs blocks are allocated from. */
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /** Returns true if slabs are allocated outside of the Java heap. */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  @Override
+  public final String[] listAll() {
+    ensureOpen();
+    // the map's iterators are weakly consistent: files added or deleted
+    // concurrently may or may not be listed
+    final ArrayList<String> names = new ArrayList<String>(fileMap.size());
+    for (String name : fileMap.keySet()) {
+      names.add(name);
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /** Returns true iff the named file exists in this directory. */
+  @Override
+  public final boolean fileExists(String name) {
+    ensureOpen();
+    return fileMap.containsKey(name);
+  }
+
+  /** Returns the time the named file was last modified.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public final long fileModified(String name) throws IOException {
+    ensureOpen();
+    return getFile(name).lastModified;
+  }
+
+  /** Set the modified time of an existing file to now.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public void touchFile(String name) throws IOException {
+    ensureOpen();
+    final SlabFile file = getFile(name);
+
+    long ts2, ts1 = System.currentTimeMillis();
+    do {
+      try {
+        Thread.sleep(0, 1);
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      }
+      ts2 = System.currentTimeMillis();
+    } while(ts1 == ts2);
+
+    file.lastModified = ts2;
+  }
+
+  /** Returns the length in bytes of a file in the directory.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public final long fileLength(String name) throws IOException {
+    ensureOpen();
+    return getFile(name).length;
+  }
+
+  /** Return total size in bytes of the blocks held by the files in this
+   * directory, without locking. This is quantized to the block size. */
+  public final long sizeInBytes() {
+    ensureOpen();
+    return sizeInBytes.get();
+  }
+
+  /** Return total size in bytes of the slabs allocated by this directory,
+   * including the blocks that are free or held by deleted files that are
+   * still open. */
+  public final long allocatedBytes() {
+    ensureOpen();
+    return allocatedBytes.get();
+  }
+
+  /** Removes an existing file in the directory.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public void deleteFile(String name) throws IOException {
+    ensureOpen();
+    final SlabFile file = fileMap.remove(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    file.removeFromDirectory();
+    file.decRef();
+  }
+
+  /** Creates a new, empty file in the directory with the given name. Returns a stream writing this file. */
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    ensureOpen();
+    final SlabFile file = new SlabFile(this);
+    // one reference for the directory, one for the output
+    file.incRef();
+    final SlabFile existing = fileMap.put(name, file);
+    if (existing != null) {
+      existing.removeFromDirectory();
+      existing.decRef();
+    }
+    return new SlabOutput(file);
+  }
+
+  /** Returns a stream reading an existing file. */
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    ensureOpen();
+    final SlabFile file = fileMap.get(name);
+    // the file may have been deleted and released in the meantime
+    if (file == null || !file.tryIncRef()) {
+      throw new FileNotFoundException(name);
+    }
+    return new SlabInput(file);
+  }
+
+  /** Closes the store to future operations, releasing the slabs once all
+   * open inputs and outputs are closed. */
+  @Override
+  public void close() {
+    isOpen = false;
+    fileMap.clear();
+    freeBlocks.clear();
+  }
+
+  private SlabFile getFile(String name) throws FileNotFoundException {
+    final SlabFile file = fileMap.get(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    return file;
+  }
+
+  /* Returns a cleared block of blockSize bytes, from the free list if
+   * possible. */
+  private ByteBuffer allocateBlock() {
+    ByteBuffer block = freeBlocks.poll();
+    if (block == null) {
+      synchronized(slabLock) {
+        block = freeBlocks.poll();
+        if (block == null) {
+          final ByteBuffer slab = direct ? ByteBuffer.allocateDirect(slabSize) : ByteBuffer.allocate(slabSize);
+          allocatedBytes.addAndGet(slabSize);
+          for (int start = 0; start < slabSize; start += blockSize) {
+            slab.limit(start + blockSize).position(start);
+            if (block == null) {
+              block = slab.slice();
+            } else {
+              freeBlocks.add(slab.slice());
+            }
+          }
+        }
+      }
+    }
+    block.clear();
+    return block;
+  }
+
+  private void releaseBlocks(ArrayList<ByteBuffer> blocks) {
+    if (isOpen) {
+      freeBlocks.addAll(blocks);
+    }
+  }
+
+  /* A file of the directory. It is referenced by the directory until it is
+   * deleted or overwritten, and by each input and output open on it; once
+   * the last reference is gone its blocks go back to the free list. */
+  private static final class SlabFile {
+
+    private final ConcurrentRAMDirectory directory;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private final ArrayList<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    private boolean inDirectory = true;
+
+    volatile long length;
+    volatile long lastModified = System.currentTimeMillis();
+
+    SlabFile(ConcurrentRAMDirectory directory) {
+      this.directory = directory;
+    }
+
+    synchronized ByteBuffer addBlock() {
+      final ByteBuffer block = directory.allocateBlock();
+      blocks.add(block);
+      if (inDirectory) {
+        directory.sizeInBytes.addAndGet(directory.blockSize);
+      }
+      return block;
+    }
+
+    synchronized ByteBuffer getBlock(int index) {
+      return blocks.get(index);
+    }
+
+    synchronized int numBlocks() {
+      return blocks.size();
+    }
+
+    synchronized void removeFromDirectory() {
+      assert inDirectory;
+      inDirectory = false;
+      directory.sizeInBytes.addAndGet(-(long) blocks.size() * directory.blockSize);
+    }
+
+    void incRef() {
+      refCount.incrementAndGet();
+    }
+
+    boolean tryIncRef() {
+      while (true) {
+        final int count = refCount.get();
+        if (count <= 0) {
+          return false;
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void decRef() {
+      final int count = refCount.decrementAndGet();
+      assert count >= 0;
+      if (count == 0) {
+        synchronized(this) {
+          directory.releaseBlocks(blocks);
+          blocks.clear();
+        }
+      }
+    }
+  }
+
+  private static final class SlabInput extends IndexInput {
+
+    private SlabFile file;
+    private final long length;
+    private final int blockShift;
+    private final int blockSize;
+    private final int blockMask;
+    private boolean isClone;
+
+    // a view of the current block, limited to the end of the file
+    private ByteBuffer currentBuffer;
+    private int currentBufferIndex;
+    private long bufferStart;
+
+    SlabInput(SlabFile file) {
+      this.file = file;
+      this.length = file.length;
+      this.blockShift = file.directory.blockShift;
+      this.blockSize = file.directory.blockSize;
+      this.blockMask = file.directory.blockMask;
+      // make sure that we switch to the
+      // first needed buffer lazily
+      currentBufferIndex = -1;
+    }
+
+    @Override
+    public void close() {
+      if (isClone || file == null) {
+        return;
+      }
+      file.decRef();
+      file = null;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+        switchCurrentBuffer(currentBufferIndex + 1, true);
+      }
+      return currentBuffer.get();
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      while (len > 0) {
+        if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+          switchCurrentBuffer(currentBufferIndex + 1, true);
+        }
+        final int bytesToCopy = Math.min(len, currentBuffer.remaining());
+        currentBuffer.get(b, offset, bytesToCopy);
+        offset += bytesToCopy;
+        len -= bytesToCopy;
+      }
+    }
+
+    private void switchCurrentBuffer(int index, boolean enforceEOF) throws IOException {
+      if (file == null) {
+        throw new AlreadyClosedException("this IndexInput is closed");
+      }
+      final long start = (long) index << blockShift;
+      if (start >= length) {
+        // end of file reached, no more buffers left
+        if (enforceEOF) {
+          throw new IOException("Read past EOF");
+        }
+        // force EOF if a read takes place at this position
+        currentBuffer = ByteBuffer.allocate(0);
+      } else {
+        currentBuffer = file.getBlock(index).duplicate();
+        currentBuffer.limit((int) Math.min(blockSize, length - start)).position(0);
+      }
+      currentBufferIndex = index;
+      bufferStart = start;
+    }
+
+    @Override
+    public long getFilePointer() {
+      return currentBufferIndex < 0 ? 0 : bufferStart + currentBuffer.position();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      if (pos > length) {
+        throw new IOException("seek past EOF: pos=" + pos + " length=" + length);
+      }
+      final int index = (int) (pos >>> blockShift);
+      if (currentBuffer == null || index != currentBufferIndex) {
+        switchCurrentBuffer(index, false);
+      }
+      currentBuffer.position((int) (pos & blockMask));
+    }
+
+    @Override
+    public Object clone() {
+      final SlabInput clone = (SlabInput) super.clone();
+      clone.isClone = true;
+      if (currentBuffer != null) {
+        clone.currentBuffer = currentBuffer.duplicate();
+      }
+      return clone;
+    }
+  }
+
+  private static final class SlabOutput extends IndexOutput {
+
+    private SlabFile file;
+    private final int blockShift;
+    private final int blockSize;
+    private final int blockMask;
+
+    private ByteBuffer currentBuffer;
+    private int currentBufferIndex;
+    private long bufferStart;
+
+    SlabOutput(SlabFile file) {
+      this.file = file;
+      this.blockShift = file.directory.blockShift;
+      this.blockSize = file.directory.blockSize;
+      this.blockMask = file.directory.blockMask;
+      // make sure that we switch to the
+      // first needed buffer lazily
+      currentBufferIndex = -1;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+        switchCurrentBuffer(currentBufferIndex + 1);
+      }
+      currentBuffer.put(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int len) throws IOException {
+      assert b != null;
+      while (len > 0) {
+        if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+          switchCurrentBuffer(currentBufferIndex + 1);
+        }
+        final int bytesToCopy = Math.min(len, currentBuffer.remaining());
+        currentBuffer.put(b, offset, bytesToCopy);
+        offset += bytesToCopy;
+        len -= bytesToCopy;
+      }
+    }
+
+    private void switchCurrentBuffer(int index) throws IOException {
+      if (file == null) {
+        throw new AlreadyClosedException("this IndexOutput is closed");
+      }
+      setFileLength();
+      final ByteBuffer block;
+      if (index == file.numBlocks()) {
+        block = file.addBlock();
+      } else {
+        block = file.getBlock(index);
+      }
+      currentBuffer = block.duplicate();
+      currentBuffer.clear();
+      currentBufferIndex = index;
+      bufferStart = (long) index << blockShift;
+    }
+
+    private void setFileLength() {
+      if (currentBuffer != null) {
+        final long pointer = bufferStart + currentBuffer.position();
+        if (pointer > file.length) {
+          file.length = pointer;
+        }
+      }
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      // set the file length in case we seek back
+      // and flush() has not been called yet
+      setFileLength();
+      if (pos > file.length) {
+        throw new IOException("seek past EOF: pos=" + pos + " length=" + file.length);
+      }
+      final int index = (int) (pos >>> blockShift);
+      if (currentBuffer == null || index != currentBufferIndex) {
+        switchCurrentBuffer(index);
+      }
+      currentBuffer.position((int) (pos & blockMask));
+    }
+
+    @Override
+    public long length() {
+      setFileLength();
+      return file.length;
+    }
+
+    @Override
+    public long getFilePointer() {
+      return currentBufferIndex < 0 ? 0 : bufferStart + currentBuffer.position();
+    }
+
+    @Override
+    public void flush() {
+      if (file != null) {
+        setFileLength();
+        file.lastModified = System.currentTimeMillis();
+      }
+    }
+
+    @Override
+    public void close() {
+      if (file != null) {
+        flush();
+        file.decRef();
+        file = null;
+      }
+    }
+  }
+}
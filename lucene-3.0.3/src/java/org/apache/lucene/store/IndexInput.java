@@ -204,6 +204,17 @@ public abstract class IndexInput implements Cloneable,Closeable {
   /** The number of bytes in the file. */
   public abstract long length();
 
+  /** Returns true if the file is mapped into memory, so that
+   * a seek followed by a short read is about as cheap as an
+   * array access.  Buffered inputs return false, as a seek
+   * outside of the buffer refills it.  The default is false.
+   *
+   * <p><font color="red"><b>NOTE:</b> This API is experimental and might change in incompatible ways in the next release.</font></p>
+   */
+  public boolean isMapped() {
+    return false;
+  }
+
   /** Returns a clone of this stream.
    *
    * <p>Clones of a stream access the same data, and are positioned at the same
@@ -243,6 +243,11 @@ public class MMapDirectory extends FSDirectory {
       return length;
     }
 
+    @Override
+    public boolean isMapped() {
+      return true;
+    }
+
     @Override
     public Object clone() {
       if (buffer == null)
@@ -367,6 +372,11 @@ public class MMapDirectory extends FSDirectory {
     public long length() {
       return length;
     }
+
+    @Override
+    public boolean isMapped() {
+      return true;
+    }
   
     @Override
     public Object clone() {
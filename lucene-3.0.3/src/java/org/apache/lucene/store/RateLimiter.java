@@ -0,0 +1,92 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Limits the rate at which bytes are written (or read) by
+ * any number of threads sharing the limiter.  Each caller
+ * reports the bytes it is about to write to {@link #pause},
+ * which sleeps as long as needed to keep the total rate at
+ * or below the target.  Time the limiter was not used is
+ * not credited, ie there are no bursts above the target
+ * rate after idle periods.
+ *
+ * <p><b>NOTE:</b> This API is experimental and might change
+ * in incompatible ways in the next release.</p>
+ */
+public final class RateLimiter {
+
+  private volatile double mbPerSec;
+  private volatile double nsPerByte;
+
+  // the time at which all bytes reported so far have been
+  // written at the target rate
+  private long lastNS;
+
+  /** Creates a limiter with the given rate; {@link
+   *  Double#POSITIVE_INFINITY} means no limit. */
+  public RateLimiter(double mbPerSec) {
+    setMbPerSec(mbPerSec);
+  }
+
+  /** Sets the rate in MB per second; {@link
+   *  Double#POSITIVE_INFINITY} means no limit. */
+  public void setMbPerSec(double mbPerSec) {
+    if (!(mbPerSec > 0.0))
+      throw new IllegalArgumentException("mbPerSec must be > 0 (got " + mbPerSec + ")");
+    this.mbPerSec = mbPerSec;
+    nsPerByte = 1000000000.0 / (1024 * 1024 * mbPerSec);
+  }
+
+  /** Returns the rate in MB per second. */
+  public double getMbPerSec() {
+    return mbPerSec;
+  }
+
+  /** Pauses, if necessary, so that the given number of
+   *  bytes (in addition to all bytes reported before) are
+   *  written no faster than the target rate.  Returns the
+   *  number of nanoseconds paused. */
+  public long pause(long bytes) {
+    if (bytes <= 0 || Double.isInfinite(mbPerSec))
+      return 0;
+
+    final long startNS = System.nanoTime();
+    final long targetNS;
+    synchronized(this) {
+      if (lastNS < startNS)
+        lastNS = startNS;
+      lastNS += (long) (bytes * nsPerByte);
+      targetNS = lastNS;
+    }
+
+    long curNS = startNS;
+    while (curNS < targetNS) {
+      final long pauseNS = targetNS - curNS;
+      try {
+        Thread.sleep(pauseNS / 1000000, (int) (pauseNS % 1000000));
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      }
+      curNS = System.nanoTime();
+    }
+    return curNS - startNS;
+  }
+}
@@ -18,6 +18,7 @@ package org.apache.lucene.util;
  */
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
@@ -26,55 +27,121 @@ import org.apache.lucene.store.IndexOutput;
 /** Optimized implementation of a vector of bits.  This is more-or-less like
   java.util.BitSet, but also includes the following:
   <ul>
-  <li>a count() method, which efficiently computes the number of one bits;</li>
+  <li>a count() method, which returns the number of one bits without
+  recomputing it;</li>
   <li>optimized read from and write to disk;</li>
   <li>inlinable get() method;</li>
-  <li>store and load, as bit set or d-gaps, depending on sparseness;</li> 
+  <li>a sparse representation, as a sorted list of the one bits, while few
+  bits are set;</li>
+  <li>store and load, as bit set, d-gaps or runs of one bits, depending on
+  sparseness;</li>
   </ul>
   */
 public final class BitVector implements Cloneable {
 
+  /** Sorted lists of one bits are limited to this many entries, as
+   * setting a bit may have to copy all of them.  Only appending a bit
+   * larger than all others is done in place, so setting bits in random
+   * order costs time quadratic in the number of bits, up to this many. */
+  private static final int MAX_SPARSE_COUNT = 1 << 13;
+
+  // file formats; size is written first for bit sets.  FORMAT_DGAPS and
+  // FORMAT_RUNS need SegmentInfos.FORMAT_SPARSE_DELETES
+  private static final int FORMAT_BYTE_DGAPS = -1;
+  private static final int FORMAT_DGAPS = -2;
+  private static final int FORMAT_RUNS = -3;
+
+  // While few bits are set, bits is null and the one bits are the first
+  // count entries of sparse, which is padded with Integer.MAX_VALUE. The
+  // array is only changed in place to append a bit, so that get() can be
+  // called while another thread sets bits without missing any one bits.
   private byte[] bits;
+  private int[] sparse;
   private int size;
   private int count;
 
   /** Constructs a vector capable of holding <code>n</code> bits. */
   public BitVector(int n) {
     size = n;
-    bits = new byte[(size >> 3) + 1];
+    sparse = new int[0];
     count = 0;
   }
   
   BitVector(byte[] bits, int size) {
     this.bits = bits;
     this.size = size;
-    count = -1;
+    count = getRecomputedCount();
   }
   
   @Override
   public Object clone() {
-    byte[] copyBits = new byte[bits.length];
-    System.arraycopy(bits, 0, copyBits, 0, bits.length);
-    BitVector clone = new BitVector(copyBits, size);
+    BitVector clone;
+    if (bits != null) {
+      byte[] copyBits = new byte[bits.length];
+      System.arraycopy(bits, 0, copyBits, 0, bits.length);
+      clone = new BitVector(copyBits, size);
+    } else {
+      clone = new BitVector(size);
+      clone.sparse = new int[sparse.length];
+      System.arraycopy(sparse, 0, clone.sparse, 0, sparse.length);
+    }
     clone.count = count;
     return clone;
   }
+
+  /* Whether count one bits are best kept as a sorted list: it takes less
+   * memory than the bit set, and is short enough to insert into. */
+  private boolean fitsSparse(int count) {
+    return count <= MAX_SPARSE_COUNT && ((long) count << 5) < size;
+  }
+
+  private void toDense() {
+    final byte[] bits = new byte[(size >> 3) + 1];
+    for (int i = 0; i < count; i++) {
+      final int bit = sparse[i];
+      bits[bit >> 3] |= 1 << (bit & 7);
+    }
+    // sparse is kept for concurrent readers that don't see the bits yet
+    this.bits = bits;
+  }
   
-  /** Sets the value of <code>bit</code> to one. */
+  /** Sets the value of <code>bit</code> to one.  While few bits are set,
+   * this copies the list of one bits, unless <code>bit</code> is larger
+   * than all of them: set bits in increasing order where possible. */
   public final void set(int bit) {
-    if (bit >= size) {
-      throw new ArrayIndexOutOfBoundsException(bit);
-    }
-    bits[bit >> 3] |= 1 << (bit & 7);
-    count = -1;
+    getAndSet(bit);
   }
 
   /** Sets the value of <code>bit</code> to true, and
    *  returns true if bit was already set */
   public final boolean getAndSet(int bit) {
-    if (bit >= size) {
+    if (bit >= size || bit < 0) {
       throw new ArrayIndexOutOfBoundsException(bit);
     }
+    if (bits == null) {
+      final int[] sparse = this.sparse;
+      int index = Arrays.binarySearch(sparse, bit);
+      if (index >= 0) {
+        return true;
+      }
+      if (fitsSparse(count + 1)) {
+        index = -index - 1;
+        if (index == count && count < sparse.length) {
+          sparse[count] = bit;
+        } else {
+          // copy on write
+          final int[] newSparse = new int[count < sparse.length ? sparse.length : ArrayUtil.getNextSize(count + 1)];
+          System.arraycopy(sparse, 0, newSparse, 0, index);
+          newSparse[index] = bit;
+          System.arraycopy(sparse, index, newSparse, index + 1, count - index);
+          Arrays.fill(newSparse, count + 1, newSparse.length, Integer.MAX_VALUE);
+          this.sparse = newSparse;
+        }
+        count++;
+        return false;
+      }
+      toDense();
+    }
     final int pos = bit >> 3;
     final int v = bits[pos];
     final int flag = 1 << (bit & 7);
@@ -82,51 +149,106 @@ public final class BitVector implements Cloneable {
       return true;
     else {
       bits[pos] = (byte) (v | flag);
-      if (count != -1)
-        count++;
+      count++;
       return false;
     }
   }
 
-  /** Sets the value of <code>bit</code> to zero. */
+  /** Sets the value of <code>bit</code> to zero.  While few bits are set,
+   * this copies the list of one bits if <code>bit</code> was one. */
   public final void clear(int bit) {
-    if (bit >= size) {
+    if (bit >= size || bit < 0) {
       throw new ArrayIndexOutOfBoundsException(bit);
     }
-    bits[bit >> 3] &= ~(1 << (bit & 7));
-    count = -1;
+    if (bits == null) {
+      final int index = Arrays.binarySearch(sparse, bit);
+      if (index >= 0) {
+        // copy on write
+        final int[] newSparse = new int[sparse.length];
+        System.arraycopy(sparse, 0, newSparse, 0, index);
+        System.arraycopy(sparse, index + 1, newSparse, index, sparse.length - index - 1);
+        newSparse[newSparse.length - 1] = Integer.MAX_VALUE;
+        sparse = newSparse;
+        count--;
+      }
+    } else {
+      final int pos = bit >> 3;
+      final int flag = 1 << (bit & 7);
+      if ((bits[pos] & flag) != 0) {
+        bits[pos] &= ~flag;
+        count--;
+      }
+    }
   }
 
   /** Returns <code>true</code> if <code>bit</code> is one and
     <code>false</code> if it is zero. */
   public final boolean get(int bit) {
     assert bit >= 0 && bit < size: "bit " + bit + " is out of bounds 0.." + (size-1);
+    final byte[] bits = this.bits;
+    if (bits == null) {
+      return Arrays.binarySearch(sparse, bit) >= 0;
+    }
     return (bits[bit >> 3] & (1 << (bit & 7))) != 0;
   }
 
+  /** Returns the index of the first one bit at or after <code>bit</code>,
+   * or -1 if there is none.  Iterating over the one bits with this method
+   * is much cheaper than calling {@link #get} for every bit when few bits
+   * are set. */
+  public final int nextSetBit(int bit) {
+    assert bit >= 0: "bit " + bit + " is negative";
+    if (bit >= size) {
+      return -1;
+    }
+    final byte[] bits = this.bits;
+    if (bits == null) {
+      final int[] sparse = this.sparse;
+      int index = Arrays.binarySearch(sparse, bit);
+      if (index < 0) {
+        index = -index - 1;
+      }
+      return index < sparse.length && sparse[index] != Integer.MAX_VALUE ? sparse[index] : -1;
+    }
+    int pos = bit >> 3;
+    final int v = (bits[pos] & 0xFF) >>> (bit & 7);
+    if (v != 0) {
+      return bit + Integer.numberOfTrailingZeros(v);
+    }
+    // bits beyond size are never set
+    for (pos++; pos < bits.length; pos++) {
+      if (bits[pos] != 0) {
+        return (pos << 3) + Integer.numberOfTrailingZeros(bits[pos] & 0xFF);
+      }
+    }
+    return -1;
+  }
+
   /** Returns the number of bits in this vector.  This is also one greater than
     the number of the largest valid bit number. */
   public final int size() {
     return size;
   }
 
-  /** Returns the total number of one bits in this vector.  This is efficiently
-    computed and cached, so that, if the vector is not changed, no
-    recomputation is done for repeated calls. */
+  /** Returns the total number of one bits in this vector.  This is
+    maintained as bits are set and cleared, so no recomputation is
+    done. */
   public final int count() {
-    // if the vector has been modified
-    if (count == -1) {
-      int c = 0;
-      int end = bits.length;
-      for (int i = 0; i < end; i++)
-        c += BYTE_COUNTS[bits[i] & 0xFF];	  // sum bits per byte
-      count = c;
-    }
     return count;
   }
 
   /** For testing */
   public final int getRecomputedCount() {
+    if (bits == null) {
+      int c = 0;
+      while (c < sparse.length && sparse[c] != Integer.MAX_VALUE) {
+        if (c > 0 && sparse[c - 1] >= sparse[c]) {
+          throw new IllegalStateException("one bits are not sorted at index " + c);
+        }
+        c++;
+      }
+      return c;
+    }
     int c = 0;
     int end = bits.length;
     for (int i = 0; i < end; i++)
@@ -160,56 +282,106 @@ public final class BitVector implements Cloneable {
   public final void write(Directory d, String name) throws IOException {
     IndexOutput output = d.createOutput(name);
     try {
-      if (isSparse()) { 
-        writeDgaps(output); // sparse bit-set more efficiently saved as d-gaps.
-      } else {
+      // compute the sizes of the sparse formats
+      long dgapsBytes = 12;
+      long runsBytes = 12;
+      int last = 0;
+      int runStart = -1;
+      int runEnd = -1;
+      int lastRunEnd = 0;
+      for (int bit = nextSetBit(0); bit != -1; bit = nextSetBit(bit + 1)) {
+        dgapsBytes += vIntLength(bit - last);
+        last = bit;
+        if (bit == runEnd) {
+          runEnd++;
+        } else {
+          if (runStart != -1) {
+            runsBytes += vIntLength(runStart - lastRunEnd) + vIntLength(runEnd - runStart - 1);
+            lastRunEnd = runEnd;
+          }
+          runStart = bit;
+          runEnd = bit + 1;
+        }
+      }
+      if (runStart != -1) {
+        runsBytes += vIntLength(runStart - lastRunEnd) + vIntLength(runEnd - runStart - 1);
+      }
+
+      // note: factor is for read/write of byte-arrays being faster than vints.
+      final long bitsBytes = 8 + (size >> 3) + 1;
+      if (4 * Math.min(dgapsBytes, runsBytes) >= bitsBytes) {
         writeBits(output);
+      } else if (runsBytes < dgapsBytes) {
+        writeRuns(output);  // long runs of one bits more efficiently saved as runs.
+      } else {
+        writeDgaps(output); // sparse bit-set more efficiently saved as d-gaps.
       }
     } finally {
       output.close();
     }
   }
+
+  private static int vIntLength(int i) {
+    int length = 1;
+    while ((i & ~0x7F) != 0) {
+      i >>>= 7;
+      length++;
+    }
+    return length;
+  }
      
   /** Write as a bit set */
   private void writeBits(IndexOutput output) throws IOException {
+    byte[] bits = this.bits;
+    if (bits == null) {
+      bits = new byte[(size >> 3) + 1];
+      for (int i = 0; i < count; i++) {
+        bits[sparse[i] >> 3] |= 1 << (sparse[i] & 7);
+      }
+    }
     output.writeInt(size());        // write size
     output.writeInt(count());       // write count
     output.writeBytes(bits, bits.length);
   }
   
-  /** Write as a d-gaps list */
+  /** Write as a d-gaps list of the one bits */
   private void writeDgaps(IndexOutput output) throws IOException {
-    output.writeInt(-1);            // mark using d-gaps                         
+    output.writeInt(FORMAT_DGAPS);  // mark using d-gaps
     output.writeInt(size());        // write size
     output.writeInt(count());       // write count
-    int last=0;
-    int n = count();
-    int m = bits.length;
-    for (int i=0; i<m && n>0; i++) {
-      if (bits[i]!=0) {
-        output.writeVInt(i-last);
-        output.writeByte(bits[i]);
-        last = i;
-        n -= BYTE_COUNTS[bits[i] & 0xFF];
-      }
+    int last = 0;
+    for (int bit = nextSetBit(0); bit != -1; bit = nextSetBit(bit + 1)) {
+      output.writeVInt(bit - last);
+      last = bit;
     }
   }
 
-  /** Indicates if the bit vector is sparse and should be saved as a d-gaps list, or dense, and should be saved as a bit set. */
-  private boolean isSparse() {
-    // note: order of comparisons below set to favor smaller values (no binary range search.)
-    // note: adding 4 because we start with ((int) -1) to indicate d-gaps format.
-    // note: we write the d-gap for the byte number, and the byte (bits[i]) itself, therefore
-    //       multiplying count by (8+8) or (8+16) or (8+24) etc.:
-    //       - first 8 for writing bits[i] (1 byte vs. 1 bit), and 
-    //       - second part for writing the byte-number d-gap as vint. 
-    // note: factor is for read/write of byte-arrays being faster than vints.  
-    int factor = 10;  
-    if (bits.length < (1<< 7)) return factor * (4 + (8+ 8)*count()) < size();
-    if (bits.length < (1<<14)) return factor * (4 + (8+16)*count()) < size();
-    if (bits.length < (1<<21)) return factor * (4 + (8+24)*count()) < size();
-    if (bits.length < (1<<28)) return factor * (4 + (8+32)*count()) < size();
-    return                            factor * (4 + (8+40)*count()) < size();
+  /** Write as a list of runs of one bits: the d-gap from the end of the
+   * previous run, and the length of the run minus one */
+  private void writeRuns(IndexOutput output) throws IOException {
+    output.writeInt(FORMAT_RUNS);   // mark using runs
+    output.writeInt(size());        // write size
+    output.writeInt(count());       // write count
+    int lastRunEnd = 0;
+    int runStart = -1;
+    int runEnd = -1;
+    for (int bit = nextSetBit(0); bit != -1; bit = nextSetBit(bit + 1)) {
+      if (bit == runEnd) {
+        runEnd++;
+      } else {
+        if (runStart != -1) {
+          output.writeVInt(runStart - lastRunEnd);
+          output.writeVInt(runEnd - runStart - 1);
+          lastRunEnd = runEnd;
+        }
+        runStart = bit;
+        runEnd = bit + 1;
+      }
+    }
+    if (runStart != -1) {
+      output.writeVInt(runStart - lastRunEnd);
+      output.writeVInt(runEnd - runStart - 1);
+    }
   }
 
   /** Constructs a bit vector from the file <code>name</code> in Directory
@@ -218,11 +390,18 @@ public final class BitVector implements Cloneable {
   public BitVector(Directory d, String name) throws IOException {
     IndexInput input = d.openInput(name);
     try {
-      size = input.readInt();       // read size
-      if (size == -1) {
+      final int format = input.readInt();
+      if (format == FORMAT_BYTE_DGAPS) {
+        readByteDgaps(input);
+      } else if (format == FORMAT_DGAPS) {
         readDgaps(input);
-      } else {
+      } else if (format == FORMAT_RUNS) {
+        readRuns(input);
+      } else if (format >= 0) {
+        size = format;              // read size
         readBits(input);
+      } else {
+        throw new IOException("unknown format " + format + " in file \"" + name + "\"");
       }
     } finally {
       input.close();
@@ -236,13 +415,13 @@ public final class BitVector implements Cloneable {
     input.readBytes(bits, 0, bits.length);
   }
 
-  /** read as a d-gaps list */ 
-  private void readDgaps(IndexInput input) throws IOException {
+  /** read as a d-gaps list of bytes, as written by older versions */
+  private void readByteDgaps(IndexInput input) throws IOException {
     size = input.readInt();       // (re)read size
     count = input.readInt();        // read count
     bits = new byte[(size >> 3) + 1];     // allocate bits
     int last=0;
-    int n = count();
+    int n = count;
     while (n>0) {
       last += input.readVInt();
       bits[last] = input.readByte();
@@ -250,6 +429,53 @@ public final class BitVector implements Cloneable {
     }          
   }
 
+  /* Allocates the representation for size bits, count of which are set,
+   * before they are read in order. */
+  private void allocate() {
+    if (fitsSparse(count)) {
+      sparse = new int[count];
+    } else {
+      bits = new byte[(size >> 3) + 1];
+    }
+  }
+
+  /** read as a d-gaps list of the one bits */
+  private void readDgaps(IndexInput input) throws IOException {
+    size = input.readInt();       // (re)read size
+    count = input.readInt();        // read count
+    allocate();
+    int bit = 0;
+    for (int i = 0; i < count; i++) {
+      bit += input.readVInt();
+      if (bits == null) {
+        sparse[i] = bit;
+      } else {
+        bits[bit >> 3] |= 1 << (bit & 7);
+      }
+    }
+  }
+
+  /** read as a list of runs of one bits */
+  private void readRuns(IndexInput input) throws IOException {
+    size = input.readInt();       // (re)read size
+    count = input.readInt();        // read count
+    allocate();
+    int runEnd = 0;
+    int i = 0;
+    while (i < count) {
+      final int runStart = runEnd + input.readVInt();
+      runEnd = runStart + input.readVInt() + 1;
+      for (int bit = runStart; bit < runEnd; bit++) {
+        if (bits == null) {
+          sparse[i] = bit;
+        } else {
+          bits[bit >> 3] |= 1 << (bit & 7);
+        }
+        i++;
+      }
+    }
+  }
+
   /**
    * Retrieve a subset of this BitVector.
    * 
@@ -264,6 +490,13 @@ public final class BitVector implements Cloneable {
       throw new IndexOutOfBoundsException();
     // Special case -- return empty vector is start == end
     if (end == start) return new BitVector(0);
+    if (this.bits == null) {
+      BitVector subset = new BitVector(end - start);
+      for (int bit = nextSetBit(start); bit != -1 && bit < end; bit = nextSetBit(bit + 1)) {
+        subset.set(bit - start);
+      }
+      return subset;
+    }
     byte[] bits = new byte[((end - start - 1) >>> 3) + 1];
     int s = start >>> 3;
     for (int i = 0; i < bits.length; i++) {
@@ -118,6 +118,9 @@ public final class RamUsageEstimator {
     if (clazz.isArray()) {
       return sizeOfArray(obj);
     }
+    if (clazz == String.class) {
+      return sizeOfString((String) obj);
+    }
 
     long size = 0;
 
@@ -151,6 +154,19 @@ public final class RamUsageEstimator {
     return size;
   }
 
+  /* Strings are common enough (e.g. in FieldCache values) to not walk their
+   * fields reflectively; their size is that of the value, offset, count and
+   * hash fields plus the char array.
+   */
+  private long sizeOfString(String s) {
+    final int intSize = memoryModel.getPrimitiveSize(int.class);
+    long size = classSize + refSize + 3 * intSize;
+    if (s.length() > 0) {
+      size += arraySize + s.length() * memoryModel.getPrimitiveSize(char.class);
+    }
+    return size;
+  }
+
   private long sizeOfArray(Object obj) {
     int len = Array.getLength(obj);
     if (len == 0) {
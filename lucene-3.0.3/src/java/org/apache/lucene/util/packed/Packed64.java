@@ -0,0 +1,79 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Space optimized random access capable array of values with a fixed number
+ * of bits, backed by a long[]. Value i occupies bits
+ * {@code [i * bitsPerValue, (i + 1) * bitsPerValue)}, counted from the least
+ * significant bit of the first block, so a value spans at most two blocks.
+ */
+final class Packed64 implements PackedInts.Mutable {
+
+  private final long[] blocks;
+  private final int valueCount;
+  private final int bitsPerValue;
+  private final long mask;
+
+  Packed64(int valueCount, int bitsPerValue) {
+    this.valueCount = valueCount;
+    this.bitsPerValue = bitsPerValue;
+    this.mask = PackedInts.maxValue(bitsPerValue);
+    // at least one block, so that get() does not need to special case 0 bits
+    final long bits = (long) valueCount * bitsPerValue;
+    this.blocks = new long[Math.max(1, (int) ((bits + 63) >>> 6))];
+  }
+
+  public long get(int index) {
+    assert index >= 0 && index < valueCount;
+    final long majorBitPos = (long) index * bitsPerValue;
+    final int elementPos = (int) (majorBitPos >>> 6);
+    final int bitPos = (int) (majorBitPos & 63);
+    long value = blocks[elementPos] >>> bitPos;
+    if (bitPos + bitsPerValue > 64) {
+      value |= blocks[elementPos + 1] << (64 - bitPos);
+    }
+    return value & mask;
+  }
+
+  public void set(int index, long value) {
+    assert index >= 0 && index < valueCount;
+    assert bitsPerValue == 64 || (value & ~mask) == 0 : "value " + value + " needs more than " + bitsPerValue + " bits";
+    final long majorBitPos = (long) index * bitsPerValue;
+    final int elementPos = (int) (majorBitPos >>> 6);
+    final int bitPos = (int) (majorBitPos & 63);
+    blocks[elementPos] = (blocks[elementPos] & ~(mask << bitPos)) | (value << bitPos);
+    if (bitPos + bitsPerValue > 64) {
+      final int shift = 64 - bitPos;
+      blocks[elementPos + 1] = (blocks[elementPos + 1] & ~(mask >>> shift)) | (value >>> shift);
+    }
+  }
+
+  public int getBitsPerValue() {
+    return bitsPerValue;
+  }
+
+  public int size() {
+    return valueCount;
+  }
+
+  @Override
+  public String toString() {
+    return "Packed64(bitsPerValue=" + bitsPerValue + ", size=" + valueCount + ")";
+  }
+}
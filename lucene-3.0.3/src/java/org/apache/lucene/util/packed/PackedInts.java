@@ -0,0 +1,109 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Simplistic compression for arrays of unsigned long values: each value is
+ * stored with the number of bits that the largest value needs, and the values
+ * are packed one after the other without gaps.
+ * <p>
+ * This is mainly meant for in-memory structures that hold one value per
+ * document, like the {@link org.apache.lucene.search.FieldCache}, where the
+ * values of a field often span a much smaller range than their Java type.
+ *
+ * <p><b>NOTE:</b> This API is experimental and might change in incompatible
+ * ways in the next release.
+ */
+public final class PackedInts {
+
+  private PackedInts() {} // no instance
+
+  /**
+   * A read-only random access array of positive integers.
+   */
+  public static interface Reader {
+    /**
+     * @param index the position of the wanted value.
+     * @return the value at the stated index.
+     */
+    long get(int index);
+
+    /**
+     * @return the number of bits used to store any given value.
+     *         Note: This does not imply that memory usage is
+     *         {@code bitsPerValue * #values} as implementations are free to
+     *         use non-space-optimal packing of bits.
+     */
+    int getBitsPerValue();
+
+    /**
+     * @return the number of values.
+     */
+    int size();
+  }
+
+  /**
+   * A packed integer array that can be modified.
+   */
+  public static interface Mutable extends Reader {
+    /**
+     * Set the value at the given index in the array.
+     * @param index where the value should be positioned.
+     * @param value a value conforming to the constraints set by the array.
+     */
+    void set(int index, long value);
+  }
+
+  /**
+   * Create a packed integer array with the given amount of values initialized
+   * to 0.
+   * @param valueCount the number of elements.
+   * @param bitsPerValue the number of bits available for any given value,
+   *        between 0 and 64.
+   * @return a mutable packed integer array.
+   */
+  public static Mutable getMutable(int valueCount, int bitsPerValue) {
+    if (valueCount < 0)
+      throw new IllegalArgumentException("valueCount must be >= 0, got " + valueCount);
+    if (bitsPerValue < 0 || bitsPerValue > 64)
+      throw new IllegalArgumentException("bitsPerValue must be between 0 and 64, got " + bitsPerValue);
+    return new Packed64(valueCount, bitsPerValue);
+  }
+
+  /**
+   * Returns how many bits are required to hold values up to and including
+   * maxValue. The maximum value is interpreted as an unsigned long, so that a
+   * negative value requires all 64 bits.
+   * @param maxValue the maximum value that should be representable.
+   * @return the amount of bits needed to represent values from 0 to maxValue.
+   */
+  public static int bitsRequired(long maxValue) {
+    return 64 - Long.numberOfLeadingZeros(maxValue);
+  }
+
+  /**
+   * Calculates the maximum unsigned long that can be expressed with the given
+   * number of bits. For 64 bits this is -1, the largest unsigned long.
+   * @param bitsPerValue the number of bits available for any given value.
+   * @return the maximum value for the given bits.
+   */
+  public static long maxValue(int bitsPerValue) {
+    return bitsPerValue == 64 ? ~0L : ~(~0L << bitsPerValue);
+  }
+
+}
@@ -27,6 +27,9 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.util.LuceneTestCase;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class TestConcurrentMergeScheduler extends LuceneTestCase {
   
@@ -228,4 +231,89 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
 
     directory.close();
   }
+
+  public void testMergeStats() throws IOException {
+    RAMDirectory directory = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, ANALYZER, true, IndexWriter.MaxFieldLength.UNLIMITED);
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    // every merge is a large one, written at 1 MB/sec
+    cms.setSmallMergeMB(0.0);
+    cms.setMaxMergeWriteMBPerSec(1.0);
+    assertEquals(1.0, cms.getMaxMergeWriteMBPerSec(), 0.0);
+    final List<ConcurrentMergeScheduler.MergeStats> stats =
+      Collections.synchronizedList(new ArrayList<ConcurrentMergeScheduler.MergeStats>());
+    cms.setMergeListener(new ConcurrentMergeScheduler.MergeListener() {
+        public void mergeFinished(ConcurrentMergeScheduler.MergeStats mergeStats) {
+          stats.add(mergeStats);
+        }
+      });
+    writer.setMergeScheduler(cms);
+    writer.setMaxBufferedDocs(2);
+    writer.setMergeFactor(3);
+
+    Document doc = new Document();
+    doc.add(new Field("content", "aaa bbb ccc ddd", Field.Store.YES, Field.Index.ANALYZED));
+    for(int i=0;i<40;i++)
+      writer.addDocument(doc);
+    writer.close();
+
+    assertTrue(stats.size() > 0);
+    long bytesWritten = 0;
+    long throttledMillis = 0;
+    for(ConcurrentMergeScheduler.MergeStats mergeStats : stats) {
+      assertTrue(mergeStats.toString(), mergeStats.numSegments > 1);
+      assertTrue(mergeStats.toString(), mergeStats.docCount >= 2*mergeStats.numSegments);
+      assertTrue(mergeStats.toString(), mergeStats.inputBytes > 0);
+      assertTrue(mergeStats.toString(), mergeStats.bytesWritten > 0);
+      assertTrue(mergeStats.toString(), mergeStats.durationMillis >= mergeStats.throttledMillis);
+      bytesWritten += mergeStats.bytesWritten;
+      throttledMillis += mergeStats.throttledMillis;
+    }
+    // at 1 MB/sec, each KB takes about 1 msec
+    assertTrue("throttled " + throttledMillis + " msec for " + bytesWritten + " bytes",
+               throttledMillis >= bytesWritten/1024/2);
+
+    IndexReader reader = IndexReader.open(directory, true);
+    assertEquals(40, reader.numDocs());
+    reader.close();
+    directory.close();
+  }
+
+  public void testMaxMergeCount() throws IOException {
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    assertEquals(ConcurrentMergeScheduler.DEFAULT_MAX_THREAD_COUNT, cms.getMaxThreadCount());
+    assertEquals(cms.getMaxThreadCount()+2, cms.getMaxMergeCount());
+    cms.setMaxThreadCount(10);
+    assertEquals(10, cms.getMaxMergeCount());
+    try {
+      cms.setMaxMergeCount(9);
+      fail("did not hit expected exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    cms.setMaxThreadCount(1);
+    cms.setMaxMergeCount(4);
+
+    // more merges than threads: the extra ones are paused
+    // until a running merge completes
+    RAMDirectory directory = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, ANALYZER, true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMergeScheduler(cms);
+    writer.setMaxBufferedDocs(2);
+    writer.setMergeFactor(2);
+    Document doc = new Document();
+    Field idField = new Field("id", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+    doc.add(idField);
+    for(int i=0;i<500;i++) {
+      idField.setValue(Integer.toString(i));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    IndexReader reader = IndexReader.open(directory, true);
+    assertEquals(500, reader.numDocs());
+    assertEquals(1, reader.docFreq(new Term("id", "499")));
+    reader.close();
+    directory.close();
+  }
 }
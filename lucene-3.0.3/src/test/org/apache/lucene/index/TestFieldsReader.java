@@ -382,6 +382,83 @@ public class TestFieldsReader extends LuceneTestCase {
     }
   }
 
+  // Docs of all sizes spread over several compressed blocks,
+  // read directly, lazily and after merges with deletions
+  public void testCompressedBlocks() throws Exception {
+    Random random = newRandom();
+    Directory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setUseCompoundFile(false);
+    writer.setMaxBufferedDocs(100);
+    final int numDocs = 500;
+    final String[] values = new String[numDocs];
+    final byte[][] binaryValues = new byte[numDocs][];
+    long totalLength = 0;
+    for(int i=0;i<numDocs;i++) {
+      StringBuilder sb = new StringBuilder();
+      final int numWords = random.nextInt(10) == 0 ? random.nextInt(5000) : random.nextInt(100);
+      for(int j=0;j<numWords;j++)
+        sb.append("word").append(random.nextInt(50)).append(' ');
+      values[i] = sb.toString();
+      binaryValues[i] = new byte[random.nextInt(100)];
+      random.nextBytes(binaryValues[i]);
+      totalLength += values[i].length() + binaryValues[i].length;
+
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      if (random.nextInt(20) != 0)
+        doc.add(new Field("text", values[i], Field.Store.YES, Field.Index.NO));
+      else
+        values[i] = null;
+      doc.add(new Field("binary", binaryValues[i], Field.Store.YES));
+      writer.addDocument(doc);
+    }
+    writer.commit();
+    long fdtLength = 0;
+    for (String file : dir.listAll())
+      if (file.endsWith("." + IndexFileNames.FIELDS_EXTENSION))
+        fdtLength += dir.fileLength(file);
+    assertTrue("fdt length " + fdtLength + " for " + totalLength + " bytes of values", fdtLength < totalLength/2);
+
+    IndexReader reader = IndexReader.open(dir, true);
+    checkStoredFields(reader, values, binaryValues, random);
+    reader.close();
+
+    for(int i=0;i<numDocs;i+=3)
+      writer.deleteDocuments(new Term("id", Integer.toString(i)));
+    writer.optimize();
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    assertEquals(numDocs - (numDocs+2)/3, reader.numDocs());
+    checkStoredFields(reader, values, binaryValues, random);
+    reader.close();
+    dir.close();
+  }
+
+  private void checkStoredFields(IndexReader reader, String[] values, byte[][] binaryValues, Random random) throws IOException {
+    Set<String> lazyFieldNames = new HashSet<String>();
+    lazyFieldNames.add("text");
+    lazyFieldNames.add("binary");
+    FieldSelector lazySelector = new SetBasedFieldSelector(Collections.singleton("id"), lazyFieldNames);
+    // read in random order, so blocks are read again after they were evicted
+    List<Integer> order = new ArrayList<Integer>();
+    for(int i=0;i<reader.maxDoc();i++)
+      order.add(Integer.valueOf(i));
+    Collections.shuffle(order, random);
+    for (Integer docID : order) {
+      final boolean lazy = docID.intValue() % 2 == 0;
+      Document doc = reader.document(docID.intValue(), lazy ? lazySelector : null);
+      final int id = Integer.parseInt(doc.get("id"));
+      if (values[id] == null)
+        assertNull(doc.getFieldable("text"));
+      else {
+        assertEquals(lazy, doc.getFieldable("text").isLazy());
+        assertEquals(values[id], doc.getFieldable("text").stringValue());
+      }
+      assertTrue(Arrays.equals(binaryValues[id], doc.getFieldable("binary").getBinaryValue()));
+    }
+  }
+
   // LUCENE-1262
   public void testExceptions() throws Throwable {
     String tempDir = System.getProperty("java.io.tmpdir");
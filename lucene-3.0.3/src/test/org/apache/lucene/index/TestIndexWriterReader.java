@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.lucene.analysis.WhitespaceAnalyzer;
@@ -30,6 +32,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.TermVector;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -924,4 +927,86 @@ public class TestIndexWriterReader extends LuceneTestCase {
     w.close();
     dir.close();
   }
+
+  public void testReopenSharesUnchangedSegments() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = new IndexWriter(dir, new WhitespaceAnalyzer(), IndexWriter.MaxFieldLength.UNLIMITED);
+    w.setMaxBufferedDocs(2);
+    w.setMergeFactor(1000);
+    for(int i=0;i<10;i++) {
+      w.addDocument(createDocument(i, "test", 4));
+    }
+
+    IndexReader r1 = w.getReader();
+    IndexReader r2 = w.getReader();
+    IndexReader[] subs1 = r1.getSequentialSubReaders();
+    IndexReader[] subs2 = r2.getSequentialSubReaders();
+    assertEquals(5, subs1.length);
+    assertEquals(5, subs2.length);
+    for(int i=0;i<subs1.length;i++) {
+      assertSame(subs1[i], subs2[i]);
+    }
+
+    // only the segment with the deleted doc gets a new reader
+    w.deleteDocuments(new Term("id", "3"));
+    IndexReader r3 = w.getReader();
+    IndexReader[] subs3 = r3.getSequentialSubReaders();
+    assertEquals(5, subs3.length);
+    int changed = 0;
+    for(int i=0;i<subs1.length;i++) {
+      if (subs1[i] != subs3[i]) {
+        changed++;
+        assertEquals(1, subs3[i].numDeletedDocs());
+        assertEquals(0, subs1[i].numDeletedDocs());
+      }
+    }
+    assertEquals(1, changed);
+    assertEquals(10, r1.numDocs());
+    assertEquals(9, r3.numDocs());
+
+    r1.close();
+    r2.close();
+    w.close();
+    // still usable after the others and the writer are closed
+    assertEquals(9, new IndexSearcher(r3).search(new TermQuery(new Term("indexname", "test")), 10).totalHits);
+    r3.close();
+    dir.close();
+  }
+
+  public void testMergedSegmentWarmerFillsFieldCache() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = new IndexWriter(dir, new WhitespaceAnalyzer(), IndexWriter.MaxFieldLength.UNLIMITED);
+    w.setMaxBufferedDocs(2);
+    w.setMergeFactor(2);
+    w.getReader().close();
+
+    final Map<String,int[]> warmed = Collections.synchronizedMap(new HashMap<String,int[]>());
+    w.setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
+        public void warm(IndexReader r) throws IOException {
+          warmed.put(((SegmentReader) r).getSegmentName(), FieldCache.DEFAULT.getInts(r, "num"));
+        }
+      });
+
+    for(int i=0;i<20;i++) {
+      Document doc = new Document();
+      doc.add(new Field("num", Integer.toString(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      w.addDocument(doc);
+    }
+    w.waitForMerges();
+
+    IndexReader r = w.getReader();
+    int warmedCount = 0;
+    for(IndexReader sub : r.getSequentialSubReaders()) {
+      final int[] values = warmed.get(((SegmentReader) sub).getSegmentName());
+      if (values != null) {
+        // the near real-time reader uses the values loaded by the warmer
+        assertSame(values, FieldCache.DEFAULT.getInts(sub, "num"));
+        warmedCount++;
+      }
+    }
+    assertTrue(warmedCount > 0);
+    r.close();
+    w.close();
+    dir.close();
+  }
 }
@@ -0,0 +1,202 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestNormValues extends LuceneTestCase {
+
+  private static final String[] WORDS = { "a", "b", "c", "d" };
+
+  private File indexDir;
+  private MMapDirectory dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    indexDir = _TestUtil.getTempDir("TestNormValues");
+    dir = new MMapDirectory(indexDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    dir.close();
+    _TestUtil.rmDir(indexDir);
+    super.tearDown();
+  }
+
+  private void buildIndex(Directory dir, Random random) throws IOException {
+    buildIndex(dir, random, true);
+  }
+
+  private void buildIndex(Directory dir, Random random, boolean mixCompound) throws IOException {
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true,
+        IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMergeFactor(1000);
+    writer.setUseCompoundFile(true);
+    for (int i = 0; i < 300; i++) {
+      Document doc = new Document();
+      StringBuilder text = new StringBuilder();
+      for (int j = 1 + random.nextInt(30); j > 0; j--) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      Field field = new Field("text", text.toString(), Field.Store.NO, Field.Index.ANALYZED);
+      field.setBoost(0.5f + random.nextFloat());
+      doc.add(field);
+      doc.add(new Field("nonorms", "a", Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      writer.addDocument(doc);
+      if (i % 100 == 99) {
+        if (mixCompound) {
+          // mix compound and non-compound segments
+          writer.setUseCompoundFile(!writer.getUseCompoundFile());
+        }
+        writer.commit();
+      }
+    }
+    writer.close();
+  }
+
+  private static void assertSameNorms(byte[] expected, NormValues actual) throws IOException {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual.get(i));
+    }
+  }
+
+  public void testSegmentNormValues() throws Exception {
+    buildIndex(dir, newRandom());
+    IndexReader reader = IndexReader.open(dir, false);
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    assertEquals(3, subReaders.length);
+    for (IndexReader subReader : subReaders) {
+      SegmentReader segmentReader = (SegmentReader) subReader;
+      assertNull(segmentReader.normValues("nonorms"));
+      NormValues values = segmentReader.normValues("text");
+      // served from the mapped file, unless it is inside a
+      // compound file, which is not mapped
+      boolean loaded = segmentReader.getSegmentInfo().getUseCompoundFile();
+      assertEquals(loaded, segmentReader.norms.get("text").bytesRef() != null);
+      assertTrue(segmentReader.maxNorm("text") > 0);
+      assertEquals(loaded, segmentReader.norms.get("text").bytesRef() != null);
+
+      byte[] norms = segmentReader.norms("text");
+      assertSameNorms(norms, values);
+      assertSameNorms(norms, segmentReader.normValues("text"));
+    }
+
+    // a changed norm is seen by new values, and the clone keeps the old ones
+    SegmentReader segmentReader = (SegmentReader) subReaders[1];
+    NormValues before = segmentReader.normValues("text");
+    IndexReader clone = (IndexReader) reader.clone();
+    reader.setNorm(120, "text", 100.0f);
+    assertEquals(segmentReader.norms("text")[20], segmentReader.normValues("text").get(20));
+    assertEquals(reader.norms("text")[120], reader.normValues("text").get(120));
+    assertFalse(reader.normValues("text").get(120) == clone.normValues("text").get(120));
+    assertEquals(before.get(20), clone.normValues("text").get(120));
+    clone.close();
+    reader.close();
+  }
+
+  public void testCompositeNormValues() throws Exception {
+    Random random = newRandom();
+    buildIndex(dir, random);
+    IndexReader reader = IndexReader.open(dir, true);
+    assertNull(reader.normValues("nonorms"));
+    assertNull(reader.normValues("missing"));
+    NormValues values = reader.normValues("text");
+    byte[] norms = new byte[reader.maxDoc()];
+    int upto = 0;
+    for (IndexReader subReader : reader.getSequentialSubReaders()) {
+      byte[] subNorms = subReader.norms("text");
+      System.arraycopy(subNorms, 0, norms, upto, subNorms.length);
+      upto += subNorms.length;
+    }
+    assertSameNorms(norms, values);
+    // random access
+    for (int i = 0; i < 100; i++) {
+      int doc = random.nextInt(norms.length);
+      assertEquals(norms[doc], values.get(doc));
+    }
+    // once the top-level norms are cached, they are used
+    assertSameNorms(reader.norms("text"), reader.normValues("text"));
+    reader.close();
+  }
+
+  public void testSameScores() throws Exception {
+    assertSameScores(newRandom().nextLong(), true);
+  }
+
+  public void testSameScoresCompound() throws Exception {
+    assertSameScores(newRandom().nextLong(), false);
+    IndexReader reader = IndexReader.open(dir, true);
+    for (IndexReader subReader : reader.getSequentialSubReaders()) {
+      SegmentReader segmentReader = (SegmentReader) subReader;
+      assertTrue(segmentReader.getSegmentInfo().getUseCompoundFile());
+      segmentReader.normValues("text");
+      // the norms are loaded instead of seeking the compound file for each doc
+      assertNotNull(segmentReader.norms.get("text").bytesRef());
+    }
+    reader.close();
+  }
+
+  private void assertSameScores(long seed, boolean mixCompound) throws Exception {
+    buildIndex(dir, new Random(seed), mixCompound);
+    RAMDirectory ramDir = new RAMDirectory();
+    buildIndex(ramDir, new Random(seed), false);
+
+    IndexSearcher mapped = new IndexSearcher(dir, true);
+    IndexSearcher loaded = new IndexSearcher(ramDir, true);
+    PhraseQuery phrase = new PhraseQuery();
+    phrase.add(new Term("text", "a"));
+    phrase.add(new Term("text", "b"));
+    PhraseQuery sloppy = new PhraseQuery();
+    sloppy.add(new Term("text", "c"));
+    sloppy.add(new Term("text", "d"));
+    sloppy.setSlop(2);
+    Query[] queries = { new TermQuery(new Term("text", "a")), phrase, sloppy,
+        new SpanTermQuery(new Term("text", "b")) };
+    for (Query query : queries) {
+      TopDocs expected = loaded.search(query, 20);
+      TopDocs actual = mapped.search(query, 20);
+      assertEquals(expected.totalHits, actual.totalHits);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+    mapped.close();
+    loaded.close();
+    ramDir.close();
+  }
+}
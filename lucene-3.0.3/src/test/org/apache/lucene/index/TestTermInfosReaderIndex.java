@@ -0,0 +1,99 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermInfosReaderIndex extends LuceneTestCase {
+
+  private static final String[] FIELDS = {"body", "id", "title"};
+
+  private Random random;
+
+  public void testSeek() throws Exception {
+    random = newRandom();
+    Directory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    // a small index interval, so that the terms index has many entries
+    writer.setTermIndexInterval(4);
+    TreeSet<Term> terms = new TreeSet<Term>();
+    for (int i = 0; i < 300; i++) {
+      Document doc = new Document();
+      for (String field : FIELDS) {
+        String text = randomText();
+        terms.add(new Term(field, text));
+        doc.add(new Field(field, text, Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+    List<Term> sorted = new ArrayList<Term>(terms);
+
+    for (int divisor = 1; divisor <= 3; divisor++) {
+      IndexReader reader = IndexReader.open(dir, null, true, divisor);
+      try {
+        // all terms of the dictionary are found
+        for (Term term : sorted) {
+          assertTrue(term.toString(), reader.docFreq(term) > 0);
+        }
+        // an enum seeks to the smallest term that is >= the given one
+        for (int i = 0; i < 500; i++) {
+          Term target = new Term(FIELDS[random.nextInt(FIELDS.length)], randomText());
+          int pos = Collections.binarySearch(sorted, target);
+          if (pos < 0)
+            pos = -pos - 1;
+          TermEnum termEnum = reader.terms(target);
+          if (pos == sorted.size()) {
+            assertNull(termEnum.term());
+          } else {
+            assertEquals(sorted.get(pos), termEnum.term());
+            if (!sorted.get(pos).equals(target))
+              assertEquals(0, reader.docFreq(target));
+          }
+          termEnum.close();
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    dir.close();
+  }
+
+  /* Text from a small alphabet that includes chars of all UTF-8 lengths
+   * and a surrogate pair, which sorts before U+FFFD in UTF-16 order. */
+  private String randomText() {
+    final String[] alphabet = {"a", "b", "\u00e9", "\u4e2d", "\ud801\udc00", "\ufffd"};
+    StringBuilder sb = new StringBuilder();
+    final int length = random.nextInt(5);
+    for (int i = 0; i < length; i++)
+      sb.append(alphabet[random.nextInt(alphabet.length)]);
+    return sb.toString();
+  }
+}
@@ -0,0 +1,194 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTieredMergePolicy extends LuceneTestCase {
+
+  private IndexWriter newWriter(Directory dir, boolean create) throws Exception {
+    IndexWriter w = new IndexWriter(dir, new WhitespaceAnalyzer(), create, IndexWriter.MaxFieldLength.UNLIMITED);
+    w.setMaxBufferedDocs(4);
+    TieredMergePolicy tmp = new TieredMergePolicy(w);
+    tmp.setMaxMergeAtOnce(2);
+    tmp.setSegmentsPerTier(2.0);
+    w.setMergePolicy(tmp);
+    return w;
+  }
+
+  private static Document newDoc(int id) {
+    Document doc = new Document();
+    doc.add(new Field("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(new Field("content", "aaa " + (id%4), Field.Store.NO, Field.Index.ANALYZED));
+    return doc;
+  }
+
+  public void testExpungeDeletes() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = newWriter(dir, true);
+    TieredMergePolicy tmp = (TieredMergePolicy) w.getMergePolicy();
+    tmp.setMaxMergeAtOnce(1000);
+    tmp.setSegmentsPerTier(1000.0);
+    for(int i=0;i<80;i++) {
+      w.addDocument(newDoc(i));
+    }
+    assertTrue(w.getSegmentCount() > 1);
+    w.deleteDocuments(new Term("content", "0"));
+    w.commit();
+    assertEquals(80, w.maxDoc());
+    assertEquals(60, w.numDocs());
+
+    tmp.setExpungeDeletesPctAllowed(0.0);
+    w.expungeDeletes();
+    assertEquals(60, w.maxDoc());
+    assertEquals(60, w.numDocs());
+    w.close();
+    dir.close();
+  }
+
+  public void testExpungeDeletesBudget() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = newWriter(dir, true);
+    TieredMergePolicy tmp = (TieredMergePolicy) w.getMergePolicy();
+    tmp.setMaxMergeAtOnce(1000);
+    tmp.setSegmentsPerTier(1000.0);
+    for(int i=0;i<80;i++) {
+      w.addDocument(newDoc(i));
+    }
+    w.deleteDocuments(new Term("content", "0"));
+    w.commit();
+    final int segCount = w.getSegmentCount();
+    assertTrue(segCount > 2);
+
+    // each call merges only one segment, but repeated calls
+    // still get rid of all deletes
+    tmp.setExpungeDeletesPctAllowed(0.0);
+    tmp.setMaxExpungeDeletesMB(1.0/1024/1024);
+    int calls = 0;
+    while(w.maxDoc() > w.numDocs()) {
+      final int maxDoc = w.maxDoc();
+      w.expungeDeletes();
+      assertEquals(maxDoc - 1, w.maxDoc());
+      calls++;
+    }
+    assertEquals(segCount, calls);
+    assertEquals(60, w.numDocs());
+    assertEquals(segCount, w.getSegmentCount());
+    w.close();
+    dir.close();
+  }
+
+  public void testPartialOptimize() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = newWriter(dir, true);
+    TieredMergePolicy tmp = (TieredMergePolicy) w.getMergePolicy();
+    tmp.setMaxMergeAtOnce(1000);
+    tmp.setSegmentsPerTier(1000.0);
+    tmp.setMaxMergeAtOnceExplicit(3);
+    for(int i=0;i<100;i++) {
+      w.addDocument(newDoc(i));
+    }
+    assertEquals(25, w.getSegmentCount());
+
+    w.optimize(5);
+    assertEquals(5, w.getSegmentCount());
+    w.optimize();
+    assertEquals(1, w.getSegmentCount());
+    assertEquals(100, w.numDocs());
+    w.close();
+    dir.close();
+  }
+
+  // Updates docs while non-adjacent segments are merged, so
+  // that buffered deletes must be carried over correctly
+  public void testUpdatesWithNonAdjacentMerges() throws Exception {
+    Random random = newRandom();
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = newWriter(dir, true);
+    ((TieredMergePolicy) w.getMergePolicy()).setReclaimDeletesWeight(10.0);
+    final int numIDs = 50;
+    final boolean[] deleted = new boolean[numIDs];
+    for(int iter=0;iter<1000;iter++) {
+      final int id = random.nextInt(numIDs);
+      if (random.nextInt(10) == 0) {
+        w.deleteDocuments(new Term("id", Integer.toString(id)));
+        deleted[id] = true;
+      } else {
+        w.updateDocument(new Term("id", Integer.toString(id)), newDoc(id));
+        deleted[id] = false;
+      }
+      if (random.nextInt(50) == 0) {
+        w.commit();
+      }
+    }
+    w.close();
+
+    IndexReader r = IndexReader.open(dir, true);
+    int expected = 0;
+    for(int id=0;id<numIDs;id++) {
+      TermDocs td = r.termDocs(new Term("id", Integer.toString(id)));
+      int count = 0;
+      while(td.next()) {
+        assertEquals(Integer.toString(id), r.document(td.doc()).get("id"));
+        count++;
+      }
+      td.close();
+      assertEquals("id=" + id, deleted[id] ? 0 : 1, count);
+      if (!deleted[id]) {
+        expected++;
+      }
+    }
+    assertEquals(expected, r.numDocs());
+    r.close();
+    dir.close();
+  }
+
+  public void testSetters() throws Exception {
+    Directory dir = new MockRAMDirectory();
+    IndexWriter w = newWriter(dir, true);
+    TieredMergePolicy tmp = new TieredMergePolicy(w);
+
+    tmp.setMaxMergedSegmentMB(0.5);
+    assertEquals(0.5, tmp.getMaxMergedSegmentMB(), 0.0001);
+    tmp.setMaxMergedSegmentMB(Double.POSITIVE_INFINITY);
+    assertEquals(Long.MAX_VALUE/1024/1024., tmp.getMaxMergedSegmentMB(), 1.0);
+    assertEquals(Double.POSITIVE_INFINITY, tmp.getMaxExpungeDeletesMB(), 0.0);
+
+    try {
+      tmp.setMaxMergeAtOnce(1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      tmp.setExpungeDeletesPctAllowed(101.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    w.close();
+    dir.close();
+  }
+}
@@ -23,10 +23,15 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestFieldCache extends LuceneTestCase {
   protected IndexReader reader;
@@ -130,4 +135,190 @@ public class TestFieldCache extends LuceneTestCase {
 
     }
   }
+
+  public void testMaxRamBytes() throws IOException {
+    FieldCache cache = new FieldCacheImpl();
+    long intsSize = new RamUsageEstimator(false).estimateRamUsage(new int[NUM_DOCS]);
+
+    int[] ints = cache.getInts(reader, "theInt");
+    // the array for the default parser is shared, and only counted once
+    assertSame(ints, cache.getInts(reader, "theInt", FieldCache.DEFAULT_INT_PARSER));
+    FieldCache.Stats stats = cache.getStats();
+    assertEquals(2, stats.getEntryCount());
+    // values are only sized once there is a budget
+    assertEquals(0, stats.getRamBytesUsed());
+    cache.setMaxRamBytes(1 << 30);
+    stats = cache.getStats();
+    assertEquals(intsSize, stats.getRamBytesUsed());
+    assertEquals(1, stats.getHitCount());
+
+    // the least recently used values are evicted to stay within the budget
+    cache.setMaxRamBytes(intsSize + 100);
+    float[] floats = cache.getFloats(reader, "theFloat");
+    stats = cache.getStats();
+    assertEquals(1, stats.getEvictionCount());
+    assertEquals(intsSize, stats.getEvictedBytes());
+    assertEquals(2, stats.getEntryCount());
+    assertSame(floats, cache.getFloats(reader, "theFloat"));
+    assertNotSame(ints, cache.getInts(reader, "theInt"));
+
+    // a value larger than the budget is kept until the next value comes in
+    cache.setMaxRamBytes(100);
+    assertEquals(0, cache.getStats().getEntryCount());
+    String[] strings = cache.getStrings(reader, "theInt");
+    assertSame(strings, cache.getStrings(reader, "theInt"));
+    assertTrue(cache.getStats().getRamBytesUsed() > 100);
+
+    cache.purge(reader);
+    stats = cache.getStats();
+    assertEquals(0, stats.getEntryCount());
+    assertEquals(0, stats.getRamBytesUsed());
+
+    // the estimate from the array lengths is close to walking the value
+    FieldCache.StringIndex index = cache.getStringIndex(reader, "theInt");
+    long walked = new RamUsageEstimator(false).estimateRamUsage(index);
+    long estimated = FieldCacheImpl.estimateRamBytes(index);
+    assertTrue(walked + " vs. " + estimated, Math.abs(walked - estimated) < walked / 10);
+  }
+
+  public void testConcurrentCreation() throws Exception {
+    final FieldCache cache = new FieldCacheImpl();
+    final AtomicInteger parseCount = new AtomicInteger();
+    final FieldCache.IntParser parser = new FieldCache.IntParser() {
+      public int parseInt(String value) {
+        parseCount.incrementAndGet();
+        return Integer.parseInt(value);
+      }
+    };
+    final int[][] results = new int[8][];
+    final CyclicBarrier barrier = new CyclicBarrier(results.length);
+    Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+            results[index] = cache.getInts(reader, "theInt", parser);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+    }
+    // the value was created only once
+    assertEquals(NUM_DOCS, parseCount.get());
+    for (int i = 0; i < results.length; i++) {
+      assertSame(results[0], results[i]);
+    }
+    FieldCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.getMissCount());
+    assertEquals(results.length - 1, stats.getHitCount());
+  }
+
+  public void testPacked() throws IOException {
+    FieldCache cache = new FieldCacheImpl();
+    long[] longs = cache.getLongs(reader, "theLong");
+    FieldCache.PackedValues packedLongs = cache.getPackedLongs(reader, "theLong", null);
+    assertSame(packedLongs, cache.getPackedLongs(reader, "theLong", null));
+    assertSame(packedLongs, cache.getPackedLongs(reader, "theLong", FieldCache.DEFAULT_LONG_PARSER));
+    assertEquals(10, packedLongs.values.getBitsPerValue());
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(longs[i], packedLongs.get(i));
+    }
+
+    int[] ints = cache.getInts(reader, "theInt");
+    FieldCache.PackedValues packedInts = cache.getPackedInts(reader, "theInt", null);
+    assertEquals(10, packedInts.values.getBitsPerValue());
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(ints[i], packedInts.get(i));
+    }
+
+    float[] floats = cache.getFloats(reader, "theFloat");
+    FieldCache.PackedValues packedFloats = cache.getPackedFloats(reader, "theFloat", null);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(floats[i], NumericUtils.sortableIntToFloat((int) packedFloats.get(i)), 0f);
+    }
+
+    FieldCache.StringIndex index = cache.getStringIndex(reader, "theDouble");
+    FieldCache.PackedStringIndex packedIndex = cache.getPackedStringIndex(reader, "theDouble");
+    assertEquals(index.lookup.length, packedIndex.numOrds());
+    for (int i = 0; i < index.lookup.length; i++) {
+      assertEquals(index.lookup[i], packedIndex.lookup(i));
+      assertEquals(index.binarySearchLookup(index.lookup[i]), packedIndex.binarySearchLookup(index.lookup[i]));
+    }
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(index.order[i], packedIndex.order.get(i));
+    }
+    cache.purgeAllCaches();
+  }
+
+  public void testPackedSparse() throws IOException {
+    Random random = newRandom();
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      // some documents have no value, which must read as 0
+      if (random.nextInt(10) != 0) {
+        doc.add(new Field("year", String.valueOf(1990 + random.nextInt(20)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("negative", String.valueOf(-1 - random.nextInt(1000)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("text", randomTerm(random), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        // more postings than documents, although some have no value
+        doc.add(new Field("multi", String.valueOf(100 + i % 7), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("multi", String.valueOf(110 + i % 5), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+    IndexReader sparseReader = IndexReader.open(directory, true);
+    try {
+      FieldCache cache = new FieldCacheImpl();
+      for (String field : new String[] {"year", "negative", "multi"}) {
+        int[] ints = cache.getInts(sparseReader, field);
+        FieldCache.PackedValues packed = cache.getPackedInts(sparseReader, field, null);
+        for (int i = 0; i < NUM_DOCS; i++) {
+          assertEquals(ints[i], packed.get(i));
+        }
+      }
+
+      FieldCache.StringIndex index = cache.getStringIndex(sparseReader, "text");
+      FieldCache.PackedStringIndex packedIndex = cache.getPackedStringIndex(sparseReader, "text");
+      assertEquals(index.lookup.length, packedIndex.numOrds());
+      for (int i = 0; i < index.lookup.length; i++) {
+        assertEquals(index.lookup[i], packedIndex.lookup(i));
+      }
+      for (int i = 0; i < NUM_DOCS; i++) {
+        assertEquals(index.order[i], packedIndex.order.get(i));
+      }
+      for (int i = 0; i < 100; i++) {
+        String key = randomTerm(random);
+        assertEquals(index.binarySearchLookup(key), packedIndex.binarySearchLookup(key));
+      }
+      cache.purgeAllCaches();
+    } finally {
+      sparseReader.close();
+    }
+  }
+
+  private static String randomTerm(Random random) {
+    final char[] chars = {'a', 'b', '\u00e9', '\u4e2d', '\ud800', '\udc00'};
+    StringBuilder sb = new StringBuilder();
+    final int length = 1 + random.nextInt(6);
+    for (int i = 0; i < length; i++) {
+      final char c = chars[random.nextInt(chars.length)];
+      if (c == '\ud800') {
+        sb.append(c).append('\udc00');
+      } else if (c != '\udc00') {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
 }
\ No newline at end of file
@@ -18,6 +18,8 @@ package org.apache.lucene.search;
  */
 
 import java.util.Set;
+import java.util.ArrayList;
+import java.util.Random;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Arrays;
@@ -31,6 +33,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockRAMDirectory;
@@ -357,6 +360,95 @@ public class TestFuzzyQuery extends LuceneTestCase {
     r.close();
   }
 
+  public void testRandomTerms() throws Exception {
+    Random random = newRandom();
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(),
+        true, IndexWriter.MaxFieldLength.UNLIMITED);
+    for (int i = 0; i < 2000; i++) {
+      addDoc(randomTerm(random), writer);
+    }
+    writer.close();
+    IndexReader reader = IndexReader.open(directory, true);
+
+    float[] similarities = {0.0f, 0.3f, 0.5f, 0.6f, 0.7f, 0.8f};
+    for (int i = 0; i < 300; i++) {
+      Term term = new Term("field", randomTerm(random));
+      float minSimilarity = similarities[random.nextInt(similarities.length)];
+      int prefixLength = random.nextInt(3);
+      assertSameTerms(reader, term, minSimilarity, prefixLength);
+    }
+    reader.close();
+    directory.close();
+  }
+
+  private static String randomTerm(Random random) {
+    char[] chars = new char[1 + random.nextInt(8)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(5));
+    }
+    return new String(chars);
+  }
+
+  /* Compares the terms and differences of a FuzzyTermEnum with those of a
+   * brute force comparison against every term in the index.
+   */
+  private void assertSameTerms(IndexReader reader, Term term, float minSimilarity,
+      int prefixLength) throws IOException {
+    String text = term.text();
+    String prefix = text.substring(0, Math.min(prefixLength, text.length()));
+    String rest = text.substring(prefix.length());
+    List<String> expected = new ArrayList<String>();
+    List<Float> expectedDifferences = new ArrayList<Float>();
+    TermEnum allTerms = reader.terms(new Term("field", ""));
+    do {
+      Term t = allTerms.term();
+      if (t == null || t.field() != "field") break;
+      if (!t.text().startsWith(prefix)) continue;
+      String target = t.text().substring(prefix.length());
+      float similarity = referenceSimilarity(rest, target, prefix.length());
+      if (similarity > minSimilarity) {
+        expected.add(t.text());
+        expectedDifferences.add((similarity - minSimilarity) * (1.0f / (1.0f - minSimilarity)));
+      }
+    } while (allTerms.next());
+    allTerms.close();
+
+    List<String> actual = new ArrayList<String>();
+    List<Float> actualDifferences = new ArrayList<Float>();
+    FuzzyTermEnum fuzzyEnum = new FuzzyTermEnum(reader, term, minSimilarity, prefixLength);
+    do {
+      Term t = fuzzyEnum.term();
+      if (t == null) break;
+      actual.add(t.text());
+      actualDifferences.add(fuzzyEnum.difference());
+      assertEquals(reader.docFreq(t), fuzzyEnum.docFreq());
+    } while (fuzzyEnum.next());
+    fuzzyEnum.close();
+
+    String message = term + " minSimilarity=" + minSimilarity + " prefixLength=" + prefixLength;
+    assertEquals(message, expected, actual);
+    assertEquals(message, expectedDifferences, actualDifferences);
+  }
+
+  private static float referenceSimilarity(String text, String target, int prefixLength) {
+    int n = text.length();
+    int m = target.length();
+    if (n == 0 || m == 0) {
+      return prefixLength == 0 ? 0.0f : 1.0f - ((float) Math.max(n, m) / prefixLength);
+    }
+    int[][] dist = new int[m + 1][n + 1];
+    for (int i = 0; i <= n; i++) dist[0][i] = i;
+    for (int j = 1; j <= m; j++) {
+      dist[j][0] = j;
+      for (int i = 1; i <= n; i++) {
+        int cost = target.charAt(j - 1) == text.charAt(i - 1) ? 0 : 1;
+        dist[j][i] = Math.min(Math.min(dist[j - 1][i], dist[j][i - 1]) + 1, dist[j - 1][i - 1] + cost);
+      }
+    }
+    return 1.0f - ((float) dist[m][n] / (float) (prefixLength + Math.min(n, m)));
+  }
+
   private void addDoc(String text, IndexWriter writer) throws IOException {
     Document doc = new Document();
     doc.add(new Field("field", text, Field.Store.YES, Field.Index.ANALYZED));
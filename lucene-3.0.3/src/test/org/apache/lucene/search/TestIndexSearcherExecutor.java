@@ -0,0 +1,188 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+/**
+ * Checks that an IndexSearcher with an executor returns the same hits as a
+ * sequential one.
+ */
+public class TestIndexSearcherExecutor extends LuceneTestCase {
+
+  private static final String[] WORDS = { "one", "two", "three", "four", "five" };
+
+  private RAMDirectory dir;
+  private IndexReader reader;
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = newRandom();
+    dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true,
+        IndexWriter.MaxFieldLength.UNLIMITED);
+    // many small segments of different sizes
+    writer.setMergeFactor(1000);
+    for (int i = 0; i < 400; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      // few distinct values, so that sorts have ties
+      doc.add(new Field("group", Integer.toString(random.nextInt(5)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (random.nextInt(4) != 0) {
+        doc.add(new Field("tag", WORDS[random.nextInt(WORDS.length)], Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      StringBuilder text = new StringBuilder();
+      for (int j = 1 + random.nextInt(10); j > 0; j--) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      doc.add(new Field("text", text.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+      if (random.nextInt(20) == 0) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdown();
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  public void testSlices() throws Exception {
+    assertTrue(reader.getSequentialSubReaders().length > 3);
+    IndexSearcher plain = new IndexSearcher(reader);
+    for (int maxSlices = 1; maxSlices <= 5; maxSlices++) {
+      IndexSearcher parallel = new IndexSearcher(reader, executor, maxSlices);
+      assertSameHits(plain, parallel, new TermQuery(new Term("text", "one")), null, 10);
+    }
+    // more slices than sub-readers
+    IndexSearcher parallel = new IndexSearcher(reader, executor, 1000);
+    assertSameHits(plain, parallel, new TermQuery(new Term("text", "one")), null, 10);
+  }
+
+  public void testScoreDocs() throws Exception {
+    IndexSearcher plain = new IndexSearcher(reader);
+    IndexSearcher parallel = new IndexSearcher(reader, executor, 3);
+    Filter filter = new QueryWrapperFilter(new TermQuery(new Term("group", "1")));
+
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("text", "one")), BooleanClause.Occur.SHOULD);
+    bq.add(new TermQuery(new Term("text", "two")), BooleanClause.Occur.SHOULD);
+    bq.add(new TermQuery(new Term("text", "three")), BooleanClause.Occur.MUST_NOT);
+
+    Query[] queries = { new TermQuery(new Term("text", "one")), bq,
+        new MatchAllDocsQuery(), new TermQuery(new Term("text", "none")) };
+    for (Query query : queries) {
+      for (int n : new int[] { 1, 7, 50, 1000 }) {
+        assertSameHits(plain, parallel, query, null, n);
+        assertSameHits(plain, parallel, query, filter, n);
+      }
+    }
+  }
+
+  public void testSortedDocs() throws Exception {
+    IndexSearcher plain = new IndexSearcher(reader);
+    IndexSearcher parallel = new IndexSearcher(reader, executor, 3);
+    Filter filter = new QueryWrapperFilter(new TermQuery(new Term("text", "two")));
+
+    Sort[] sorts = {
+        new Sort(new SortField("group", SortField.INT)),
+        new Sort(new SortField("group", SortField.INT, true)),
+        new Sort(new SortField("tag", SortField.STRING), SortField.FIELD_SCORE),
+        new Sort(new SortField("tag", SortField.STRING, true), new SortField("group", SortField.INT)),
+        new Sort(SortField.FIELD_SCORE),
+        new Sort(SortField.FIELD_DOC),
+        new Sort(new SortField("tag", SortField.STRING_VAL)) };
+    Query query = new TermQuery(new Term("text", "one"));
+    for (Sort sort : sorts) {
+      for (int n : new int[] { 1, 7, 50, 1000 }) {
+        assertSameHits(plain, parallel, query, null, n, sort, true);
+        assertSameHits(plain, parallel, query, filter, n, sort, true);
+        assertSameHits(plain, parallel, query, null, n, sort, false);
+        parallel.setDefaultFieldSortScoring(true, true);
+        plain.setDefaultFieldSortScoring(true, true);
+        assertSameHits(plain, parallel, query, null, n, sort, true);
+        parallel.setDefaultFieldSortScoring(false, false);
+        plain.setDefaultFieldSortScoring(false, false);
+      }
+    }
+  }
+
+  private void assertSameHits(IndexSearcher expected, IndexSearcher actual,
+      Query query, Filter filter, int n) throws Exception {
+    TopDocs expectedDocs = expected.search(query, filter, n);
+    TopDocs actualDocs = actual.search(query, filter, n);
+    assertSameHits(expectedDocs, actualDocs);
+  }
+
+  private void assertSameHits(IndexSearcher expected, IndexSearcher actual,
+      Query query, Filter filter, int n, Sort sort, boolean fillFields) throws Exception {
+    Weight weight = query.weight(expected);
+    TopFieldDocs expectedDocs = expected.search(weight, filter, n, sort, fillFields);
+    TopFieldDocs actualDocs = actual.search(weight, filter, n, sort, fillFields);
+    assertSameHits(expectedDocs, actualDocs);
+    assertEquals(expectedDocs.fields.length, actualDocs.fields.length);
+    for (int i = 0; i < expectedDocs.scoreDocs.length; i++) {
+      Comparable[] expectedFields = ((FieldDoc) expectedDocs.scoreDocs[i]).fields;
+      Comparable[] actualFields = ((FieldDoc) actualDocs.scoreDocs[i]).fields;
+      if (fillFields) {
+        assertEquals(expectedFields.length, actualFields.length);
+        for (int j = 0; j < expectedFields.length; j++) {
+          assertEquals(expectedFields[j], actualFields[j]);
+        }
+      } else {
+        assertNull(expectedFields);
+        assertNull(actualFields);
+      }
+    }
+  }
+
+  private void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    assertEquals(Float.isNaN(expected.getMaxScore()), Float.isNaN(actual.getMaxScore()));
+    if (!Float.isNaN(expected.getMaxScore())) {
+      assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0f);
+    }
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      // NaN if scores are not tracked
+      assertEquals(Float.floatToIntBits(expected.scoreDocs[i].score),
+          Float.floatToIntBits(actual.scoreDocs[i].score));
+    }
+  }
+}
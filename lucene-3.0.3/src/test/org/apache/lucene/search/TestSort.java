@@ -19,7 +19,9 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
@@ -320,6 +322,59 @@ public class TestSort extends LuceneTestCase implements Serializable {
 
   }
   
+  /**
+   * Test String sorting on a low cardinality field with missing values over
+   * many segments, where the ords of the queue entries must be converted
+   * between segments that lack some of the values.
+   */
+  public void testLowCardinalityStringSort() throws IOException {
+    r = newRandom();
+    final String[] countries = {"de", "fr", "it", "nl", "se", "\u00e9t", "\u4e2d"};
+    final int numDocs = 500;
+    final String[] values = new String[numDocs];
+    RAMDirectory indexStore = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(indexStore, new SimpleAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMergeFactor(97);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      if (r.nextInt(8) != 0) {
+        // each segment only sees a few of the countries
+        values[i] = countries[(i / 37 + r.nextInt(3)) % countries.length];
+        doc.add(new Field("country", values[i], Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      writer.setMaxBufferedDocs(getRandomNumber(2, 30));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexSearcher searcher = new IndexSearcher(indexStore, true);
+
+    for (boolean reverse : new boolean[] {false, true}) {
+      final int topN = getRandomNumber(1, 100);
+      sort.setSort(new SortField("country", SortField.STRING, reverse), SortField.FIELD_DOC);
+      ScoreDoc[] result = searcher.search(new MatchAllDocsQuery(), null, topN, sort).scoreDocs;
+
+      Integer[] expected = new Integer[numDocs];
+      for (int i = 0; i < numDocs; i++) {
+        expected[i] = Integer.valueOf(i);
+      }
+      final int sign = reverse ? -1 : 1;
+      Arrays.sort(expected, new Comparator<Integer>() {
+        public int compare(Integer doc1, Integer doc2) {
+          String v1 = values[doc1.intValue()];
+          String v2 = values[doc2.intValue()];
+          int cmp = v1 == null ? (v2 == null ? 0 : -1) : (v2 == null ? 1 : v1.compareTo(v2));
+          return cmp != 0 ? sign * cmp : doc1.intValue() - doc2.intValue();
+        }
+      });
+      assertEquals(topN, result.length);
+      for (int i = 0; i < topN; i++) {
+        assertEquals("reverse=" + reverse + " rank=" + i, expected[i].intValue(), result[i].doc);
+        assertEquals(values[result[i].doc], ((FieldDoc) result[i]).fields[0]);
+      }
+    }
+    searcher.close();
+  }
+
   /** 
    * test sorts where the type of field is specified and a custom field parser 
    * is used, that uses a simple char encoding. The sorted string contains a 
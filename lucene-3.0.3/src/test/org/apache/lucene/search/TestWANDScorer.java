@@ -0,0 +1,248 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+/**
+ * Checks that skipping non-competitive docs of disjunctions doesn't change
+ * the top hits.
+ */
+public class TestWANDScorer extends LuceneTestCase {
+
+  // from very common to rare
+  private static final String[] WORDS = { "a", "b", "c", "d", "e", "f", "g", "h" };
+
+  private Random random;
+  private RAMDirectory dir;
+  private IndexReader reader;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true,
+        IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMergeFactor(1000);
+    for (int i = 0; i < 2000; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+      StringBuilder text = new StringBuilder();
+      for (int j = 1 + random.nextInt(20); j > 0; j--) {
+        // word k occurs with probability 2^-k
+        int k = 0;
+        while (k < WORDS.length - 1 && random.nextBoolean()) {
+          k++;
+        }
+        text.append(WORDS[k]).append(' ');
+      }
+      doc.add(new Field("text", text.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+      if (random.nextInt(300) == 0) {
+        writer.commit();
+      }
+    }
+    writer.deleteDocuments(new Term("id", "7"));
+    writer.close();
+    reader = IndexReader.open(dir, false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private BooleanQuery randomQuery(boolean disableCoord) {
+    BooleanQuery query = new BooleanQuery(disableCoord);
+    for (int i = 2 + random.nextInt(4); i > 0; i--) {
+      TermQuery tq = new TermQuery(new Term("text", WORDS[random.nextInt(WORDS.length)]));
+      if (random.nextBoolean()) {
+        tq.setBoost(0.5f + 4 * random.nextFloat());
+      }
+      query.add(tq, BooleanClause.Occur.SHOULD);
+    }
+    if (random.nextInt(5) == 0) {
+      // a term that doesn't exist
+      query.add(new TermQuery(new Term("text", "zzz")), BooleanClause.Occur.SHOULD);
+    }
+    return query;
+  }
+
+  private IndexSearcher exactSearcher() {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setTotalHitsThreshold(Integer.MAX_VALUE);
+    return searcher;
+  }
+
+  public void testSameHits() throws Exception {
+    IndexSearcher exact = exactSearcher();
+    IndexSearcher wand = new IndexSearcher(reader);
+    wand.setTotalHitsThreshold(0);
+    boolean skipped = false;
+    for (int iter = 0; iter < 200; iter++) {
+      Query query = randomQuery(random.nextInt(4) == 0);
+      int n = 1 + random.nextInt(20);
+      TopDocs expected = exact.search(query, n);
+      TopDocs actual = wand.search(query, n);
+      assertSameHits(query, expected, actual);
+      skipped |= actual.totalHits < expected.totalHits;
+    }
+    assertTrue(skipped);
+  }
+
+  public void testTotalHitsThreshold() throws Exception {
+    IndexSearcher exact = exactSearcher();
+    IndexSearcher wand = new IndexSearcher(reader);
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("text", "a")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("text", "h")), BooleanClause.Occur.SHOULD);
+    TopDocs expected = exact.search(query, 5);
+
+    wand.setTotalHitsThreshold(expected.totalHits);
+    assertEquals(expected.totalHits, wand.search(query, 5).totalHits);
+    for (int threshold : new int[] { 0, 10, 100, 1000 }) {
+      wand.setTotalHitsThreshold(threshold);
+      TopDocs actual = wand.search(query, 5);
+      assertSameHits(query, expected, actual);
+      assertTrue(actual.totalHits >= Math.min(threshold, expected.totalHits));
+    }
+
+    try {
+      wand.setTotalHitsThreshold(-1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  public void testDefaultThreshold() throws Exception {
+    IndexSearcher exact = exactSearcher();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    assertEquals(IndexSearcher.DEFAULT_TOTAL_HITS_THRESHOLD, searcher.getTotalHitsThreshold());
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("text", "a")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("text", "b")), BooleanClause.Occur.SHOULD);
+    TopDocs expected = exact.search(query, 5);
+    assertTrue(expected.totalHits > IndexSearcher.DEFAULT_TOTAL_HITS_THRESHOLD);
+    TopDocs actual = searcher.search(query, 5);
+    assertSameHits(query, expected, actual);
+    assertTrue(actual.totalHits >= IndexSearcher.DEFAULT_TOTAL_HITS_THRESHOLD);
+  }
+
+  public void testExecutor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      IndexSearcher exact = exactSearcher();
+      IndexSearcher wand = new IndexSearcher(reader, executor, 3);
+      wand.setTotalHitsThreshold(0);
+      for (int iter = 0; iter < 50; iter++) {
+        Query query = randomQuery(false);
+        int n = 1 + random.nextInt(20);
+        assertSameHits(query, exact.search(query, n), wand.search(query, n));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testChangedNorms() throws Exception {
+    IndexSearcher exact = exactSearcher();
+    IndexSearcher wand = new IndexSearcher(reader);
+    wand.setTotalHitsThreshold(0);
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("text", "a")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("text", "b")), BooleanClause.Occur.SHOULD);
+    assertSameHits(query, exact.search(query, 3), wand.search(query, 3));
+
+    // a doc that previously had a low score gets the top norm
+    TopDocs all = exact.search(query, 2000);
+    int last = all.scoreDocs[all.scoreDocs.length - 1].doc;
+    reader.setNorm(last, "text", 100.0f);
+    TopDocs expected = exact.search(query, 3);
+    assertEquals(last, expected.scoreDocs[0].doc);
+    assertSameHits(query, expected, wand.search(query, 3));
+  }
+
+  public void testMaxTermFreq() throws Exception {
+    checkMaxTermFreqs(reader);
+
+    // merged segments store them too
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false,
+        IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.optimize();
+    writer.close();
+    IndexReader optimized = IndexReader.open(dir, true);
+    assertEquals(1, optimized.getSequentialSubReaders().length);
+    checkMaxTermFreqs(optimized);
+    optimized.close();
+  }
+
+  private void checkMaxTermFreqs(IndexReader reader) throws Exception {
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    for (IndexReader subReader : subReaders) {
+      SegmentReader segmentReader = (SegmentReader) subReader;
+      for (String word : WORDS) {
+        Term term = new Term("text", word);
+        TermDocs termDocs = segmentReader.termDocs(term);
+        int maxFreq = 0;
+        while (termDocs.next()) {
+          maxFreq = Math.max(maxFreq, termDocs.freq());
+        }
+        termDocs.close();
+        if (segmentReader.hasDeletions()) {
+          // deleted docs are included
+          assertTrue(maxFreq <= segmentReader.maxTermFreq(term));
+        } else {
+          assertEquals(maxFreq, segmentReader.maxTermFreq(term));
+        }
+      }
+      Term id = new Term("id", "1000");
+      assertEquals(segmentReader.docFreq(id) > 0 ? 1 : 0, segmentReader.maxTermFreq(id));
+      assertEquals(0, segmentReader.maxTermFreq(new Term("text", "zzz")));
+      assertEquals(-1, segmentReader.maxNorm("id"));
+      assertTrue(segmentReader.maxNorm("text") > 0);
+    }
+  }
+
+  private void assertSameHits(Query query, TopDocs expected, TopDocs actual) {
+    assertTrue(actual.totalHits <= expected.totalHits);
+    assertEquals(query.toString(), expected.scoreDocs.length, actual.scoreDocs.length);
+    assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0f);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(query.toString(), expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      assertEquals(Float.floatToIntBits(expected.scoreDocs[i].score),
+          Float.floatToIntBits(actual.scoreDocs[i].score));
+    }
+  }
+}
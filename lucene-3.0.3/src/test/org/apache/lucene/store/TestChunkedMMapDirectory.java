@@ -0,0 +1,217 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestChunkedMMapDirectory extends LuceneTestCase {
+
+  private File path;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    path = _TestUtil.getTempDir("TestChunkedMMapDirectory");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    _TestUtil.rmDir(path);
+    super.tearDown();
+  }
+
+  private static byte[] writeFile(Directory dir, String name, int length, Random random) throws IOException {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    IndexOutput out = dir.createOutput(name);
+    out.writeBytes(bytes, length);
+    out.close();
+    return bytes;
+  }
+
+  private static void checkFile(IndexInput in, byte[] bytes, Random random) throws IOException {
+    assertEquals(bytes.length, in.length());
+    for (int iter = 0; iter < 20; iter++) {
+      int start = random.nextInt(bytes.length + 1);
+      in.seek(start);
+      assertEquals(start, in.getFilePointer());
+      int len = random.nextInt(bytes.length - start + 1);
+      if (random.nextBoolean()) {
+        byte[] read = new byte[len];
+        in.readBytes(read, 0, len);
+        for (int i = 0; i < len; i++) {
+          assertEquals(bytes[start + i], read[i]);
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          assertEquals(bytes[start + i], in.readByte());
+        }
+      }
+      assertEquals(start + len, in.getFilePointer());
+    }
+    in.seek(bytes.length);
+    try {
+      in.readByte();
+      fail("did not hit exception");
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+  public void testReadAcrossChunks() throws Exception {
+    Random random = newRandom();
+    ChunkedMMapDirectory dir = new ChunkedMMapDirectory(path, null, 4);
+    int[] lengths = { 0, 1, 15, 16, 17, 64, 100, 1000 };
+    for (int i = 0; i < lengths.length; i++) {
+      byte[] bytes = writeFile(dir, "f" + i, lengths[i], random);
+      IndexInput in = dir.openInput("f" + i);
+      checkFile(in, bytes, random);
+      IndexInput clone = (IndexInput) in.clone();
+      checkFile(clone, bytes, random);
+      checkFile(in, bytes, random);
+      clone.close();
+      in.close();
+    }
+    dir.close();
+  }
+
+  public void testReadHints() throws Exception {
+    Random random = newRandom();
+    ChunkedMMapDirectory dir = new ChunkedMMapDirectory(path, null, 6);
+    dir.setReadHint("seq", ChunkedMMapDirectory.ReadHint.SEQUENTIAL);
+    dir.setReadHint("pre", ChunkedMMapDirectory.ReadHint.PRELOAD);
+    assertEquals(ChunkedMMapDirectory.ReadHint.SEQUENTIAL, dir.getReadHint("_1.seq"));
+    assertEquals(ChunkedMMapDirectory.ReadHint.PRELOAD, dir.getReadHint("_1.pre"));
+    assertEquals(ChunkedMMapDirectory.ReadHint.RANDOM, dir.getReadHint("_1.frq"));
+    assertEquals(ChunkedMMapDirectory.ReadHint.RANDOM, dir.getReadHint("segments_1"));
+    dir.setDefaultReadHint(ChunkedMMapDirectory.ReadHint.PRELOAD);
+    assertEquals(ChunkedMMapDirectory.ReadHint.PRELOAD, dir.getReadHint("segments_1"));
+
+    for (String name : new String[] { "_1.seq", "_1.pre", "_1.frq" }) {
+      byte[] bytes = writeFile(dir, name, 500, random);
+      IndexInput in = dir.openInput(name);
+      assertEquals(name.endsWith(".seq"), in instanceof NIOFSDirectory.NIOFSIndexInput);
+      checkFile(in, bytes, random);
+      in.close();
+    }
+    dir.close();
+  }
+
+  public void testUseAfterClose() throws Exception {
+    Random random = newRandom();
+    ChunkedMMapDirectory dir = new ChunkedMMapDirectory(path, null, 4);
+    assertEquals(ChunkedMMapDirectory.UNMAP_SUPPORTED, dir.getUseUnmap());
+    byte[] bytes = writeFile(dir, "f", 100, random);
+    IndexInput in = dir.openInput("f");
+    IndexInput clone = (IndexInput) in.clone();
+    IndexInput cloneOfClone = (IndexInput) clone.clone();
+    checkFile(cloneOfClone, bytes, random);
+
+    // closing a clone doesn't affect the others
+    cloneOfClone.close();
+    checkFile(clone, bytes, random);
+    checkFile(in, bytes, random);
+
+    in.close();
+    try {
+      in.readByte();
+      fail("did not hit exception");
+    } catch (AlreadyClosedException ace) {
+      // expected
+    }
+    try {
+      in.clone();
+      fail("did not hit exception");
+    } catch (AlreadyClosedException ace) {
+      // expected
+    }
+    if (dir.getUseUnmap()) {
+      // the chunks are unmapped, clones must not access them anymore
+      try {
+        clone.readByte();
+        fail("did not hit exception");
+      } catch (AlreadyClosedException ace) {
+        // expected
+      }
+      try {
+        clone.readBytes(new byte[10], 0, 10);
+        fail("did not hit exception");
+      } catch (AlreadyClosedException ace) {
+        // expected
+      }
+      try {
+        clone.seek(50);
+        fail("did not hit exception");
+      } catch (AlreadyClosedException ace) {
+        // expected
+      }
+    }
+    dir.close();
+  }
+
+  public void testIndexing() throws Exception {
+    Random random = newRandom();
+    ChunkedMMapDirectory dir = new ChunkedMMapDirectory(path, null, 8 + random.nextInt(8));
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(50);
+    writer.setUseCompoundFile(random.nextBoolean());
+    for (int i = 0; i < 500; i++) {
+      Document doc = new Document();
+      doc.add(new Field("content", English.intToEnglish(i).trim(), Field.Store.YES, Field.Index.ANALYZED));
+      doc.add(new Field("mod", Integer.toString(i % 7), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(500, reader.numDocs());
+    IndexSearcher searcher = new IndexSearcher(reader);
+    assertEquals(72, searcher.search(new TermQuery(new Term("mod", "2")), 1).totalHits);
+    for (int i = 0; i < 500; i++) {
+      assertEquals(English.intToEnglish(i).trim(), reader.document(i).get("content"));
+    }
+    searcher.close();
+    reader.close();
+    dir.close();
+  }
+
+  public void testInvalidChunkSize() throws Exception {
+    for (int chunkSizePower : new int[] { 0, 31 }) {
+      try {
+        new ChunkedMMapDirectory(path, null, chunkSizePower);
+        fail("did not hit exception");
+      } catch (IllegalArgumentException iae) {
+        // expected
+      }
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestConcurrentRAMDirectory extends LuceneTestCase {
+
+  private static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static void writeFile(Directory dir, String name, byte[] bytes, Random random) throws IOException {
+    IndexOutput out = dir.createOutput(name);
+    int upto = 0;
+    while (upto < bytes.length) {
+      if (random.nextBoolean()) {
+        out.writeByte(bytes[upto++]);
+      } else {
+        int len = Math.min(bytes.length - upto, random.nextInt(100));
+        out.writeBytes(bytes, upto, len);
+        upto += len;
+      }
+      assertEquals(upto, out.getFilePointer());
+    }
+    out.close();
+  }
+
+  private static void checkFile(IndexInput in, byte[] bytes, Random random) throws IOException {
+    assertEquals(bytes.length, in.length());
+    for (int iter = 0; iter < 20; iter++) {
+      int start = random.nextInt(bytes.length + 1);
+      in.seek(start);
+      assertEquals(start, in.getFilePointer());
+      int len = random.nextInt(bytes.length - start + 1);
+      if (random.nextBoolean()) {
+        byte[] read = new byte[len];
+        in.readBytes(read, 0, len);
+        for (int i = 0; i < len; i++) {
+          assertEquals(bytes[start + i], read[i]);
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          assertEquals(bytes[start + i], in.readByte());
+        }
+      }
+      assertEquals(start + len, in.getFilePointer());
+    }
+  }
+
+  public void testReadWrite() throws Exception {
+    Random random = newRandom();
+    for (boolean direct : new boolean[] { false, true }) {
+      ConcurrentRAMDirectory dir = new ConcurrentRAMDirectory(16, 64, direct);
+      for (int i = 0; i < 20; i++) {
+        byte[] bytes = randomBytes(random, random.nextInt(i % 5 == 0 ? 16 : 500));
+        writeFile(dir, "f" + i, bytes, random);
+        assertEquals(bytes.length, dir.fileLength("f" + i));
+        IndexInput in = dir.openInput("f" + i);
+        checkFile(in, bytes, random);
+        IndexInput clone = (IndexInput) in.clone();
+        checkFile(clone, bytes, random);
+        checkFile(in, bytes, random);
+
+        in.seek(bytes.length);
+        try {
+          in.readByte();
+          fail("did not hit exception");
+        } catch (IOException ioe) {
+          // expected
+        }
+        in.close();
+      }
+      dir.close();
+    }
+  }
+
+  public void testSeekBackAndOverwrite() throws Exception {
+    Random random = newRandom();
+    ConcurrentRAMDirectory dir = new ConcurrentRAMDirectory(16, 64, false);
+    byte[] bytes = randomBytes(random, 100);
+    IndexOutput out = dir.createOutput("f");
+    out.writeBytes(new byte[100], 100);
+    for (int i = 0; i < 100; i += 10) {
+      out.seek(i);
+      out.writeBytes(bytes, i, 10);
+    }
+    out.seek(100);
+    assertEquals(100, out.length());
+    out.close();
+
+    IndexInput in = dir.openInput("f");
+    checkFile(in, bytes, random);
+    in.close();
+    dir.close();
+  }
+
+  public void testDeleteWhileOpen() throws Exception {
+    Random random = newRandom();
+    ConcurrentRAMDirectory dir = new ConcurrentRAMDirectory(16, 64, false);
+    byte[] bytes = randomBytes(random, 1024);
+    writeFile(dir, "f", bytes, random);
+    IndexInput in = dir.openInput("f");
+    IndexInput clone = (IndexInput) in.clone();
+    final long allocated = dir.allocatedBytes();
+    assertEquals(allocated, dir.sizeInBytes());
+
+    dir.deleteFile("f");
+    assertFalse(dir.fileExists("f"));
+    assertEquals(0, dir.sizeInBytes());
+    try {
+      dir.openInput("f");
+      fail("did not hit exception");
+    } catch (FileNotFoundException fnfe) {
+      // expected
+    }
+
+    // the blocks of the open file must not be reused
+    writeFile(dir, "g", randomBytes(random, 1024), random);
+    checkFile(in, bytes, random);
+    checkFile(clone, bytes, random);
+    assertEquals(2 * allocated, dir.allocatedBytes());
+
+    // now they are
+    in.close();
+    writeFile(dir, "h", randomBytes(random, 1024), random);
+    assertEquals(2 * allocated, dir.allocatedBytes());
+    assertEquals(dir.allocatedBytes(), dir.sizeInBytes());
+
+    // overwriting a file releases its blocks too
+    writeFile(dir, "h", randomBytes(random, 1024), random);
+    assertEquals(2 * allocated, dir.allocatedBytes());
+    dir.close();
+  }
+
+  public void testConcurrentFiles() throws Exception {
+    final Random random = newRandom();
+    final ConcurrentRAMDirectory dir = new ConcurrentRAMDirectory(64, 1024, random.nextBoolean());
+    final long seed = random.nextLong();
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int num = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Random r = new Random(seed + num);
+            for (int iter = 0; iter < 200; iter++) {
+              String name = "t" + num + "_" + r.nextInt(5);
+              if (dir.fileExists(name) && r.nextBoolean()) {
+                dir.deleteFile(name);
+              } else {
+                byte[] bytes = randomBytes(r, r.nextInt(2000));
+                writeFile(dir, name, bytes, r);
+                IndexInput in = dir.openInput(name);
+                checkFile(in, bytes, r);
+                in.close();
+              }
+              dir.listAll();
+            }
+          } catch (Throwable t) {
+            failure[0] = t;
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure[0] != null) {
+      throw new RuntimeException(failure[0]);
+    }
+
+    long size = 0;
+    for (String name : dir.listAll()) {
+      long blocks = (dir.fileLength(name) + 63) / 64;
+      size += blocks * 64;
+    }
+    assertEquals(size, dir.sizeInBytes());
+    assertTrue(dir.allocatedBytes() >= size);
+    dir.close();
+  }
+
+  public void testIndexing() throws Exception {
+    final ConcurrentRAMDirectory dir = new ConcurrentRAMDirectory(1024, 1 << 16, newRandom().nextBoolean());
+    final IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(10);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int num = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 100; i++) {
+            Document doc = new Document();
+            doc.add(new Field("content", English.intToEnglish(num * 100 + i).trim(), Field.Store.YES, Field.Index.ANALYZED));
+            doc.add(new Field("thread", Integer.toString(num), Field.Store.NO, Field.Index.NOT_ANALYZED));
+            try {
+              writer.addDocument(doc);
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    writer.optimize();
+    writer.close();
+
+    Directory copy = new ConcurrentRAMDirectory(dir);
+    for (Directory d : new Directory[] { dir, copy }) {
+      IndexReader reader = IndexReader.open(d, true);
+      assertEquals(400, reader.numDocs());
+      IndexSearcher searcher = new IndexSearcher(reader);
+      assertEquals(100, searcher.search(new TermQuery(new Term("thread", "2")), 1).totalHits);
+      for (int i = 0; i < 400; i++) {
+        assertNotNull(reader.document(i).get("content"));
+      }
+      searcher.close();
+      reader.close();
+    }
+    copy.close();
+    dir.close();
+  }
+
+  public void testInvalidSizes() {
+    try {
+      new ConcurrentRAMDirectory(1000, 4000, false);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      new ConcurrentRAMDirectory(1024, 1000, false);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+}
@@ -18,6 +18,8 @@ package org.apache.lucene.util;
  */
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
 
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.store.Directory;
@@ -198,6 +200,88 @@ public class TestBitVector extends LuceneTestCase
         bv.write(d, "TESTBV");
       }
     }
+    /**
+     * Test random changes against java.util.BitSet, while the vector switches
+     * from a sorted list of bits to a bit set.
+     */
+    public void testRandomChanges() throws IOException {
+      Random random = newRandom();
+      Directory d = new RAMDirectory();
+      for (int size : new int[] { 1, 100, 10000, 500000 }) {
+        BitVector bv = new BitVector(size);
+        BitSet expected = new BitSet(size);
+        int numChanges = random.nextInt(Math.min(size, 20000)) + 1;
+        for (int i = 0; i < numChanges; i++) {
+          int bit = random.nextInt(size);
+          if (random.nextInt(5) == 0) {
+            bv.clear(bit);
+            expected.clear(bit);
+          } else if (random.nextBoolean()) {
+            // a run of bits
+            for (int j = bit; j < Math.min(size, bit + random.nextInt(50)); j++) {
+              assertEquals(expected.get(j), bv.getAndSet(j));
+              expected.set(j);
+            }
+          } else {
+            bv.set(bit);
+            expected.set(bit);
+          }
+          if (i % 1000 == 0) {
+            assertEquals(expected, bv);
+          }
+        }
+        assertEquals(expected, bv);
+        assertEquals(expected, (BitVector) bv.clone());
+        bv.write(d, "TESTBV");
+        assertEquals(expected, new BitVector(d, "TESTBV"));
+
+        int start = random.nextInt(size);
+        int end = start + random.nextInt(size - start + 1);
+        BitVector subset = bv.subset(start, end);
+        assertEquals(expected.get(start, end), subset);
+      }
+    }
+
+    private void assertEquals(BitSet expected, BitVector bv) {
+      assertEquals(expected.cardinality(), bv.count());
+      assertEquals(bv.count(), bv.getRecomputedCount());
+      for (int i = 0; i < bv.size(); i++) {
+        assertEquals(expected.get(i), bv.get(i));
+      }
+      int bit = bv.nextSetBit(0);
+      for (int i = expected.nextSetBit(0); i != -1; i = expected.nextSetBit(i + 1)) {
+        assertEquals(i, bit);
+        bit = bv.nextSetBit(bit + 1);
+      }
+      assertEquals(-1, bit);
+    }
+
+    /**
+     * Test that few bits, or runs of bits, take little space on disk.
+     */
+    public void testSparseFileSize() throws IOException {
+      Directory d = new RAMDirectory();
+      BitVector bv = new BitVector(10000000);
+      for (int i = 0; i < 100; i++) {
+        bv.set(i * 99991);
+      }
+      bv.write(d, "TESTBV");
+      assertTrue(d.fileLength("TESTBV") < 12 + 100 * 3);
+      BitVector bv2 = new BitVector(d, "TESTBV");
+      assertTrue(doCompare(bv, bv2));
+      assertEquals(100, bv2.count());
+
+      // a run of bits is written as a single run
+      for (int i = 5000000; i < 6000000; i++) {
+        bv.set(i);
+      }
+      bv.write(d, "TESTBV");
+      assertTrue(d.fileLength("TESTBV") < 12 + 101 * 6);
+      bv2 = new BitVector(d, "TESTBV");
+      assertTrue(doCompare(bv, bv2));
+      assertEquals(bv.count(), bv2.count());
+    }
+
     /**
      * Compare two BitVectors.
      * This should really be an equals method on the BitVector itself.
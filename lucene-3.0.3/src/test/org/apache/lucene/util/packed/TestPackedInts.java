@@ -0,0 +1,98 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestPackedInts extends LuceneTestCase {
+
+  public void testBitsRequired() {
+    assertEquals(0, PackedInts.bitsRequired(0));
+    assertEquals(1, PackedInts.bitsRequired(1));
+    assertEquals(2, PackedInts.bitsRequired(2));
+    assertEquals(2, PackedInts.bitsRequired(3));
+    assertEquals(11, PackedInts.bitsRequired(1990));
+    assertEquals(63, PackedInts.bitsRequired(Long.MAX_VALUE));
+    assertEquals(64, PackedInts.bitsRequired(-1));
+    assertEquals(64, PackedInts.bitsRequired(Long.MIN_VALUE));
+  }
+
+  public void testMaxValue() {
+    assertEquals(0, PackedInts.maxValue(0));
+    assertEquals(1, PackedInts.maxValue(1));
+    assertEquals(1023, PackedInts.maxValue(10));
+    assertEquals(Long.MAX_VALUE, PackedInts.maxValue(63));
+    assertEquals(-1, PackedInts.maxValue(64));
+    for (int bits = 0; bits <= 64; bits++) {
+      assertEquals(bits, PackedInts.bitsRequired(PackedInts.maxValue(bits)));
+    }
+  }
+
+  public void testRandom() {
+    Random random = newRandom();
+    for (int bits = 0; bits <= 64; bits++) {
+      final int valueCount = random.nextInt(1000);
+      final long maxValue = PackedInts.maxValue(bits);
+      PackedInts.Mutable packed = PackedInts.getMutable(valueCount, bits);
+      assertEquals(bits, packed.getBitsPerValue());
+      assertEquals(valueCount, packed.size());
+      long[] values = new long[valueCount];
+      for (int i = 0; i < valueCount; i++) {
+        values[i] = random.nextLong() & maxValue;
+        packed.set(i, values[i]);
+      }
+      // overwrite some values, which must not touch their neighbours
+      for (int i = 0; i < valueCount / 4; i++) {
+        final int index = random.nextInt(valueCount);
+        values[index] = random.nextLong() & maxValue;
+        packed.set(index, values[index]);
+      }
+      for (int i = 0; i < valueCount; i++) {
+        assertEquals("bits=" + bits + " index=" + i, values[i], packed.get(i));
+      }
+    }
+  }
+
+  public void testExtremes() {
+    for (int bits = 1; bits <= 64; bits++) {
+      final long maxValue = PackedInts.maxValue(bits);
+      PackedInts.Mutable packed = PackedInts.getMutable(130, bits);
+      for (int i = 0; i < packed.size(); i++) {
+        packed.set(i, i % 2 == 0 ? maxValue : 0);
+      }
+      for (int i = 0; i < packed.size(); i++) {
+        assertEquals("bits=" + bits + " index=" + i, i % 2 == 0 ? maxValue : 0, packed.get(i));
+      }
+    }
+  }
+
+  public void testIllegalArguments() {
+    try {
+      PackedInts.getMutable(10, 65);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      PackedInts.getMutable(-1, 8);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}